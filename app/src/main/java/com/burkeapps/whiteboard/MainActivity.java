@@ -1,28 +1,40 @@
 package com.burkeapps.whiteboard;
 
 import android.app.Activity;
+import android.content.ContentResolver;
+import android.content.ContentValues;
 import android.content.Intent;
-import android.content.res.Configuration;
-import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Bundle;
-import android.os.Handler;
 import android.provider.MediaStore;
 import android.support.v7.app.ActionBarActivity;
+import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.widget.Toast;
 
+import com.burkeapps.whiteboard.export.ExportExecutor;
+import com.burkeapps.whiteboard.export.ExportFormat;
+import com.burkeapps.whiteboard.views.BoardMetrics;
+import com.burkeapps.whiteboard.views.BoardSnapshot;
 import com.burkeapps.whiteboard.views.WhiteboardView;
 
+import java.io.IOException;
+import java.io.OutputStream;
+
 
 public class MainActivity extends ActionBarActivity {
 
     private static final int REQ_COLOR = 0;
     private static final int REQ_THICKNESS = 1;
+    private static final int REQ_PHOTO = 2;
+    private static final String TAG = "MainActivity";
+    // debug builds time one of every few events and log the metrics of the board
+    private static final int METRICS_SAMPLING = 4;
 
     WhiteboardView whiteboard;
-    MenuItem colorsItem, eraserItem, markerItem, undoItem, redoItem;
+    ExportExecutor exporter = new ExportExecutor();
+    MenuItem colorsItem, eraserItem, strokeEraserItem, markerItem, panItem, undoItem, redoItem;
     private WhiteboardView.PathListener pathListener = new WhiteboardView.PathListener() {
         @Override
         public void onPathCompleted() {
@@ -43,6 +55,57 @@ public class MainActivity extends ActionBarActivity {
         public void onPathsCleared() {
             redrawMenuItems();
         }
+
+        @Override
+        public void onPathsErased() {
+            redrawMenuItems();
+        }
+    };
+    private ExportExecutor.Listener exportListener = new ExportExecutor.Listener() {
+        @Override
+        public void onExportProgress(ExportExecutor.Export export, int percent) {
+            if(BuildConfig.DEBUG){
+                Log.v(TAG, "Exporting image: " + percent + "%");
+            }
+        }
+
+        @Override
+        public void onExportFinished(ExportExecutor.Export export) {
+            if(BuildConfig.DEBUG){
+                Log.d(TAG, "Exported " + export.getFormat() + " of " + export.getByteCount() + " bytes, queued "
+                        + export.getQueueMillis() + "ms, encoded in " + export.getEncodeMillis() + "ms");
+            }
+            showShareIntent((MediaStoreDestination) export.getDestination());
+        }
+
+        @Override
+        public void onExportFailed(ExportExecutor.Export export, Exception e) {
+            Log.w(TAG, "Could not export image", e);
+            Toast.makeText(MainActivity.this, "Could not save image", Toast.LENGTH_LONG).show();
+        }
+    };
+
+    private WhiteboardView.BackgroundImageListener backgroundListener = new WhiteboardView.BackgroundImageListener() {
+        @Override
+        public void onBackgroundImageLoaded() {
+            if(BuildConfig.DEBUG){
+                Log.d(TAG, "Loaded background photo of " + whiteboard.getBackgroundImageBytes() + " bytes");
+            }
+        }
+
+        @Override
+        public void onBackgroundImageFailed(IOException e) {
+            Log.w(TAG, "Could not load background photo", e);
+            whiteboard.clearBackgroundImage();
+            Toast.makeText(MainActivity.this, "Could not load photo", Toast.LENGTH_LONG).show();
+        }
+    };
+
+    private BoardMetrics.Listener metricsListener = new BoardMetrics.Listener() {
+        @Override
+        public void onMetricsReport(BoardMetrics metrics) {
+            Log.d(TAG, "Whiteboard metrics over " + metrics.getIntervalMillis() + "ms\n" + metrics);
+        }
     };
 
     @Override
@@ -52,13 +115,20 @@ public class MainActivity extends ActionBarActivity {
 
         whiteboard = (WhiteboardView) findViewById(R.id.whiteboard);
         whiteboard.setPathListener(pathListener);
+        whiteboard.setBackgroundImageListener(backgroundListener);
+        if(BuildConfig.DEBUG){
+            whiteboard.setMetricsSampling(METRICS_SAMPLING);
+            whiteboard.setMetricsListener(metricsListener);
+        }
     }
 
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.menu_main, menu);
         eraserItem = menu.findItem(R.id.action_eraser);
+        strokeEraserItem = menu.findItem(R.id.action_stroke_eraser);
         markerItem = menu.findItem(R.id.action_marker);
+        panItem = menu.findItem(R.id.action_pan);
         colorsItem = menu.findItem(R.id.action_colors);
         undoItem = menu.findItem(R.id.action_undo);
         redoItem = menu.findItem(R.id.action_redo);
@@ -67,13 +137,18 @@ public class MainActivity extends ActionBarActivity {
     }
 
     private void redrawMenuItems(){
-        boolean eraseMode = (whiteboard.getTouchMode() == WhiteboardView.MODE_ERASER);
+        boolean eraseMode = (whiteboard.getTouchMode() == WhiteboardView.MODE_ERASER
+                || whiteboard.getTouchMode() == WhiteboardView.MODE_STROKE_ERASER);
 
-        // if whiteboard is in erase mode, hide eraser and colors menu items and
-        // show marker menu item.  Otherwise, show the opposite.
-        eraserItem.setVisible(!eraseMode);
+        // if whiteboard is in erase mode, hide colors menu item and show marker menu item.
+        // Otherwise, show the opposite.  Shape and pan mode also show the marker.  Each eraser is
+        // hidden while it is active, and a shared board can't erase parts of paths at all.
+        eraserItem.setVisible(whiteboard.getTouchMode() != WhiteboardView.MODE_ERASER);
+        strokeEraserItem.setVisible(whiteboard.getTouchMode() != WhiteboardView.MODE_STROKE_ERASER
+                && whiteboard.getSyncClient() == null);
         colorsItem.setVisible(!eraseMode);
-        markerItem.setVisible(eraseMode);
+        markerItem.setVisible(whiteboard.getTouchMode() != WhiteboardView.MODE_MARKER);
+        panItem.setVisible(whiteboard.getTouchMode() != WhiteboardView.MODE_PAN);
 
         undoItem.setVisible(whiteboard.canUndo());
         redoItem.setVisible(whiteboard.canRedo());
@@ -87,6 +162,9 @@ public class MainActivity extends ActionBarActivity {
             case R.id.action_eraser:
                 activateEraser();
                 return true;
+            case R.id.action_stroke_eraser:
+                activateStrokeEraser();
+                return true;
             case R.id.action_marker:
                 activateMarker();
                 return true;
@@ -108,6 +186,21 @@ public class MainActivity extends ActionBarActivity {
             case R.id.action_share:
                 shareWhiteboardImage();
                 return true;
+            case R.id.action_photo:
+                choosePhoto();
+                return true;
+            case R.id.action_rectangle:
+                activateShapes(WhiteboardView.SHAPE_RECTANGLE);
+                return true;
+            case R.id.action_triangle:
+                activateShapes(WhiteboardView.SHAPE_TRIANGLE);
+                return true;
+            case R.id.action_ellipse:
+                activateShapes(WhiteboardView.SHAPE_ELLIPSE);
+                return true;
+            case R.id.action_pan:
+                activatePan();
+                return true;
             default:
                 break;
         }
@@ -116,16 +209,21 @@ public class MainActivity extends ActionBarActivity {
     }
 
     @Override
-    public void onConfigurationChanged(Configuration newConfig) {
-        super.onConfigurationChanged(newConfig);
-
-        //redraw whiteboard after views have stabilized
-        new Handler().postDelayed(new Runnable() {
-            @Override
-            public void run() {
-                whiteboard.redraw();
-            }
-        }, 200);
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+
+        // let the whiteboard drop the bitmaps it keeps around for reuse
+        whiteboard.trimMemory(level);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+
+        // exports that are already queued still finish, but no new ones start and the destroyed
+        // activity is not told about them
+        exporter.detachListeners();
+        exporter.shutdown();
     }
 
     @Override
@@ -143,6 +241,11 @@ public class MainActivity extends ActionBarActivity {
                     whiteboard.setMarkerThickness(thickness);
                 }
                 break;
+            case REQ_PHOTO:
+                if(data.getData() != null) {
+                    whiteboard.setBackgroundImage(data.getData());
+                }
+                break;
             default:
                 break;
         }
@@ -157,11 +260,28 @@ public class MainActivity extends ActionBarActivity {
         redrawMenuItems();
     }
 
+    private void activateStrokeEraser(){
+        // erase paths from the history rather than painting over them, unless the board is shared
+        whiteboard.activateStrokeEraser();
+        redrawMenuItems();
+    }
+
     private void activateMarker(){
         whiteboard.activateMarker();
         redrawMenuItems();
     }
 
+    private void activateShapes(int type){
+        whiteboard.activateShapes(type);
+        redrawMenuItems();
+    }
+
+    private void activatePan(){
+        // dragging moves around the board and pinching zooms, the marker item goes back to drawing
+        whiteboard.activatePan();
+        redrawMenuItems();
+    }
+
     private void changeMarkerColor() {
         startActivityForResult(new Intent(MainActivity.this, ColorSelectActivity.class), REQ_COLOR);
     }
@@ -170,6 +290,13 @@ public class MainActivity extends ActionBarActivity {
         startActivityForResult(new Intent(MainActivity.this, ThicknessSelectActivity.class), REQ_THICKNESS);
     }
 
+    private void choosePhoto() {
+        Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
+        intent.setType("image/*");
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        startActivityForResult(intent, REQ_PHOTO);
+    }
+
     private void undoLastPath() {
         whiteboard.undo();
     }
@@ -179,23 +306,66 @@ public class MainActivity extends ActionBarActivity {
     }
 
     private void shareWhiteboardImage() {
+        // snapshot the whiteboard on the UI thread, the export thread only encodes the snapshot
+        final String filename = "whiteboard-image" + String.valueOf(System.currentTimeMillis());
+        BoardSnapshot snapshot = whiteboard.snapshot();
+        if(snapshot == null){
+            Toast.makeText(this, "Could not save image", Toast.LENGTH_LONG).show();
+            return;
+        }
+        MediaStoreDestination destination = new MediaStoreDestination(getContentResolver(), filename, ExportFormat.PNG);
+        if(exporter.submit(snapshot, ExportFormat.PNG, 100, destination, exportListener) == null){
+            Toast.makeText(this, "Still saving the previous image...", Toast.LENGTH_SHORT).show();
+            return;
+        }
         Toast.makeText(this, "Saving image...", Toast.LENGTH_LONG).show();
-        new Thread(new Runnable() {
-            @Override
-            public void run() {
-                showShareIntent();
-            }
-        }).start();
     }
 
-    private void showShareIntent() {
-        final Bitmap image = whiteboard.screenshot();
-        final String filename = "whiteboard-image" + String.valueOf(System.currentTimeMillis());
-        String path = MediaStore.Images.Media.insertImage(getContentResolver(), image, filename, null);
-
+    private void showShareIntent(MediaStoreDestination destination) {
         Intent sendIntent = new Intent(Intent.ACTION_SEND);
-        sendIntent.setType("application/image");
-        sendIntent.putExtra(Intent.EXTRA_STREAM, Uri.parse(path));
+        sendIntent.setType(destination.format.getMimeType());
+        sendIntent.putExtra(Intent.EXTRA_STREAM, destination.uri);
         startActivity(Intent.createChooser(sendIntent, "Share Image"));
     }
+
+    /**
+     * Writes an exported image into a new entry of the media store.
+     */
+    private static class MediaStoreDestination implements ExportExecutor.Destination {
+        final ContentResolver resolver;
+        final String name;
+        final ExportFormat format;
+        volatile Uri uri;
+
+        MediaStoreDestination(ContentResolver resolver, String name, ExportFormat format){
+            this.resolver = resolver;
+            this.name = name;
+            this.format = format;
+        }
+
+        @Override
+        public OutputStream open() throws IOException {
+            ContentValues values = new ContentValues();
+            values.put(MediaStore.Images.Media.TITLE, name);
+            values.put(MediaStore.Images.Media.DISPLAY_NAME, name + "." + format.getExtension());
+            values.put(MediaStore.Images.Media.MIME_TYPE, format.getMimeType());
+            uri = resolver.insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, values);
+            if(uri == null){
+                throw new IOException("Could not create a media store entry");
+            }
+
+            OutputStream out = resolver.openOutputStream(uri);
+            if(out == null){
+                throw new IOException("Could not open " + uri);
+            }
+            return out;
+        }
+
+        @Override
+        public void discard(){
+            if(uri != null){
+                resolver.delete(uri, null, null);
+            }
+        }
+    }
 }
@@ -0,0 +1,347 @@
+package com.burkeapps.whiteboard.export;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.burkeapps.whiteboard.views.BitmapPool;
+import com.burkeapps.whiteboard.views.BoardSnapshot;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An ExportExecutor encodes {@link BoardSnapshot}s into image files on a single background
+ * thread.  At most one export runs and one more waits at any time; further exports are refused
+ * instead of piling up threads and bitmaps.
+ *
+ * PNG exports are streamed: the board is drawn one band of rows at a time and each row is
+ * encoded as soon as it is drawn, so only one band is ever held in memory.  JPEG and WebP are
+ * encoded by the platform, which needs the whole image in one bitmap; that bitmap comes from the
+ * snapshot's {@link BitmapPool} and goes back to it afterwards.
+ *
+ * Listeners are called on the UI thread, until they are detached with {@link #detachListeners()}.
+ * An export that fails for any reason, running out of memory included, is reported to its
+ * listener and its destination is discarded on the export thread.
+ */
+public class ExportExecutor {
+
+    /**
+     * Number of exports that may wait while another one is running.
+     */
+    private static final int MAX_QUEUED = 1;
+
+    /**
+     * Height of the band of rows drawn at once by a streaming export.
+     */
+    private static final int BAND_HEIGHT = 64;
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int PNG_COMPRESSION_LEVEL = 6;
+    private static final String TAG = "ExportExecutor";
+
+    /**
+     * Opens the stream an export is written to.  Called on the export thread.
+     */
+    public interface Destination {
+        OutputStream open() throws IOException;
+
+        /**
+         * Removes whatever {@link #open()} created, after the export failed.  Called on the export
+         * thread, also if open() itself failed.
+         */
+        void discard();
+    }
+
+    /**
+     * Notified on the UI thread as an export makes progress.
+     */
+    public interface Listener {
+        void onExportProgress(Export export, int percent);
+        void onExportFinished(Export export);
+        void onExportFailed(Export export, Exception e);
+    }
+
+    /**
+     * An export handed to the executor, along with its timings once it has run.
+     */
+    public static class Export {
+        final BoardSnapshot snapshot;
+        final ExportFormat format;
+        final int quality;
+        final Destination destination;
+        final Listener listener;
+        final long submitTime;
+        volatile long queueMillis, encodeMillis, byteCount;
+        int lastProgress = -1;
+
+        Export(BoardSnapshot snapshot, ExportFormat format, int quality, Destination destination,
+               Listener listener){
+            this.snapshot = snapshot;
+            this.format = format;
+            this.quality = quality;
+            this.destination = destination;
+            this.listener = listener;
+            this.submitTime = SystemClock.elapsedRealtime();
+        }
+
+        public ExportFormat getFormat(){
+            return format;
+        }
+
+        public Destination getDestination(){
+            return destination;
+        }
+
+        /**
+         * Returns how long the export waited before it started, in milliseconds.
+         */
+        public long getQueueMillis(){
+            return queueMillis;
+        }
+
+        /**
+         * Returns how long drawing and encoding the image took, in milliseconds.
+         */
+        public long getEncodeMillis(){
+            return encodeMillis;
+        }
+
+        /**
+         * Returns the size of the encoded image in bytes.
+         */
+        public long getByteCount(){
+            return byteCount;
+        }
+    }
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ThreadPoolExecutor executor;
+    // cleared once the listeners must not be called anymore, only touched on the UI thread
+    private boolean notifying = true;
+
+    public ExportExecutor(){
+        executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(MAX_QUEUED), new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        r.run();
+                    }
+                }, "WhiteboardExport");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        // don't keep a thread around between exports
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues a snapshot for export.  The executor takes ownership of the snapshot and releases it
+     * once the export is done, or right away if the export is refused.
+     *
+     * @param snapshot The board to export
+     * @param format The image format to encode
+     * @param quality Quality hint from 0 to 100, ignored by PNG
+     * @param destination Opens the stream to write the image to
+     * @param listener Notified of progress and the result
+     * @return The queued export, or null if too many exports are pending
+     */
+    public Export submit(BoardSnapshot snapshot, ExportFormat format, int quality,
+                         Destination destination, Listener listener){
+        final Export export = new Export(snapshot, format, quality, destination, listener);
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    runExport(export);
+                }
+            });
+            return export;
+        } catch(RejectedExecutionException e){
+            snapshot.release();
+            return null;
+        }
+    }
+
+    /**
+     * Indicates whether an export is running or waiting.
+     */
+    public boolean isBusy(){
+        return executor.getActiveCount() > 0 || !executor.getQueue().isEmpty();
+    }
+
+    /**
+     * Stops accepting exports.  Exports that are already queued still run.
+     */
+    public void shutdown(){
+        executor.shutdown();
+    }
+
+    /**
+     * Stops calling the listeners of all exports, e.g. once the activity they belong to is
+     * destroyed.  Exports that are already queued still run.  Must be called on the UI thread.
+     */
+    public void detachListeners(){
+        notifying = false;
+    }
+
+    private void runExport(final Export export){
+        long start = SystemClock.elapsedRealtime();
+        export.queueMillis = start - export.submitTime;
+
+        Exception error = null;
+        try {
+            CountingOutputStream out = new CountingOutputStream(
+                    new BufferedOutputStream(export.destination.open(), BUFFER_SIZE));
+            try {
+                if(export.format.getCompressFormat() == null){
+                    streamPng(export, out);
+                } else {
+                    compress(export, out);
+                }
+            } finally {
+                out.close();
+            }
+            export.byteCount = out.count;
+        } catch(IOException | RuntimeException e){
+            // e.g. a SecurityException from the content resolver
+            error = e;
+        } catch(OutOfMemoryError e){
+            // the image or band bitmap did not fit, the rest of the app can go on
+            error = new IOException("Not enough memory to export " + export.format, e);
+        } finally {
+            export.snapshot.release();
+        }
+        export.encodeMillis = SystemClock.elapsedRealtime() - start;
+        if(error != null){
+            discard(export);
+        }
+
+        final Exception result = error;
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if(!notifying){
+                    return;
+                }
+                if(result == null){
+                    export.listener.onExportFinished(export);
+                } else {
+                    export.listener.onExportFailed(export, result);
+                }
+            }
+        });
+    }
+
+    private void discard(Export export){
+        try {
+            export.destination.discard();
+        } catch(RuntimeException e){
+            // the export failed already, that is the error to report
+            Log.w(TAG, "Could not discard the failed export", e);
+        }
+    }
+
+    private void streamPng(Export export, OutputStream out) throws IOException {
+        BoardSnapshot snapshot = export.snapshot;
+        int width = snapshot.getWidth(), height = snapshot.getHeight();
+        PngStreamEncoder encoder = new PngStreamEncoder(out, width, height, PNG_COMPRESSION_LEVEL);
+
+        BitmapPool pool = snapshot.getBitmapPool();
+        Bitmap band = pool.obtain(width, BAND_HEIGHT, Bitmap.Config.ARGB_8888);
+        int[] pixels = new int[width * BAND_HEIGHT];
+        Canvas canvas = new Canvas(band);
+        try {
+            for(int top = 0; top < height; top += BAND_HEIGHT){
+                int rows = Math.min(BAND_HEIGHT, height - top);
+
+                // draw only the tiles of this band
+                canvas.save();
+                canvas.clipRect(0, 0, width, rows);
+                canvas.translate(0, -top);
+                snapshot.draw(canvas, null);
+                canvas.restore();
+
+                band.getPixels(pixels, 0, width, 0, 0, width, rows);
+                for(int r=0; r<rows; r++){
+                    encoder.writeRow(pixels, r * width);
+                }
+                postProgress(export, (top + rows) * 100 / height);
+            }
+            encoder.finish();
+        } finally {
+            canvas.setBitmap(null);
+            pool.release(band);
+        }
+    }
+
+    private void compress(Export export, OutputStream out) throws IOException {
+        BoardSnapshot snapshot = export.snapshot;
+        BitmapPool pool = snapshot.getBitmapPool();
+        Bitmap image = pool.obtain(snapshot.getWidth(), snapshot.getHeight(), Bitmap.Config.ARGB_8888);
+        try {
+            Canvas canvas = new Canvas(image);
+            snapshot.draw(canvas, null);
+            canvas.setBitmap(null);
+            postProgress(export, 50);
+
+            if(!image.compress(export.format.getCompressFormat(), export.quality, out)){
+                throw new IOException("Could not encode " + export.format);
+            }
+            postProgress(export, 100);
+        } finally {
+            pool.release(image);
+        }
+    }
+
+    private void postProgress(final Export export, final int percent){
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if(notifying && percent > export.lastProgress){
+                    export.lastProgress = percent;
+                    export.listener.onExportProgress(export, percent);
+                }
+            }
+        });
+    }
+
+    /**
+     * Counts the bytes written through it.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out){
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
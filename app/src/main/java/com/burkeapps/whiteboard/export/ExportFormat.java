@@ -0,0 +1,38 @@
+package com.burkeapps.whiteboard.export;
+
+import android.graphics.Bitmap;
+
+/**
+ * Image formats a whiteboard can be exported to.
+ */
+public enum ExportFormat {
+    PNG("image/png", "png", null),
+    JPEG("image/jpeg", "jpg", Bitmap.CompressFormat.JPEG),
+    WEBP("image/webp", "webp", Bitmap.CompressFormat.WEBP);
+
+    private final String mimeType;
+    private final String extension;
+    private final Bitmap.CompressFormat compressFormat;
+
+    ExportFormat(String mimeType, String extension, Bitmap.CompressFormat compressFormat){
+        this.mimeType = mimeType;
+        this.extension = extension;
+        this.compressFormat = compressFormat;
+    }
+
+    public String getMimeType(){
+        return mimeType;
+    }
+
+    public String getExtension(){
+        return extension;
+    }
+
+    /**
+     * Returns the platform format used to encode this format, or null if it is encoded by
+     * streaming rows with a {@link PngStreamEncoder}.
+     */
+    Bitmap.CompressFormat getCompressFormat(){
+        return compressFormat;
+    }
+}
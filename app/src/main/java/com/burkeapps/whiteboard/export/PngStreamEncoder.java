@@ -0,0 +1,145 @@
+package com.burkeapps.whiteboard.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * A PngStreamEncoder writes an opaque RGB PNG one row at a time, so an image can be encoded
+ * without ever holding all of its pixels in memory.  Rows are filtered with the "sub" filter,
+ * which suits the flat areas of a whiteboard, deflated and written out as IDAT chunks whenever
+ * the chunk buffer fills up.
+ */
+public class PngStreamEncoder {
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+    private static final int CHUNK_SIZE = 32 * 1024;
+    private static final byte FILTER_SUB = 1;
+
+    private final OutputStream out;
+    private final int width, height;
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private final byte[] row;
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+    private final byte[] header = new byte[8];
+    private int chunkLength;
+    private int rowsWritten;
+
+    /**
+     * Starts a PNG by writing its signature and header.
+     *
+     * @param out The stream to write the PNG to, not closed by the encoder
+     * @param width Width of the image in pixels
+     * @param height Height of the image in pixels
+     * @param compressionLevel Deflate level from 0 to 9
+     * @throws IOException If the stream can not be written
+     */
+    public PngStreamEncoder(OutputStream out, int width, int height, int compressionLevel) throws IOException {
+        if(width <= 0 || height <= 0){
+            throw new IllegalArgumentException("Image size must be positive: " + width + "x" + height);
+        }
+        this.out = out;
+        this.width = width;
+        this.height = height;
+        this.deflater = new Deflater(compressionLevel);
+        this.row = new byte[1 + width * 3];
+
+        out.write(SIGNATURE);
+        byte[] ihdr = new byte[13];
+        putInt(ihdr, 0, width);
+        putInt(ihdr, 4, height);
+        ihdr[8] = 8;    // bit depth
+        ihdr[9] = 2;    // truecolor
+        writeChunk("IHDR", ihdr, ihdr.length);
+    }
+
+    /**
+     * Encodes the next row of the image.  Alpha is ignored.
+     *
+     * @param argb Pixels as ARGB ints
+     * @param offset Index of the first pixel of the row
+     * @throws IOException If the stream can not be written
+     */
+    public void writeRow(int[] argb, int offset) throws IOException {
+        if(rowsWritten == height){
+            throw new IllegalStateException("All " + height + " rows were already written");
+        }
+
+        row[0] = FILTER_SUB;
+        int r = 0, g = 0, b = 0;
+        for(int x=0, i=1; x<width; x++, i+=3){
+            int pixel = argb[offset + x];
+            int pr = (pixel >> 16) & 0xff, pg = (pixel >> 8) & 0xff, pb = pixel & 0xff;
+            row[i] = (byte) (pr - r);
+            row[i + 1] = (byte) (pg - g);
+            row[i + 2] = (byte) (pb - b);
+            r = pr;
+            g = pg;
+            b = pb;
+        }
+
+        deflater.setInput(row);
+        while(!deflater.needsInput()){
+            drain(false);
+        }
+        rowsWritten++;
+    }
+
+    /**
+     * Returns the number of rows encoded so far.
+     */
+    public int getRowsWritten(){
+        return rowsWritten;
+    }
+
+    /**
+     * Writes the remaining compressed data and the end of the PNG.
+     *
+     * @throws IOException If the stream can not be written
+     */
+    public void finish() throws IOException {
+        if(rowsWritten != height){
+            throw new IllegalStateException("Only " + rowsWritten + " of " + height + " rows were written");
+        }
+
+        deflater.finish();
+        while(!deflater.finished()){
+            drain(true);
+        }
+        deflater.end();
+        writeChunk("IEND", chunk, 0);
+        out.flush();
+    }
+
+    private void drain(boolean flushAll) throws IOException {
+        chunkLength += deflater.deflate(chunk, chunkLength, CHUNK_SIZE - chunkLength);
+        if(chunkLength == CHUNK_SIZE || (flushAll && chunkLength > 0)){
+            writeChunk("IDAT", chunk, chunkLength);
+            chunkLength = 0;
+        }
+    }
+
+    private void writeChunk(String type, byte[] data, int length) throws IOException {
+        putInt(header, 0, length);
+        for(int i=0; i<4; i++){
+            header[4 + i] = (byte) type.charAt(i);
+        }
+        crc.reset();
+        crc.update(header, 4, 4);
+        crc.update(data, 0, length);
+
+        out.write(header);
+        out.write(data, 0, length);
+        putInt(header, 0, (int) crc.getValue());
+        out.write(header, 0, 4);
+    }
+
+    private static void putInt(byte[] buffer, int offset, int value){
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,114 @@
+package com.burkeapps.whiteboard.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Constants and encoding helpers of the whiteboard file format.
+ *
+ * A file starts with a fixed header followed by a sequence of records.  Every record is a type
+ * byte, the length of its payload as a little endian int and the payload itself, so a reader can
+ * skip records it does not need and new records can be appended without touching the rest of the
+ * file.  A record that was cut short, e.g. by a crash while appending, ends the file.
+ *
+ * <pre>
+ * header:  int magic, short version, short reserved
+ * style:   int color, float width, byte mode, byte cap, byte join, byte flags
+ * stroke:  varint style, varint point count, float left, top, right, bottom,
+ *          point count x (zigzag varint dx, zigzag varint dy)
+ * tile:    int left, int top, int width, int height, deflated width x height ARGB ints
+ * </pre>
+ *
+ * Styles are numbered in the order their records appear.  Points are stored in fixed point with
+ * {@link #POINT_SCALE} steps per pixel, each point as the difference to the one before it, so
+ * the small steps between touch samples mostly fit in one or two bytes.  The bounds of a stroke
+ * are stored uncompressed so strokes can be culled without decoding their points.
+ *
+ * Tiles hold the image of strokes that were dropped from the history to keep it small; the
+ * strokes of the file are drawn on top of them.  Tiles were added in version 2, a reader of
+ * version 1 would skip them and lose their ink, so it refuses the file instead.
+ */
+public final class WhiteboardFormat {
+
+    /**
+     * "WBRD" in ASCII.
+     */
+    static final int MAGIC = 0x44524257;
+    static final short VERSION = 2;
+    static final int HEADER_SIZE = 8;
+
+    static final byte RECORD_STYLE = 1;
+    static final byte RECORD_STROKE = 2;
+    static final byte RECORD_TILE = 3;
+    static final int RECORD_HEADER_SIZE = 5;
+
+    static final int STYLE_SIZE = 12;
+    static final int FLAG_SMOOTH = 1;
+
+    static final int TILE_HEADER_SIZE = 16;
+
+    /**
+     * Number of fixed point steps per pixel.  Points are rounded to the nearest step when saved.
+     */
+    public static final int POINT_SCALE = 16;
+
+    private static final int MAX_VARINT_SIZE = 5;
+
+    private WhiteboardFormat(){
+    }
+
+    /**
+     * Returns the largest number of bytes a stroke record with the given number of points can
+     * take, including its record header.
+     */
+    static int maxStrokeRecordSize(int pointCount){
+        return RECORD_HEADER_SIZE + 2 * MAX_VARINT_SIZE + 16 + pointCount * 2 * MAX_VARINT_SIZE;
+    }
+
+    /**
+     * Rounds a coordinate to fixed point with {@link #POINT_SCALE} steps per pixel.
+     */
+    public static int quantize(float coordinate){
+        return Math.round(coordinate * POINT_SCALE);
+    }
+
+    public static float dequantize(int value){
+        return (float) value / POINT_SCALE;
+    }
+
+    /**
+     * Writes an int as an unsigned LEB128 varint, 7 bits per byte.  Values below 128 take a single
+     * byte.
+     */
+    public static void putVarint(ByteBuffer buffer, int value){
+        while((value & ~0x7f) != 0){
+            buffer.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    public static int getVarint(ByteBuffer buffer){
+        int value = 0;
+        for(int shift = 0; shift < 32; shift += 7){
+            byte b = buffer.get();
+            value |= (b & 0x7f) << shift;
+            if(b >= 0){
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint at " + buffer.position());
+    }
+
+    /**
+     * Writes an int as a zigzag encoded varint, so small negative values are as short as small
+     * positive ones.
+     */
+    public static void putSignedVarint(ByteBuffer buffer, int value){
+        putVarint(buffer, (value << 1) ^ (value >> 31));
+    }
+
+    public static int getSignedVarint(ByteBuffer buffer){
+        int value = getVarint(buffer);
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,377 @@
+package com.burkeapps.whiteboard.io;
+
+import com.burkeapps.whiteboard.views.StrokeStore;
+import com.burkeapps.whiteboard.views.StyleCache;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A WhiteboardReader reads a file in the {@link WhiteboardFormat}.  The file is memory-mapped
+ * and opening it only builds an index of its records: styles and the bounds of each stroke are
+ * read, but point runs are skipped until a stroke is decoded.  Strokes can therefore be culled
+ * against a visible area before any of their points are touched, and a store can be filled with
+ * pending strokes whose points are only decoded once they are drawn.  Tiles are only decoded
+ * when asked for, too.
+ */
+public class WhiteboardReader implements Closeable {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private long validLength;
+
+    private int styleCount;
+    private int[] styleColors = new int[INITIAL_CAPACITY];
+    private float[] styleWidths = new float[INITIAL_CAPACITY];
+    // mode, cap, join and flags of each style
+    private byte[] styleAttributes = new byte[INITIAL_CAPACITY * 4];
+
+    private int strokeCount;
+    private int[] strokeStyles = new int[INITIAL_CAPACITY];
+    private int[] strokePointCounts = new int[INITIAL_CAPACITY];
+    // position of the first point of each stroke in the file
+    private int[] strokePositions = new int[INITIAL_CAPACITY];
+    private float[] strokeBounds = new float[INITIAL_CAPACITY * 4];
+
+    private int tileCount;
+    // left, top, width and height of each tile, and the position and length of its pixels
+    private int[] tileRects = new int[4];
+    private int[] tilePositions = new int[1], tileLengths = new int[1];
+
+    private float[] scratch = new float[INITIAL_CAPACITY * 2];
+
+    /**
+     * Maps a file and indexes its records.
+     *
+     * @param source The file to read
+     * @throws IOException If the file can not be read or is not a whiteboard file
+     */
+    public WhiteboardReader(File source) throws IOException {
+        file = new RandomAccessFile(source, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            readHeader();
+            index();
+        } catch(IOException | RuntimeException e){
+            file.close();
+            throw e;
+        }
+    }
+
+    public int getStyleCount(){
+        return styleCount;
+    }
+
+    public int getStrokeCount(){
+        return strokeCount;
+    }
+
+    public int getTileCount(){
+        return tileCount;
+    }
+
+    /**
+     * Returns the length of the file up to the end of its last complete record.
+     */
+    public long getValidLength(){
+        return validLength;
+    }
+
+    /**
+     * Returns the index of the style of a stroke within this file.
+     */
+    public int getStyle(int stroke){
+        return strokeStyles[stroke];
+    }
+
+    public int getPointCount(int stroke){
+        return strokePointCounts[stroke];
+    }
+
+    /**
+     * Bounds of the points of a stroke, not including the width of its style.
+     */
+    public float getLeft(int stroke){
+        return strokeBounds[stroke * 4];
+    }
+
+    public float getTop(int stroke){
+        return strokeBounds[stroke * 4 + 1];
+    }
+
+    public float getRight(int stroke){
+        return strokeBounds[stroke * 4 + 2];
+    }
+
+    public float getBottom(int stroke){
+        return strokeBounds[stroke * 4 + 3];
+    }
+
+    /**
+     * Left edge of a tile in board pixels.
+     */
+    public int getTileLeft(int tile){
+        return tileRects[tile * 4];
+    }
+
+    public int getTileTop(int tile){
+        return tileRects[tile * 4 + 1];
+    }
+
+    public int getTileWidth(int tile){
+        return tileRects[tile * 4 + 2];
+    }
+
+    public int getTileHeight(int tile){
+        return tileRects[tile * 4 + 3];
+    }
+
+    /**
+     * Decodes the pixels of a tile.
+     *
+     * @param tile Index of the tile to decode
+     * @param argb Array receiving the pixels as ARGB ints row by row, at least width x height
+     * @throws IOException If the pixels are damaged
+     */
+    public void readTile(int tile, int[] argb) throws IOException {
+        int count = getTileWidth(tile) * getTileHeight(tile);
+        byte[] data = new byte[tileLengths[tile]];
+        ByteBuffer source = buffer.duplicate();
+        source.position(tilePositions[tile]);
+        source.get(data);
+
+        byte[] pixels = new byte[count * 4];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            int length = 0;
+            while(length < pixels.length && !inflater.finished()){
+                int inflated = inflater.inflate(pixels, length, pixels.length - length);
+                if(inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())){
+                    break;
+                }
+                length += inflated;
+            }
+            if(length < pixels.length){
+                throw new IOException("Tile " + tile + " is cut short");
+            }
+        } catch(DataFormatException e){
+            throw new IOException("Tile " + tile + " is damaged", e);
+        } finally {
+            inflater.end();
+        }
+        ByteBuffer.wrap(pixels).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(argb, 0, count);
+    }
+
+    /**
+     * Interns every style of this file into a style cache.
+     *
+     * @param styles The cache to add the styles to
+     * @return The cache index of each style of this file, indexed by file style index
+     */
+    public int[] readStyles(StyleCache styles){
+        int[] indices = new int[styleCount];
+        for(int i=0; i<styleCount; i++){
+            int a = i * 4;
+            indices[i] = styles.intern(styleColors[i], styleWidths[i], styleAttributes[a],
+                    styleAttributes[a + 1], styleAttributes[a + 2],
+                    (styleAttributes[a + 3] & WhiteboardFormat.FLAG_SMOOTH) != 0);
+        }
+        return indices;
+    }
+
+    /**
+     * Decodes the points of a stroke.
+     *
+     * @param stroke Index of the stroke to decode
+     * @param xy Array receiving the interleaved x,y coordinates, at least twice the point count
+     * @return The number of points decoded
+     */
+    public int readPoints(int stroke, float[] xy){
+        int count = strokePointCounts[stroke];
+        ByteBuffer points = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        points.position(strokePositions[stroke]);
+
+        int x = 0, y = 0;
+        for(int i=0; i<count; i++){
+            x += WhiteboardFormat.getSignedVarint(points);
+            y += WhiteboardFormat.getSignedVarint(points);
+            xy[i * 2] = WhiteboardFormat.dequantize(x);
+            xy[i * 2 + 1] = WhiteboardFormat.dequantize(y);
+        }
+        return count;
+    }
+
+    /**
+     * Appends a range of strokes of this file to a store.
+     *
+     * @param strokes The store to append to
+     * @param styleIndices Maps file style indices to the style indices of the store, as returned
+     *                     by {@link #readStyles(StyleCache)}
+     * @param from Index of the first stroke to read
+     * @param to Index after the last stroke to read
+     */
+    public void readStrokes(StrokeStore strokes, int[] styleIndices, int from, int to){
+        for(int i=from; i<to; i++){
+            int count = strokePointCounts[i];
+            if(scratch.length < count * 2){
+                scratch = new float[count * 2];
+            }
+            readPoints(i, scratch);
+
+            strokes.beginStroke(styleIndices[strokeStyles[i]]);
+            strokes.addPoints(scratch, 0, count);
+            strokes.endStroke();
+        }
+    }
+
+    /**
+     * Appends a range of strokes of this file to a store without decoding their points.  The
+     * strokes are added as pending strokes with the bounds from the index, their points are set
+     * with {@link #readPendingStroke(StrokeStore, int)} once they are needed.
+     *
+     * @param strokes The store to append to
+     * @param styleIndices Maps file style indices to the style indices of the store, as returned
+     *                     by {@link #readStyles(StyleCache)}
+     * @param from Index of the first stroke to add
+     * @param to Index after the last stroke to add
+     */
+    public void readPendingStrokes(StrokeStore strokes, int[] styleIndices, int from, int to){
+        for(int i=from; i<to; i++){
+            int b = i * 4;
+            strokes.addPendingStroke(styleIndices[strokeStyles[i]], strokePointCounts[i],
+                    strokeBounds[b], strokeBounds[b + 1], strokeBounds[b + 2], strokeBounds[b + 3]);
+        }
+    }
+
+    /**
+     * Decodes the points of a stroke into the pending stroke it was added as by
+     * {@link #readPendingStrokes(StrokeStore, int[], int, int)}.
+     *
+     * @param strokes The store holding the pending stroke
+     * @param stroke Index of the stroke, in this file and in the store
+     */
+    public void readPendingStroke(StrokeStore strokes, int stroke){
+        int count = strokePointCounts[stroke];
+        if(scratch.length < count * 2){
+            scratch = new float[count * 2];
+        }
+        readPoints(stroke, scratch);
+        strokes.setPoints(stroke, scratch);
+    }
+
+    /**
+     * Appends every stroke of this file to a store, interning their styles into a cache.
+     *
+     * @param strokes The store to append to
+     * @param styles The cache to intern the styles into
+     * @return The cache index of each style of this file, indexed by file style index
+     */
+    public int[] read(StrokeStore strokes, StyleCache styles){
+        int[] styleIndices = readStyles(styles);
+        readStrokes(strokes, styleIndices, 0, strokeCount);
+        return styleIndices;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private void readHeader() throws IOException {
+        if(buffer.remaining() < WhiteboardFormat.HEADER_SIZE
+                || buffer.getInt() != WhiteboardFormat.MAGIC){
+            throw new IOException("Not a whiteboard file");
+        }
+        short version = buffer.getShort();
+        if(version > WhiteboardFormat.VERSION){
+            throw new IOException("Unsupported whiteboard file version: " + version);
+        }
+        buffer.getShort();
+        validLength = buffer.position();
+    }
+
+    private void index(){
+        while(buffer.remaining() >= WhiteboardFormat.RECORD_HEADER_SIZE){
+            byte type = buffer.get();
+            int length = buffer.getInt();
+            if(length < 0 || length > buffer.remaining()){
+                // cut short while being written - everything before it is still valid
+                break;
+            }
+
+            int start = buffer.position();
+            if(type == WhiteboardFormat.RECORD_STYLE){
+                indexStyle();
+            } else if(type == WhiteboardFormat.RECORD_STROKE){
+                indexStroke();
+            } else if(type == WhiteboardFormat.RECORD_TILE && length >= WhiteboardFormat.TILE_HEADER_SIZE){
+                indexTile(length - WhiteboardFormat.TILE_HEADER_SIZE);
+            }
+            // unknown records are skipped
+            buffer.position(start + length);
+            validLength = buffer.position();
+        }
+    }
+
+    private void indexStyle(){
+        if(styleCount == styleColors.length){
+            int capacity = styleCount * 2;
+            styleColors = Arrays.copyOf(styleColors, capacity);
+            styleWidths = Arrays.copyOf(styleWidths, capacity);
+            styleAttributes = Arrays.copyOf(styleAttributes, capacity * 4);
+        }
+
+        styleColors[styleCount] = buffer.getInt();
+        styleWidths[styleCount] = buffer.getFloat();
+        buffer.get(styleAttributes, styleCount * 4, 4);
+        styleCount++;
+    }
+
+    private void indexStroke(){
+        if(strokeCount == strokeStyles.length){
+            int capacity = strokeCount * 2;
+            strokeStyles = Arrays.copyOf(strokeStyles, capacity);
+            strokePointCounts = Arrays.copyOf(strokePointCounts, capacity);
+            strokePositions = Arrays.copyOf(strokePositions, capacity);
+            strokeBounds = Arrays.copyOf(strokeBounds, capacity * 4);
+        }
+
+        strokeStyles[strokeCount] = WhiteboardFormat.getVarint(buffer);
+        strokePointCounts[strokeCount] = WhiteboardFormat.getVarint(buffer);
+        for(int i=0; i<4; i++){
+            strokeBounds[strokeCount * 4 + i] = buffer.getFloat();
+        }
+        strokePositions[strokeCount] = buffer.position();
+        strokeCount++;
+    }
+
+    private void indexTile(int length){
+        if(tileCount == tilePositions.length){
+            int capacity = tileCount * 2;
+            tileRects = Arrays.copyOf(tileRects, capacity * 4);
+            tilePositions = Arrays.copyOf(tilePositions, capacity);
+            tileLengths = Arrays.copyOf(tileLengths, capacity);
+        }
+
+        for(int i=0; i<4; i++){
+            tileRects[tileCount * 4 + i] = buffer.getInt();
+        }
+        tilePositions[tileCount] = buffer.position();
+        tileLengths[tileCount] = length;
+        tileCount++;
+    }
+}
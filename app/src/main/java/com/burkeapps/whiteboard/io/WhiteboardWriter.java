@@ -0,0 +1,366 @@
+package com.burkeapps.whiteboard.io;
+
+import com.burkeapps.whiteboard.views.StrokeStore;
+import com.burkeapps.whiteboard.views.StrokeStyle;
+import com.burkeapps.whiteboard.views.StyleCache;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * A WhiteboardWriter streams styles and strokes into a file in the {@link WhiteboardFormat}.
+ * Records are encoded into a reusable buffer which is written to the file channel whenever it
+ * fills up, so writing does not allocate per stroke.
+ *
+ * A writer either starts a new file or appends to an existing one.  Styles are numbered across
+ * the whole file, so a stroke can refer to styles written by an earlier writer.
+ */
+public class WhiteboardWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private int styleCount, strokeCount;
+    // points of a pending stroke, decoded from the file it is pending on
+    private float[] scratch;
+    // pixels of a tile as bytes and deflated, and the deflater, made once a tile is written
+    private byte[] tilePixels, tileData;
+    private Deflater deflater;
+
+    private WhiteboardWriter(RandomAccessFile file){
+        this.file = file;
+        this.channel = file.getChannel();
+    }
+
+    /**
+     * Creates a new file, replacing any existing file at that location.
+     *
+     * @param target The file to write
+     * @return A writer positioned after the header
+     * @throws IOException If the file can not be written
+     */
+    public static WhiteboardWriter create(File target) throws IOException {
+        WhiteboardWriter writer = new WhiteboardWriter(new RandomAccessFile(target, "rw"));
+        writer.channel.truncate(0);
+        writer.buffer.putInt(WhiteboardFormat.MAGIC);
+        writer.buffer.putShort(WhiteboardFormat.VERSION);
+        writer.buffer.putShort((short) 0);
+        return writer;
+    }
+
+    /**
+     * Opens an existing file for appending.  A record that was cut short at the end of the file is
+     * dropped.
+     *
+     * @param target The file to append to
+     * @return A writer positioned after the last complete record
+     * @throws IOException If the file can not be read or is not a whiteboard file
+     */
+    public static WhiteboardWriter append(File target) throws IOException {
+        long validLength;
+        int styles, strokes;
+        WhiteboardReader reader = new WhiteboardReader(target);
+        try {
+            validLength = reader.getValidLength();
+            styles = reader.getStyleCount();
+            strokes = reader.getStrokeCount();
+        } finally {
+            reader.close();
+        }
+
+        WhiteboardWriter writer = new WhiteboardWriter(new RandomAccessFile(target, "rw"));
+        writer.channel.truncate(validLength);
+        writer.channel.position(validLength);
+        writer.styleCount = styles;
+        writer.strokeCount = strokes;
+        return writer;
+    }
+
+    /**
+     * Writes all styles of a cache and all visible strokes of a store into a new file.  Erased
+     * strokes are left out.
+     *
+     * @param target The file to write
+     * @param strokes The strokes to save
+     * @param styles The styles the strokes refer to
+     * @throws IOException If the file can not be written
+     */
+    public static void save(File target, StrokeStore strokes, StyleCache styles) throws IOException {
+        save(target, strokes, styles.table(), styles.size());
+    }
+
+    /**
+     * Writes the first styles of a style table and all visible strokes of a store into a new
+     * file, e.g. from a snapshot of both on another thread.
+     *
+     * @param target The file to write
+     * @param strokes The strokes to save
+     * @param styles The style table the strokes refer to, see {@link StyleCache#table()}
+     * @param styleCount Number of styles in the table
+     * @throws IOException If the file can not be written
+     */
+    public static void save(File target, StrokeStore strokes, StrokeStyle[] styles, int styleCount) throws IOException {
+        WhiteboardWriter writer = create(target);
+        try {
+            writer.writeStyles(styles, 0, styleCount);
+            writer.writeStrokes(strokes, 0, strokes.size());
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Returns the number of styles in the file, including the ones written before this writer
+     * was opened.  This is the index the next style will get.
+     */
+    public int getStyleCount(){
+        return styleCount;
+    }
+
+    /**
+     * Returns the number of strokes in the file, including the ones written before this writer
+     * was opened.
+     */
+    public int getStrokeCount(){
+        return strokeCount;
+    }
+
+    /**
+     * Writes a style.  Styles are numbered in the order they are written.
+     *
+     * @param style The style to write
+     * @return The index of the style in the file
+     * @throws IOException If the file can not be written
+     */
+    public int writeStyle(StrokeStyle style) throws IOException {
+        ensureRemaining(WhiteboardFormat.RECORD_HEADER_SIZE + WhiteboardFormat.STYLE_SIZE);
+        buffer.put(WhiteboardFormat.RECORD_STYLE);
+        buffer.putInt(WhiteboardFormat.STYLE_SIZE);
+        buffer.putInt(style.getColor());
+        buffer.putFloat(style.getWidth());
+        buffer.put((byte) style.getMode());
+        buffer.put((byte) style.getCap());
+        buffer.put((byte) style.getJoin());
+        buffer.put((byte) (style.isSmooth() ? WhiteboardFormat.FLAG_SMOOTH : 0));
+        return styleCount++;
+    }
+
+    /**
+     * Writes a range of styles of a style table.
+     *
+     * @param styles The style table
+     * @param from Index of the first style to write
+     * @param to Index after the last style to write
+     * @throws IOException If the file can not be written
+     */
+    public void writeStyles(StrokeStyle[] styles, int from, int to) throws IOException {
+        for(int i=from; i<to; i++){
+            writeStyle(styles[i]);
+        }
+    }
+
+    /**
+     * Writes a stroke of a store.  The style index of the stroke is written as is, so it must
+     * refer to a style of this file.
+     *
+     * @param strokes The store holding the stroke
+     * @param stroke Index of the stroke to write
+     * @throws IOException If the file can not be written
+     */
+    public void writeStroke(StrokeStore strokes, int stroke) throws IOException {
+        if(strokes.isPending(stroke)){
+            throw new IllegalStateException("The points of stroke " + stroke + " are pending");
+        }
+        writeStroke(strokes.getStyle(stroke), strokes.getPoints(), strokes.getPointOffset(stroke),
+                strokes.getPointCount(stroke));
+    }
+
+    /**
+     * Writes a stroke of a store like {@link #writeStroke(StrokeStore, int)}.  If the points of
+     * the stroke are pending, they are decoded from the file the stroke is pending on instead.
+     *
+     * @param strokes The store holding the stroke
+     * @param stroke Index of the stroke to write
+     * @param pending Reader of the file the store's pending strokes were added from, at the same
+     *                indices, see {@link WhiteboardReader#readPendingStrokes}
+     * @throws IOException If the file can not be written
+     */
+    public void writeStroke(StrokeStore strokes, int stroke, WhiteboardReader pending) throws IOException {
+        if(pending == null || !strokes.isPending(stroke)){
+            writeStroke(strokes, stroke);
+            return;
+        }
+
+        int count = pending.getPointCount(stroke);
+        if(scratch == null || scratch.length < count * 2){
+            scratch = new float[count * 2];
+        }
+        pending.readPoints(stroke, scratch);
+        writeStroke(strokes.getStyle(stroke), scratch, 0, count);
+    }
+
+    private void writeStroke(int style, float[] points, int first, int count) throws IOException {
+        ensureRemaining(WhiteboardFormat.maxStrokeRecordSize(count));
+
+        buffer.put(WhiteboardFormat.RECORD_STROKE);
+        int lengthPosition = buffer.position();
+        buffer.putInt(0);
+        int start = buffer.position();
+
+        WhiteboardFormat.putVarint(buffer, style);
+        WhiteboardFormat.putVarint(buffer, count);
+
+        // bounds of the rounded points, filled in once the points are written
+        int boundsPosition = buffer.position();
+        buffer.position(boundsPosition + 16);
+        int left = Integer.MAX_VALUE, top = Integer.MAX_VALUE;
+        int right = Integer.MIN_VALUE, bottom = Integer.MIN_VALUE;
+
+        int offset = first * 2;
+        int lastX = 0, lastY = 0;
+        for(int i=0; i<count; i++){
+            int x = WhiteboardFormat.quantize(points[offset + i * 2]);
+            int y = WhiteboardFormat.quantize(points[offset + i * 2 + 1]);
+            WhiteboardFormat.putSignedVarint(buffer, x - lastX);
+            WhiteboardFormat.putSignedVarint(buffer, y - lastY);
+            lastX = x;
+            lastY = y;
+
+            if(x < left) left = x;
+            if(y < top) top = y;
+            if(x > right) right = x;
+            if(y > bottom) bottom = y;
+        }
+        if(count == 0){
+            left = top = right = bottom = 0;
+        }
+
+        buffer.putFloat(boundsPosition, WhiteboardFormat.dequantize(left));
+        buffer.putFloat(boundsPosition + 4, WhiteboardFormat.dequantize(top));
+        buffer.putFloat(boundsPosition + 8, WhiteboardFormat.dequantize(right));
+        buffer.putFloat(boundsPosition + 12, WhiteboardFormat.dequantize(bottom));
+        buffer.putInt(lengthPosition, buffer.position() - start);
+        strokeCount++;
+    }
+
+    /**
+     * Writes a tile of the image the strokes of the file are drawn on.
+     *
+     * @param left Left edge of the tile in board pixels
+     * @param top Top edge of the tile in board pixels
+     * @param width Width of the tile in pixels
+     * @param height Height of the tile in pixels
+     * @param argb Pixels of the tile as ARGB ints, row by row
+     * @throws IOException If the file can not be written
+     */
+    public void writeTile(int left, int top, int width, int height, int[] argb) throws IOException {
+        int bytes = width * height * 4;
+        if(tilePixels == null || tilePixels.length < bytes){
+            tilePixels = new byte[bytes];
+            tileData = new byte[bytes / 8 + 64];
+            if(deflater == null){
+                deflater = new Deflater();
+            }
+        }
+        ByteBuffer.wrap(tilePixels).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().put(argb, 0, width * height);
+
+        deflater.reset();
+        deflater.setInput(tilePixels, 0, bytes);
+        deflater.finish();
+        int length = 0;
+        while(!deflater.finished()){
+            if(length == tileData.length){
+                tileData = Arrays.copyOf(tileData, length * 2);
+            }
+            length += deflater.deflate(tileData, length, tileData.length - length);
+        }
+
+        ensureRemaining(WhiteboardFormat.RECORD_HEADER_SIZE + WhiteboardFormat.TILE_HEADER_SIZE + length);
+        buffer.put(WhiteboardFormat.RECORD_TILE);
+        buffer.putInt(WhiteboardFormat.TILE_HEADER_SIZE + length);
+        buffer.putInt(left);
+        buffer.putInt(top);
+        buffer.putInt(width);
+        buffer.putInt(height);
+        buffer.put(tileData, 0, length);
+    }
+
+    /**
+     * Writes the strokes in a range of a store that are not erased, in the order they are drawn
+     * in, so they load back in that order.
+     *
+     * @param strokes The store holding the strokes
+     * @param from Index of the first stroke to write
+     * @param to Index after the last stroke to write
+     * @throws IOException If the file can not be written
+     */
+    public void writeStrokes(StrokeStore strokes, int from, int to) throws IOException {
+        writeStrokes(strokes, from, to, null);
+    }
+
+    /**
+     * Writes the strokes in a range of a store that are not erased like
+     * {@link #writeStrokes(StrokeStore, int, int)}, decoding the points of pending strokes like
+     * {@link #writeStroke(StrokeStore, int, WhiteboardReader)}.
+     *
+     * @param pending Reader of the file the store's pending strokes were added from, or null
+     */
+    public void writeStrokes(StrokeStore strokes, int from, int to, WhiteboardReader pending) throws IOException {
+        int[] live = new int[to - from];
+        int count = strokes.getLiveStrokes(from, to, live);
+        for(int i=0; i<count; i++){
+            writeStroke(strokes, live[i], pending);
+        }
+    }
+
+    /**
+     * Writes all buffered records to the file.
+     *
+     * @throws IOException If the file can not be written
+     */
+    public void flush() throws IOException {
+        buffer.flip();
+        while(buffer.hasRemaining()){
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Flushes all buffered records and closes the file.
+     *
+     * @throws IOException If the file can not be written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            if(deflater != null){
+                deflater.end();
+            }
+            file.close();
+        }
+    }
+
+    private void ensureRemaining(int bytes) throws IOException {
+        if(buffer.remaining() >= bytes){
+            return;
+        }
+
+        flush();
+        if(buffer.capacity() < bytes){
+            // a single record larger than the buffer, e.g. a very long stroke
+            buffer = ByteBuffer.allocateDirect(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.burkeapps.whiteboard.sync;
+
+import com.burkeapps.whiteboard.views.StrokeStore;
+import com.burkeapps.whiteboard.views.StrokeStyle;
+import com.burkeapps.whiteboard.views.StyleCache;
+
+import java.util.Arrays;
+
+/**
+ * An Operation is one entry of the log of a shared whiteboard: a stroke drawn on it, an undo, a
+ * redo or a clear.  Every board applying the same operations in the same order shows the same
+ * strokes, so undo and redo act on the shared history, whoever drew its last step.
+ *
+ * An operation is identified by its author and the author's own counter of operations.  It gets
+ * its place in the log, its sequence number, from the {@link SyncServer}.
+ */
+public class Operation {
+
+    public static final int STROKE = 1;
+    public static final int UNDO = 2;
+    public static final int REDO = 3;
+    public static final int CLEAR = 4;
+
+    final int type;
+    final int author;
+    final int authorSeq;
+    long seq;
+    // whether applying a local operation last changed the board, only those are rolled back, and
+    // whether a stroke dropped steps that could have been redone
+    boolean changed = true;
+    boolean dropped;
+
+    // style and points of a stroke
+    int color;
+    float width;
+    int mode, cap, join;
+    boolean smooth;
+    // interleaved x,y coordinates, and times in milliseconds since the first point
+    float[] points;
+    int[] times;
+    int pointCount;
+
+    Operation(int type, int author, int authorSeq){
+        this.type = type;
+        this.author = author;
+        this.authorSeq = authorSeq;
+    }
+
+    /**
+     * Creates the operation adding a stroke of a store.
+     *
+     * @param author Id of the board the stroke was drawn on
+     * @param authorSeq The author's counter of operations
+     * @param strokes The store holding the stroke
+     * @param stroke Index of the stroke
+     * @param style The style of the stroke
+     * @return An operation holding a copy of the stroke's points
+     */
+    static Operation stroke(int author, int authorSeq, StrokeStore strokes, int stroke, StrokeStyle style){
+        Operation op = new Operation(STROKE, author, authorSeq);
+        op.setStyle(style.getColor(), style.getWidth(), style.getMode(), style.getCap(), style.getJoin(),
+                style.isSmooth());
+
+        int offset = strokes.getPointOffset(stroke);
+        int count = strokes.getPointCount(stroke);
+        op.points = Arrays.copyOfRange(strokes.getPoints(), offset * 2, (offset + count) * 2);
+        op.times = new int[count];
+        for(int i=0; i<count; i++){
+            op.times[i] = strokes.getTime(offset + i) - strokes.getTime(offset);
+        }
+        op.pointCount = count;
+        return op;
+    }
+
+    /**
+     * Adds the stroke of this operation on top of a store's history.
+     *
+     * @param strokes The store to add the stroke to
+     * @param styles The style table of the store
+     * @param time Time of the first point in the store's time base, the others keep their
+     *             distance to it
+     * @return The index of the added stroke
+     */
+    public int addTo(StrokeStore strokes, StyleCache styles, long time){
+        strokes.beginStroke(styles.intern(color, width, mode, cap, join, smooth));
+        for(int i=0; i<pointCount; i++){
+            strokes.addPoint(points[i * 2], points[i * 2 + 1], time + times[i]);
+        }
+        return strokes.endStroke();
+    }
+
+    void setStyle(int color, float width, int mode, int cap, int join, boolean smooth){
+        this.color = color;
+        this.width = width;
+        this.mode = mode;
+        this.cap = cap;
+        this.join = join;
+        this.smooth = smooth;
+    }
+
+    boolean hasStyleOf(Operation other){
+        return color == other.color && width == other.width && mode == other.mode && cap == other.cap
+                && join == other.join && smooth == other.smooth;
+    }
+
+    public int getType(){
+        return type;
+    }
+
+    public int getAuthor(){
+        return author;
+    }
+
+    public int getAuthorSeq(){
+        return authorSeq;
+    }
+
+    /**
+     * Returns the position of the operation in the log, counting from 1, or 0 if the server has
+     * not placed it yet.
+     */
+    public long getSeq(){
+        return seq;
+    }
+
+    public int getColor(){
+        return color;
+    }
+
+    public float getWidth(){
+        return width;
+    }
+
+    public int getMode(){
+        return mode;
+    }
+
+    public int getCap(){
+        return cap;
+    }
+
+    public int getJoin(){
+        return join;
+    }
+
+    public boolean isSmooth(){
+        return smooth;
+    }
+
+    /**
+     * Returns the interleaved x,y coordinates of a stroke's points.  The array may be longer than
+     * the points, see {@link #getPointCount()}.
+     */
+    public float[] getPoints(){
+        return points;
+    }
+
+    /**
+     * Returns the time of each point of a stroke in milliseconds since its first point.
+     */
+    public int[] getTimes(){
+        return times;
+    }
+
+    public int getPointCount(){
+        return pointCount;
+    }
+
+    @Override
+    public String toString(){
+        String name = (type == STROKE) ? "stroke" : (type == UNDO) ? "undo" : (type == REDO) ? "redo" : "clear";
+        return name + " " + author + ":" + authorSeq + " @" + seq;
+    }
+}
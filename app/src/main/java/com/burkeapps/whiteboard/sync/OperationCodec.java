@@ -0,0 +1,261 @@
+package com.burkeapps.whiteboard.sync;
+
+import com.burkeapps.whiteboard.io.WhiteboardFormat;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+/**
+ * Encodes and decodes the frames exchanged between a {@link SyncClient} and a {@link SyncServer}.
+ *
+ * <pre>
+ * frame:    byte kind, payload
+ * ops:      varint count, count x op
+ * hello:    varint client, varlong seq of the last operation the client has
+ * catch-up: varlong seq of the last operation in the log, varint count, count x op
+ * op:       byte type | STYLE_REPEAT, varint author, varint author seq, seq, [stroke]
+ * stroke:   [int color, float width, byte mode, byte cap, byte join, byte flags],
+ *           varint point count, point count x (zigzag varint dx, zigzag varint dy),
+ *           point count x zigzag varint dt
+ * </pre>
+ *
+ * Everything is delta encoded against what came before it in the frame: the first operation
+ * carries its sequence number as a varlong and the others as the varint difference to the one
+ * before them, points are differences to the previous point of any stroke in the frame, in the
+ * fixed point of the {@link WhiteboardFormat}, and times are differences to the previous point
+ * of the stroke.  A stroke drawn with the same style as the stroke before it in the frame sets
+ * STYLE_REPEAT in its type and leaves the style out.
+ *
+ * Operations sent by clients are not placed in the log yet, their sequence numbers are 0.
+ */
+final class OperationCodec {
+
+    static final byte FRAME_OPS = 1;
+    static final byte FRAME_HELLO = 2;
+    static final byte FRAME_CATCH_UP = 3;
+
+    private static final int STYLE_REPEAT = 0x80;
+    private static final int FLAG_SMOOTH = 1;
+    private static final int STYLE_SIZE = 12;
+    private static final int MAX_VARINT_SIZE = 5;
+    private static final int MAX_VARLONG_SIZE = 10;
+    private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+
+    private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Encodes a range of operations as an ops frame.
+     */
+    byte[] encodeOps(List<Operation> ops, int from, int to){
+        buffer.clear();
+        buffer.put(FRAME_OPS);
+        putOps(ops, from, to);
+        return toArray();
+    }
+
+    /**
+     * Encodes a range of the log as a catch-up frame.
+     *
+     * @param head Sequence number of the last operation in the log
+     */
+    byte[] encodeCatchUp(long head, List<Operation> ops, int from, int to){
+        buffer.clear();
+        buffer.put(FRAME_CATCH_UP);
+        putVarlong(buffer, head);
+        putOps(ops, from, to);
+        return toArray();
+    }
+
+    byte[] encodeHello(int client, long seq){
+        buffer.clear();
+        buffer.put(FRAME_HELLO);
+        WhiteboardFormat.putVarint(buffer, client);
+        putVarlong(buffer, seq);
+        return toArray();
+    }
+
+    static byte getKind(byte[] frame){
+        return frame[0];
+    }
+
+    static int getHelloClient(byte[] frame){
+        ByteBuffer in = wrap(frame);
+        return WhiteboardFormat.getVarint(in);
+    }
+
+    static long getHelloSeq(byte[] frame){
+        ByteBuffer in = wrap(frame);
+        WhiteboardFormat.getVarint(in);
+        return getVarlong(in);
+    }
+
+    static long getCatchUpHead(byte[] frame){
+        return getVarlong(wrap(frame));
+    }
+
+    /**
+     * Decodes the operations of an ops or catch-up frame.
+     *
+     * @param frame The frame
+     * @param out List the operations are added to
+     * @throws IllegalArgumentException If the frame is malformed
+     */
+    static void decodeOps(byte[] frame, List<Operation> out){
+        ByteBuffer in = wrap(frame);
+        if(frame[0] == FRAME_CATCH_UP){
+            getVarlong(in);
+        } else if(frame[0] != FRAME_OPS){
+            throw new IllegalArgumentException("Not an ops frame: " + frame[0]);
+        }
+
+        try {
+            int count = WhiteboardFormat.getVarint(in);
+            long seq = 0;
+            int lastX = 0, lastY = 0;
+            Operation lastStroke = null;
+            for(int i=0; i<count; i++){
+                int header = in.get() & 0xff;
+                int type = header & ~STYLE_REPEAT;
+                if(type < Operation.STROKE || type > Operation.CLEAR){
+                    throw new IllegalArgumentException("Unknown operation type " + type);
+                }
+                Operation op = new Operation(type, WhiteboardFormat.getVarint(in), WhiteboardFormat.getVarint(in));
+                seq = (i == 0) ? getVarlong(in) : seq + WhiteboardFormat.getVarint(in);
+                op.seq = seq;
+
+                if(type == Operation.STROKE){
+                    if((header & STYLE_REPEAT) != 0){
+                        if(lastStroke == null){
+                            throw new IllegalArgumentException("Repeated style without a stroke before it");
+                        }
+                        op.setStyle(lastStroke.color, lastStroke.width, lastStroke.mode, lastStroke.cap,
+                                lastStroke.join, lastStroke.smooth);
+                    } else {
+                        int color = in.getInt();
+                        float width = in.getFloat();
+                        int mode = in.get(), cap = in.get(), join = in.get(), flags = in.get();
+                        op.setStyle(color, width, mode, cap, join, (flags & FLAG_SMOOTH) != 0);
+                    }
+
+                    int points = WhiteboardFormat.getVarint(in);
+                    if(points < 0 || points > in.remaining()){
+                        throw new IllegalArgumentException("Bad point count " + points);
+                    }
+                    op.pointCount = points;
+                    op.points = new float[points * 2];
+                    op.times = new int[points];
+                    for(int j=0; j<points; j++){
+                        lastX += WhiteboardFormat.getSignedVarint(in);
+                        lastY += WhiteboardFormat.getSignedVarint(in);
+                        op.points[j * 2] = WhiteboardFormat.dequantize(lastX);
+                        op.points[j * 2 + 1] = WhiteboardFormat.dequantize(lastY);
+                    }
+                    int time = 0;
+                    for(int j=0; j<points; j++){
+                        time += WhiteboardFormat.getSignedVarint(in);
+                        op.times[j] = time;
+                    }
+                    lastStroke = op;
+                }
+                out.add(op);
+            }
+        } catch(BufferUnderflowException e){
+            throw new IllegalArgumentException("Frame cut short", e);
+        }
+    }
+
+    private void putOps(List<Operation> ops, int from, int to){
+        WhiteboardFormat.putVarint(buffer, to - from);
+        long seq = 0;
+        int lastX = 0, lastY = 0;
+        Operation lastStroke = null;
+        for(int i=from; i<to; i++){
+            Operation op = ops.get(i);
+            ensureRemaining(1 + 2 * MAX_VARINT_SIZE + MAX_VARLONG_SIZE + STYLE_SIZE + MAX_VARINT_SIZE
+                    + op.pointCount * 3 * MAX_VARINT_SIZE);
+
+            boolean repeat = op.type == Operation.STROKE && lastStroke != null && op.hasStyleOf(lastStroke);
+            buffer.put((byte) (op.type | (repeat ? STYLE_REPEAT : 0)));
+            WhiteboardFormat.putVarint(buffer, op.author);
+            WhiteboardFormat.putVarint(buffer, op.authorSeq);
+            if(i == from){
+                putVarlong(buffer, op.seq);
+            } else {
+                WhiteboardFormat.putVarint(buffer, (int) (op.seq - seq));
+            }
+            seq = op.seq;
+
+            if(op.type != Operation.STROKE){
+                continue;
+            }
+            if(!repeat){
+                buffer.putInt(op.color);
+                buffer.putFloat(op.width);
+                buffer.put((byte) op.mode);
+                buffer.put((byte) op.cap);
+                buffer.put((byte) op.join);
+                buffer.put((byte) (op.smooth ? FLAG_SMOOTH : 0));
+            }
+            WhiteboardFormat.putVarint(buffer, op.pointCount);
+            for(int j=0; j<op.pointCount; j++){
+                int x = WhiteboardFormat.quantize(op.points[j * 2]);
+                int y = WhiteboardFormat.quantize(op.points[j * 2 + 1]);
+                WhiteboardFormat.putSignedVarint(buffer, x - lastX);
+                WhiteboardFormat.putSignedVarint(buffer, y - lastY);
+                lastX = x;
+                lastY = y;
+            }
+            int time = 0;
+            for(int j=0; j<op.pointCount; j++){
+                WhiteboardFormat.putSignedVarint(buffer, op.times[j] - time);
+                time = op.times[j];
+            }
+            lastStroke = op;
+        }
+    }
+
+    private void ensureRemaining(int bytes){
+        if(buffer.remaining() < bytes){
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+    }
+
+    private byte[] toArray(){
+        byte[] frame = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(frame);
+        return frame;
+    }
+
+    private static ByteBuffer wrap(byte[] frame){
+        ByteBuffer in = ByteBuffer.wrap(frame).order(ByteOrder.LITTLE_ENDIAN);
+        in.position(1);
+        return in;
+    }
+
+    private static void putVarlong(ByteBuffer buffer, long value){
+        while((value & ~0x7fL) != 0){
+            buffer.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static long getVarlong(ByteBuffer buffer){
+        long value = 0;
+        for(int shift = 0; shift < 64; shift += 7){
+            byte b = buffer.get();
+            value |= (long) (b & 0x7f) << shift;
+            if(b >= 0){
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varlong at " + buffer.position());
+    }
+}
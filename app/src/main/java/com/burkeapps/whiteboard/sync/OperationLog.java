@@ -0,0 +1,59 @@
+package com.burkeapps.whiteboard.sync;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An OperationLog is the ordered list of operations of a shared whiteboard, as kept by its
+ * {@link SyncServer}.  Appending an operation gives it the next sequence number.
+ *
+ * Nothing before the last clear can show on a board, so the log drops those operations and a
+ * board catching up starts at the clear.
+ */
+public class OperationLog {
+
+    private final List<Operation> ops = new ArrayList<>();
+    // sequence number of the first operation kept
+    private long first = 1;
+
+    /**
+     * Places an operation at the end of the log.
+     *
+     * @return The sequence number the operation got
+     */
+    long append(Operation op){
+        op.seq = first + ops.size();
+        if(op.type == Operation.CLEAR){
+            first = op.seq;
+            ops.clear();
+        }
+        ops.add(op);
+        return op.seq;
+    }
+
+    /**
+     * Returns the sequence number of the last operation, or 0 if the log is empty.
+     */
+    public long getHead(){
+        return first + ops.size() - 1;
+    }
+
+    /**
+     * Returns the number of operations kept.
+     */
+    public int size(){
+        return ops.size();
+    }
+
+    /**
+     * Returns the index in {@link #getOperations()} of the first operation a board that has the
+     * operations up to the given sequence number is missing.
+     */
+    int indexAfter(long seq){
+        return (int) Math.max(0, Math.min(ops.size(), seq + 1 - first));
+    }
+
+    List<Operation> getOperations(){
+        return ops;
+    }
+}
@@ -0,0 +1,481 @@
+package com.burkeapps.whiteboard.sync;
+
+import com.burkeapps.whiteboard.views.StrokeStore;
+import com.burkeapps.whiteboard.views.StrokeStyle;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A SyncClient keeps a board in step with the other boards sharing a whiteboard through a
+ * {@link SyncServer}.
+ *
+ * Strokes, undos, redos and clears done on the board are reported to the client, which queues
+ * them as {@link Operation}s and sends them in batches, see {@link #flush()}.  They stay pending
+ * until the server echoes them back in their place in the log.  Operations of other boards are
+ * applied to the board one by one as they arrive: a stroke is drawn on top, an undo or redo
+ * renders the area it changed.
+ *
+ * Local operations are shown right away, before the server has placed them.  An operation of
+ * another board that arrives in the meantime was placed before them, so the pending operations
+ * are rolled back, the other board's operation is applied and the pending ones are applied again
+ * on top.  In the rare case a rollback can not restore the board exactly, e.g. because a local
+ * stroke dropped steps that a remote redo would bring back, the board is cleared and caught up
+ * from the server's log.
+ *
+ * Frames received while a stroke is being drawn on the board are held back until the next local
+ * operation or frame after it is finished.
+ *
+ * A client is not thread-safe, it is meant to be used from the UI thread.  Frames received by
+ * the transport have to be handed to {@link #receive(byte[])} on that thread.
+ */
+public class SyncClient {
+
+    /**
+     * The client's end of a connection to the server.  Frames must be delivered in order.
+     */
+    public interface Transport {
+        void send(byte[] frame);
+    }
+
+    /**
+     * The board a client applies operations to.  Applying them must not report them back to the
+     * client as local operations; the client ignores reports while it applies operations anyway.
+     */
+    public interface Board {
+        /**
+         * Adds a stroke of another board on top of the history.
+         */
+        void addStroke(Operation stroke);
+
+        boolean undo();
+
+        boolean redo();
+
+        void clear();
+
+        /**
+         * Returns the number of steps of the history that are not undone.
+         */
+        int getStepCount();
+
+        boolean canRedo();
+
+        /**
+         * Indicates whether a stroke is being drawn.  Operations received meanwhile are applied
+         * once it is finished.
+         */
+        boolean isDrawing();
+    }
+
+    /**
+     * Largest number of operations sent in one frame.
+     */
+    private static final int MAX_BATCH = 32;
+
+    private final int id;
+    private final Transport transport;
+    private final OperationCodec codec = new OperationCodec();
+    private Board board;
+    private int authorSeq;
+    // sequence number of the last operation of the log applied
+    private long seq;
+
+    // local operations the server has not echoed yet, in the order they were done
+    private final List<Operation> pending = new ArrayList<>();
+    private final List<Operation> outgoing = new ArrayList<>();
+    private final List<Operation> incoming = new ArrayList<>();
+    // frames received while a stroke was being drawn
+    private final List<byte[]> deferred = new ArrayList<>();
+    private int pendingClears;
+    // step count of the board and whether it could redo after the last local operation
+    private int expectedSteps;
+    private boolean couldRedo;
+
+    // whether the pending operations are currently not applied to the board
+    private boolean rolledBack;
+    // whether the first pending stroke is rolled back and waits to be redone in place of the steps
+    // it dropped, whether there were any, and how many steps above it can be redone
+    private boolean buried;
+    private boolean buriedDropped;
+    private int redoable;
+
+    // whether operations are ignored until the catch-up from the log arrives, and the last local
+    // operation sent before it was asked for
+    private boolean catchingUp;
+    private int catchUpAuthorSeq;
+    private boolean applying;
+    private long remoteCount, resyncCount;
+
+    /**
+     * @param id Id of this board, unique among the boards sharing the whiteboard
+     * @param transport The connection to the server
+     */
+    public SyncClient(int id, Transport transport){
+        this.id = id;
+        this.transport = transport;
+    }
+
+    public int getId(){
+        return id;
+    }
+
+    /**
+     * Starts keeping a board in step.  The board is cleared and then shows the shared whiteboard
+     * as it is caught up from the server's log.
+     */
+    public void attach(Board board){
+        this.board = board;
+        pending.clear();
+        outgoing.clear();
+        deferred.clear();
+        pendingClears = 0;
+        rolledBack = false;
+        catchUp();
+    }
+
+    /**
+     * Stops applying operations to the board and reporting its operations.
+     */
+    public void detach(){
+        board = null;
+        pending.clear();
+        outgoing.clear();
+        deferred.clear();
+        pendingClears = 0;
+    }
+
+    /**
+     * Reports a stroke drawn on the board.
+     *
+     * @param strokes The board's history
+     * @param stroke Index of the stroke, it has to be the top step of the history
+     * @param style The style of the stroke
+     */
+    public void stroke(StrokeStore strokes, int stroke, StrokeStyle style){
+        if(isReporting()){
+            Operation op = Operation.stroke(id, ++authorSeq, strokes, stroke, style);
+            // the stroke dropped any steps that could be redone
+            op.dropped = rolledBack ? canRedoInPlace() : couldRedo;
+            record(op);
+        }
+    }
+
+    /**
+     * Reports an undo done on the board.
+     */
+    public void undo(){
+        if(isReporting()){
+            record(new Operation(Operation.UNDO, id, ++authorSeq));
+        }
+    }
+
+    /**
+     * Reports a redo done on the board.
+     */
+    public void redo(){
+        if(isReporting()){
+            record(new Operation(Operation.REDO, id, ++authorSeq));
+        }
+    }
+
+    /**
+     * Reports that the board was cleared.
+     */
+    public void clear(){
+        if(isReporting()){
+            pendingClears++;
+            record(new Operation(Operation.CLEAR, id, ++authorSeq));
+        }
+    }
+
+    /**
+     * Indicates whether operations are queued that were not sent yet.
+     */
+    public boolean hasUnsent(){
+        return !outgoing.isEmpty();
+    }
+
+    /**
+     * Sends the queued operations to the server in one frame.
+     */
+    public void flush(){
+        if(!outgoing.isEmpty()){
+            byte[] frame = codec.encodeOps(outgoing, 0, outgoing.size());
+            outgoing.clear();
+            transport.send(frame);
+        }
+    }
+
+    /**
+     * Handles a frame sent by the server.
+     *
+     * @throws IllegalArgumentException If the frame is malformed
+     */
+    public void receive(byte[] frame){
+        if(board == null){
+            return;
+        }
+        if(board.isDrawing()){
+            deferred.add(frame);
+            return;
+        }
+        receiveDeferred();
+        applyFrame(frame);
+    }
+
+    /**
+     * Returns the sequence number of the last operation of the log the board shows.
+     */
+    public long getSeq(){
+        return seq;
+    }
+
+    /**
+     * Returns the number of local operations the server has not echoed yet.
+     */
+    public int getPendingCount(){
+        return pending.size();
+    }
+
+    /**
+     * Returns the number of operations of other boards applied.
+     */
+    public long getRemoteCount(){
+        return remoteCount;
+    }
+
+    /**
+     * Returns how many times the board had to be caught up from the log again because its
+     * pending operations could not be rolled back exactly.
+     */
+    public long getResyncCount(){
+        return resyncCount;
+    }
+
+    private boolean isReporting(){
+        return board != null && !applying;
+    }
+
+    private void record(Operation op){
+        if(rolledBack){
+            // the board is being caught up, the operation is shown in its place once it is
+            track(op);
+            rollBack(op);
+        }
+        pending.add(op);
+        outgoing.add(op);
+        expectedSteps = board.getStepCount();
+        couldRedo = board.canRedo();
+        if(outgoing.size() >= MAX_BATCH){
+            flush();
+        }
+        if(!deferred.isEmpty()){
+            receiveDeferred();
+        }
+    }
+
+    private void receiveDeferred(){
+        for(int i=0; i<deferred.size(); i++){
+            applyFrame(deferred.get(i));
+        }
+        deferred.clear();
+    }
+
+    private void applyFrame(byte[] frame){
+        byte kind = OperationCodec.getKind(frame);
+        if((kind == OperationCodec.FRAME_CATCH_UP) != catchingUp){
+            // sent before the catch-up was asked for, the catch-up holds its operations
+            return;
+        }
+
+        incoming.clear();
+        OperationCodec.decodeOps(frame, incoming);
+        for(int i=0; i<incoming.size(); i++){
+            if(!apply(incoming.get(i))){
+                incoming.clear();
+                resync();
+                return;
+            }
+        }
+        incoming.clear();
+        if(catchingUp && seq >= OperationCodec.getCatchUpHead(frame)){
+            catchingUp = false;
+            // operations sent before the catch-up that it does not hold were wiped by a clear
+            while(!pending.isEmpty() && pending.get(0).authorSeq <= catchUpAuthorSeq){
+                if(pending.remove(0).type == Operation.CLEAR){
+                    pendingClears--;
+                }
+            }
+        }
+
+        if(rolledBack && !catchingUp){
+            // the pending operations come after everything received, show them on top again
+            for(int i=0; i<pending.size(); i++){
+                if(!place(pending.get(i))){
+                    resync();
+                    return;
+                }
+            }
+            rolledBack = false;
+        }
+        expectedSteps = board.getStepCount();
+        couldRedo = board.canRedo();
+    }
+
+    /**
+     * Applies an operation of the log in its place.
+     *
+     * @return False if the board has to catch up again instead
+     */
+    private boolean apply(Operation op){
+        seq = op.seq;
+        if(op.author == id && !pending.isEmpty() && pending.get(0).authorSeq == op.authorSeq){
+            // one of ours, it is already shown unless the pending operations are rolled back
+            Operation own = pending.remove(0);
+            if(own.type == Operation.CLEAR){
+                pendingClears--;
+            }
+            return !rolledBack || place(own);
+        }
+
+        remoteCount++;
+        if(!rolledBack){
+            if(pendingClears > 0){
+                // placed before a pending clear, which wipes it anyway
+                return true;
+            }
+            if(pending.isEmpty()){
+                applyToBoard(op);
+                return true;
+            }
+            if(board.getStepCount() != expectedSteps || !canRollBack()){
+                return false;
+            }
+            for(int i = pending.size() - 1; i >= 0; i--){
+                rollBack(pending.get(i));
+            }
+            rolledBack = true;
+        }
+        return place(op);
+    }
+
+    /**
+     * Indicates whether undoing the pending operations restores the board as it was before them.
+     * An undo followed by a stroke that dropped the undone step can not be rolled back.
+     */
+    private boolean canRollBack(){
+        boolean undone = false;
+        for(int i=0; i<pending.size(); i++){
+            Operation op = pending.get(i);
+            if(op.type == Operation.UNDO && op.changed){
+                undone = true;
+            } else if(op.type == Operation.STROKE && op.dropped && undone){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rollBack(Operation op){
+        if(!op.changed){
+            return;
+        }
+        applying = true;
+        if(op.type == Operation.STROKE){
+            // the stroke is left to be redone in place of the steps it dropped
+            board.undo();
+            buried = true;
+            buriedDropped = op.dropped;
+            redoable = 0;
+        } else if(op.type == Operation.UNDO){
+            board.redo();
+            redoable--;
+        } else if(op.type == Operation.REDO){
+            board.undo();
+            redoable++;
+        }
+        applying = false;
+    }
+
+    /**
+     * Applies an operation while the pending ones are rolled back.
+     *
+     * @return False if the board has to catch up again instead
+     */
+    private boolean place(Operation op){
+        if(op.type == Operation.REDO && buried && redoable == 0){
+            if(buriedDropped){
+                // the step to redo was dropped by a pending stroke
+                return false;
+            }
+            // everything above the rolled back stroke is redone already
+            op.changed = false;
+            return true;
+        }
+        if(op.type == Operation.STROKE){
+            op.dropped = canRedoInPlace();
+        }
+        op.changed = applyToBoard(op);
+        track(op);
+        return true;
+    }
+
+    // follows the steps above a rolled back stroke after an operation changed the board
+    private void track(Operation op){
+        if(op.type == Operation.STROKE || op.type == Operation.CLEAR){
+            buried = false;
+        } else if(op.changed){
+            redoable += (op.type == Operation.UNDO) ? 1 : -1;
+        }
+    }
+
+    // whether the board could redo if the pending operations were not applied
+    private boolean canRedoInPlace(){
+        return buried ? (redoable > 0 || buriedDropped) : board.canRedo();
+    }
+
+    /**
+     * @return False if the operation did not change the board, like an undo of an empty history
+     */
+    private boolean applyToBoard(Operation op){
+        boolean changed = true;
+        applying = true;
+        switch(op.type){
+            case Operation.STROKE:
+                board.addStroke(op);
+                break;
+            case Operation.UNDO:
+                changed = board.undo();
+                break;
+            case Operation.REDO:
+                changed = board.redo();
+                break;
+            case Operation.CLEAR:
+                board.clear();
+                break;
+        }
+        applying = false;
+        return changed;
+    }
+
+    private void resync(){
+        resyncCount++;
+        // the pending operations are applied again in their place in the log
+        rolledBack = true;
+        catchUp();
+    }
+
+    private void catchUp(){
+        applying = true;
+        board.clear();
+        applying = false;
+        seq = 0;
+        catchingUp = true;
+        buried = false;
+        // operations sent before the hello are part of the catch-up
+        flush();
+        catchUpAuthorSeq = authorSeq;
+        transport.send(codec.encodeHello(id, seq));
+    }
+}
@@ -0,0 +1,99 @@
+package com.burkeapps.whiteboard.sync;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A SyncServer orders the operations of the boards sharing a whiteboard.  Each batch of
+ * operations a client sends is appended to the {@link OperationLog} and broadcast to every
+ * connected client, the sender included, which learns the place of its own operations that way.
+ * A client saying hello is sent the part of the log it is missing first.
+ *
+ * The server does not know about transports: frames are handed to {@link #receive(Connection,
+ * byte[])} along with the connection they came from, and sent through the {@link Connection}s.
+ * Connections must deliver frames in order.  All methods are synchronized, so frames can be
+ * received on any thread.
+ */
+public class SyncServer {
+
+    /**
+     * The server's end of a connection to a client.
+     */
+    public interface Connection {
+        void send(byte[] frame);
+    }
+
+    /**
+     * Largest number of operations sent in one catch-up frame.
+     */
+    private static final int CATCH_UP_BATCH = 256;
+
+    private final OperationLog log = new OperationLog();
+    private final List<Connection> connections = new ArrayList<>();
+    private final OperationCodec codec = new OperationCodec();
+    private final List<Operation> received = new ArrayList<>();
+
+    /**
+     * Handles a frame sent by a client.
+     *
+     * @param from The connection the frame came through
+     * @param frame The frame
+     * @throws IllegalArgumentException If the frame is malformed
+     */
+    public synchronized void receive(Connection from, byte[] frame){
+        switch(OperationCodec.getKind(frame)){
+            case OperationCodec.FRAME_HELLO:
+                catchUp(from, OperationCodec.getHelloSeq(frame));
+                if(!connections.contains(from)){
+                    connections.add(from);
+                }
+                break;
+            case OperationCodec.FRAME_OPS:
+                received.clear();
+                OperationCodec.decodeOps(frame, received);
+                for(int i=0; i<received.size(); i++){
+                    log.append(received.get(i));
+                }
+                byte[] broadcast = codec.encodeOps(received, 0, received.size());
+                for(int i=0; i<connections.size(); i++){
+                    connections.get(i).send(broadcast);
+                }
+                received.clear();
+                break;
+            default:
+                throw new IllegalArgumentException("Unexpected frame " + OperationCodec.getKind(frame));
+        }
+    }
+
+    /**
+     * Stops broadcasting to a connection.
+     */
+    public synchronized void disconnect(Connection connection){
+        connections.remove(connection);
+    }
+
+    /**
+     * Returns the sequence number of the last operation in the log.
+     */
+    public synchronized long getHead(){
+        return log.getHead();
+    }
+
+    /**
+     * Returns the number of operations kept in the log.
+     */
+    public synchronized int getLogSize(){
+        return log.size();
+    }
+
+    private void catchUp(Connection connection, long seq){
+        // always at least one frame, it tells the client where the log ends
+        List<Operation> ops = log.getOperations();
+        int from = log.indexAfter(seq);
+        do {
+            int to = Math.min(ops.size(), from + CATCH_UP_BATCH);
+            connection.send(codec.encodeCatchUp(log.getHead(), ops, from, to));
+            from = to;
+        } while(from < ops.size());
+    }
+}
@@ -0,0 +1,72 @@
+package com.burkeapps.whiteboard.views;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.drawable.Drawable;
+
+/**
+ * A BackgroundLayer draws the board color and the photo under the ink of a whiteboard.  It is set
+ * as the background of the view, which the platform records separately from the view's content,
+ * so the photo is not drawn again while ink is added on top of it.
+ *
+ * The photo covers the page of the board: the area at the origin that has the size of the view,
+ * and the layer's bounds.  It is expected to be scaled to that size already, see
+ * {@link PhotoLoader}, and moves with the board when the view is panned or zoomed.
+ */
+class BackgroundLayer extends Drawable {
+
+    private final Paint colorPaint;
+    private final Viewport viewport;
+    private final Paint photoPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private Bitmap photo;
+
+    /**
+     * @param colorPaint Paint filling the board under the photo
+     * @param viewport The part of the board in view
+     */
+    BackgroundLayer(Paint colorPaint, Viewport viewport){
+        this.colorPaint = colorPaint;
+        this.viewport = viewport;
+    }
+
+    void setPhoto(Bitmap photo){
+        this.photo = photo;
+        invalidateSelf();
+    }
+
+    Bitmap getPhoto(){
+        return photo;
+    }
+
+    @Override
+    public void draw(Canvas canvas){
+        canvas.drawPaint(colorPaint);
+        if(photo != null){
+            // scaled only while zoomed or while a photo for a new size is being decoded
+            canvas.save();
+            canvas.scale(viewport.getZoom(), viewport.getZoom());
+            canvas.translate(-viewport.getLeft(), -viewport.getTop());
+            canvas.drawBitmap(photo, null, getBounds(), photoPaint);
+            canvas.restore();
+        }
+    }
+
+    @Override
+    public void setAlpha(int alpha){
+        photoPaint.setAlpha(alpha);
+        invalidateSelf();
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter colorFilter){
+        // the photo is drawn with its own colors
+    }
+
+    @Override
+    public int getOpacity(){
+        return PixelFormat.OPAQUE;
+    }
+}
@@ -0,0 +1,133 @@
+package com.burkeapps.whiteboard.views;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.util.LongSparseArray;
+
+import java.util.ArrayDeque;
+
+/**
+ * A BitmapPool keeps released bitmaps around so they can be handed out again instead of allocating
+ * a new bitmap of the same size and config.  Reused bitmaps are cleared with eraseColor.  The pool
+ * holds at most a fixed number of bytes and can be trimmed when the system runs low on memory.
+ *
+ * The pool is safe to use from multiple threads.
+ */
+public class BitmapPool {
+
+    /**
+     * Default fraction of the heap that pooled bitmaps may use.
+     */
+    private static final int DEFAULT_HEAP_FRACTION = 16;
+
+    private final LongSparseArray<ArrayDeque<Bitmap>> pool = new LongSparseArray<>();
+    private long maxBytes;
+    private long bytes;
+    private long hits, misses;
+
+    public BitmapPool(){
+        this(Runtime.getRuntime().maxMemory() / DEFAULT_HEAP_FRACTION);
+    }
+
+    public BitmapPool(long maxBytes){
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns a cleared, mutable bitmap of the given size and config, reusing a pooled one if
+     * available.
+     */
+    public synchronized Bitmap obtain(int width, int height, Bitmap.Config config){
+        ArrayDeque<Bitmap> bitmaps = pool.get(key(width, height, config));
+        Bitmap bitmap = (bitmaps != null) ? bitmaps.pollLast() : null;
+        if(bitmap != null){
+            hits++;
+            bytes -= bitmap.getByteCount();
+            bitmap.eraseColor(0);
+            return bitmap;
+        }
+
+        misses++;
+        return Bitmap.createBitmap(width, height, config);
+    }
+
+    /**
+     * Returns a bitmap to the pool.  The bitmap must not be used by the caller afterwards.  If the
+     * pool is full, the bitmap is recycled instead.
+     */
+    public synchronized void release(Bitmap bitmap){
+        if(bitmap == null || bitmap.isRecycled()){
+            return;
+        }
+
+        int size = bitmap.getByteCount();
+        if(!bitmap.isMutable() || bytes + size > maxBytes){
+            bitmap.recycle();
+            return;
+        }
+
+        long key = key(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+        ArrayDeque<Bitmap> bitmaps = pool.get(key);
+        if(bitmaps == null){
+            bitmaps = new ArrayDeque<>();
+            pool.put(key, bitmaps);
+        }
+        bitmaps.addLast(bitmap);
+        bytes += size;
+    }
+
+    /**
+     * Releases pooled bitmaps according to a level passed to
+     * {@link ComponentCallbacks2#onTrimMemory(int)}.  Moderate pressure halves the pool, anything
+     * more severe empties it.
+     *
+     * @param level The trim memory level
+     */
+    public synchronized void trimMemory(int level){
+        if(level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL){
+            trimTo(0);
+        } else if(level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW){
+            trimTo(bytes / 2);
+        }
+    }
+
+    /**
+     * Recycles all pooled bitmaps.
+     */
+    public synchronized void clear(){
+        trimTo(0);
+    }
+
+    public synchronized long getByteCount(){
+        return bytes;
+    }
+
+    public synchronized long getHitCount(){
+        return hits;
+    }
+
+    public synchronized long getMissCount(){
+        return misses;
+    }
+
+    private void trimTo(long targetBytes){
+        // the oldest bitmaps of each size go first
+        for(int i=pool.size()-1; i>=0 && bytes > targetBytes; i--){
+            ArrayDeque<Bitmap> bitmaps = pool.valueAt(i);
+            while(!bitmaps.isEmpty() && bytes > targetBytes){
+                Bitmap bitmap = bitmaps.pollFirst();
+                bytes -= bitmap.getByteCount();
+                bitmap.recycle();
+            }
+            if(bitmaps.isEmpty()){
+                pool.removeAt(i);
+            }
+        }
+    }
+
+    private static long key(int width, int height, Bitmap.Config config){
+        return ((long) width << 32) | ((long) height << 8) | config.ordinal();
+    }
+}
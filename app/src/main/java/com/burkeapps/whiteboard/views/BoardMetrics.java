@@ -0,0 +1,191 @@
+package com.burkeapps.whiteboard.views;
+
+import android.os.SystemClock;
+
+/**
+ * BoardMetrics are the timings and sizes a {@link WhiteboardView} collects about itself while it
+ * is used: how long touch events take to reach a drawn frame, how long onDraw and renders of the
+ * history take, how large the history is and how much bitmap memory the board holds.
+ *
+ * Timings are only taken for a sample of the events, see
+ * {@link WhiteboardView#setMetricsSampling(int)}, and are collected in histograms over a
+ * reporting interval.  After each report to the {@link Listener} the histograms start over, the
+ * sizes are always current.
+ */
+public class BoardMetrics {
+
+    /**
+     * Receives the metrics of a whiteboard once per reporting interval, on the UI thread.  The
+     * metrics must not be kept past the call, they are reset right after it.
+     */
+    public interface Listener {
+        void onMetricsReport(BoardMetrics metrics);
+    }
+
+    final LatencyHistogram touchLatency = new LatencyHistogram();
+    final LatencyHistogram drawTime = new LatencyHistogram();
+    final LatencyHistogram renderTime = new LatencyHistogram();
+    int pathCount, visiblePathCount;
+    long pointCount;
+    long tileBytes, checkpointBytes, pooledBytes, photoBytes;
+    long intervalMillis;
+
+    // the sampling interval and the events left until the next sample
+    private int sampling;
+    private int untilSample;
+    // time of a sampled touch event that no frame was drawn for yet, or -1
+    private long pendingTouchTime = -1;
+
+    /**
+     * Returns the time from a touch event to the end of the first frame drawn after it, in
+     * microseconds.  The frame still has to be rendered and composited to reach the screen.
+     * Event times only have millisecond precision.
+     */
+    public LatencyHistogram getTouchLatency(){
+        return touchLatency;
+    }
+
+    /**
+     * Returns the time the whiteboard's onDraw took, in microseconds.
+     */
+    public LatencyHistogram getDrawTime(){
+        return drawTime;
+    }
+
+    /**
+     * Returns the time renders of the history took on the render thread, in microseconds.  Only
+     * renders that were shown are counted, not those superseded by a later change.
+     */
+    public LatencyHistogram getRenderTime(){
+        return renderTime;
+    }
+
+    /**
+     * Returns the number of paths in the history, including erased ones.
+     */
+    public int getPathCount(){
+        return pathCount;
+    }
+
+    /**
+     * Returns the number of paths in the history that are not erased.
+     */
+    public int getVisiblePathCount(){
+        return visiblePathCount;
+    }
+
+    /**
+     * Returns the number of points stored for the paths of the history.
+     */
+    public long getPointCount(){
+        return pointCount;
+    }
+
+    /**
+     * Returns the memory used by the ink tiles and their downsampled copies, in bytes.
+     */
+    public long getTileBytes(){
+        return tileBytes;
+    }
+
+    /**
+     * Returns the memory used by checkpoints and the base image of compacted paths, in bytes.
+     */
+    public long getCheckpointBytes(){
+        return checkpointBytes;
+    }
+
+    /**
+     * Returns the memory held by unused bitmaps kept for reuse, in bytes.
+     */
+    public long getPooledBytes(){
+        return pooledBytes;
+    }
+
+    /**
+     * Returns the memory used by the background photo, in bytes.
+     */
+    public long getPhotoBytes(){
+        return photoBytes;
+    }
+
+    /**
+     * Returns the total bitmap memory held by the whiteboard, in bytes.
+     */
+    public long getBitmapBytes(){
+        return tileBytes + checkpointBytes + pooledBytes + photoBytes;
+    }
+
+    /**
+     * Returns the length of the interval the histograms were collected over, in milliseconds.
+     */
+    public long getIntervalMillis(){
+        return intervalMillis;
+    }
+
+    /**
+     * Summarizes the metrics on a few lines, e.g. for logging.
+     */
+    @Override
+    public String toString(){
+        return "touch latency: " + touchLatency + "\n"
+                + "draw: " + drawTime + "\n"
+                + "render: " + renderTime + "\n"
+                + "paths: " + visiblePathCount + "/" + pathCount + ", points: " + pointCount + "\n"
+                + "bitmaps: " + (getBitmapBytes() / 1024) + "KB (tiles " + (tileBytes / 1024)
+                + "KB, checkpoints " + (checkpointBytes / 1024) + "KB, pool " + (pooledBytes / 1024)
+                + "KB, photo " + (photoBytes / 1024) + "KB)";
+    }
+
+    void setSampling(int interval){
+        sampling = interval;
+        untilSample = 0;
+        pendingTouchTime = -1;
+    }
+
+    boolean isEnabled(){
+        return sampling > 0;
+    }
+
+    /**
+     * Decides whether an event is timed: one of every {@code sampling} events is.
+     */
+    boolean sample(){
+        if(sampling <= 0){
+            return false;
+        }
+        if(untilSample > 0){
+            untilSample--;
+            return false;
+        }
+        untilSample = sampling - 1;
+        return true;
+    }
+
+    /**
+     * Notes a touch event, to time it once the next frame is drawn if it is sampled.
+     *
+     * @param eventTime Time of the event in the SystemClock.uptimeMillis() time base
+     */
+    void touched(long eventTime){
+        if(pendingTouchTime < 0 && sample()){
+            pendingTouchTime = eventTime;
+        }
+    }
+
+    /**
+     * Notes the end of drawing a frame of the whiteboard, or of one of its layers.
+     */
+    void frameDrawn(){
+        if(pendingTouchTime >= 0){
+            touchLatency.record((SystemClock.uptimeMillis() - pendingTouchTime) * 1000);
+            pendingTouchTime = -1;
+        }
+    }
+
+    void reset(){
+        touchLatency.reset();
+        drawTime.reset();
+        renderTime.reset();
+    }
+}
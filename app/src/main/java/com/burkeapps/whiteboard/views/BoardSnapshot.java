@@ -0,0 +1,192 @@
+package com.burkeapps.whiteboard.views;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.util.LongSparseArray;
+
+/**
+ * A BoardSnapshot is a frozen copy of the ink on a whiteboard, taken on the UI thread so it can be
+ * drawn on any thread while the whiteboard keeps changing.  It covers an area of the board, its
+ * top left corner is drawn at the origin.  Only tiles holding ink are copied;
+ * the copies come from the whiteboard's {@link BitmapPool} and go back to it on
+ * {@link #release()}.
+ *
+ * Ink can be drawn anywhere on the board, so the area may be far larger than any image that fits
+ * in memory.  A snapshot is scaled down to at most {@link #MAX_SIZE} pixels a side and
+ * {@link #MAX_PIXELS} in total.  Tiles are then copied halved as many times as the scale allows,
+ * like the levels of a {@link TilePyramid}, so the copies shrink along with the image.
+ *
+ * A background photo is not copied: photos are never modified or recycled once decoded, so the
+ * snapshot draws the whiteboard's own bitmap.
+ */
+public class BoardSnapshot {
+
+    /**
+     * Largest width or height of a snapshot, in pixels.
+     */
+    public static final int MAX_SIZE = 8192;
+
+    /**
+     * Largest number of pixels of a snapshot.
+     */
+    public static final long MAX_PIXELS = 4096 * 4096;
+
+    private final LongSparseArray<Bitmap> tiles;
+    private final BitmapPool pool;
+    private final int left, top, width, height;
+    // snapshot pixels per board pixel, and the number of times the tile copies were halved
+    private final float scale;
+    private final int level;
+    private final int backgroundColor;
+    private final Bitmap photo;
+    private final Rect photoBounds;
+    private final Paint bitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Rect dst = new Rect();
+
+    /**
+     * @param canvas The tiles to copy
+     * @param pool Pool of the tile bitmaps
+     * @param area The area of the board the snapshot covers
+     * @param page The area of the board the photo is drawn on
+     * @param backgroundColor Color of the board
+     * @param photo The photo, or null
+     * @throws OutOfMemoryError If the tiles could not be copied, the copies made are released
+     */
+    BoardSnapshot(TiledCanvas canvas, BitmapPool pool, Rect area, Rect page, int backgroundColor, Bitmap photo){
+        this.pool = pool;
+        this.left = area.left;
+        this.top = area.top;
+        this.scale = getScale(area.width(), area.height());
+        this.width = Math.max(1, Math.min(MAX_SIZE, Math.round(area.width() * scale)));
+        this.height = Math.max(1, Math.min(MAX_SIZE, Math.round(area.height() * scale)));
+        this.backgroundColor = backgroundColor;
+        this.photo = photo;
+        this.photoBounds = new Rect(page);
+
+        // halve the copies while they are still drawn at half their size or less
+        int level = 0;
+        while(scale * (1 << (level + 1)) <= 1 && (TiledCanvas.TILE_SIZE >> (level + 1)) > 0){
+            level++;
+        }
+        this.level = level;
+
+        LongSparseArray<TiledCanvas.Tile> source = canvas.tiles;
+        tiles = new LongSparseArray<>(source.size());
+        try {
+            for(int i=0; i<source.size(); i++){
+                tiles.put(source.keyAt(i), copy(canvas, source.valueAt(i)));
+            }
+        } catch(OutOfMemoryError e){
+            release();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the scale an area of the board is drawn at by a snapshot of it.
+     *
+     * @param width Width of the area, in board pixels
+     * @param height Height of the area, in board pixels
+     * @return Snapshot pixels per board pixel, 1 unless the area is too large
+     */
+    static float getScale(int width, int height){
+        double scale = 1;
+        scale = Math.min(scale, (double) MAX_SIZE / Math.max(width, 1));
+        scale = Math.min(scale, (double) MAX_SIZE / Math.max(height, 1));
+        scale = Math.min(scale, Math.sqrt((double) MAX_PIXELS / Math.max((long) width * height, 1)));
+        return (float) scale;
+    }
+
+    private Bitmap copy(TiledCanvas canvas, TiledCanvas.Tile tile){
+        if(level == 0){
+            return canvas.copy(tile);
+        }
+
+        // halve the tile step by step, so no line of ink is skipped by a single coarse sample
+        Canvas tileCanvas = new Canvas();
+        Bitmap copy = tile.bitmap;
+        for(int l=1; l<=level; l++){
+            int size = TiledCanvas.TILE_SIZE >> l;
+            Bitmap half = pool.obtain(size, size, Bitmap.Config.ARGB_8888);
+            tileCanvas.setBitmap(half);
+            dst.set(0, 0, size, size);
+            tileCanvas.drawBitmap(copy, null, dst, bitmapPaint);
+            tileCanvas.setBitmap(null);
+            if(copy != tile.bitmap){
+                pool.release(copy);
+            }
+            copy = half;
+        }
+        return copy;
+    }
+
+    public int getWidth(){
+        return width;
+    }
+
+    public int getHeight(){
+        return height;
+    }
+
+    /**
+     * Returns the pool the tile copies came from, which also serves bitmaps the snapshot is drawn
+     * into.
+     */
+    public BitmapPool getBitmapPool(){
+        return pool;
+    }
+
+    /**
+     * Draws the background, the photo and the ink of the snapshot onto a canvas.  Tiles outside
+     * the canvas' clip are skipped, so drawing a band of the board only touches the tiles in that
+     * band.
+     *
+     * @param canvas The canvas to draw on
+     * @param paint The paint to draw the tiles with, may be null
+     */
+    public void draw(Canvas canvas, Paint paint){
+        canvas.drawColor(backgroundColor);
+        if(photo != null){
+            canvas.drawBitmap(photo, null, toSnapshot(photoBounds.left, photoBounds.top,
+                    photoBounds.right, photoBounds.bottom), bitmapPaint);
+        }
+        for(int i=0; i<tiles.size(); i++){
+            long key = tiles.keyAt(i);
+            int tileLeft = TiledCanvas.tileX(key) * TiledCanvas.TILE_SIZE;
+            int tileTop = TiledCanvas.tileY(key) * TiledCanvas.TILE_SIZE;
+            Rect bounds = toSnapshot(tileLeft, tileTop,
+                    tileLeft + TiledCanvas.TILE_SIZE, tileTop + TiledCanvas.TILE_SIZE);
+            if(canvas.quickReject(bounds.left, bounds.top, bounds.right, bounds.bottom, Canvas.EdgeType.BW)){
+                continue;
+            }
+            if(scale == 1){
+                canvas.drawBitmap(tiles.valueAt(i), bounds.left, bounds.top, paint);
+            } else {
+                // neighbouring tiles are floored to the same edges, no seams open between them
+                canvas.drawBitmap(tiles.valueAt(i), null, bounds, (paint != null) ? paint : bitmapPaint);
+            }
+        }
+    }
+
+    private Rect toSnapshot(int boardLeft, int boardTop, int boardRight, int boardBottom){
+        // a tile smaller than a pixel still gets one, or far out ink would vanish
+        int snapshotLeft = (int) Math.floor((boardLeft - left) * scale);
+        int snapshotTop = (int) Math.floor((boardTop - top) * scale);
+        dst.set(snapshotLeft, snapshotTop,
+                Math.max(snapshotLeft + 1, (int) Math.floor((boardRight - left) * scale)),
+                Math.max(snapshotTop + 1, (int) Math.floor((boardBottom - top) * scale)));
+        return dst;
+    }
+
+    /**
+     * Returns the tile copies to the pool.  The snapshot must not be drawn afterwards.
+     */
+    public void release(){
+        for(int i=0; i<tiles.size(); i++){
+            pool.release(tiles.valueAt(i));
+        }
+        tiles.clear();
+    }
+}
@@ -0,0 +1,415 @@
+package com.burkeapps.whiteboard.views;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.util.LongSparseArray;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * This class keeps snapshots of the whiteboard's tiles taken every few strokes so that undo and
+ * redo only need to replay the strokes drawn since the closest snapshot.  Only tiles holding ink
+ * are copied, and a tile that did not change between two checkpoints is shared by both of them.
+ * Snapshots are kept within a memory budget; when the budget is exceeded the oldest snapshots are
+ * dropped first since undo and redo work from the most recent end of the history.
+ *
+ * When the history is compacted, a checkpoint becomes the base layer: the image of the strokes
+ * that were dropped from the history.  The base layer is never evicted, and the canvas starts
+ * from it whenever no checkpoint is available.  It is saved along with the history, and set
+ * again when a saved history is loaded.
+ *
+ * Checkpoints are taken on the UI thread and restored by the render thread, so all access is
+ * synchronized.
+ */
+class CheckpointCache {
+
+    /**
+     * Default number of strokes between two checkpoints.
+     */
+    static final int DEFAULT_INTERVAL = 50;
+
+    /**
+     * Default fraction of the heap that checkpoints are allowed to use.
+     */
+    private static final int DEFAULT_HEAP_FRACTION = 8;
+
+    /**
+     * Immutable copy of a tile, shared between all checkpoints it did not change in.
+     */
+    private static final class TileSnapshot {
+        final Bitmap bitmap;
+        final int version;
+        int references;
+
+        TileSnapshot(Bitmap bitmap, int version){
+            this.bitmap = bitmap;
+            this.version = version;
+        }
+    }
+
+    /**
+     * The tiles of the base layer at some point, kept from going back to the pool until released
+     * with {@link #release(BaseTiles)}, so another thread can read them while the base layer
+     * changes.
+     */
+    static final class BaseTiles {
+        private final LongSparseArray<TileSnapshot> tiles;
+
+        private BaseTiles(LongSparseArray<TileSnapshot> tiles){
+            this.tiles = tiles;
+        }
+
+        int size(){
+            return tiles.size();
+        }
+
+        long keyAt(int index){
+            return tiles.keyAt(index);
+        }
+
+        Bitmap bitmapAt(int index){
+            return tiles.valueAt(index).bitmap;
+        }
+    }
+
+    private final TreeMap<Integer, LongSparseArray<TileSnapshot>> checkpoints = new TreeMap<>();
+    // tiles of the strokes compacted out of the history, or null
+    private LongSparseArray<TileSnapshot> base;
+    private final BitmapPool pool;
+    private int interval = DEFAULT_INTERVAL;
+    private long memoryBudget = Runtime.getRuntime().maxMemory() / DEFAULT_HEAP_FRACTION;
+    private long bytesUsed;
+    private int deferredCount;
+
+    CheckpointCache(BitmapPool pool){
+        this.pool = pool;
+    }
+
+    synchronized void setInterval(int interval){
+        if(interval <= 0){
+            throw new IllegalArgumentException("Checkpoint interval must be positive: " + interval);
+        }
+        this.interval = interval;
+    }
+
+    synchronized int getInterval(){
+        return interval;
+    }
+
+    synchronized void setMemoryBudget(long bytes){
+        if(bytes < 0){
+            throw new IllegalArgumentException("Checkpoint memory budget must not be negative: " + bytes);
+        }
+        memoryBudget = bytes;
+        trimToBudget(-1);
+    }
+
+    synchronized long getMemoryBudget(){
+        return memoryBudget;
+    }
+
+    synchronized long getBytesUsed(){
+        return bytesUsed;
+    }
+
+    synchronized int size(){
+        return checkpoints.size();
+    }
+
+    /**
+     * Returns the stroke counts of the stored checkpoints in ascending order.
+     */
+    synchronized int[] getStrokeCounts(){
+        int[] counts = new int[checkpoints.size()];
+        int i = 0;
+        for(Integer count : checkpoints.keySet()){
+            counts[i++] = count;
+        }
+        return counts;
+    }
+
+    /**
+     * Returns the memory used by the base layer in bytes, including tiles it shares with
+     * checkpoints.
+     */
+    synchronized long getBaseBytes(){
+        long bytes = 0;
+        for(int i=0; base != null && i<base.size(); i++){
+            bytes += base.valueAt(i).bitmap.getByteCount();
+        }
+        return bytes;
+    }
+
+    synchronized boolean hasBase(){
+        return base != null;
+    }
+
+    /**
+     * Returns the area covered by the tiles of the base layer.
+     *
+     * @param out Set to the area in board pixels, empty if there is no base layer
+     * @return out
+     */
+    synchronized RectF getBaseArea(RectF out){
+        out.setEmpty();
+        for(int i=0; base != null && i<base.size(); i++){
+            long key = base.keyAt(i);
+            float left = TiledCanvas.tileX(key) * TiledCanvas.TILE_SIZE;
+            float top = TiledCanvas.tileY(key) * TiledCanvas.TILE_SIZE;
+            out.union(left, top, left + TiledCanvas.TILE_SIZE, top + TiledCanvas.TILE_SIZE);
+        }
+        return out;
+    }
+
+    /**
+     * Returns the tiles of the base layer, e.g. to save them.  They stay valid until released.
+     *
+     * @return The tiles, or null if there is no base layer
+     */
+    synchronized BaseTiles acquireBase(){
+        if(base == null){
+            return null;
+        }
+        LongSparseArray<TileSnapshot> tiles = base.clone();
+        for(int i=0; i<tiles.size(); i++){
+            tiles.valueAt(i).references++;
+        }
+        return new BaseTiles(tiles);
+    }
+
+    /**
+     * Releases tiles returned by {@link #acquireBase()}.  Can be called from any thread.
+     *
+     * @param tiles The tiles, or null
+     */
+    synchronized void release(BaseTiles tiles){
+        if(tiles != null){
+            release(tiles.tiles);
+        }
+    }
+
+    /**
+     * Replaces the base layer, e.g. with the one of a history that was loaded.  The cache takes
+     * over the bitmaps, which must be tiles of {@link TiledCanvas#TILE_SIZE} from the pool.
+     *
+     * @param tiles The tiles by {@link TiledCanvas#key(int, int)}
+     */
+    synchronized void setBase(LongSparseArray<Bitmap> tiles){
+        clearBase();
+        LongSparseArray<TileSnapshot> snapshot = new LongSparseArray<>(tiles.size());
+        for(int i=0; i<tiles.size(); i++){
+            Bitmap bitmap = tiles.valueAt(i);
+            TileSnapshot tileSnapshot = new TileSnapshot(bitmap, TiledCanvas.nextVersion());
+            tileSnapshot.references++;
+            bytesUsed += bitmap.getByteCount();
+            snapshot.put(tiles.keyAt(i), tileSnapshot);
+        }
+        base = snapshot;
+    }
+
+    /**
+     * Indicates whether a checkpoint should be taken once the history holds the given number
+     * of strokes.  While paths that are not in the history yet are being drawn, the canvas holds
+     * their ink too, so a checkpoint that falls due then is deferred until they are added.
+     *
+     * @param strokeCount Number of strokes in the history
+     * @param drawing True while paths that are not in the history are drawn onto the canvas
+     * @return True if a checkpoint belongs at this stroke count and none is stored yet
+     */
+    synchronized boolean isDue(int strokeCount, boolean drawing){
+        boolean due = strokeCount > 0 && strokeCount % interval == 0 && !checkpoints.containsKey(strokeCount);
+        if(drawing){
+            if(due){
+                deferredCount = strokeCount;
+            }
+            return false;
+        }
+
+        // paths undone since a checkpoint was deferred leave nothing to take it for
+        boolean deferred = deferredCount > 0 && strokeCount >= deferredCount;
+        deferredCount = 0;
+        return due || deferred;
+    }
+
+    /**
+     * Stores a snapshot of the given canvas as the checkpoint for the given stroke count.  Tiles
+     * that are unchanged since the previous checkpoint are shared instead of copied.  If the
+     * snapshot does not fit in the memory budget, older checkpoints are evicted.
+     *
+     * @param strokeCount Number of strokes drawn onto the canvas
+     * @param canvas The canvas to snapshot
+     */
+    synchronized void save(int strokeCount, TiledCanvas canvas){
+        remove(strokeCount);
+
+        Map.Entry<Integer, LongSparseArray<TileSnapshot>> previousEntry = checkpoints.lowerEntry(strokeCount);
+        LongSparseArray<TileSnapshot> previous = (previousEntry != null) ? previousEntry.getValue() : base;
+        LongSparseArray<TiledCanvas.Tile> tiles = canvas.tiles;
+
+        // only tiles that changed since the previous checkpoint need a copy
+        long bytes = 0;
+        for(int i=0; i<tiles.size(); i++){
+            if(findShared(previous, tiles.keyAt(i), tiles.valueAt(i)) == null){
+                bytes += tiles.valueAt(i).bitmap.getByteCount();
+            }
+        }
+        if(bytes > memoryBudget){
+            // the snapshot would not fit - don't bother copying it
+            return;
+        }
+
+        LongSparseArray<TileSnapshot> snapshot = new LongSparseArray<>(tiles.size());
+        for(int i=0; i<tiles.size(); i++){
+            TiledCanvas.Tile tile = tiles.valueAt(i);
+            TileSnapshot tileSnapshot = findShared(previous, tiles.keyAt(i), tile);
+            if(tileSnapshot == null){
+                Bitmap copy = canvas.copy(tile);
+                tileSnapshot = new TileSnapshot(copy, tile.version);
+                bytesUsed += copy.getByteCount();
+            }
+            tileSnapshot.references++;
+            snapshot.put(tiles.keyAt(i), tileSnapshot);
+        }
+
+        checkpoints.put(strokeCount, snapshot);
+        trimToBudget(strokeCount);
+    }
+
+    /**
+     * Restores the closest checkpoint at or below the given stroke count into a range of tiles.
+     * The tiles are expected to be erased.
+     *
+     * @param strokeCount Number of strokes the canvas should end up showing
+     * @param canvas Canvas to restore the tiles of
+     * @param tileRange The tiles to restore, in tile coordinates
+     * @return The stroke count of the restored checkpoint, or 0 if only the base layer or
+     *         nothing was restored
+     */
+    synchronized int restore(int strokeCount, TiledCanvas canvas, Rect tileRange){
+        Map.Entry<Integer, LongSparseArray<TileSnapshot>> entry = checkpoints.floorEntry(strokeCount);
+        if(entry == null){
+            if(base != null){
+                restore(base, canvas, tileRange);
+            }
+            return 0;
+        }
+
+        restore(entry.getValue(), canvas, tileRange);
+        return entry.getKey();
+    }
+
+    private static void restore(LongSparseArray<TileSnapshot> snapshot, TiledCanvas canvas, Rect tileRange){
+        for(int i=0; i<snapshot.size(); i++){
+            long key = snapshot.keyAt(i);
+            int tx = TiledCanvas.tileX(key), ty = TiledCanvas.tileY(key);
+            if(tx >= tileRange.left && tx < tileRange.right && ty >= tileRange.top && ty < tileRange.bottom){
+                TileSnapshot tileSnapshot = snapshot.valueAt(i);
+                canvas.put(key, tileSnapshot.bitmap, tileSnapshot.version);
+            }
+        }
+    }
+
+    /**
+     * Makes the checkpoint at the given stroke count the base layer, once the history dropped
+     * the strokes it holds.  Older checkpoints are released, and newer ones are renumbered to
+     * count from the base.
+     *
+     * @param strokeCount The stroke count of the checkpoint
+     * @return False if there is no checkpoint at that stroke count
+     */
+    synchronized boolean compact(int strokeCount){
+        LongSparseArray<TileSnapshot> snapshot = checkpoints.remove(strokeCount);
+        if(snapshot == null){
+            return false;
+        }
+
+        if(base != null){
+            release(base);
+        }
+        base = snapshot;
+
+        TreeMap<Integer, LongSparseArray<TileSnapshot>> newer = new TreeMap<>();
+        for(Map.Entry<Integer, LongSparseArray<TileSnapshot>> entry : checkpoints.entrySet()){
+            if(entry.getKey() < strokeCount){
+                release(entry.getValue());
+            } else {
+                newer.put(entry.getKey() - strokeCount, entry.getValue());
+            }
+        }
+        checkpoints.clear();
+        checkpoints.putAll(newer);
+        return true;
+    }
+
+    /**
+     * Drops every checkpoint taken after the given stroke count.  Used once the history diverges
+     * from the strokes those checkpoints were taken from.
+     *
+     * @param strokeCount The last stroke count that is still valid
+     */
+    synchronized void discardAfter(int strokeCount){
+        while(!checkpoints.isEmpty() && checkpoints.lastKey() > strokeCount){
+            remove(checkpoints.lastKey());
+        }
+    }
+
+    /**
+     * Drops all checkpoints and frees their memory.  The base layer is kept, it holds strokes
+     * that are no longer in the history.
+     */
+    synchronized void clear(){
+        for(LongSparseArray<TileSnapshot> snapshot : checkpoints.values()){
+            release(snapshot);
+        }
+        checkpoints.clear();
+        deferredCount = 0;
+    }
+
+    /**
+     * Drops the base layer, e.g. because the whiteboard was cleared.
+     */
+    synchronized void clearBase(){
+        if(base != null){
+            release(base);
+            base = null;
+        }
+    }
+
+    private static TileSnapshot findShared(LongSparseArray<TileSnapshot> previous, long key, TiledCanvas.Tile tile){
+        if(previous == null){
+            return null;
+        }
+        TileSnapshot candidate = previous.get(key);
+        return (candidate != null && candidate.version == tile.version) ? candidate : null;
+    }
+
+    private void trimToBudget(int keep){
+        while(bytesUsed > memoryBudget && !checkpoints.isEmpty()){
+            int oldest = checkpoints.firstKey();
+            if(oldest == keep){
+                // the newest snapshot alone exceeds the budget after all
+                oldest = checkpoints.lastKey();
+            }
+            remove(oldest);
+        }
+    }
+
+    private void remove(int strokeCount){
+        LongSparseArray<TileSnapshot> snapshot = checkpoints.remove(strokeCount);
+        if(snapshot != null){
+            release(snapshot);
+        }
+    }
+
+    private void release(LongSparseArray<TileSnapshot> snapshot){
+        for(int i=0; i<snapshot.size(); i++){
+            TileSnapshot tileSnapshot = snapshot.valueAt(i);
+            if(--tileSnapshot.references == 0){
+                bytesUsed -= tileSnapshot.bitmap.getByteCount();
+                pool.release(tileSnapshot.bitmap);
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.burkeapps.whiteboard.views;
+
+import java.util.Arrays;
+
+/**
+ * A HistoryCompactor keeps the history of a whiteboard within a number of strokes and points.
+ * Once the history grows past either limit, its oldest strokes are dropped and the checkpoint
+ * taken right after them becomes the base layer the canvas is rendered on, so memory and replay
+ * cost stop growing with the age of the board.
+ *
+ * No rendering is needed to compact: only a checkpoint that already exists can become the base
+ * layer.  To avoid compacting after every stroke, the history is cut down to half of the limits
+ * each time, and strokes that later steps erased or split are never dropped.
+ */
+class HistoryCompactor {
+
+    /**
+     * Share of the limits the history is cut down to by a compaction.
+     */
+    private static final int KEEP_DIVISOR = 2;
+
+    private int maxStrokes, maxPoints;
+    private int compactionCount;
+    private long compactedStrokes, compactedPoints;
+
+    /**
+     * Sets the limits of the history, 0 for no limit.
+     *
+     * @param maxStrokes Number of strokes the history may hold
+     * @param maxPoints Number of points the history may hold
+     */
+    void setLimits(int maxStrokes, int maxPoints){
+        if(maxStrokes < 0 || maxPoints < 0){
+            throw new IllegalArgumentException("History limits must not be negative");
+        }
+        this.maxStrokes = maxStrokes;
+        this.maxPoints = maxPoints;
+    }
+
+    /**
+     * Returns how many times the history was compacted.
+     */
+    int getCompactionCount(){
+        return compactionCount;
+    }
+
+    /**
+     * Returns how many strokes were dropped from the history in total.
+     */
+    long getCompactedStrokes(){
+        return compactedStrokes;
+    }
+
+    /**
+     * Returns how many points were dropped from the history in total.
+     */
+    long getCompactedPoints(){
+        return compactedPoints;
+    }
+
+    /**
+     * Indicates whether the history is past one of the limits.
+     */
+    boolean isDue(StrokeStore store){
+        return (maxStrokes > 0 && store.storedSize() > maxStrokes)
+                || (maxPoints > 0 && store.getTotalPointCount() > maxPoints);
+    }
+
+    /**
+     * Drops the oldest strokes of the history if it is past one of the limits.  The checkpoint
+     * closest to the number of strokes that have to go is made the base layer; if no checkpoint
+     * fits, nothing is dropped until a later one does.
+     *
+     * @param store The history
+     * @param checkpoints The checkpoints of the history
+     * @return The number of strokes dropped, their indices are taken by the remaining strokes
+     */
+    int compact(StrokeStore store, CheckpointCache checkpoints){
+        if(!isDue(store)){
+            return 0;
+        }
+
+        int size = store.size();
+        int needed = 0;
+        if(maxStrokes > 0){
+            needed = Math.max(needed, store.storedSize() - maxStrokes / KEEP_DIVISOR);
+        }
+        if(maxPoints > 0){
+            // the fewest strokes whose points bring the history down to the kept share
+            int excess = store.getTotalPointCount() - maxPoints / KEEP_DIVISOR;
+            int low = 0, high = size;
+            while(low < high){
+                int mid = (low + high) >>> 1;
+                if(store.getPointOffset(mid) < excess){
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            needed = Math.max(needed, low);
+        }
+        needed = Math.max(1, Math.min(size, needed));
+
+        // never drop more than half of what would be kept, so some undo is always left
+        int limit = size - (size - needed) / KEEP_DIVISOR;
+        int[] counts = checkpoints.getStrokeCounts();
+        int first = Arrays.binarySearch(counts, needed);
+        if(first < 0){
+            first = -first - 1;
+        }
+
+        // prefer the smallest checkpoint that drops enough, then the largest that drops less
+        for(int i = first; i < counts.length && counts[i] <= limit; i++){
+            if(compact(store, checkpoints, counts[i])){
+                return counts[i];
+            }
+        }
+        for(int i = first - 1; i >= 0; i--){
+            if(compact(store, checkpoints, counts[i])){
+                return counts[i];
+            }
+        }
+        return 0;
+    }
+
+    private boolean compact(StrokeStore store, CheckpointCache checkpoints, int strokeCount){
+        int steps = store.findCompactionStep(strokeCount);
+        if(steps < 0){
+            return false;
+        }
+
+        int points = store.getPointOffset(strokeCount);
+        store.compact(steps);
+        checkpoints.compact(strokeCount);
+        compactionCount++;
+        compactedStrokes += strokeCount;
+        compactedPoints += points;
+        return true;
+    }
+}
@@ -0,0 +1,123 @@
+package com.burkeapps.whiteboard.views;
+
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import java.util.Arrays;
+
+/**
+ * HistorySteps are the steps a whiteboard takes on its history when a stroke is recorded, a step
+ * is undone, a checkpoint comes due or tiles are rendered again.  {@link WhiteboardView}, its
+ * {@link RenderEngine} and the JVM benchmarks all take them through here, so a benchmark times
+ * the code a device runs and a change to them reaches every caller.
+ */
+final class HistorySteps {
+
+    private HistorySteps(){
+    }
+
+    /**
+     * Records a finished stroke: its samples are stored, simplified and indexed by the area its
+     * ink covers.
+     *
+     * @param xy Interleaved x,y board coordinates of the samples
+     * @param times Event time of each sample
+     * @param count Number of samples
+     * @param bounds Set to the area the stroke's ink covers
+     * @return Index of the recorded stroke
+     */
+    static int record(StrokeStore strokes, StyleCache styles, StrokeIndex index, StrokeSimplifier simplifier,
+                      int style, float[] xy, long[] times, int count, RectF bounds){
+        strokes.beginStroke(style);
+        strokes.addPoints(xy, times, 0, count);
+        strokes.simplifyStroke(simplifier);
+        strokes.endStroke();
+        int stroke = strokes.size() - 1;
+        index(strokes, styles, index, stroke, bounds);
+        return stroke;
+    }
+
+    /**
+     * Indexes a stroke by the area its ink covers, including the reach of its style.
+     *
+     * @param bounds Set to that area
+     * @return bounds
+     */
+    static RectF index(StrokeStore strokes, StyleCache styles, StrokeIndex index, int stroke, RectF bounds){
+        StrokeRenderer.getBounds(strokes, stroke, styles.get(strokes.getStyle(stroke)), bounds);
+        index.add(stroke, bounds.left, bounds.top, bounds.right, bounds.bottom);
+        return bounds;
+    }
+
+    /**
+     * Brings the index up to date with a step that was just undone: the strokes it added are no
+     * longer visible and the strokes it erased are shown again.
+     *
+     * @param area Set to the area that has to be rendered again
+     * @param bounds Used for the bounds of each stroke
+     * @return The lowest index of a stroke that changed, checkpoints after it are stale
+     */
+    static int undone(StrokeStore strokes, StyleCache styles, StrokeIndex index, RectF area, RectF bounds){
+        int step = strokes.getStepCount();
+        int undone = strokes.size();
+        index.setVisibleCount(undone);
+        int changed = undone;
+        area.setEmpty();
+        for(int i = undone; i < strokes.getStepStrokeEnd(step); i++){
+            area.union(StrokeRenderer.getBounds(strokes, i, styles.get(strokes.getStyle(i)), bounds));
+        }
+        for(int i=0; i<strokes.getStepErasedCount(step); i++){
+            int erased = strokes.getStepErased(step, i);
+            index.setHidden(erased, false);
+            area.union(StrokeRenderer.getBounds(strokes, erased, styles.get(strokes.getStyle(erased)), bounds));
+            changed = Math.min(changed, erased);
+        }
+        return changed;
+    }
+
+    /**
+     * Saves a checkpoint of the tiles if one is due, see {@link CheckpointCache#isDue(int, boolean)}.
+     *
+     * @param drawing True while paths that are not in the history are drawn onto the tiles
+     * @return True if a checkpoint was saved
+     */
+    static boolean saveCheckpointIfDue(CheckpointCache checkpoints, StrokeStore strokes, TiledCanvas tiles,
+                                       boolean drawing){
+        if(!checkpoints.isDue(strokes.size(), drawing)){
+            return false;
+        }
+        checkpoints.save(strokes.size(), tiles);
+        return true;
+    }
+
+    /**
+     * Finds the visible strokes that put ink on a range of tiles.  The index can only be read
+     * where the history changes, so a render gets them up front.
+     *
+     * @param area Set to the area of the tiles
+     * @return Indices of the strokes, in drawing order
+     */
+    static int[] findVisible(StrokeStore strokes, StrokeIndex index, Rect tileRange, RectF area){
+        TiledCanvas.getTileArea(tileRange, area);
+        int found = index.query(area.left, area.top, area.right, area.bottom);
+        int[] visible = Arrays.copyOf(index.getResults(), found);
+        strokes.sortByOrder(visible, found);
+        return visible;
+    }
+
+    /**
+     * Renders a range of tiles into a back buffer: the closest checkpoint is restored, and the
+     * strokes drawn since are replayed on top.
+     *
+     * @param visible The strokes found by {@link #findVisible(StrokeStore, StrokeIndex, Rect, RectF)}
+     * @param back The canvas to render into, its tiles in the range are expected to be blank
+     * @param cancellable Checked during the replay, may be null
+     * @return False if the render was cancelled before it finished
+     */
+    static boolean render(StrokeRenderer renderer, StrokeStore strokes, StrokeStyle[] styles, int[] visible,
+                          CheckpointCache checkpoints, TiledCanvas back, Rect tileRange,
+                          StrokeRenderer.Cancellable cancellable){
+        int restored = checkpoints.restore(strokes.size(), back, tileRange);
+        return renderer.render(strokes, styles, visible, visible.length, restored, back, tileRange, cancellable);
+    }
+}
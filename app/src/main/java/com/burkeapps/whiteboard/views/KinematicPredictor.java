@@ -0,0 +1,159 @@
+package com.burkeapps.whiteboard.views;
+
+/**
+ * A KinematicPredictor extrapolates a pointer from its velocity and acceleration.  Both are
+ * estimated from the differences between consecutive samples and smoothed over the last few
+ * samples, so the jitter of single samples does not swing the prediction around.
+ *
+ * The prediction never turns back: once a decelerating pointer would come to a halt, it stops
+ * there.  The acceleration is limited to what a hand does, and a pointer that barely moves is not
+ * predicted at all, so a tap or a pause does not grow a tail.
+ */
+public class KinematicPredictor implements MotionPredictor {
+
+    /**
+     * Default time to predict ahead in milliseconds, about the input and frame delay of a
+     * 60Hz display.
+     */
+    public static final long DEFAULT_HORIZON = 16;
+
+    /**
+     * Creates predictors with the default horizon.
+     */
+    public static final Factory FACTORY = new Factory() {
+        @Override
+        public MotionPredictor create() {
+            return new KinematicPredictor();
+        }
+    };
+
+    // weight of the newest sample in the smoothed velocity and acceleration
+    private static final float VELOCITY_SMOOTHING = 0.8f;
+    private static final float ACCELERATION_SMOOTHING = 0.3f;
+    // the largest acceleration predicted, in pixels per millisecond squared
+    private static final float MAX_ACCELERATION = 0.05f;
+    // slowest pointer predicted, in pixels per millisecond
+    private static final float MIN_SPEED = 0.05f;
+
+    private long horizon;
+    private float lastX, lastY;
+    private long lastTime;
+    // velocity of the latest pair of samples, and the smoothed velocity and acceleration
+    private float sampleVelocityX, sampleVelocityY;
+    private float velocityX, velocityY;
+    private float accelerationX, accelerationY;
+    // number of velocities measured since the last reset
+    private int velocities;
+    private boolean started;
+
+    public KinematicPredictor(){
+        this(DEFAULT_HORIZON);
+    }
+
+    /**
+     * @param horizon Time to predict ahead of the latest sample in milliseconds
+     */
+    public KinematicPredictor(long horizon){
+        setHorizon(horizon);
+    }
+
+    /**
+     * Sets the time to predict ahead of the latest sample.
+     *
+     * @param horizon The time in milliseconds, 0 disables prediction
+     */
+    public void setHorizon(long horizon){
+        if(horizon < 0){
+            throw new IllegalArgumentException("Horizon must not be negative: " + horizon);
+        }
+        this.horizon = horizon;
+    }
+
+    public long getHorizon(){
+        return horizon;
+    }
+
+    @Override
+    public void reset(){
+        started = false;
+        velocities = 0;
+        velocityX = velocityY = 0;
+        accelerationX = accelerationY = 0;
+    }
+
+    @Override
+    public void addSample(float x, float y, long time){
+        if(!started){
+            started = true;
+            lastX = x;
+            lastY = y;
+            lastTime = time;
+            return;
+        }
+
+        long dt = time - lastTime;
+        if(dt <= 0){
+            // batched samples can share a time, only the newest position counts
+            lastX = x;
+            lastY = y;
+            return;
+        }
+
+        float vx = (x - lastX) / dt, vy = (y - lastY) / dt;
+        if(velocities == 0){
+            velocityX = vx;
+            velocityY = vy;
+        } else {
+            float ax = (vx - sampleVelocityX) / dt, ay = (vy - sampleVelocityY) / dt;
+            if(velocities == 1){
+                accelerationX = ax;
+                accelerationY = ay;
+            } else {
+                accelerationX += (ax - accelerationX) * ACCELERATION_SMOOTHING;
+                accelerationY += (ay - accelerationY) * ACCELERATION_SMOOTHING;
+            }
+            velocityX += (vx - velocityX) * VELOCITY_SMOOTHING;
+            velocityY += (vy - velocityY) * VELOCITY_SMOOTHING;
+        }
+        velocities++;
+
+        sampleVelocityX = vx;
+        sampleVelocityY = vy;
+        lastX = x;
+        lastY = y;
+        lastTime = time;
+    }
+
+    @Override
+    public int predict(float[] out, int max){
+        // acceleration needs two velocities
+        if(velocities < 2 || max <= 0 || horizon == 0){
+            return 0;
+        }
+        float speedSquared = velocityX * velocityX + velocityY * velocityY;
+        if(speedSquared < MIN_SPEED * MIN_SPEED){
+            return 0;
+        }
+
+        float ax = accelerationX, ay = accelerationY;
+        float acceleration = (float) Math.hypot(ax, ay);
+        if(acceleration > MAX_ACCELERATION){
+            ax *= MAX_ACCELERATION / acceleration;
+            ay *= MAX_ACCELERATION / acceleration;
+        }
+
+        // slowing down, stop where the pointer would come to a halt rather than turn back
+        float end = horizon;
+        float along = velocityX * ax + velocityY * ay;
+        if(along < 0){
+            end = Math.min(end, -speedSquared / along);
+        }
+
+        for(int i=0; i<max; i++){
+            float t = end * (i + 1) / max;
+            out[i * 2] = lastX + velocityX * t + ax * t * t / 2;
+            out[i * 2 + 1] = lastY + velocityY * t + ay * t * t / 2;
+        }
+        return max;
+    }
+}
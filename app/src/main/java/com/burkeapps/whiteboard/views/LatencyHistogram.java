@@ -0,0 +1,155 @@
+package com.burkeapps.whiteboard.views;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * A LatencyHistogram counts durations in buckets whose width grows with the duration: each power
+ * of two is split into 8 buckets, so a percentile is off by at most an eighth of its value.
+ * Recording a duration only increments a counter, it never allocates.
+ *
+ * Durations are in microseconds.  Durations beyond a minute count into the last bucket, their
+ * exact maximum is still kept.
+ *
+ * Not thread safe, a whiteboard records and reports its histograms on the UI thread.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // 2^26us is a little over a minute
+    private static final int MAX_EXPONENT = 26;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final int[] counts = new int[BUCKETS];
+    private long count, sum;
+    private long min = Long.MAX_VALUE, max;
+
+    /**
+     * Counts a duration.
+     *
+     * @param micros The duration in microseconds, negative durations count as 0
+     */
+    public void record(long micros){
+        if(micros < 0){
+            micros = 0;
+        }
+        counts[bucket(micros)]++;
+        count++;
+        sum += micros;
+        min = Math.min(min, micros);
+        max = Math.max(max, micros);
+    }
+
+    /**
+     * Returns the number of durations recorded.
+     */
+    public long getCount(){
+        return count;
+    }
+
+    /**
+     * Returns the shortest duration recorded, or 0 if none was.
+     */
+    public long getMin(){
+        return (count > 0) ? min : 0;
+    }
+
+    /**
+     * Returns the longest duration recorded, or 0 if none was.
+     */
+    public long getMax(){
+        return max;
+    }
+
+    /**
+     * Returns the mean of the durations recorded, or 0 if none was.
+     */
+    public long getMean(){
+        return (count > 0) ? sum / count : 0;
+    }
+
+    /**
+     * Returns the duration that the given fraction of the recorded durations do not exceed, to
+     * the precision of the buckets.
+     *
+     * @param fraction The fraction from 0 to 1, e.g. 0.99 for the 99th percentile
+     * @return The upper bound of the bucket holding the percentile, or 0 if nothing was recorded
+     */
+    public long getPercentile(double fraction){
+        if(count == 0){
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for(int i=0; i<BUCKETS; i++){
+            seen += counts[i];
+            if(seen >= rank){
+                // the exact extremes are known, the bucket bound may lie beyond them, and the
+                // last bucket has no bound
+                return (i == BUCKETS - 1) ? max : Math.max(min, Math.min(max, upperBound(i)));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Adds the durations counted by another histogram to this one.
+     */
+    public void add(LatencyHistogram other){
+        for(int i=0; i<BUCKETS; i++){
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Forgets all durations recorded.
+     */
+    public void reset(){
+        Arrays.fill(counts, 0);
+        count = sum = max = 0;
+        min = Long.MAX_VALUE;
+    }
+
+    /**
+     * Summarizes the histogram as count, mean, median, 90th and 99th percentile and maximum, in
+     * milliseconds.
+     */
+    @Override
+    public String toString(){
+        return "n=" + count + " mean=" + millis(getMean()) + " p50=" + millis(getPercentile(0.5))
+                + " p90=" + millis(getPercentile(0.9)) + " p99=" + millis(getPercentile(0.99))
+                + " max=" + millis(max);
+    }
+
+    static int bucket(long micros){
+        if(micros < SUB_BUCKETS){
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if(exponent > MAX_EXPONENT){
+            return BUCKETS - 1;
+        }
+        // the bits below the leading one pick the bucket within the power of two
+        int sub = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBound(int bucket){
+        if(bucket < SUB_BUCKETS){
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + sub + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    private static String millis(long micros){
+        return String.format(Locale.US, "%.1fms", micros / 1000.0);
+    }
+}
@@ -0,0 +1,101 @@
+package com.burkeapps.whiteboard.views;
+
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.view.View;
+
+/**
+ * A Layer is content composited over the ink of a whiteboard that changes independently of it,
+ * like the path being drawn.  On hardware accelerated windows a layer lives in the overlay of its
+ * view, which is recorded into a display list of its own, so redrawing the layer does not record
+ * the view again and the ink tiles are not redrawn or uploaded.
+ *
+ * Without overlays (before API 18) or without hardware acceleration, the view draws its layers at
+ * the end of onDraw with {@link #drawInline(Canvas)} and invalidates itself instead.
+ */
+abstract class Layer extends Drawable {
+
+    private View host;
+    private boolean overlaid;
+
+    /**
+     * Adds the layer to a view that is attached to its window.
+     */
+    void attach(View view){
+        detach();
+        host = view;
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2 && view.isHardwareAccelerated()){
+            view.getOverlay().add(this);
+            overlaid = true;
+        }
+    }
+
+    /**
+     * Removes the layer from its view.
+     */
+    void detach(){
+        if(overlaid){
+            host.getOverlay().remove(this);
+            overlaid = false;
+        }
+        host = null;
+    }
+
+    /**
+     * Indicates whether the layer is drawn by the overlay of its view rather than by the view.
+     */
+    boolean isOverlaid(){
+        return overlaid;
+    }
+
+    /**
+     * Draws the layer as part of its view's content if it is not in the view's overlay.
+     */
+    void drawInline(Canvas canvas){
+        if(!overlaid){
+            draw(canvas);
+        }
+    }
+
+    /**
+     * Redraws an area of the layer.
+     */
+    void invalidate(Rect dirty){
+        if(overlaid){
+            // the overlay records the layer again, the view's own display list is kept
+            invalidateSelf();
+        } else if(host != null){
+            host.invalidate(dirty);
+        }
+    }
+
+    /**
+     * Redraws the whole layer.
+     */
+    void invalidate(){
+        if(overlaid){
+            invalidateSelf();
+        } else if(host != null){
+            host.invalidate();
+        }
+    }
+
+    @Override
+    public void setAlpha(int alpha){
+        // layers are drawn with the alpha of their paints
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter colorFilter){
+        // layers are drawn with the colors of their paints
+    }
+
+    @Override
+    public int getOpacity(){
+        return PixelFormat.TRANSLUCENT;
+    }
+}
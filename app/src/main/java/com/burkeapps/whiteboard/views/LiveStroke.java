@@ -0,0 +1,281 @@
+package com.burkeapps.whiteboard.views;
+
+import android.graphics.Path;
+import android.graphics.RectF;
+
+import java.util.Arrays;
+
+/**
+ * A LiveStroke is the stroke one pointer is drawing: every sample of it so far, the recent part of
+ * its path that is not on the ink tiles yet, the tail predicted past its latest sample, and the
+ * area its latest samples changed.  The samples go into the history in one go when the pointer
+ * goes up, so any number of pointers can draw at once while the history only ever sees finished
+ * strokes.
+ *
+ * A whiteboard keeps a fixed set of live strokes and hands them out as pointers go down, so a new
+ * stroke does not allocate.  The sample buffers only grow for strokes longer than any before.
+ */
+class LiveStroke {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    /**
+     * Number of points a live path collects before its finished part is moved onto the tiles.
+     */
+    static final int MAX_PATH_POINTS = 32;
+
+    /**
+     * Number of points of a predicted tail.
+     */
+    static final int TAIL_POINTS = 4;
+
+    // id of the pointer drawing the stroke, or -1 while the stroke is free
+    int pointerId = -1;
+    // style table index the stroke is recorded with
+    int style;
+
+    // interleaved x,y board coordinates and event times of the samples
+    float[] points = new float[INITIAL_CAPACITY * 2];
+    long[] times = new long[INITIAL_CAPACITY];
+    int size;
+
+    // the part of the stroke not drawn onto the tiles yet, and the number of samples in it
+    final Path path = new Path();
+    int pathPoints;
+    float lastX, lastY;
+    // start, control and end point of the last segment added to the path
+    float segmentStartX, segmentStartY, segmentControlX, segmentControlY, segmentEndX, segmentEndY;
+
+    // guesses where the pointer goes next, null to draw only the samples
+    MotionPredictor predictor;
+    // the path from the latest sample through the predicted points, only ever drawn live
+    final Path tail = new Path();
+    final float[] tailPoints = new float[TAIL_POINTS * 2];
+    final RectF tailBounds = new RectF();
+    boolean hasTail;
+
+    // area changed by the samples of the current touch event, and whether ink was drawn into it
+    final RectF dirtyBounds = new RectF();
+    boolean hasDirtyBounds;
+    boolean inkChanged;
+
+    boolean isFree(){
+        return pointerId < 0;
+    }
+
+    /**
+     * Returns a free stroke for a pointer going down.
+     *
+     * @param strokes The strokes of a whiteboard
+     * @return A free stroke, or null if every stroke is taken
+     */
+    static LiveStroke obtain(LiveStroke[] strokes){
+        for(LiveStroke stroke : strokes){
+            if(stroke.isFree()){
+                return stroke;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the stroke a pointer is drawing.
+     *
+     * @param strokes The strokes of a whiteboard
+     * @param pointerId Id of the pointer
+     * @return The stroke, or null if the pointer does not draw one
+     */
+    static LiveStroke find(LiveStroke[] strokes, int pointerId){
+        for(LiveStroke stroke : strokes){
+            if(stroke.pointerId == pointerId){
+                return stroke;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Starts the stroke of a pointer at its first sample.
+     */
+    void begin(int pointerId, int style, float x, float y, long time){
+        this.pointerId = pointerId;
+        this.style = style;
+        size = 0;
+        add(x, y, time);
+
+        path.reset();
+        path.moveTo(x, y);
+        pathPoints = 1;
+        lastX = segmentEndX = x;
+        lastY = segmentEndY = y;
+        if(predictor != null){
+            predictor.reset();
+            predictor.addSample(x, y, time);
+        }
+    }
+
+    /**
+     * Appends a batch of samples.
+     *
+     * @param xy Interleaved x,y board coordinates of the samples
+     * @param times Event time of each sample
+     * @param count Number of samples
+     */
+    void add(float[] xy, long[] times, int count){
+        ensureCapacity(size + count);
+        System.arraycopy(xy, 0, points, size * 2, count * 2);
+        System.arraycopy(times, 0, this.times, size, count);
+        size += count;
+        if(predictor != null){
+            for(int i=0; i<count; i++){
+                predictor.addSample(xy[i * 2], xy[i * 2 + 1], times[i]);
+            }
+        }
+    }
+
+    /**
+     * Extends the path to the next sample, the area of the new segment is added to the dirty area.
+     *
+     * @param x Board x of the sample
+     * @param y Board y of the sample
+     * @param smoothing Whether the path curves through the midpoints of the samples
+     */
+    void extend(float x, float y, boolean smoothing){
+        segmentStartX = segmentEndX;
+        segmentStartY = segmentEndY;
+        if(smoothing){
+            // curve towards the midpoint, the previous sample becomes the control point
+            segmentControlX = lastX;
+            segmentControlY = lastY;
+            segmentEndX = (lastX + x) / 2;
+            segmentEndY = (lastY + y) / 2;
+            path.quadTo(segmentControlX, segmentControlY, segmentEndX, segmentEndY);
+        } else {
+            segmentControlX = segmentEndX = x;
+            segmentControlY = segmentEndY = y;
+            path.lineTo(x, y);
+        }
+        pathPoints++;
+
+        // only the new segment and the join at its start change on screen
+        addDirtyPoint(segmentStartX, segmentStartY);
+        addDirtyPoint(segmentControlX, segmentControlY);
+        addDirtyPoint(segmentEndX, segmentEndY);
+
+        lastX = x;
+        lastY = y;
+    }
+
+    /**
+     * Indicates whether the path collected enough points to move its finished part onto the
+     * tiles, see {@link #keepLastSegment(boolean)}.
+     */
+    boolean isPathFull(){
+        return pathPoints >= MAX_PATH_POINTS;
+    }
+
+    /**
+     * Starts the path over from its last segment, once the rest of it was drawn onto the tiles.
+     * The last segment is kept so its join with the next one is drawn.
+     *
+     * @param smoothing Whether the path curves through the midpoints of the samples
+     */
+    void keepLastSegment(boolean smoothing){
+        path.rewind();
+        path.moveTo(segmentStartX, segmentStartY);
+        if(smoothing){
+            path.quadTo(segmentControlX, segmentControlY, segmentEndX, segmentEndY);
+        } else {
+            path.lineTo(segmentEndX, segmentEndY);
+        }
+        pathPoints = 2;
+    }
+
+    /**
+     * Ends the path at the last sample once the pointer went up.
+     *
+     * @param smoothing Whether the path curves through the midpoints of the samples
+     */
+    void finish(boolean smoothing){
+        addDirtyPoint(segmentEndX, segmentEndY);
+        if(smoothing && pathPoints > 1){
+            // a smoothed path ends at the last midpoint, connect it with the last sample
+            path.lineTo(lastX, lastY);
+            addDirtyPoint(lastX, lastY);
+        }
+    }
+
+    /**
+     * Throws the predicted tail away, its area is added to the dirty area.
+     */
+    void dropTail(){
+        if(hasTail){
+            addDirtyPoint(tailBounds.left, tailBounds.top);
+            addDirtyPoint(tailBounds.right, tailBounds.bottom);
+            tail.rewind();
+            hasTail = false;
+        }
+    }
+
+    /**
+     * Replaces the predicted tail with a new prediction from the samples so far.  The tail starts
+     * where the path ends, goes through the latest sample and on through the predicted points.
+     * The areas of the old and the new tail are added to the dirty area.
+     */
+    void predictTail(){
+        dropTail();
+        int count = (predictor != null) ? predictor.predict(tailPoints, TAIL_POINTS) : 0;
+        if(count == 0){
+            return;
+        }
+
+        tail.moveTo(segmentEndX, segmentEndY);
+        tail.lineTo(lastX, lastY);
+        tailBounds.set(lastX, lastY, lastX, lastY);
+        tailBounds.union(segmentEndX, segmentEndY);
+        for(int i=0; i<count; i++){
+            tail.lineTo(tailPoints[i * 2], tailPoints[i * 2 + 1]);
+            tailBounds.union(tailPoints[i * 2], tailPoints[i * 2 + 1]);
+        }
+        hasTail = true;
+        addDirtyPoint(tailBounds.left, tailBounds.top);
+        addDirtyPoint(tailBounds.right, tailBounds.bottom);
+    }
+
+    /**
+     * Frees the stroke for the next pointer.
+     */
+    void release(){
+        pointerId = -1;
+        size = 0;
+        path.reset();
+        tail.reset();
+        hasTail = false;
+        hasDirtyBounds = false;
+        inkChanged = false;
+    }
+
+    void addDirtyPoint(float x, float y){
+        if(hasDirtyBounds){
+            dirtyBounds.union(x, y);
+        } else {
+            dirtyBounds.set(x, y, x, y);
+            hasDirtyBounds = true;
+        }
+    }
+
+    private void add(float x, float y, long time){
+        ensureCapacity(size + 1);
+        points[size * 2] = x;
+        points[size * 2 + 1] = y;
+        times[size] = time;
+        size++;
+    }
+
+    private void ensureCapacity(int samples){
+        if(samples > times.length){
+            times = Arrays.copyOf(times, Math.max(samples, times.length * 2));
+            points = Arrays.copyOf(points, times.length * 2);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.burkeapps.whiteboard.views;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+/**
+ * A LiveStrokeLayer draws the recent part of the paths being drawn, the top layer of a whiteboard.
+ * The finished part of each path is moved onto the ink tiles, so this layer only ever holds a few
+ * segments per pointer and re-rasterizing it on each touch event is cheap.  The tails predicted
+ * past the latest samples are only ever drawn here.  Each path is drawn in the style it is
+ * recorded with.
+ */
+class LiveStrokeLayer extends Layer {
+
+    private final LiveStroke[] strokes;
+    private final StyleCache styles;
+    private final Viewport viewport;
+    private final BoardMetrics metrics;
+
+    /**
+     * @param strokes The live strokes, the paths and tails of those in use are drawn as they are
+     *                when the layer is drawn
+     * @param styles The styles the live paths refer to
+     * @param viewport The part of the board in view
+     * @param metrics Notified when the layer was drawn, it shows the latest touch events
+     */
+    LiveStrokeLayer(LiveStroke[] strokes, StyleCache styles, Viewport viewport, BoardMetrics metrics){
+        this.strokes = strokes;
+        this.styles = styles;
+        this.viewport = viewport;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void draw(Canvas canvas){
+        canvas.save();
+        canvas.scale(viewport.getZoom(), viewport.getZoom());
+        canvas.translate(-viewport.getLeft(), -viewport.getTop());
+        for(LiveStroke stroke : strokes){
+            if(!stroke.isFree()){
+                Paint paint = styles.get(stroke.style).getPaint();
+                canvas.drawPath(stroke.path, paint);
+                if(stroke.hasTail){
+                    canvas.drawPath(stroke.tail, paint);
+                }
+            }
+        }
+        canvas.restore();
+        metrics.frameDrawn();
+    }
+}
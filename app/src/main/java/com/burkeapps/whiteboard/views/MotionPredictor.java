@@ -0,0 +1,46 @@
+package com.burkeapps.whiteboard.views;
+
+/**
+ * A MotionPredictor guesses where a pointer is headed from its recent samples.  The path being
+ * drawn always ends where the finger was an input event and a frame ago; a whiteboard extends it
+ * on its live layer with the predicted points, and throws them away once the real samples arrive.
+ * Predicted points are never drawn onto the ink tiles or added to the history.
+ *
+ * A predictor follows one pointer at a time and is fed for every touch event, so feeding and
+ * asking it must not allocate.
+ *
+ * @see WhiteboardView#setMotionPredictor(Factory)
+ */
+public interface MotionPredictor {
+
+    /**
+     * Creates the predictors of a whiteboard, one for each pointer that can draw at once.
+     */
+    interface Factory {
+        MotionPredictor create();
+    }
+
+    /**
+     * Forgets the samples of the previous stroke, a new one starts with the next sample.
+     */
+    void reset();
+
+    /**
+     * Adds a sample of the pointer.
+     *
+     * @param x X coordinate of the sample
+     * @param y Y coordinate of the sample
+     * @param time Time of the sample in milliseconds, never before the time of the previous one
+     */
+    void addSample(float x, float y, long time);
+
+    /**
+     * Predicts the next positions of the pointer after its latest sample.
+     *
+     * @param out Receives the interleaved x,y coordinates of the predicted points, in the order the
+     *            pointer reaches them
+     * @param max Maximum number of points to predict
+     * @return The number of predicted points, 0 if the predictor has no guess
+     */
+    int predict(float[] out, int max);
+}
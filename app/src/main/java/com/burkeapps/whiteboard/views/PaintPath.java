@@ -4,7 +4,8 @@ import android.graphics.Paint;
 import android.graphics.Path;
 
 /**
- * This class composes a paint with an associated path object.
+ * This class composes a paint with an associated path object.  A single instance is reused to
+ * rebuild strokes from a {@link StrokeStore} when they need to be drawn.
  *
  * Created by Mike on 5/19/2015.
  */
@@ -18,6 +19,42 @@ public class PaintPath {
         this.path = path;
     }
 
+    /**
+     * Rebuilds this path from the points of a stored stroke.
+     *
+     * @param store The store holding the stroke
+     * @param stroke Index of the stroke to rebuild
+     * @param style Shared style to draw the stroke with
+     * @return This instance
+     */
+    PaintPath set(StrokeStore store, int stroke, StrokeStyle style){
+        this.paint = style.getPaint();
+        path.rewind();
+
+        int first = store.getPointOffset(stroke);
+        int count = store.getPointCount(stroke);
+        if(count > 0){
+            float[] points = store.getPoints();
+            path.moveTo(points[first * 2], points[first * 2 + 1]);
+            if(style.isSmooth()){
+                // curve through the midpoints, using the points themselves as control points
+                for(int p = first + 1; p < first + count; p++){
+                    float cx = points[(p - 1) * 2], cy = points[(p - 1) * 2 + 1];
+                    path.quadTo(cx, cy, (cx + points[p * 2]) / 2, (cy + points[p * 2 + 1]) / 2);
+                }
+                if(count > 1){
+                    int last = first + count - 1;
+                    path.lineTo(points[last * 2], points[last * 2 + 1]);
+                }
+            } else {
+                for(int p = first + 1; p < first + count; p++){
+                    path.lineTo(points[p * 2], points[p * 2 + 1]);
+                }
+            }
+        }
+        return this;
+    }
+
     public Paint getPaint() {
         return paint;
     }
@@ -0,0 +1,224 @@
+package com.burkeapps.whiteboard.views;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A PhotoLoader decodes a photo to the size of a whiteboard on a worker thread.  The photo is
+ * cropped around its center to the aspect of the board, like a centerCrop ImageView.  Only the
+ * cropped region is decoded, at the largest power of two subsample that still covers the board,
+ * and the result is scaled to exactly the board's size once.  A camera photo therefore never
+ * has to fit in memory at full resolution.
+ *
+ * A newer load supersedes any load still running; its result is dropped.  All methods must be
+ * called from the UI thread.
+ */
+class PhotoLoader {
+
+    /**
+     * Opens the encoded photo.  Called on the worker thread, twice per load.
+     */
+    interface Source {
+        InputStream open() throws IOException;
+    }
+
+    /**
+     * Notified on the UI thread when a load finishes.
+     */
+    interface Listener {
+        void onPhotoLoaded(Bitmap photo);
+        void onPhotoFailed(IOException e);
+    }
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private ExecutorService executor;
+    private volatile int generation;
+
+    /**
+     * Starts decoding a photo, superseding any load still running.
+     *
+     * @param source Opens the photo
+     * @param width Width to scale the photo to
+     * @param height Height to scale the photo to
+     * @param listener Notified of the result unless the load is superseded
+     */
+    void load(final Source source, final int width, final int height, final Listener listener){
+        final int load = ++generation;
+        getExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                if(load != generation){
+                    return;
+                }
+
+                Bitmap photo = null;
+                IOException error = null;
+                try {
+                    photo = decode(source, width, height);
+                } catch(IOException e){
+                    error = e;
+                } catch(OutOfMemoryError e){
+                    error = new IOException("Not enough memory to decode the photo", e);
+                }
+
+                final Bitmap result = photo;
+                final IOException failure = error;
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if(load != generation){
+                            return;
+                        }
+                        if(failure == null){
+                            listener.onPhotoLoaded(result);
+                        } else {
+                            listener.onPhotoFailed(failure);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Drops the result of any load still running.
+     */
+    void cancel(){
+        generation++;
+    }
+
+    /**
+     * Decodes the region of a photo that covers a board of the given size, scaled to that size.
+     */
+    static Bitmap decode(Source source, int width, int height) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        InputStream in = source.open();
+        try {
+            BitmapFactory.decodeStream(in, null, options);
+        } finally {
+            in.close();
+        }
+        if(options.outWidth <= 0 || options.outHeight <= 0){
+            throw new IOException("Not an image");
+        }
+
+        Rect crop = new Rect();
+        getCropRect(options.outWidth, options.outHeight, width, height, crop);
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = getSampleSize(crop.width(), crop.height(), width, height);
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+
+        Bitmap decoded;
+        Rect region = new Rect();
+        in = source.open();
+        try {
+            decoded = decodeRegion(in, crop, options);
+            if(decoded != null){
+                region.set(0, 0, decoded.getWidth(), decoded.getHeight());
+            }
+        } finally {
+            in.close();
+        }
+        if(decoded == null){
+            // no region decoder for this format, subsample the whole photo and crop when scaling
+            in = source.open();
+            try {
+                decoded = BitmapFactory.decodeStream(in, null, options);
+            } finally {
+                in.close();
+            }
+            if(decoded == null){
+                throw new IOException("Could not decode the image");
+            }
+            int sample = options.inSampleSize;
+            region.set(crop.left / sample, crop.top / sample, crop.right / sample, crop.bottom / sample);
+        }
+
+        if(region.left == 0 && region.top == 0 && decoded.getWidth() == width && decoded.getHeight() == height){
+            return decoded;
+        }
+        Bitmap scaled = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(scaled);
+        canvas.drawBitmap(decoded, region, new Rect(0, 0, width, height), new Paint(Paint.FILTER_BITMAP_FLAG));
+        canvas.setBitmap(null);
+        decoded.recycle();
+        return scaled;
+    }
+
+    private static Bitmap decodeRegion(InputStream in, Rect crop, BitmapFactory.Options options){
+        BitmapRegionDecoder decoder;
+        try {
+            decoder = BitmapRegionDecoder.newInstance(in, false);
+        } catch(IOException e){
+            return null;
+        }
+        try {
+            return decoder.decodeRegion(crop, options);
+        } finally {
+            decoder.recycle();
+        }
+    }
+
+    /**
+     * Finds the centered region of a photo with the aspect of the board it is drawn on.
+     *
+     * @param out Set to the region in photo pixels
+     */
+    static void getCropRect(int photoWidth, int photoHeight, int width, int height, Rect out){
+        if((long) photoWidth * height > (long) photoHeight * width){
+            // wider than the board, crop the sides
+            int cropWidth = (int) ((long) photoHeight * width / height);
+            int left = (photoWidth - cropWidth) / 2;
+            out.set(left, 0, left + cropWidth, photoHeight);
+        } else {
+            int cropHeight = (int) ((long) photoWidth * height / width);
+            int top = (photoHeight - cropHeight) / 2;
+            out.set(0, top, photoWidth, top + cropHeight);
+        }
+    }
+
+    /**
+     * Returns the largest power of two a region can be subsampled by and still cover the board.
+     */
+    static int getSampleSize(int regionWidth, int regionHeight, int width, int height){
+        int sample = 1;
+        while(regionWidth / (sample * 2) >= width && regionHeight / (sample * 2) >= height){
+            sample *= 2;
+        }
+        return sample;
+    }
+
+    private ExecutorService getExecutor(){
+        if(executor == null){
+            executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    Thread thread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            r.run();
+                        }
+                    }, "WhiteboardPhoto");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+}
@@ -0,0 +1,329 @@
+package com.burkeapps.whiteboard.views;
+
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.view.Choreographer;
+
+/**
+ * A Playback redraws the history of a whiteboard the way it was drawn, paced by display frames.
+ * Each frame only draws the segments that became due since the previous frame onto the canvas,
+ * so the cost of a frame does not depend on how much was drawn before it.
+ *
+ * Playback runs on a timeline built from the recorded point times.  Long pauses between strokes
+ * are shortened, and strokes without recorded times (e.g. loaded from a file) are drawn at a
+ * fixed rate per point.  Erased strokes are left out; the pieces left over from them are played
+ * in place of the stroke they were split from.  Seeking restores the closest checkpoint and only
+ * replays the strokes drawn since it.
+ *
+ * A playback must be used from the UI thread, and the history must not change while it runs.
+ */
+class Playback implements Choreographer.FrameCallback {
+
+    /**
+     * Notified as a playback draws.
+     */
+    interface Listener {
+        /**
+         * Called after a frame drew onto the canvas.
+         *
+         * @param dirty The area drawn on, or null if the whole canvas changed
+         */
+        void onPlaybackFrame(RectF dirty);
+
+        void onPlaybackFinished();
+    }
+
+    /**
+     * Time per point of strokes that have no recorded times.
+     */
+    static final int DEFAULT_POINT_INTERVAL = 16;
+
+    /**
+     * Longest pause between two strokes, longer pauses are shortened to this.
+     */
+    static final int MAX_PAUSE = 500;
+
+    private final StrokeStore strokes;
+    private final StrokeStyle[] styles;
+    private final TiledCanvas canvas;
+    private final CheckpointCache checkpoints;
+    private final Listener listener;
+    private final StrokeRenderer renderer = new StrokeRenderer();
+    private final Path segments = new Path();
+    private final RectF bounds = new RectF(), dirty = new RectF();
+    private final Rect tileRange = new Rect();
+
+    // the strokes in the order they are played, and the timeline position each starts and ends at
+    private final int[] timeline;
+    private final long[] starts, ends;
+    private double position;
+    private float speed = 1;
+    private boolean running;
+    private long lastFrameNanos;
+
+    // the timeline entry drawn next and how many of its points are on the canvas
+    private int entry, point;
+    private boolean hasDirty;
+
+    Playback(StrokeStore strokes, StyleCache styles, TiledCanvas canvas, CheckpointCache checkpoints,
+             Listener listener){
+        this.strokes = strokes.snapshot();
+        this.styles = styles.table();
+        this.canvas = canvas;
+        this.checkpoints = checkpoints;
+        this.listener = listener;
+
+        int[] live = new int[this.strokes.size()];
+        int count = strokes.getLiveStrokes(0, live.length, live);
+        timeline = new int[count];
+        System.arraycopy(live, 0, timeline, 0, count);
+
+        starts = new long[count];
+        ends = new long[count];
+        layOut(strokes, timeline, count, starts, ends);
+    }
+
+    /**
+     * Returns the length of the timeline a playback of a history would have, without taking a
+     * snapshot of the history.
+     *
+     * @param strokes The history
+     * @return The duration in milliseconds
+     */
+    static long getDuration(StrokeStore strokes){
+        int[] live = new int[strokes.size()];
+        int count = strokes.getLiveStrokes(0, live.length, live);
+        return layOut(strokes, live, count, null, null);
+    }
+
+    /**
+     * Lays strokes out on a timeline, one after the other with the pauses between them.
+     *
+     * @param order The strokes in the order they are played
+     * @param count Number of strokes in order
+     * @param starts Set to the position each stroke starts at, may be null
+     * @param ends Set to the position each stroke ends at, may be null
+     * @return The length of the timeline in milliseconds
+     */
+    private static long layOut(StrokeStore strokes, int[] order, int count, long[] starts, long[] ends){
+        long time = 0;
+        for(int i=0; i<count; i++){
+            int stroke = order[i];
+            if(i > 0){
+                time += getPause(strokes, order[i - 1], stroke);
+            }
+            if(starts != null){
+                starts[i] = time;
+            }
+            time += getPointTime(strokes, stroke, strokes.getPointCount(stroke) - 1);
+            if(ends != null){
+                ends[i] = time;
+            }
+        }
+        return time;
+    }
+
+    /**
+     * Returns the length of the timeline in milliseconds.
+     */
+    long getDuration(){
+        return ends.length > 0 ? ends[ends.length - 1] : 0;
+    }
+
+    long getPosition(){
+        return (long) position;
+    }
+
+    void setSpeed(float speed){
+        if(speed <= 0){
+            throw new IllegalArgumentException("Playback speed must be positive: " + speed);
+        }
+        this.speed = speed;
+    }
+
+    boolean isRunning(){
+        return running;
+    }
+
+    /**
+     * Starts or resumes the playback from its current position.
+     */
+    void play(){
+        if(running){
+            return;
+        }
+        running = true;
+        lastFrameNanos = 0;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    void pause(){
+        running = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+    }
+
+    /**
+     * Stops the playback for good and lets the history write over the arrays of its snapshot
+     * again.  The playback must not be used afterwards.
+     */
+    void release(){
+        pause();
+        strokes.release();
+    }
+
+    /**
+     * Shows the canvas as it was at a position of the timeline.  The closest checkpoint at or
+     * before that position is restored and only the strokes since it are replayed.
+     *
+     * @param millis The position in milliseconds
+     */
+    void seek(long millis){
+        position = Math.max(0, Math.min(getDuration(), millis));
+
+        // timeline entries that are finished at the position
+        int finished = 0, high = ends.length;
+        while(finished < high){
+            int mid = (finished + high) >>> 1;
+            if(ends[mid] <= position){
+                finished = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        // a checkpoint holds the strokes drawn before a given order, so any checkpoint up to the
+        // order of the first unfinished entry only holds finished entries
+        int limit = finished < timeline.length ? strokes.getOrder(timeline[finished]) : strokes.size();
+        canvas.clear();
+        int restored = checkpoints.restore(limit, canvas, TiledCanvas.getAllTiles(tileRange));
+        for(int i=0; i<finished; i++){
+            if(timeline[i] >= restored){
+                renderer.drawStroke(strokes, styles, timeline[i], canvas);
+            }
+        }
+
+        entry = finished;
+        point = 0;
+        advance();
+        listener.onPlaybackFrame(null);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if(!running){
+            return;
+        }
+
+        if(lastFrameNanos != 0){
+            position = Math.min(getDuration(), position + (frameTimeNanos - lastFrameNanos) / 1e6 * speed);
+        }
+        lastFrameNanos = frameTimeNanos;
+
+        hasDirty = false;
+        advance();
+        if(hasDirty){
+            listener.onPlaybackFrame(dirty);
+        }
+
+        if(position >= getDuration()){
+            running = false;
+            listener.onPlaybackFinished();
+        } else {
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    /**
+     * Draws every segment that is due at the current position and was not drawn yet.
+     */
+    private void advance(){
+        while(entry < starts.length && position >= starts[entry]){
+            int stroke = timeline[entry];
+            int count = strokes.getPointCount(stroke);
+            int due = point;
+            long elapsed = (long) position - starts[entry];
+            while(due < count && getPointTime(stroke, due) <= elapsed){
+                due++;
+            }
+
+            if(due > point){
+                drawSegments(stroke, point, due, due == count);
+                point = due;
+            }
+            if(point < count){
+                break;
+            }
+            entry++;
+            point = 0;
+        }
+    }
+
+    /**
+     * Draws the segments of a stroke that end at the points in [from, to).
+     */
+    private void drawSegments(int stroke, int from, int to, boolean finished){
+        StrokeStyle style = styles[strokes.getStyle(stroke)];
+        int first = strokes.getPointOffset(stroke);
+        float[] xy = strokes.getPoints();
+        segments.rewind();
+
+        // the segment ending at point i starts at point i-1, or the midpoint before it if smooth
+        int start = Math.max(from, 1) - 1;
+        if(style.isSmooth() && start > 0){
+            int p = first + start;
+            segments.moveTo((xy[(p - 1) * 2] + xy[p * 2]) / 2, (xy[(p - 1) * 2 + 1] + xy[p * 2 + 1]) / 2);
+        } else {
+            segments.moveTo(xy[(first + start) * 2], xy[(first + start) * 2 + 1]);
+        }
+
+        for(int i = Math.max(from, 1); i < to; i++){
+            int p = first + i;
+            if(style.isSmooth()){
+                float cx = xy[(p - 1) * 2], cy = xy[(p - 1) * 2 + 1];
+                segments.quadTo(cx, cy, (cx + xy[p * 2]) / 2, (cy + xy[p * 2 + 1]) / 2);
+            } else {
+                segments.lineTo(xy[p * 2], xy[p * 2 + 1]);
+            }
+        }
+        if(finished && style.isSmooth() && to > 1){
+            int last = first + to - 1;
+            segments.lineTo(xy[last * 2], xy[last * 2 + 1]);
+        }
+
+        segments.computeBounds(bounds, true);
+        float reach = style.getReach();
+        bounds.inset(-reach, -reach);
+        canvas.drawPath(segments, style.getPaint(), bounds);
+
+        if(hasDirty){
+            dirty.union(bounds);
+        } else {
+            dirty.set(bounds);
+            hasDirty = true;
+        }
+    }
+
+    /**
+     * Returns the time of a point of a stroke on the timeline, relative to the stroke's start.
+     */
+    private long getPointTime(int stroke, int point){
+        return getPointTime(strokes, stroke, point);
+    }
+
+    private static long getPointTime(StrokeStore strokes, int stroke, int point){
+        int first = strokes.getPointOffset(stroke);
+        int last = first + strokes.getPointCount(stroke) - 1;
+        if(strokes.getTime(last) == strokes.getTime(first)){
+            // no recorded times, draw at a steady pace
+            return (long) point * DEFAULT_POINT_INTERVAL;
+        }
+        return strokes.getTime(first + point) - strokes.getTime(first);
+    }
+
+    private static long getPause(StrokeStore strokes, int previous, int stroke){
+        int pause = strokes.getTime(strokes.getPointOffset(stroke))
+                - strokes.getTime(strokes.getPointOffset(previous) + strokes.getPointCount(previous) - 1);
+        return Math.max(0, Math.min(MAX_PAUSE, pause));
+    }
+}
@@ -0,0 +1,259 @@
+package com.burkeapps.whiteboard.views;
+
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A RenderEngine re-renders tiles of a whiteboard from its history on a worker thread.  Tiles are
+ * rendered into a back buffer and swapped into the visible canvas on the UI thread in one step,
+ * so the whiteboard keeps showing its last complete frame until the new one is ready.
+ *
+ * Only the strokes a {@link StrokeIndex} finds in the area being rendered are replayed, so the
+ * cost of a render follows what is drawn in that area rather than the length of the history.
+ *
+ * Requests are coalesced: while a render is running, further requests only grow the area that
+ * is pending.  Any change to the visible canvas supersedes the running render, which then stops
+ * early and is followed by a single render of everything pending.
+ *
+ * The engine is paused while a stroke is being drawn: renders only see finished strokes, so
+ * swapping one in would wipe the parts of the live stroke that are already on the canvas.
+ *
+ * All methods must be called from the UI thread.
+ */
+class RenderEngine {
+
+    /**
+     * Notified on the UI thread after rendered tiles were swapped into the canvas.
+     */
+    interface Listener {
+        void onRenderApplied();
+    }
+
+    private final TiledCanvas canvas;
+    private final StrokeStore strokes;
+    private final StyleCache styles;
+    private final StrokeIndex index;
+    private final CheckpointCache checkpoints;
+    private final BitmapPool pool;
+    private final Listener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // only used from the worker thread
+    private final StrokeRenderer renderer = new StrokeRenderer();
+    private final Rect pendingTiles = new Rect();
+    private final RectF pendingArea = new RectF();
+    private ExecutorService executor;
+    private int generation;
+    private volatile int latestGeneration;
+    // the job on the worker thread, if any
+    private Job running;
+    private boolean paused;
+    private long appliedCount, supersededCount;
+    private long lastRenderMicros;
+
+    RenderEngine(TiledCanvas canvas, StrokeStore strokes, StyleCache styles, StrokeIndex index,
+                 CheckpointCache checkpoints, BitmapPool pool, Listener listener){
+        this.canvas = canvas;
+        this.strokes = strokes;
+        this.styles = styles;
+        this.index = index;
+        this.checkpoints = checkpoints;
+        this.pool = pool;
+        this.listener = listener;
+    }
+
+    /**
+     * Requests a range of tiles to be rendered again from the current history.
+     *
+     * @param tileRange The tiles to render, in tile coordinates
+     */
+    void requestRender(Rect tileRange){
+        if(tileRange.isEmpty()){
+            return;
+        }
+
+        pendingTiles.union(tileRange);
+        onCanvasChanged();
+        schedule();
+    }
+
+    /**
+     * Marks the visible canvas or the history as changed, which supersedes a running render.
+     */
+    void onCanvasChanged(){
+        generation++;
+        latestGeneration = generation;
+    }
+
+    /**
+     * Drops all pending renders, e.g. because the canvas was cleared.
+     */
+    void cancel(){
+        pendingTiles.setEmpty();
+        onCanvasChanged();
+    }
+
+    /**
+     * Pauses or resumes rendering.  A render finishing while paused is dropped and started again
+     * once rendering resumes.
+     *
+     * @param paused True to pause rendering
+     */
+    void setPaused(boolean paused){
+        this.paused = paused;
+        if(paused){
+            onCanvasChanged();
+        } else {
+            schedule();
+        }
+    }
+
+    /**
+     * Indicates whether the visible canvas is up to date with the history.
+     */
+    boolean isIdle(){
+        return running == null && pendingTiles.isEmpty();
+    }
+
+    /**
+     * Returns how many renders were swapped into the canvas.
+     */
+    long getAppliedCount(){
+        return appliedCount;
+    }
+
+    /**
+     * Returns how many renders were dropped because they were superseded.
+     */
+    long getSupersededCount(){
+        return supersededCount;
+    }
+
+    /**
+     * Returns how long the render last swapped into the canvas took on the worker thread, in
+     * microseconds.
+     */
+    long getLastRenderTime(){
+        return lastRenderMicros;
+    }
+
+    /**
+     * Stops the worker thread.  Pending renders are dropped; a later request starts a new thread.
+     */
+    void release(){
+        cancel();
+        running = null;
+        if(executor != null){
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    private void schedule(){
+        if(running != null || paused || pendingTiles.isEmpty()){
+            return;
+        }
+
+        // the index is only safe to read here, so the worker gets the strokes to replay up front
+        int[] visible = HistorySteps.findVisible(strokes, index, pendingTiles, pendingArea);
+        running = new Job(generation, new Rect(pendingTiles), strokes.snapshot(), styles.table(), visible);
+        getExecutor().execute(running);
+    }
+
+    private void finish(Job job, TiledCanvas back, boolean completed, long micros){
+        if(job != running){
+            // left over from before release()
+            back.clear();
+            return;
+        }
+
+        running = null;
+        if(completed && !paused && job.generation == generation){
+            canvas.replace(job.tileRange, back);
+            pendingTiles.setEmpty();
+            appliedCount++;
+            lastRenderMicros = micros;
+            listener.onRenderApplied();
+        } else {
+            // superseded - return the back buffer and render everything pending again
+            back.clear();
+            supersededCount++;
+            schedule();
+        }
+    }
+
+    private ExecutorService getExecutor(){
+        if(executor == null){
+            executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    Thread thread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            r.run();
+                        }
+                    }, "WhiteboardRender");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Renders a range of tiles of a snapshot of the history into a back buffer.
+     */
+    private class Job implements Runnable, StrokeRenderer.Cancellable {
+
+        final int generation;
+        final Rect tileRange;
+        final StrokeStore strokes;
+        final StrokeStyle[] styles;
+        final int[] visible;
+
+        Job(int generation, Rect tileRange, StrokeStore strokes, StrokeStyle[] styles, int[] visible){
+            this.generation = generation;
+            this.tileRange = tileRange;
+            this.strokes = strokes;
+            this.styles = styles;
+            this.visible = visible;
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            final TiledCanvas back = new TiledCanvas(pool);
+
+            boolean completed = false;
+            if(!isCancelled()){
+                // start from the closest checkpoint instead of blank tiles
+                completed = HistorySteps.render(renderer, strokes, styles, visible, checkpoints, back, tileRange,
+                        this);
+            }
+            // done reading the snapshot, the history may write over its arrays again
+            strokes.release();
+
+            final boolean result = completed;
+            final long micros = (System.nanoTime() - start) / 1000;
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    finish(Job.this, back, result, micros);
+                }
+            });
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return generation != latestGeneration;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.burkeapps.whiteboard.views;
+
+import android.graphics.Bitmap;
+import android.util.LongSparseArray;
+
+import com.burkeapps.whiteboard.io.WhiteboardReader;
+import com.burkeapps.whiteboard.io.WhiteboardWriter;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A SavedHistory remembers the file the history of a whiteboard was last written to or read
+ * from, and how much of the history the file holds.  Saving to the same file again then only
+ * appends what was drawn since, as long as nothing the file holds was undone or erased.
+ *
+ * A file written from scratch is written next to the target and renamed over it, so a reader
+ * still mapping the old file, e.g. one the history is being loaded from, keeps reading it.
+ *
+ * A file written from scratch starts with the tiles of the base layer, the image of the strokes
+ * compacted out of the history.  Appending never needs them: strokes compacted after the file
+ * was written are still in the file.
+ */
+class SavedHistory {
+
+    private File file;
+    private int strokes, styles;
+    // number of stroke records in the file, erased strokes are not saved
+    private int records;
+
+    /**
+     * Writes a history to a file, appending to it if it holds the start of the history already.
+     */
+    void save(File target, StrokeStore store, StyleCache cache) throws IOException {
+        save(target, store, cache, null);
+    }
+
+    /**
+     * Writes a history to a file like {@link #save(File, StrokeStore, StyleCache)}, along with the
+     * base layer the history is drawn on.
+     *
+     * @param base The tiles of the base layer, or null if there is none
+     */
+    void save(File target, StrokeStore store, StyleCache cache, CheckpointCache.BaseTiles base) throws IOException {
+        save(target, store, cache.table(), cache.size(), null, base);
+    }
+
+    /**
+     * Writes a history to a file like {@link #save(File, StrokeStore, StyleCache)}, with its
+     * styles given as a table of which the first styleCount are used.
+     */
+    void save(File target, StrokeStore store, StrokeStyle[] table, int styleCount) throws IOException {
+        save(target, store, table, styleCount, null, null);
+    }
+
+    /**
+     * Writes a history to a file like {@link #save(File, StrokeStore, StrokeStyle[], int)}, with
+     * the points of its pending strokes decoded from the file they were loaded from, and the base
+     * layer the history is drawn on.
+     *
+     * @param pending Reader of the file the pending strokes were added from, or null
+     * @param base The tiles of the base layer, or null if there is none
+     */
+    void save(File target, StrokeStore store, StrokeStyle[] table, int styleCount,
+              WhiteboardReader pending, CheckpointCache.BaseTiles base) throws IOException {
+        if(target.equals(file) && target.exists()){
+            WhiteboardWriter writer = WhiteboardWriter.append(target);
+            try {
+                if(writer.getStrokeCount() == records && writer.getStyleCount() == styles){
+                    writer.writeStyles(table, styles, styleCount);
+                    writer.writeStrokes(store, strokes, store.size(), pending);
+                    strokes = store.size();
+                    styles = styleCount;
+                    records = writer.getStrokeCount();
+                    return;
+                }
+            } finally {
+                writer.close();
+            }
+        }
+
+        // the file is new or was changed by someone else, write it from scratch
+        File temp = new File(target.getPath() + ".tmp");
+        WhiteboardWriter writer = WhiteboardWriter.create(temp);
+        try {
+            if(base != null){
+                writeBase(writer, base);
+            }
+            writer.writeStyles(table, 0, styleCount);
+            writer.writeStrokes(store, 0, store.size(), pending);
+        } finally {
+            writer.close();
+        }
+        if(!temp.renameTo(target)){
+            throw new IOException("Could not replace " + target);
+        }
+        file = target;
+        strokes = store.size();
+        styles = styleCount;
+        records = store.getLiveCount();
+    }
+
+    /**
+     * Remembers a file a history was just read from.
+     */
+    void loaded(File source, int strokeCount, int styleCount){
+        file = source;
+        strokes = records = strokeCount;
+        styles = styleCount;
+    }
+
+    /**
+     * Forgets the file if a change to the history reaches into the part it holds.
+     *
+     * @param stroke Index of the first stroke that was undone, erased or redrawn
+     */
+    void changed(int stroke){
+        if(stroke < strokes){
+            // the file holds a stroke that changed, it has to be written again from scratch
+            file = null;
+        }
+    }
+
+    /**
+     * Follows the history after its oldest strokes were dropped.
+     *
+     * @param dropped Number of strokes dropped
+     */
+    void compacted(int dropped){
+        if(strokes < dropped){
+            file = null;
+        } else {
+            strokes -= dropped;
+        }
+    }
+
+    void clear(){
+        file = null;
+    }
+
+    private static void writeBase(WhiteboardWriter writer, CheckpointCache.BaseTiles base) throws IOException {
+        int size = TiledCanvas.TILE_SIZE;
+        int[] argb = new int[size * size];
+        for(int i=0; i<base.size(); i++){
+            long key = base.keyAt(i);
+            base.bitmapAt(i).getPixels(argb, 0, size, 0, 0, size, size);
+            writer.writeTile(TiledCanvas.tileX(key) * size, TiledCanvas.tileY(key) * size, size, size, argb);
+        }
+    }
+
+    /**
+     * Decodes the tiles of the base layer saved in a file.
+     *
+     * @param reader The file
+     * @param pool The pool to take the bitmaps of the tiles from
+     * @return The tiles by {@link TiledCanvas#key(int, int)}, or null if the file holds none
+     * @throws IOException If a tile is damaged or does not line up with the canvas tiles
+     */
+    static LongSparseArray<Bitmap> readBase(WhiteboardReader reader, BitmapPool pool) throws IOException {
+        int count = reader.getTileCount();
+        if(count == 0){
+            return null;
+        }
+
+        int size = TiledCanvas.TILE_SIZE;
+        int[] argb = new int[size * size];
+        LongSparseArray<Bitmap> tiles = new LongSparseArray<>(count);
+        try {
+            for(int i=0; i<count; i++){
+                int left = reader.getTileLeft(i), top = reader.getTileTop(i);
+                if(reader.getTileWidth(i) != size || reader.getTileHeight(i) != size
+                        || left % size != 0 || top % size != 0){
+                    throw new IOException("Tile " + i + " does not line up with the canvas tiles");
+                }
+                reader.readTile(i, argb);
+                Bitmap bitmap = pool.obtain(size, size, Bitmap.Config.ARGB_8888);
+                bitmap.setPixels(argb, 0, size, 0, 0, size, size);
+                tiles.put(TiledCanvas.key(left / size, top / size), bitmap);
+            }
+        } catch(IOException e){
+            for(int i=0; i<tiles.size(); i++){
+                pool.release(tiles.valueAt(i));
+            }
+            throw e;
+        }
+        return tiles;
+    }
+}
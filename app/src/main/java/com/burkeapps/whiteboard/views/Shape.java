@@ -0,0 +1,162 @@
+package com.burkeapps.whiteboard.views;
+
+import android.graphics.Matrix;
+import android.graphics.Path;
+import android.graphics.RectF;
+
+import java.util.Arrays;
+
+/**
+ * A Shape is a rectangle, triangle or ellipse that is still being placed on a whiteboard.  Its
+ * outline is defined once in a unit square and placed on the board by a transform, so moving or
+ * resizing it only changes the transform; the outline is mapped again the next time it is drawn.
+ *
+ * Once placed, the shape's outline becomes an ordinary stroke of the history, see
+ * {@link #getOutline()}.
+ */
+class Shape {
+
+    private static final RectF UNIT = new RectF(0, 0, 1, 1);
+
+    /**
+     * Length in pixels of a segment of the outline of an ellipse, roughly.
+     */
+    private static final float ELLIPSE_SEGMENT_LENGTH = 8;
+    private static final int MIN_ELLIPSE_SEGMENTS = 16;
+    private static final int MAX_ELLIPSE_SEGMENTS = 128;
+
+    private final int type;
+    private final Matrix transform = new Matrix();
+    private final RectF bounds = new RectF();
+    private final Path path = new Path();
+    private int style;
+
+    // the outline mapped onto the board as a closed polyline, built on demand
+    private float[] outline = new float[16];
+    private int outlineCount;
+    private boolean outlineValid;
+
+    /**
+     * @param type One of the WhiteboardView.SHAPE_ constants
+     * @param style Index of the style to draw the outline with
+     */
+    Shape(int type, int style){
+        this.type = type;
+        this.style = style;
+    }
+
+    int getType(){
+        return type;
+    }
+
+    int getStyle(){
+        return style;
+    }
+
+    void setStyle(int style){
+        this.style = style;
+    }
+
+    /**
+     * Places the shape in the rectangle spanned by two opposite corners.
+     */
+    void setCorners(float x1, float y1, float x2, float y2){
+        bounds.set(Math.min(x1, x2), Math.min(y1, y2), Math.max(x1, x2), Math.max(y1, y2));
+        transform.setRectToRect(UNIT, bounds, Matrix.ScaleToFit.FILL);
+        outlineValid = false;
+    }
+
+    /**
+     * Moves the shape by an offset.
+     */
+    void translate(float dx, float dy){
+        transform.postTranslate(dx, dy);
+        outlineValid = false;
+    }
+
+    /**
+     * Returns the rectangle the shape is placed in.
+     */
+    RectF getBounds(RectF out){
+        transform.mapRect(out, UNIT);
+        return out;
+    }
+
+    /**
+     * Returns the interleaved x,y coordinates of the outline on the board.  The outline is
+     * closed and then runs over its first segment once more.
+     *
+     * @see #getOutlineCount()
+     */
+    float[] getOutline(){
+        if(!outlineValid){
+            buildOutline();
+        }
+        return outline;
+    }
+
+    int getOutlineCount(){
+        if(!outlineValid){
+            buildOutline();
+        }
+        return outlineCount;
+    }
+
+    /**
+     * Returns the outline on the board as a path.  The path is reused by later calls.
+     */
+    Path getPath(){
+        float[] points = getOutline();
+        path.rewind();
+        path.moveTo(points[0], points[1]);
+        for(int i=1; i<outlineCount; i++){
+            path.lineTo(points[i * 2], points[i * 2 + 1]);
+        }
+        return path;
+    }
+
+    private void buildOutline(){
+        outlineCount = 0;
+        switch(type){
+            case WhiteboardView.SHAPE_TRIANGLE:
+                addPoint(0.5f, 0);
+                addPoint(1, 1);
+                addPoint(0, 1);
+                addPoint(0.5f, 0);
+                break;
+            case WhiteboardView.SHAPE_ELLIPSE:
+                // enough segments that the polyline looks round at the shape's size
+                getBounds(bounds);
+                float perimeter = (float) (Math.PI * (bounds.width() + bounds.height()) / 2);
+                int segments = Math.max(MIN_ELLIPSE_SEGMENTS,
+                        Math.min(MAX_ELLIPSE_SEGMENTS, (int) (perimeter / ELLIPSE_SEGMENT_LENGTH)));
+                for(int i=0; i<segments; i++){
+                    double angle = 2 * Math.PI * i / segments;
+                    addPoint((float) (0.5 + Math.cos(angle) / 2), (float) (0.5 + Math.sin(angle) / 2));
+                }
+                addPoint(1, 0.5f);
+                break;
+            default:
+                addPoint(0, 0);
+                addPoint(1, 0);
+                addPoint(1, 1);
+                addPoint(0, 1);
+                addPoint(0, 0);
+                break;
+        }
+        // retrace the first segment so the first corner is joined like the others, not capped
+        addPoint(outline[2], outline[3]);
+
+        transform.mapPoints(outline, 0, outline, 0, outlineCount);
+        outlineValid = true;
+    }
+
+    private void addPoint(float x, float y){
+        if(outlineCount * 2 == outline.length){
+            outline = Arrays.copyOf(outline, outline.length * 2);
+        }
+        outline[outlineCount * 2] = x;
+        outline[outlineCount * 2 + 1] = y;
+        outlineCount++;
+    }
+}
@@ -0,0 +1,77 @@
+package com.burkeapps.whiteboard.views;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+
+/**
+ * A ShapeLayer draws the shape being placed on a whiteboard, with handles at the corners it can
+ * be resized by.  It sits between the ink and the live path, so dragging the shape only records
+ * this layer again until the shape is committed to the ink.
+ */
+class ShapeLayer extends Layer {
+
+    private final StyleCache styles;
+    private final Paint handlePaint;
+    private final float handleRadius;
+    private final Viewport viewport;
+    private final RectF bounds = new RectF();
+    private Shape shape;
+
+    /**
+     * @param styles The styles shapes are drawn with
+     * @param handlePaint Paint of the corner handles
+     * @param handleRadius Radius of the corner handles in the view, they keep their size at any zoom
+     * @param viewport The part of the board in view
+     */
+    ShapeLayer(StyleCache styles, Paint handlePaint, float handleRadius, Viewport viewport){
+        this.styles = styles;
+        this.handlePaint = handlePaint;
+        this.handleRadius = handleRadius;
+        this.viewport = viewport;
+    }
+
+    /**
+     * Sets the shape to draw, null for none.
+     */
+    void setShape(Shape shape){
+        this.shape = shape;
+    }
+
+    Shape getShape(){
+        return shape;
+    }
+
+    /**
+     * Computes the area of the board the layer draws on for its current shape, handles included.
+     */
+    RectF getDirtyBounds(RectF out){
+        if(shape == null){
+            out.setEmpty();
+            return out;
+        }
+        shape.getBounds(out);
+        float reach = Math.max(handleRadius / viewport.getZoom(), styles.get(shape.getStyle()).getReach()) + 1;
+        out.inset(-reach, -reach);
+        return out;
+    }
+
+    @Override
+    public void draw(Canvas canvas){
+        if(shape == null){
+            return;
+        }
+
+        canvas.save();
+        canvas.scale(viewport.getZoom(), viewport.getZoom());
+        canvas.translate(-viewport.getLeft(), -viewport.getTop());
+        canvas.drawPath(shape.getPath(), styles.get(shape.getStyle()).getPaint());
+        canvas.restore();
+
+        viewport.toView(shape.getBounds(bounds), bounds);
+        canvas.drawCircle(bounds.left, bounds.top, handleRadius, handlePaint);
+        canvas.drawCircle(bounds.right, bounds.top, handleRadius, handlePaint);
+        canvas.drawCircle(bounds.right, bounds.bottom, handleRadius, handlePaint);
+        canvas.drawCircle(bounds.left, bounds.bottom, handleRadius, handlePaint);
+    }
+}
@@ -0,0 +1,160 @@
+package com.burkeapps.whiteboard.views;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import com.burkeapps.whiteboard.io.WhiteboardReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A StateWriter writes the history of a whiteboard to the file that holds its instance state on
+ * a worker thread, so saving the state does not block the UI thread.  Saves write a
+ * {@link StrokeStore#snapshotWithPending()}, which stays valid while the history keeps changing.
+ * The points of strokes that are still pending are decoded on the worker too, from the file they
+ * are being loaded from.  The tiles of the base layer a save is drawn on are held until the save
+ * is written.
+ *
+ * The writer keeps a {@link SavedHistory} that only its worker touches.  Changes to the history
+ * are queued to the worker like the saves are, so they reach it in the order they happened.
+ *
+ * All whiteboards share one worker, so a whiteboard restoring a file another one saved, e.g. the
+ * whiteboard of an activity recreated for a rotation, can read the file once it is written with
+ * {@link #whenWritten(Runnable)}.  All methods must be called from the UI thread.
+ */
+class StateWriter {
+
+    private static final String TAG = "StateWriter";
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable r) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, "WhiteboardState");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private static final Handler handler = new Handler(Looper.getMainLooper());
+
+    private final SavedHistory history = new SavedHistory();
+
+    /**
+     * Writes a history to a file, appending to it if it holds the start of the history already.
+     *
+     * @param target The file to write
+     * @param snapshot A snapshot of the strokes to write
+     * @param styles The style table the strokes refer to, see {@link StyleCache#table()}
+     * @param styleCount Number of styles in the table
+     * @param pending The file the pending strokes of the snapshot are loaded from, or null
+     * @param checkpoints The cache holding the base layer the strokes are drawn on
+     */
+    void save(final File target, final StrokeStore snapshot, final StrokeStyle[] styles, final int styleCount,
+              final File pending, final CheckpointCache checkpoints){
+        final CheckpointCache.BaseTiles base = checkpoints.acquireBase();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    WhiteboardReader reader = (pending != null) ? new WhiteboardReader(pending) : null;
+                    try {
+                        history.save(target, snapshot, styles, styleCount, reader, base);
+                    } finally {
+                        if(reader != null){
+                            reader.close();
+                        }
+                    }
+                } catch(IOException e){
+                    // a damaged file is not restored, the board starts over blank
+                    Log.w(TAG, "Could not save the whiteboard to " + target, e);
+                    history.clear();
+                }
+                snapshot.release();
+                checkpoints.release(base);
+            }
+        });
+    }
+
+    /**
+     * Deletes a file that held the history, e.g. once the whiteboard is blank.
+     */
+    void delete(final File target){
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                history.clear();
+                if(target.exists() && !target.delete()){
+                    Log.w(TAG, "Could not delete " + target);
+                }
+            }
+        });
+    }
+
+    /**
+     * @see SavedHistory#loaded(File, int, int)
+     */
+    void loaded(final File source, final int strokeCount, final int styleCount){
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                history.loaded(source, strokeCount, styleCount);
+            }
+        });
+    }
+
+    /**
+     * @see SavedHistory#changed(int)
+     */
+    void changed(final int stroke){
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                history.changed(stroke);
+            }
+        });
+    }
+
+    /**
+     * @see SavedHistory#compacted(int)
+     */
+    void compacted(final int dropped){
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                history.compacted(dropped);
+            }
+        });
+    }
+
+    void clear(){
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                history.clear();
+            }
+        });
+    }
+
+    /**
+     * Runs a callback on the UI thread once every write queued so far has finished.
+     */
+    static void whenWritten(final Runnable callback){
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                handler.post(callback);
+            }
+        });
+    }
+}
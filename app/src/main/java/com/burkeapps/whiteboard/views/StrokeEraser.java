@@ -0,0 +1,170 @@
+package com.burkeapps.whiteboard.views;
+
+import java.util.Arrays;
+
+/**
+ * A StrokeEraser cuts the parts of strokes that lie under a round eraser out of a
+ * {@link StrokeStore}.  A stroke the eraser touches is erased in the store's open erase step, and
+ * the runs of it that lie outside the eraser are added back as new strokes in its place.  A piece
+ * the same step added is removed instead, so going over a path again does not pile up pieces.
+ *
+ * Cuts are made where the edge of the eraser crosses a segment, so a long straight segment is
+ * shortened rather than dropped whole.  The points added at a cut get a time interpolated from
+ * the ends of the segment.
+ */
+class StrokeEraser {
+
+    /**
+     * Pieces shorter than this are dropped instead of leaving a dot behind.
+     */
+    private static final float MIN_PIECE_LENGTH = 0.5f;
+
+    // points and times of the pieces of the last stroke, and where each piece ends
+    private float[] xy = new float[256];
+    private int[] times = new int[128];
+    private int[] pieceEnds = new int[16];
+    private int pointCount, pieceCount;
+    private int pieceStart;
+    private float pieceLength;
+
+    /**
+     * Erases the parts of a stroke within a distance of a point.  If the stroke is touched, it is
+     * erased, or removed if the open erase step added it, and its remaining pieces are added to
+     * the store.
+     *
+     * @param store The store, with an open erase step
+     * @param stroke The stroke to erase from
+     * @param x X coordinate of the center of the eraser
+     * @param y Y coordinate of the center of the eraser
+     * @param radius Distance from the center within which the stroke's points are erased
+     * @return True if the stroke was touched
+     */
+    boolean erase(StrokeStore store, int stroke, float x, float y, float radius){
+        if(!cut(store, stroke, x, y, radius)){
+            return false;
+        }
+
+        int order = store.getOrder(stroke), style = store.getStyle(stroke);
+        store.eraseStroke(stroke);
+        for(int i=0, start=0; i<pieceCount; start = pieceEnds[i++]){
+            store.addStroke(order, style, xy, times, start, pieceEnds[i] - start);
+        }
+        return true;
+    }
+
+    /**
+     * Splits a stroke into the pieces outside the eraser.
+     *
+     * @return False if the eraser does not touch the stroke
+     */
+    private boolean cut(StrokeStore store, int stroke, float x, float y, float radius){
+        float[] points = store.getPoints();
+        int first = store.getPointOffset(stroke);
+        int count = store.getPointCount(stroke);
+        float r2 = radius * radius;
+        pointCount = pieceCount = 0;
+
+        if(count == 1){
+            float dx = points[first * 2] - x, dy = points[first * 2 + 1] - y;
+            return dx * dx + dy * dy <= r2;
+        }
+
+        boolean open = false, touched = false;
+        for(int a = first; a < first + count - 1; a++){
+            int b = a + 1;
+            float ax = points[a * 2], ay = points[a * 2 + 1];
+            float dx = points[b * 2] - ax, dy = points[b * 2 + 1] - ay;
+
+            // the part [enter, exit] of the segment a + t*d that lies inside the eraser
+            float fx = ax - x, fy = ay - y;
+            float qa = dx * dx + dy * dy, qb = 2 * (fx * dx + fy * dy), qc = fx * fx + fy * fy - r2;
+            float enter = 1, exit = 0;
+            if(qa == 0){
+                if(qc <= 0){
+                    enter = 0;
+                    exit = 1;
+                }
+            } else {
+                float discriminant = qb * qb - 4 * qa * qc;
+                if(discriminant > 0){
+                    float root = (float) Math.sqrt(discriminant);
+                    enter = Math.max(0, (-qb - root) / (2 * qa));
+                    exit = Math.min(1, (-qb + root) / (2 * qa));
+                }
+            }
+
+            if(enter >= exit){
+                // untouched, the segment continues the current piece
+                if(!open){
+                    startPiece(store, a, 0);
+                    open = true;
+                }
+                addPoint(store, a, 1);
+                continue;
+            }
+
+            touched = true;
+            if(enter > 0){
+                if(!open){
+                    startPiece(store, a, 0);
+                }
+                addPoint(store, a, enter);
+                endPiece();
+            } else if(open){
+                endPiece();
+            }
+            open = false;
+
+            if(exit < 1){
+                startPiece(store, a, exit);
+                addPoint(store, a, 1);
+                open = true;
+            }
+        }
+        if(open){
+            endPiece();
+        }
+        return touched;
+    }
+
+    private void startPiece(StrokeStore store, int a, float t){
+        pieceStart = pointCount;
+        pieceLength = 0;
+        addPoint(store, a, t);
+    }
+
+    /**
+     * Adds the point at t along the segment from point a to point a+1 to the current piece.
+     */
+    private void addPoint(StrokeStore store, int a, float t){
+        float[] points = store.getPoints();
+        int b = a + 1;
+        float x = points[a * 2] + (points[b * 2] - points[a * 2]) * t;
+        float y = points[a * 2 + 1] + (points[b * 2 + 1] - points[a * 2 + 1]) * t;
+        int time = store.getTime(a) + Math.round((store.getTime(b) - store.getTime(a)) * t);
+
+        if(pointCount == times.length){
+            times = Arrays.copyOf(times, pointCount * 2);
+            xy = Arrays.copyOf(xy, pointCount * 4);
+        }
+        if(pointCount > pieceStart){
+            float dx = x - xy[(pointCount - 1) * 2], dy = y - xy[(pointCount - 1) * 2 + 1];
+            pieceLength += (float) Math.sqrt(dx * dx + dy * dy);
+        }
+        xy[pointCount * 2] = x;
+        xy[pointCount * 2 + 1] = y;
+        times[pointCount++] = time;
+    }
+
+    private void endPiece(){
+        if(pieceLength < MIN_PIECE_LENGTH){
+            pointCount = pieceStart;
+            return;
+        }
+
+        if(pieceCount == pieceEnds.length){
+            pieceEnds = Arrays.copyOf(pieceEnds, pieceCount * 2);
+        }
+        pieceEnds[pieceCount++] = pointCount;
+    }
+}
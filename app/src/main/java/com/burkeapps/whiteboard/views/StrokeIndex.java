@@ -0,0 +1,348 @@
+package com.burkeapps.whiteboard.views;
+
+import java.util.Arrays;
+
+/**
+ * A StrokeIndex is a uniform grid over the bounds of the strokes of a {@link StrokeStore}, so
+ * strokes touching an area or near a point can be found without looking at every stroke.  Each
+ * grid cell lists the strokes whose bounds overlap it; cells are only allocated once a stroke
+ * touches them.
+ *
+ * Strokes are indexed in the order they are added to the store, so every cell list is sorted.
+ * Like the store, the index keeps undone strokes around and only hides them from queries until
+ * they are redone or replaced by a new stroke.  Erased strokes are hidden the same way, see
+ * {@link #setHidden(int, boolean)}.
+ */
+public class StrokeIndex {
+
+    /**
+     * Default width and height of a grid cell in pixels, the size of a canvas tile.
+     */
+    public static final int DEFAULT_CELL_SIZE = TiledCanvas.TILE_SIZE;
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int INITIAL_CELLS = 64;
+    private static final int INITIAL_CELL_CAPACITY = 4;
+
+    private final int cellSize;
+
+    // open addressing table of cells, a null list marks an empty slot
+    private long[] cellKeys = new long[INITIAL_CELLS];
+    private int[][] cellStrokes = new int[INITIAL_CELLS][];
+    private int[] cellSizes = new int[INITIAL_CELLS];
+    private int cellCount;
+
+    // left, top, right, bottom of each indexed stroke
+    private float[] bounds = new float[INITIAL_CAPACITY * 4];
+    private boolean[] hidden = new boolean[INITIAL_CAPACITY];
+    private int size;
+    private int visible;
+    // area covered by the strokes indexed since the index was cleared
+    private float left, top, right, bottom;
+
+    // query results, and the query each stroke was last found by to drop duplicates
+    private int[] results = new int[INITIAL_CAPACITY];
+    private int[] marks = new int[INITIAL_CAPACITY];
+    private int mark;
+
+    public StrokeIndex(){
+        this(DEFAULT_CELL_SIZE);
+    }
+
+    public StrokeIndex(int cellSize){
+        if(cellSize <= 0){
+            throw new IllegalArgumentException("Cell size must be positive: " + cellSize);
+        }
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * Adds a stroke to the index.  Strokes at or after the given index are removed first, the
+     * same way a new stroke discards the undone strokes of a {@link StrokeStore}.
+     *
+     * @param stroke Index of the stroke in its store
+     * @param left Left edge of the area the stroke draws on
+     * @param top Top edge of the area the stroke draws on
+     * @param right Right edge of the area the stroke draws on
+     * @param bottom Bottom edge of the area the stroke draws on
+     */
+    public void add(int stroke, float left, float top, float right, float bottom){
+        if(stroke > size){
+            throw new IllegalArgumentException("Stroke " + stroke + " added after " + size + " strokes");
+        }
+        truncate(stroke);
+
+        if(size * 4 == bounds.length){
+            bounds = Arrays.copyOf(bounds, bounds.length * 2);
+            marks = Arrays.copyOf(marks, bounds.length / 4);
+            hidden = Arrays.copyOf(hidden, bounds.length / 4);
+        }
+        hidden[size] = false;
+        bounds[size * 4] = left;
+        bounds[size * 4 + 1] = top;
+        bounds[size * 4 + 2] = right;
+        bounds[size * 4 + 3] = bottom;
+        if(size == 0){
+            this.left = left;
+            this.top = top;
+            this.right = right;
+            this.bottom = bottom;
+        } else {
+            this.left = Math.min(this.left, left);
+            this.top = Math.min(this.top, top);
+            this.right = Math.max(this.right, right);
+            this.bottom = Math.max(this.bottom, bottom);
+        }
+
+        for(int cy = cell(top); cy <= cell(bottom); cy++){
+            for(int cx = cell(left); cx <= cell(right); cx++){
+                addToCell(key(cx, cy), stroke);
+            }
+        }
+        size++;
+        visible = size;
+    }
+
+    /**
+     * Removes every stroke at or after the given index.
+     *
+     * @param count Number of strokes to keep
+     */
+    public void truncate(int count){
+        for(int stroke = size - 1; stroke >= count; stroke--){
+            // strokes are removed newest first, so they are at the end of their cells
+            int b = stroke * 4;
+            for(int cy = cell(bounds[b + 1]); cy <= cell(bounds[b + 3]); cy++){
+                for(int cx = cell(bounds[b]); cx <= cell(bounds[b + 2]); cx++){
+                    int slot = find(key(cx, cy));
+                    if(slot >= 0 && cellSizes[slot] > 0 && cellStrokes[slot][cellSizes[slot] - 1] == stroke){
+                        cellSizes[slot]--;
+                    }
+                }
+            }
+        }
+        size = Math.min(size, count);
+        visible = Math.min(visible, size);
+    }
+
+    /**
+     * Sets how many of the indexed strokes queries can find, following the undo and redo cursor
+     * of the store.
+     *
+     * @param count Number of visible strokes
+     */
+    public void setVisibleCount(int count){
+        if(count < 0 || count > size){
+            throw new IllegalArgumentException("Visible count " + count + " out of range 0.." + size);
+        }
+        visible = count;
+    }
+
+    /**
+     * Hides a stroke from queries or shows it again, e.g. because it was erased.
+     *
+     * @param stroke Index of an indexed stroke
+     * @param hidden True to hide the stroke
+     */
+    public void setHidden(int stroke, boolean hidden){
+        if(stroke >= size){
+            throw new IllegalArgumentException("Stroke " + stroke + " is not indexed");
+        }
+        this.hidden[stroke] = hidden;
+    }
+
+    /**
+     * Returns the number of indexed strokes, including hidden ones.
+     */
+    public int size(){
+        return size;
+    }
+
+    public int getVisibleCount(){
+        return visible;
+    }
+
+    /**
+     * Edges of the area covered by every stroke indexed since the index was last cleared or
+     * empty, including hidden and removed ones.  Only meaningful while the index is not empty.
+     */
+    public float getLeft(){
+        return left;
+    }
+
+    public float getTop(){
+        return top;
+    }
+
+    public float getRight(){
+        return right;
+    }
+
+    public float getBottom(){
+        return bottom;
+    }
+
+    /**
+     * Removes all strokes.
+     */
+    public void clear(){
+        Arrays.fill(cellStrokes, null);
+        Arrays.fill(cellSizes, 0);
+        cellCount = 0;
+        size = 0;
+        visible = 0;
+    }
+
+    /**
+     * Finds the visible strokes whose area intersects a rectangle.
+     *
+     * @return The number of strokes found, their indices are in {@link #getResults()}
+     */
+    public int query(float left, float top, float right, float bottom){
+        return query(left, top, right, bottom, -1, -1, 0);
+    }
+
+    /**
+     * Finds the visible strokes whose area comes within a radius of a point.
+     *
+     * @return The number of strokes found, their indices are in {@link #getResults()}
+     */
+    public int queryNear(float x, float y, float radius){
+        return query(x - radius, y - radius, x + radius, y + radius, x, y, radius);
+    }
+
+    /**
+     * Returns the stroke indices found by the last query, in ascending order.  The array is
+     * only valid until the next query.
+     */
+    public int[] getResults(){
+        return results;
+    }
+
+    private int query(float left, float top, float right, float bottom, float x, float y, float radius){
+        if(++mark == 0){
+            // the stamps wrapped around, start over
+            Arrays.fill(marks, 0);
+            mark = 1;
+        }
+
+        int found = 0;
+        for(int cy = cell(top); cy <= cell(bottom); cy++){
+            for(int cx = cell(left); cx <= cell(right); cx++){
+                int slot = find(key(cx, cy));
+                if(slot < 0){
+                    continue;
+                }
+
+                int[] strokes = cellStrokes[slot];
+                for(int i = 0, n = cellSizes[slot]; i < n && strokes[i] < visible; i++){
+                    int stroke = strokes[i];
+                    if(marks[stroke] != mark && !hidden[stroke] && matches(stroke, left, top, right, bottom, x, y, radius)){
+                        marks[stroke] = mark;
+                        if(found == results.length){
+                            results = Arrays.copyOf(results, found * 2);
+                        }
+                        results[found++] = stroke;
+                    }
+                }
+            }
+        }
+
+        // cells are visited in grid order, put the strokes back in drawing order
+        Arrays.sort(results, 0, found);
+        return found;
+    }
+
+    private boolean matches(int stroke, float left, float top, float right, float bottom,
+                            float x, float y, float radius){
+        int b = stroke * 4;
+        if(bounds[b] > right || bounds[b + 2] < left || bounds[b + 1] > bottom || bounds[b + 3] < top){
+            return false;
+        }
+        if(radius <= 0){
+            return true;
+        }
+
+        // distance from the point to the nearest point of the stroke's area
+        float dx = Math.max(0, Math.max(bounds[b] - x, x - bounds[b + 2]));
+        float dy = Math.max(0, Math.max(bounds[b + 1] - y, y - bounds[b + 3]));
+        return dx * dx + dy * dy <= radius * radius;
+    }
+
+    private int cell(float coordinate){
+        return (int) Math.floor(coordinate / cellSize);
+    }
+
+    private static long key(int cx, int cy){
+        return ((long) cx << 32) | (cy & 0xffffffffL);
+    }
+
+    private static int mix(long key){
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private int find(long key){
+        int mask = cellKeys.length - 1;
+        for(int slot = mix(key) & mask; cellStrokes[slot] != null; slot = (slot + 1) & mask){
+            if(cellKeys[slot] == key){
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void addToCell(long key, int stroke){
+        int mask = cellKeys.length - 1;
+        int slot = mix(key) & mask;
+        while(cellStrokes[slot] != null && cellKeys[slot] != key){
+            slot = (slot + 1) & mask;
+        }
+
+        if(cellStrokes[slot] == null){
+            cellKeys[slot] = key;
+            cellStrokes[slot] = new int[INITIAL_CELL_CAPACITY];
+            cellSizes[slot] = 0;
+            cellCount++;
+        }
+
+        int[] strokes = cellStrokes[slot];
+        int n = cellSizes[slot];
+        if(n > 0 && strokes[n - 1] == stroke){
+            // already listed, e.g. a cell counted twice
+            return;
+        }
+        if(n == strokes.length){
+            strokes = cellStrokes[slot] = Arrays.copyOf(strokes, n * 2);
+        }
+        strokes[n] = stroke;
+        cellSizes[slot] = n + 1;
+
+        // keep the table at most half full so probes stay short
+        if(cellCount * 2 > cellKeys.length){
+            rehash(cellKeys.length * 2);
+        }
+    }
+
+    private void rehash(int capacity){
+        long[] oldKeys = cellKeys;
+        int[][] oldStrokes = cellStrokes;
+        int[] oldSizes = cellSizes;
+        cellKeys = new long[capacity];
+        cellStrokes = new int[capacity][];
+        cellSizes = new int[capacity];
+
+        int mask = capacity - 1;
+        for(int i=0; i<oldKeys.length; i++){
+            if(oldStrokes[i] != null){
+                int slot = mix(oldKeys[i]) & mask;
+                while(cellStrokes[slot] != null){
+                    slot = (slot + 1) & mask;
+                }
+                cellKeys[slot] = oldKeys[i];
+                cellStrokes[slot] = oldStrokes[i];
+                cellSizes[slot] = oldSizes[i];
+            }
+        }
+    }
+}
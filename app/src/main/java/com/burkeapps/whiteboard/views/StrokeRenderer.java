@@ -0,0 +1,81 @@
+package com.burkeapps.whiteboard.views;
+
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+/**
+ * A StrokeRenderer draws strokes of a {@link StrokeStore} onto a {@link TiledCanvas}.  It owns the
+ * reusable path and rects needed to do so, so each thread that renders needs its own instance.
+ */
+class StrokeRenderer {
+
+    /**
+     * Lets a caller stop a long replay once its result is no longer needed.
+     */
+    interface Cancellable {
+        boolean isCancelled();
+    }
+
+    /**
+     * Number of strokes replayed between two checks for cancellation.
+     */
+    private static final int CANCEL_CHECK_INTERVAL = 16;
+
+    private final PaintPath paintPath = new PaintPath(null, new Path());
+    private final RectF bounds = new RectF();
+
+    /**
+     * Computes the area a stroke can put ink on, including the reach of its style.
+     */
+    static RectF getBounds(StrokeStore store, int stroke, StrokeStyle style, RectF out){
+        float reach = style.getReach();
+        out.set(store.getLeft(stroke) - reach, store.getTop(stroke) - reach,
+                store.getRight(stroke) + reach, store.getBottom(stroke) + reach);
+        return out;
+    }
+
+    /**
+     * Draws a single stroke onto every tile it touches.
+     */
+    void drawStroke(StrokeStore store, StrokeStyle[] styles, int stroke, TiledCanvas canvas){
+        StrokeStyle style = styles[store.getStyle(stroke)];
+        getBounds(store, stroke, style, bounds);
+        paintPath.set(store, stroke, style);
+        canvas.drawPath(paintPath.getPath(), paintPath.getPaint(), bounds);
+    }
+
+    /**
+     * Replays a list of strokes onto a range of tiles, e.g. the strokes a {@link StrokeIndex}
+     * found in the area of the tiles.  Strokes with an index below {@code from} are
+     * skipped, since a restored checkpoint already holds them.
+     *
+     * @param store The strokes to replay
+     * @param styles The style table of the strokes
+     * @param indices Indices of the strokes to replay, in drawing order
+     * @param count Number of indices
+     * @param from Index of the first stroke to replay
+     * @param canvas The canvas to draw on
+     * @param tileRange The tiles to draw on, in tile coordinates
+     * @param cancellable Checked during the replay, may be null
+     * @return False if the replay was cancelled before it finished
+     */
+    boolean render(StrokeStore store, StrokeStyle[] styles, int[] indices, int count, int from,
+                   TiledCanvas canvas, Rect tileRange, Cancellable cancellable){
+        for(int j=0; j<count; j++){
+            if(cancellable != null && j % CANCEL_CHECK_INTERVAL == 0 && cancellable.isCancelled()){
+                return false;
+            }
+
+            int i = indices[j];
+            if(i < from){
+                continue;
+            }
+            StrokeStyle style = styles[store.getStyle(i)];
+            getBounds(store, i, style, bounds);
+            paintPath.set(store, i, style);
+            canvas.drawPath(paintPath.getPath(), paintPath.getPaint(), bounds, tileRange);
+        }
+        return true;
+    }
+}
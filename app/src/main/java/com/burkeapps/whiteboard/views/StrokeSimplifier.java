@@ -0,0 +1,166 @@
+package com.burkeapps.whiteboard.views;
+
+import java.util.Arrays;
+
+/**
+ * A StrokeSimplifier drops points of a stroke that lie within a pixel tolerance of the line
+ * through their neighbours, using the Ramer-Douglas-Peucker algorithm.  Points are compacted in
+ * place and the work buffers are reused, so simplifying a stroke does not allocate once the
+ * buffers have grown to the usual stroke size.
+ */
+public class StrokeSimplifier {
+
+    /**
+     * Default tolerance in pixels, small enough that the simplified stroke is not visibly
+     * different once drawn with anti-aliasing.
+     */
+    public static final float DEFAULT_TOLERANCE = 1f;
+
+    private float tolerance;
+    private boolean[] keep = new boolean[256];
+    private int[] stack = new int[64];
+    private int lastRemoved;
+    private long totalRemoved;
+
+    public StrokeSimplifier(){
+        this(DEFAULT_TOLERANCE);
+    }
+
+    public StrokeSimplifier(float tolerance){
+        setTolerance(tolerance);
+    }
+
+    /**
+     * Sets the distance in pixels within which points are dropped.  A tolerance of 0 disables
+     * simplification.
+     *
+     * @param tolerance The tolerance to set
+     */
+    public void setTolerance(float tolerance){
+        if(tolerance < 0){
+            throw new IllegalArgumentException("Tolerance must not be negative: " + tolerance);
+        }
+        this.tolerance = tolerance;
+    }
+
+    public float getTolerance(){
+        return tolerance;
+    }
+
+    /**
+     * Simplifies a run of points in place.  The first and last points are always kept.
+     *
+     * @param xy Interleaved x,y coordinates
+     * @param offset Index of the first point of the run
+     * @param count Number of points in the run
+     * @return The number of points left at the start of the run
+     */
+    public int simplify(float[] xy, int offset, int count){
+        return simplify(xy, null, offset, count);
+    }
+
+    /**
+     * Simplifies a run of points in place, compacting a parallel array of per-point values such
+     * as timestamps along with them.  The first and last points are always kept.
+     *
+     * @param xy Interleaved x,y coordinates
+     * @param values One value per point, compacted like the points, may be null
+     * @param offset Index of the first point of the run
+     * @param count Number of points in the run
+     * @return The number of points left at the start of the run
+     */
+    public int simplify(float[] xy, int[] values, int offset, int count){
+        lastRemoved = 0;
+        if(tolerance == 0 || count < 3){
+            return count;
+        }
+
+        if(keep.length < count){
+            keep = new boolean[Math.max(count, keep.length * 2)];
+        }
+        Arrays.fill(keep, 0, count, false);
+        keep[0] = true;
+        keep[count - 1] = true;
+
+        float toleranceSq = tolerance * tolerance;
+        int top = 0;
+        top = push(top, 0, count - 1);
+        while(top > 0){
+            int last = stack[--top];
+            int first = stack[--top];
+
+            // find the point farthest from the segment between the ends of this range
+            float maxDistSq = 0;
+            int farthest = -1;
+            for(int i = first + 1; i < last; i++){
+                float distSq = segmentDistanceSq(xy, offset + i, offset + first, offset + last);
+                if(distSq > maxDistSq){
+                    maxDistSq = distSq;
+                    farthest = i;
+                }
+            }
+
+            if(farthest >= 0 && maxDistSq > toleranceSq){
+                keep[farthest] = true;
+                top = push(top, first, farthest);
+                top = push(top, farthest, last);
+            }
+        }
+
+        // compact the kept points to the front of the run
+        int kept = 0;
+        for(int i=0; i<count; i++){
+            if(keep[i]){
+                xy[(offset + kept) * 2] = xy[(offset + i) * 2];
+                xy[(offset + kept) * 2 + 1] = xy[(offset + i) * 2 + 1];
+                if(values != null){
+                    values[offset + kept] = values[offset + i];
+                }
+                kept++;
+            }
+        }
+
+        lastRemoved = count - kept;
+        totalRemoved += lastRemoved;
+        return kept;
+    }
+
+    /**
+     * Returns the number of points removed by the last call to simplify.
+     */
+    public int getLastRemovedCount(){
+        return lastRemoved;
+    }
+
+    /**
+     * Returns the number of points removed since this simplifier was created.
+     */
+    public long getTotalRemovedCount(){
+        return totalRemoved;
+    }
+
+    private int push(int top, int first, int last){
+        if(top + 2 > stack.length){
+            stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        stack[top++] = first;
+        stack[top++] = last;
+        return top;
+    }
+
+    private static float segmentDistanceSq(float[] xy, int p, int a, int b){
+        float px = xy[p * 2], py = xy[p * 2 + 1];
+        float ax = xy[a * 2], ay = xy[a * 2 + 1];
+        float dx = xy[b * 2] - ax, dy = xy[b * 2 + 1] - ay;
+
+        float lengthSq = dx * dx + dy * dy;
+        float t = 0;
+        if(lengthSq > 0){
+            t = ((px - ax) * dx + (py - ay) * dy) / lengthSq;
+            t = Math.max(0, Math.min(1, t));
+        }
+
+        float ex = ax + t * dx - px, ey = ay + t * dy - py;
+        return ex * ex + ey * ey;
+    }
+}
@@ -0,0 +1,910 @@
+package com.burkeapps.whiteboard.views;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A StrokeStore holds the drawing history of a whiteboard in packed primitive arrays.  Point
+ * coordinates of all strokes live in a single interleaved x/y float array, each stroke only keeps
+ * the offset of its first point and an index into a shared style table.
+ *
+ * The history is a list of steps: a step either adds one drawn stroke, or erases strokes and
+ * adds the pieces of them that were left over.  Erased strokes stay in the store so the step can
+ * be undone, but are skipped when drawing.  Pieces are drawn in the place of the stroke they were
+ * split from, see {@link #getOrder(int)}.
+ *
+ * Undo and redo are cursor moves: undone steps stay in the store until a new step is started, at
+ * which point they are discarded and their space is reused.
+ *
+ * Every point carries the time it was recorded at, in milliseconds since the first point of the
+ * store.  Points added without a time get the time of the point before them.
+ *
+ * A stroke can be added before its points are known, e.g. while they are still being read from a
+ * file, see {@link #addPendingStroke(int, int, float, float, float, float)}.
+ *
+ * A store is not thread-safe, but {@link #snapshot()} hands out a read-only view of the visible
+ * strokes that stays valid while this store keeps changing, so other threads can replay it.  The
+ * store only copies its arrays instead of writing over them while a snapshot of them has not been
+ * released.
+ */
+public class StrokeStore {
+
+    private static final int INITIAL_POINT_CAPACITY = 1024;
+    private static final int INITIAL_STROKE_CAPACITY = 64;
+    private static final int NOT_ERASED = Integer.MAX_VALUE;
+
+    // interleaved x,y coordinates of every point
+    float[] points;
+    // time of every point in milliseconds since timeOrigin
+    int[] pointTimes;
+    // point offset of each stroke, entry i+1 is the end of stroke i
+    int[] strokeOffsets;
+    // style table index of each stroke
+    int[] strokeStyles;
+    // left, top, right, bottom of the points of each stroke
+    float[] strokeBounds;
+    // drawing order of each stroke, its own index or that of the stroke it was split from
+    int[] strokeOrders;
+    // the step each stroke was erased by, or NOT_ERASED
+    int[] strokeErasedBy;
+    // whether the points of each stroke are still to be set
+    boolean[] strokePending;
+    // stroke count after each step, and the end of the strokes each step erased in erasedStrokes
+    int[] stepEnds;
+    int[] stepErasedEnds;
+    int[] erasedStrokes;
+    // scratch keys for sorting strokes into drawing order
+    long[] sortKeys;
+
+    // event time of the first point, or -1 until a point with a time was added
+    long timeOrigin = -1;
+    int lastTime;
+
+    int pointCount;
+    int strokeCount;
+    int erasedCount;
+    int stepCount;
+    // number of steps that are not undone, and the number of strokes they added
+    int cursor;
+    int size;
+    boolean strokeOpen;
+    boolean eraseOpen;
+    // number of unreleased snapshots reading the arrays, replaced along with the arrays
+    AtomicInteger readers;
+    // the reader count of the store this snapshot was taken from, until the snapshot is released
+    private AtomicInteger source;
+
+    public StrokeStore(){
+        allocate();
+    }
+
+    private StrokeStore(StrokeStore source){
+        this.source = source.readers;
+        this.source.incrementAndGet();
+        readers = new AtomicInteger();
+        points = source.points;
+        pointTimes = source.pointTimes;
+        timeOrigin = source.timeOrigin;
+        strokeOffsets = source.strokeOffsets;
+        strokeStyles = source.strokeStyles;
+        strokeBounds = source.strokeBounds;
+        strokeOrders = source.strokeOrders;
+        strokeErasedBy = source.strokeErasedBy;
+        strokePending = source.strokePending;
+        stepEnds = source.stepEnds;
+        stepErasedEnds = source.stepErasedEnds;
+        erasedStrokes = source.erasedStrokes;
+        stepCount = cursor = source.cursor;
+        strokeCount = size = source.size;
+        erasedCount = source.getErasedEnd(cursor);
+        pointCount = strokeOffsets[size];
+    }
+
+    /**
+     * Returns a read-only view of the visible strokes of this store.  The view shares the arrays
+     * of this store; the store stops writing over the parts the view can see and copies its
+     * arrays instead when it would have to, until the view is {@link #release() released}.  The
+     * view must not be modified.
+     *
+     * Strokes erased by an erase step that is still open may already show as erased in views
+     * taken during that step.
+     *
+     * @return A snapshot of the visible strokes
+     */
+    public StrokeStore snapshot(){
+        return new StrokeStore(this);
+    }
+
+    /**
+     * Returns a snapshot like {@link #snapshot()} that keeps its own record of which strokes are
+     * pending.  Strokes pending when it was taken stay pending in it while this store sets their
+     * points, so another thread reading it knows which points it has to decode itself.
+     *
+     * @return A snapshot of the visible strokes
+     */
+    public StrokeStore snapshotWithPending(){
+        StrokeStore snapshot = snapshot();
+        snapshot.strokePending = Arrays.copyOf(strokePending, size);
+        return snapshot;
+    }
+
+    /**
+     * Tells the store this snapshot was taken from that it is no longer read, so the store can
+     * write over its arrays again.  The snapshot must not be read afterwards.  Does nothing if this
+     * store is not a snapshot or was released already.  Can be called from any thread.
+     */
+    public void release(){
+        if(source != null){
+            source.decrementAndGet();
+            source = null;
+        }
+    }
+
+    /**
+     * Starts a new stroke.  Any undone strokes are discarded since they can no longer be redone.
+     *
+     * @param style Index of the style to draw the stroke with
+     */
+    public void beginStroke(int style){
+        if(strokeOpen || eraseOpen){
+            throw new IllegalStateException("A stroke is already in progress");
+        }
+
+        dropRedoSteps();
+        initStroke(style, strokeCount);
+        strokeOpen = true;
+    }
+
+    /**
+     * Appends a point to the stroke in progress, with the time of the point before it.
+     */
+    public void addPoint(float x, float y){
+        if(!strokeOpen){
+            throw new IllegalStateException("No stroke in progress");
+        }
+
+        ensurePointCapacity(pointCount + 1);
+        points[pointCount * 2] = x;
+        points[pointCount * 2 + 1] = y;
+        pointTimes[pointCount] = lastTime;
+        pointCount++;
+        includeInBounds(x, y);
+    }
+
+    /**
+     * Appends a point recorded at the given time to the stroke in progress.
+     *
+     * @param x X coordinate of the point
+     * @param y Y coordinate of the point
+     * @param time Time of the point in milliseconds, e.g. a {@link android.view.MotionEvent}'s
+     *             event time
+     */
+    public void addPoint(float x, float y, long time){
+        lastTime = toStoreTime(time);
+        addPoint(x, y);
+    }
+
+    /**
+     * Appends a batch of points to the stroke in progress.
+     *
+     * @param xy Interleaved x,y coordinates of the points
+     * @param offset Index of the first point to append
+     * @param count Number of points to append
+     */
+    public void addPoints(float[] xy, int offset, int count){
+        if(!strokeOpen){
+            throw new IllegalStateException("No stroke in progress");
+        }
+
+        ensurePointCapacity(pointCount + count);
+        System.arraycopy(xy, offset * 2, points, pointCount * 2, count * 2);
+        Arrays.fill(pointTimes, pointCount, pointCount + count, lastTime);
+        pointCount += count;
+        for(int i = offset; i < offset + count; i++){
+            includeInBounds(xy[i * 2], xy[i * 2 + 1]);
+        }
+    }
+
+    /**
+     * Appends a batch of points recorded at the given times to the stroke in progress.
+     *
+     * @param xy Interleaved x,y coordinates of the points
+     * @param times Time of each point in milliseconds
+     * @param offset Index of the first point to append
+     * @param count Number of points to append
+     */
+    public void addPoints(float[] xy, long[] times, int offset, int count){
+        int start = pointCount;
+        addPoints(xy, offset, count);
+        for(int i=0; i<count; i++){
+            pointTimes[start + i] = toStoreTime(times[offset + i]);
+        }
+        if(count > 0){
+            lastTime = pointTimes[start + count - 1];
+        }
+    }
+
+    /**
+     * Simplifies the points of the stroke in progress.
+     *
+     * @param simplifier The simplifier to apply
+     * @return The number of points removed
+     */
+    public int simplifyStroke(StrokeSimplifier simplifier){
+        if(!strokeOpen){
+            throw new IllegalStateException("No stroke in progress");
+        }
+
+        int first = strokeOffsets[strokeCount];
+        int count = pointCount - first;
+        int kept = simplifier.simplify(points, pointTimes, first, count);
+        pointCount = first + kept;
+        return count - kept;
+    }
+
+    /**
+     * Commits the stroke in progress to the history.
+     *
+     * @return The index of the committed stroke
+     */
+    public int endStroke(){
+        if(!strokeOpen){
+            throw new IllegalStateException("No stroke in progress");
+        }
+
+        strokeOpen = false;
+        strokeCount++;
+        strokeOffsets[strokeCount] = pointCount;
+        addStep();
+        return strokeCount - 1;
+    }
+
+    /**
+     * Discards the stroke in progress, if any.
+     */
+    public void cancelStroke(){
+        if(strokeOpen){
+            strokeOpen = false;
+            pointCount = strokeOffsets[strokeCount];
+        }
+    }
+
+    /**
+     * Starts an erase step.  Any undone steps are discarded since they can no longer be redone.
+     * Strokes erased and pieces added until {@link #endErase()} are undone and redone together.
+     */
+    public void beginErase(){
+        if(strokeOpen || eraseOpen){
+            throw new IllegalStateException("A stroke is already in progress");
+        }
+
+        dropRedoSteps();
+        addStep();
+        eraseOpen = true;
+    }
+
+    /**
+     * Erases a stroke in the open erase step.  A stroke the open step added itself, e.g. a piece
+     * left by an earlier pass of the eraser, is removed from the store instead, and the strokes
+     * added after it move down by one index.
+     *
+     * @param stroke Index of a stroke that is not erased
+     * @return True if the stroke was removed rather than erased
+     */
+    public boolean eraseStroke(int stroke){
+        if(!eraseOpen){
+            throw new IllegalStateException("No erase in progress");
+        }
+        if(stroke >= size || isErased(stroke)){
+            throw new IllegalArgumentException("Stroke " + stroke + " can not be erased");
+        }
+        if(stroke >= getStepStrokeStart(cursor - 1)){
+            removeStroke(stroke);
+            return true;
+        }
+
+        if(erasedCount == erasedStrokes.length){
+            erasedStrokes = Arrays.copyOf(erasedStrokes, erasedCount * 2);
+        }
+        erasedStrokes[erasedCount++] = stroke;
+        strokeErasedBy[stroke] = cursor - 1;
+        stepErasedEnds[cursor - 1] = erasedCount;
+        return false;
+    }
+
+    /**
+     * Adds a finished stroke in the open erase step, e.g. a piece of an erased stroke.
+     *
+     * @param order Drawing order of the stroke, see {@link #getOrder(int)}
+     * @param style Index of the style to draw the stroke with
+     * @param xy Interleaved x,y coordinates of the points
+     * @param times Time of each point, relative to this store like {@link #getTime(int)}
+     * @param offset Index of the first point
+     * @param count Number of points
+     * @return The index of the added stroke
+     */
+    public int addStroke(int order, int style, float[] xy, int[] times, int offset, int count){
+        if(!eraseOpen){
+            throw new IllegalStateException("No erase in progress");
+        }
+
+        initStroke(style, order);
+        ensurePointCapacity(pointCount + count);
+        System.arraycopy(xy, offset * 2, points, pointCount * 2, count * 2);
+        System.arraycopy(times, offset, pointTimes, pointCount, count);
+        pointCount += count;
+        for(int i = offset; i < offset + count; i++){
+            includeInBounds(xy[i * 2], xy[i * 2 + 1]);
+        }
+
+        strokeCount++;
+        strokeOffsets[strokeCount] = pointCount;
+        stepEnds[cursor - 1] = size = strokeCount;
+        return strokeCount - 1;
+    }
+
+    /**
+     * Adds a stroke whose points are not known yet as a step of its own, e.g. a stroke that is
+     * still to be read from a file.  The stroke gets room for its points and the given bounds, so
+     * it can be indexed and culled, but it must not be drawn or erased until its points were set
+     * with {@link #setPoints(int, float[])}.
+     *
+     * @param style Index of the style to draw the stroke with
+     * @param count Number of points of the stroke
+     * @return The index of the added stroke
+     */
+    public int addPendingStroke(int style, int count, float left, float top, float right, float bottom){
+        if(strokeOpen || eraseOpen){
+            throw new IllegalStateException("A stroke is already in progress");
+        }
+
+        dropRedoSteps();
+        initStroke(style, strokeCount);
+        ensurePointCapacity(pointCount + count);
+        Arrays.fill(pointTimes, pointCount, pointCount + count, lastTime);
+        pointCount += count;
+        int b = strokeCount * 4;
+        strokeBounds[b] = left;
+        strokeBounds[b + 1] = top;
+        strokeBounds[b + 2] = right;
+        strokeBounds[b + 3] = bottom;
+        strokePending[strokeCount] = true;
+
+        strokeCount++;
+        strokeOffsets[strokeCount] = pointCount;
+        addStep();
+        return strokeCount - 1;
+    }
+
+    /**
+     * Sets the points of a pending stroke.  The points are written in place, where snapshots
+     * taken while the stroke was pending see them too; they must not draw it before either.
+     *
+     * @param stroke Index of a pending stroke
+     * @param xy Interleaved x,y coordinates, as many points as the stroke was added with
+     */
+    public void setPoints(int stroke, float[] xy){
+        if(!isPending(stroke)){
+            throw new IllegalStateException("Stroke " + stroke + " is not pending");
+        }
+
+        System.arraycopy(xy, 0, points, strokeOffsets[stroke] * 2, getPointCount(stroke) * 2);
+        strokePending[stroke] = false;
+    }
+
+    /**
+     * Indicates whether the points of a stroke are still to be set, see
+     * {@link #addPendingStroke(int, int, float, float, float, float)}.
+     */
+    public boolean isPending(int stroke){
+        return strokePending[stroke];
+    }
+
+    /**
+     * Commits the open erase step to the history.  A step that changed nothing is dropped.
+     *
+     * @return True if the step erased or added any strokes
+     */
+    public boolean endErase(){
+        if(!eraseOpen){
+            throw new IllegalStateException("No erase in progress");
+        }
+
+        eraseOpen = false;
+        int step = cursor - 1;
+        if(getStepStrokeStart(step) == stepEnds[step] && getStepErasedCount(step) == 0){
+            stepCount = --cursor;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Moves the history cursor back by one step.  Does nothing while a stroke or an erase step is
+     * in progress.
+     *
+     * @return True if a step was undone
+     */
+    public boolean undo(){
+        if(cursor > 0 && !strokeOpen && !eraseOpen){
+            cursor--;
+            size = getStrokeEnd(cursor);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Moves the history cursor forward by one step.  Does nothing while a stroke or an erase step
+     * is in progress.
+     *
+     * @return True if a step was redone
+     */
+    public boolean redo(){
+        if(cursor < stepCount && !strokeOpen && !eraseOpen){
+            cursor++;
+            size = getStrokeEnd(cursor);
+            return true;
+        }
+        return false;
+    }
+
+    public boolean canUndo(){
+        return cursor > 0;
+    }
+
+    public boolean canRedo(){
+        return cursor < stepCount && !strokeOpen && !eraseOpen;
+    }
+
+    /**
+     * Removes all strokes, keeping the allocated arrays for reuse.
+     */
+    public void clear(){
+        if(isShared()){
+            allocate();
+        }
+        pointCount = 0;
+        strokeCount = 0;
+        erasedCount = 0;
+        stepCount = 0;
+        cursor = 0;
+        size = 0;
+        strokeOpen = false;
+        eraseOpen = false;
+        timeOrigin = -1;
+        lastTime = 0;
+    }
+
+    /**
+     * Returns the number of strokes added by the steps that are not undone.  Some of them may have
+     * been erased since, see {@link #isErased(int)}.
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Returns the number of stored strokes, including undone strokes that can be redone.
+     */
+    public int storedSize(){
+        return strokeCount;
+    }
+
+    /**
+     * Returns the number of strokes that are neither undone nor erased.
+     */
+    public int getLiveCount(){
+        return size - getErasedEnd(cursor);
+    }
+
+    /**
+     * Indicates whether a stroke was erased by a step that is not undone.
+     */
+    public boolean isErased(int stroke){
+        return strokeErasedBy[stroke] < cursor;
+    }
+
+    /**
+     * Returns the drawing order of a stroke.  Strokes are drawn by ascending order, then by
+     * index.  A drawn stroke's order is its index, a piece split from a stroke takes the order of
+     * that stroke so it stays beneath the strokes drawn after it.
+     */
+    public int getOrder(int stroke){
+        return strokeOrders[stroke];
+    }
+
+    /**
+     * Returns the number of steps that are not undone.
+     */
+    public int getStepCount(){
+        return cursor;
+    }
+
+    /**
+     * Returns the index of the first stroke added by a step.
+     */
+    public int getStepStrokeStart(int step){
+        return getStrokeEnd(step);
+    }
+
+    /**
+     * Returns the index after the last stroke added by a step.
+     */
+    public int getStepStrokeEnd(int step){
+        return stepEnds[step];
+    }
+
+    /**
+     * Returns the number of strokes erased by a step.
+     */
+    public int getStepErasedCount(int step){
+        return stepErasedEnds[step] - getErasedEnd(step);
+    }
+
+    /**
+     * Returns the index of a stroke erased by a step.
+     *
+     * @param step The step
+     * @param i Which of the strokes erased by the step to return
+     */
+    public int getStepErased(int step, int i){
+        return erasedStrokes[getErasedEnd(step) + i];
+    }
+
+    /**
+     * Finds how many leading steps could be dropped so that exactly the given number of strokes
+     * goes with them.  Steps can only be dropped if they are not undone, and if no later step
+     * erased or split one of their strokes, since the dropped strokes are baked into an image that
+     * can not change anymore.
+     *
+     * @param count Number of leading strokes to drop
+     * @return The number of steps to pass to {@link #compact(int)}, or -1 if the strokes can not
+     *         be dropped
+     */
+    public int findCompactionStep(int count){
+        if(count <= 0 || count > size || strokeOpen || eraseOpen){
+            return -1;
+        }
+
+        // the last step ending there, a later step adding nothing could only erase dropped strokes
+        int step = cursor;
+        while(step > 0 && getStrokeEnd(step) > count){
+            step--;
+        }
+        if(getStrokeEnd(step) != count){
+            return -1;
+        }
+
+        for(int i = getErasedEnd(step); i < erasedCount; i++){
+            if(erasedStrokes[i] < count){
+                return -1;
+            }
+        }
+        for(int i = count; i < strokeCount; i++){
+            if(strokeOrders[i] < count){
+                return -1;
+            }
+        }
+        return step;
+    }
+
+    /**
+     * Drops the leading steps of the history along with the strokes and points they added, and
+     * renumbers the remaining strokes and steps from 0.  The dropped steps can no longer be
+     * undone.
+     *
+     * @param steps Number of steps to drop, as found by {@link #findCompactionStep(int)}
+     * @return The number of strokes dropped
+     */
+    public int compact(int steps){
+        if(steps <= 0){
+            return 0;
+        }
+
+        int strokeShift = getStrokeEnd(steps);
+        int pointShift = strokeOffsets[strokeShift];
+        int erasedShift = getErasedEnd(steps);
+
+        // new arrays rather than shifting in place, snapshots may still read the old ones
+        float[] oldPoints = points;
+        int[] oldTimes = pointTimes;
+        int[] oldOffsets = strokeOffsets, oldStyles = strokeStyles, oldOrders = strokeOrders;
+        int[] oldErasedBy = strokeErasedBy;
+        boolean[] oldPending = strokePending;
+        float[] oldBounds = strokeBounds;
+        int[] oldStepEnds = stepEnds, oldStepErasedEnds = stepErasedEnds, oldErased = erasedStrokes;
+        allocate();
+
+        pointCount -= pointShift;
+        strokeCount -= strokeShift;
+        ensurePointCapacity(pointCount);
+        ensureStrokeCapacity(strokeCount + 1);
+        System.arraycopy(oldPoints, pointShift * 2, points, 0, pointCount * 2);
+        System.arraycopy(oldTimes, pointShift, pointTimes, 0, pointCount);
+        System.arraycopy(oldStyles, strokeShift, strokeStyles, 0, strokeCount);
+        System.arraycopy(oldBounds, strokeShift * 4, strokeBounds, 0, strokeCount * 4);
+        System.arraycopy(oldPending, strokeShift, strokePending, 0, strokeCount);
+        for(int i=0; i<=strokeCount; i++){
+            strokeOffsets[i] = oldOffsets[strokeShift + i] - pointShift;
+        }
+        for(int i=0; i<strokeCount; i++){
+            strokeOrders[i] = oldOrders[strokeShift + i] - strokeShift;
+            int erasedBy = oldErasedBy[strokeShift + i];
+            strokeErasedBy[i] = erasedBy == NOT_ERASED ? NOT_ERASED : erasedBy - steps;
+        }
+
+        stepCount -= steps;
+        erasedCount -= erasedShift;
+        stepEnds = new int[Math.max(stepCount, INITIAL_STROKE_CAPACITY)];
+        stepErasedEnds = new int[stepEnds.length];
+        erasedStrokes = new int[Math.max(erasedCount, INITIAL_STROKE_CAPACITY)];
+        for(int i=0; i<stepCount; i++){
+            stepEnds[i] = oldStepEnds[steps + i] - strokeShift;
+            stepErasedEnds[i] = oldStepErasedEnds[steps + i] - erasedShift;
+        }
+        for(int i=0; i<erasedCount; i++){
+            erasedStrokes[i] = oldErased[erasedShift + i] - strokeShift;
+        }
+
+        cursor -= steps;
+        size -= strokeShift;
+        return strokeShift;
+    }
+
+    /**
+     * Sorts strokes into the order they are drawn in.
+     *
+     * @param strokes Indices of the strokes to sort
+     * @param count Number of indices
+     */
+    public void sortByOrder(int[] strokes, int count){
+        if(sortKeys == null || sortKeys.length < count){
+            sortKeys = new long[Math.max(count, INITIAL_STROKE_CAPACITY)];
+        }
+        for(int i=0; i<count; i++){
+            sortKeys[i] = ((long) strokeOrders[strokes[i]] << 32) | strokes[i];
+        }
+        Arrays.sort(sortKeys, 0, count);
+        for(int i=0; i<count; i++){
+            strokes[i] = (int) sortKeys[i];
+        }
+    }
+
+    /**
+     * Collects the strokes in a range that are not erased, in the order they are drawn in.
+     *
+     * @param from Index of the first stroke
+     * @param to Index after the last stroke
+     * @param out Receives the strokes, must hold at least {@code to - from} entries
+     * @return The number of strokes collected
+     */
+    public int getLiveStrokes(int from, int to, int[] out){
+        int count = 0;
+        for(int i=from; i<to; i++){
+            if(!isErased(i)){
+                out[count++] = i;
+            }
+        }
+        sortByOrder(out, count);
+        return count;
+    }
+
+    public boolean isStrokeOpen(){
+        return strokeOpen;
+    }
+
+    public boolean isEraseOpen(){
+        return eraseOpen;
+    }
+
+    public int getStyle(int stroke){
+        return strokeStyles[stroke];
+    }
+
+    /**
+     * Returns the index of the first point of the given stroke.
+     */
+    public int getPointOffset(int stroke){
+        return strokeOffsets[stroke];
+    }
+
+    public int getPointCount(int stroke){
+        return strokeOffsets[stroke + 1] - strokeOffsets[stroke];
+    }
+
+    /**
+     * Bounds of the points of a stroke, not including the width of its style.  Bounds are taken
+     * before simplification, so they cover every point that was drawn live.
+     */
+    public float getLeft(int stroke){
+        return strokeBounds[stroke * 4];
+    }
+
+    public float getTop(int stroke){
+        return strokeBounds[stroke * 4 + 1];
+    }
+
+    public float getRight(int stroke){
+        return strokeBounds[stroke * 4 + 2];
+    }
+
+    public float getBottom(int stroke){
+        return strokeBounds[stroke * 4 + 3];
+    }
+
+    public float getX(int point){
+        return points[point * 2];
+    }
+
+    public float getY(int point){
+        return points[point * 2 + 1];
+    }
+
+    /**
+     * Returns the time a point was recorded at, in milliseconds since the first point of this
+     * store that was added with a time.
+     */
+    public int getTime(int point){
+        return pointTimes[point];
+    }
+
+    /**
+     * Returns the total number of stored points, including points of the stroke in progress.
+     */
+    public int getTotalPointCount(){
+        return pointCount;
+    }
+
+    /**
+     * Returns the backing array of interleaved x,y coordinates.  The array is only valid until the
+     * next modification of this store.
+     */
+    public float[] getPoints(){
+        return points;
+    }
+
+    private void allocate(){
+        points = new float[INITIAL_POINT_CAPACITY * 2];
+        pointTimes = new int[INITIAL_POINT_CAPACITY];
+        strokeOffsets = new int[INITIAL_STROKE_CAPACITY + 1];
+        strokeStyles = new int[INITIAL_STROKE_CAPACITY];
+        strokeBounds = new float[INITIAL_STROKE_CAPACITY * 4];
+        strokeOrders = new int[INITIAL_STROKE_CAPACITY];
+        strokeErasedBy = new int[INITIAL_STROKE_CAPACITY];
+        strokePending = new boolean[INITIAL_STROKE_CAPACITY];
+        stepEnds = new int[INITIAL_STROKE_CAPACITY];
+        stepErasedEnds = new int[INITIAL_STROKE_CAPACITY];
+        erasedStrokes = new int[INITIAL_STROKE_CAPACITY];
+        readers = new AtomicInteger();
+    }
+
+    private void detach(){
+        points = points.clone();
+        pointTimes = pointTimes.clone();
+        strokeOffsets = strokeOffsets.clone();
+        strokeStyles = strokeStyles.clone();
+        strokeBounds = strokeBounds.clone();
+        strokeOrders = strokeOrders.clone();
+        strokeErasedBy = strokeErasedBy.clone();
+        strokePending = strokePending.clone();
+        stepEnds = stepEnds.clone();
+        stepErasedEnds = stepErasedEnds.clone();
+        erasedStrokes = erasedStrokes.clone();
+        readers = new AtomicInteger();
+    }
+
+    private boolean isShared(){
+        // a snapshot may still read the arrays
+        return readers.get() > 0;
+    }
+
+    private void dropRedoSteps(){
+        // drop the undone steps and reuse their space, unless a snapshot may still read it
+        if(stepCount > cursor){
+            if(isShared()){
+                detach();
+            }
+
+            // strokes erased by the dropped steps are no longer erased
+            int kept = getErasedEnd(cursor);
+            for(int i=kept; i<erasedCount; i++){
+                strokeErasedBy[erasedStrokes[i]] = NOT_ERASED;
+            }
+            erasedCount = kept;
+            stepCount = cursor;
+        }
+        strokeCount = size;
+        pointCount = strokeOffsets[strokeCount];
+    }
+
+    private void removeStroke(int stroke){
+        // the stroke is visible to snapshots taken during the step
+        if(isShared()){
+            detach();
+        }
+
+        int start = strokeOffsets[stroke], end = strokeOffsets[stroke + 1];
+        System.arraycopy(points, end * 2, points, start * 2, (pointCount - end) * 2);
+        System.arraycopy(pointTimes, end, pointTimes, start, pointCount - end);
+        pointCount -= end - start;
+        for(int i = stroke + 1; i < strokeCount; i++){
+            strokeOffsets[i] = strokeOffsets[i + 1] - (end - start);
+        }
+
+        int moved = strokeCount - stroke - 1;
+        System.arraycopy(strokeStyles, stroke + 1, strokeStyles, stroke, moved);
+        System.arraycopy(strokeBounds, (stroke + 1) * 4, strokeBounds, stroke * 4, moved * 4);
+        System.arraycopy(strokeOrders, stroke + 1, strokeOrders, stroke, moved);
+        System.arraycopy(strokeErasedBy, stroke + 1, strokeErasedBy, stroke, moved);
+        System.arraycopy(strokePending, stroke + 1, strokePending, stroke, moved);
+        strokeCount--;
+        stepEnds[cursor - 1] = size = strokeCount;
+    }
+
+    private void addStep(){
+        if(stepCount == stepEnds.length){
+            stepEnds = Arrays.copyOf(stepEnds, stepCount * 2);
+            stepErasedEnds = Arrays.copyOf(stepErasedEnds, stepCount * 2);
+        }
+        stepEnds[stepCount] = strokeCount;
+        stepErasedEnds[stepCount] = erasedCount;
+        cursor = ++stepCount;
+        size = strokeCount;
+    }
+
+    private void initStroke(int style, int order){
+        ensureStrokeCapacity(strokeCount + 1);
+        strokeStyles[strokeCount] = style;
+        strokeOrders[strokeCount] = order;
+        strokeErasedBy[strokeCount] = NOT_ERASED;
+        strokePending[strokeCount] = false;
+        int b = strokeCount * 4;
+        strokeBounds[b] = strokeBounds[b + 1] = Float.POSITIVE_INFINITY;
+        strokeBounds[b + 2] = strokeBounds[b + 3] = Float.NEGATIVE_INFINITY;
+    }
+
+    // stroke count after the given number of steps
+    private int getStrokeEnd(int steps){
+        return steps == 0 ? 0 : stepEnds[steps - 1];
+    }
+
+    // number of entries in erasedStrokes after the given number of steps
+    private int getErasedEnd(int steps){
+        return steps == 0 ? 0 : stepErasedEnds[steps - 1];
+    }
+
+    private void includeInBounds(float x, float y){
+        int b = strokeCount * 4;
+        if(x < strokeBounds[b]) strokeBounds[b] = x;
+        if(y < strokeBounds[b + 1]) strokeBounds[b + 1] = y;
+        if(x > strokeBounds[b + 2]) strokeBounds[b + 2] = x;
+        if(y > strokeBounds[b + 3]) strokeBounds[b + 3] = y;
+    }
+
+    private int toStoreTime(long time){
+        if(timeOrigin < 0){
+            timeOrigin = time;
+        }
+        return (int) (time - timeOrigin);
+    }
+
+    private void ensurePointCapacity(int count){
+        if(count * 2 > points.length){
+            points = Arrays.copyOf(points, Math.max(count * 2, points.length * 2));
+            pointTimes = Arrays.copyOf(pointTimes, points.length / 2);
+        }
+    }
+
+    private void ensureStrokeCapacity(int count){
+        if(count > strokeStyles.length){
+            int capacity = Math.max(count, strokeStyles.length * 2);
+            strokeStyles = Arrays.copyOf(strokeStyles, capacity);
+            strokeOffsets = Arrays.copyOf(strokeOffsets, capacity + 1);
+            strokeBounds = Arrays.copyOf(strokeBounds, capacity * 4);
+            strokeOrders = Arrays.copyOf(strokeOrders, capacity);
+            strokeErasedBy = Arrays.copyOf(strokeErasedBy, capacity);
+            strokePending = Arrays.copyOf(strokePending, capacity);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.burkeapps.whiteboard.views;
+
+import android.graphics.Paint;
+
+/**
+ * An immutable description of how a stroke is drawn.  Styles are interned by a {@link StyleCache}
+ * so every stroke drawn with the same color, thickness and mode shares a single instance and a
+ * single {@link Paint}.
+ */
+public final class StrokeStyle {
+
+    /**
+     * Cap and join values match the ordinals of {@link Paint.Cap} and {@link Paint.Join}.
+     */
+    public static final int CAP_BUTT = 0;
+    public static final int CAP_ROUND = 1;
+    public static final int CAP_SQUARE = 2;
+    public static final int JOIN_MITER = 0;
+    public static final int JOIN_ROUND = 1;
+    public static final int JOIN_BEVEL = 2;
+
+    final int color;
+    final float width;
+    final int mode;
+    final int cap;
+    final int join;
+    final boolean smooth;
+    private volatile Paint paint;
+
+    StrokeStyle(int color, float width, int mode, int cap, int join, boolean smooth){
+        this.color = color;
+        this.width = width;
+        this.mode = mode;
+        this.cap = cap;
+        this.join = join;
+        this.smooth = smooth;
+    }
+
+    public int getColor() {
+        return color;
+    }
+
+    public float getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the whiteboard mode the style was drawn in, either
+     * {@link WhiteboardView#MODE_MARKER} or {@link WhiteboardView#MODE_ERASER}.
+     */
+    public int getMode() {
+        return mode;
+    }
+
+    public int getCap() {
+        return cap;
+    }
+
+    public int getJoin() {
+        return join;
+    }
+
+    /**
+     * Indicates whether strokes of this style are drawn as quadratic curves through the
+     * midpoints of their points instead of straight lines between them.
+     */
+    public boolean isSmooth() {
+        return smooth;
+    }
+
+    /**
+     * Returns the paint for this style.  The paint is shared by every stroke using this style and
+     * must not be modified.  It is safe to call from any thread.
+     *
+     * @return The shared paint of this style
+     */
+    public Paint getPaint(){
+        if(paint == null){
+            Paint p = new Paint();
+            p.setAntiAlias(true);
+            p.setStyle(Paint.Style.STROKE);
+            p.setColor(color);
+            p.setStrokeWidth(width);
+            p.setStrokeCap(Paint.Cap.values()[cap]);
+            p.setStrokeJoin(Paint.Join.values()[join]);
+            paint = p;
+        }
+        return paint;
+    }
+
+    /**
+     * Returns how far the ink of a stroke in this style can reach past its points.  Miter joins
+     * reach out to half the miter limit times the width; one pixel is added for anti-aliasing.
+     *
+     * @return The reach in pixels
+     */
+    public float getReach(){
+        return getPaint().getStrokeMiter() * width / 2 + 1;
+    }
+
+    boolean matches(int color, float width, int mode, int cap, int join, boolean smooth){
+        return this.color == color && Float.compare(this.width, width) == 0 && this.mode == mode
+                && this.cap == cap && this.join == join && this.smooth == smooth;
+    }
+
+    static int hash(int color, float width, int mode, int cap, int join, boolean smooth){
+        int result = color;
+        result = 31 * result + Float.floatToIntBits(width);
+        result = 31 * result + mode;
+        result = 31 * result + cap;
+        result = 31 * result + join;
+        result = 31 * result + (smooth ? 1 : 0);
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o) return true;
+        if(!(o instanceof StrokeStyle)) return false;
+        StrokeStyle other = (StrokeStyle) o;
+        return matches(other.color, other.width, other.mode, other.cap, other.join, other.smooth);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash(color, width, mode, cap, join, smooth);
+    }
+}
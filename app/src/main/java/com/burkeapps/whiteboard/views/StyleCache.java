@@ -0,0 +1,130 @@
+package com.burkeapps.whiteboard.views;
+
+import android.graphics.Paint;
+
+import java.util.Arrays;
+
+/**
+ * A StyleCache interns {@link StrokeStyle}s so that strokes only keep a small index into a shared
+ * table of styles instead of their own {@link Paint}.  Lookups do not allocate; a new style is
+ * only created the first time a combination of color, thickness, mode, cap and join is seen.
+ *
+ * The cache itself is used from the UI thread, but the table returned by {@link #table()} can be
+ * read from any thread: styles are only ever appended to it and a cleared cache starts a new one.
+ */
+public class StyleCache {
+
+    private static final int INITIAL_SLOTS = 16;
+
+    private StrokeStyle[] styles = new StrokeStyle[INITIAL_SLOTS];
+    private int count;
+    // open addressing table of style index + 1, 0 marks an empty slot
+    private int[] slots = new int[INITIAL_SLOTS];
+    private long hits, misses;
+
+    /**
+     * Returns the index of the style matching the given paint, creating it if needed.
+     *
+     * @param paint The paint to find a style for
+     * @param mode The whiteboard mode the paint is used in
+     * @param smooth Whether strokes are smoothed through their midpoints
+     * @return Index of the matching style
+     */
+    public int intern(Paint paint, int mode, boolean smooth){
+        return intern(paint.getColor(), paint.getStrokeWidth(), mode,
+                paint.getStrokeCap().ordinal(), paint.getStrokeJoin().ordinal(), smooth);
+    }
+
+    /**
+     * Returns the index of the style with the given attributes, creating it if needed.
+     *
+     * @return Index of the matching style
+     */
+    public int intern(int color, float width, int mode, int cap, int join, boolean smooth){
+        int mask = slots.length - 1;
+        int slot = mix(StrokeStyle.hash(color, width, mode, cap, join, smooth)) & mask;
+        while(slots[slot] != 0){
+            StrokeStyle style = styles[slots[slot] - 1];
+            if(style.matches(color, width, mode, cap, join, smooth)){
+                hits++;
+                return slots[slot] - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        misses++;
+        if(count == styles.length){
+            styles = Arrays.copyOf(styles, count * 2);
+        }
+        styles[count++] = new StrokeStyle(color, width, mode, cap, join, smooth);
+        slots[slot] = count;
+
+        // keep the table at most half full so probes stay short
+        if(count * 2 > slots.length){
+            rehash(slots.length * 2);
+        }
+        return count - 1;
+    }
+
+    public StrokeStyle get(int index){
+        return styles[index];
+    }
+
+    /**
+     * Returns the table of styles indexed by style index.  Entries that are set never change, so
+     * the table can be handed to other threads; it may be longer than {@link #size()}.
+     *
+     * @return The style table
+     */
+    public StrokeStyle[] table(){
+        return styles;
+    }
+
+    /**
+     * Returns the number of styles currently held by this cache.
+     */
+    public int size(){
+        return count;
+    }
+
+    /**
+     * Returns how many lookups were served by an existing style.
+     */
+    public long getHitCount(){
+        return hits;
+    }
+
+    /**
+     * Returns how many lookups had to create a new style.
+     */
+    public long getMissCount(){
+        return misses;
+    }
+
+    /**
+     * Removes all styles.  Indices handed out before are no longer valid.
+     */
+    public void clear(){
+        // start a new table, the old one may still be read by other threads
+        styles = new StrokeStyle[INITIAL_SLOTS];
+        count = 0;
+        Arrays.fill(slots, 0);
+    }
+
+    private void rehash(int capacity){
+        slots = new int[capacity];
+        int mask = capacity - 1;
+        for(int i=0; i<count; i++){
+            int slot = mix(styles[i].hashCode()) & mask;
+            while(slots[slot] != 0){
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = i + 1;
+        }
+    }
+
+    private static int mix(int hash){
+        // spread the bits so colors that only differ in high bits don't collide
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,277 @@
+package com.burkeapps.whiteboard.views;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.util.LongSparseArray;
+
+/**
+ * A TilePyramid draws the part of a {@link TiledCanvas} that is in view, at any zoom.  Zoomed out,
+ * it draws downsampled copies of the tiles instead of the tiles themselves: a tile of level n
+ * has the size of a canvas tile but covers 2^n by 2^n of them, and a frame uses the coarsest level
+ * whose tiles are not magnified.  So a frame draws about as many bitmaps as fit into the view,
+ * however much of the board is in view.
+ *
+ * Copies are made from the level below when they are first drawn, and made again once a tile
+ * they were made from changed.  Only a few milliseconds of each frame are spent making them;
+ * until a copy is made, the level below or an outdated copy is drawn in its place and
+ * {@link #draw(Canvas, Viewport, Paint)} asks for another frame.
+ *
+ * Copies come from and go back to a {@link BitmapPool}.  A pyramid is only used on the UI thread.
+ */
+class TilePyramid {
+
+    /**
+     * Number of downsampled levels above the canvas.
+     */
+    static final int LEVELS = 4;
+
+    /**
+     * Time a frame may spend making copies, in nanoseconds.  Drawing the frame does not count, or
+     * a slow frame would never get to the copies last in line.
+     */
+    private static final long BUILD_BUDGET = 4000000;
+
+    /**
+     * A downsampled tile.
+     */
+    private static final class Tile {
+        // null if nothing is drawn in the tile's area
+        Bitmap bitmap;
+        // unique version of the pixels, 0 while the tile is blank
+        int version;
+        // versions of the four tiles it was made from, combined
+        int sources;
+        // modification count of the canvas the tile was last found to be up to date at
+        int checked = -1;
+    }
+
+    private final TiledCanvas canvas;
+    private final BitmapPool pool;
+    private final LongSparseArray<Tile>[] levels;
+    private final Canvas tileCanvas = new Canvas();
+    private final Paint downsamplePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final RectF area = new RectF();
+    private final Rect range = new Rect(), dst = new Rect(), part = new Rect();
+    // time spent making copies during the current frame
+    private long buildTime;
+    private boolean complete;
+    private long builtCount;
+
+    TilePyramid(TiledCanvas canvas, BitmapPool pool){
+        this.canvas = canvas;
+        this.pool = pool;
+        @SuppressWarnings("unchecked")
+        LongSparseArray<Tile>[] arrays = (LongSparseArray<Tile>[]) new LongSparseArray<?>[LEVELS];
+        levels = arrays;
+        for(int i=0; i<LEVELS; i++){
+            levels[i] = new LongSparseArray<>();
+        }
+    }
+
+    /**
+     * Returns the level a board is drawn from at a zoom: the coarsest one whose tiles are drawn
+     * at most at their own size.
+     */
+    static int getLevel(float zoom){
+        int level = 0;
+        while(level < LEVELS && zoom * (2 << level) <= 1){
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * Draws the tiles in view onto the canvas of a view.  Tiles outside the canvas' clip are
+     * skipped.
+     *
+     * @param target The canvas of the view, untransformed
+     * @param viewport The part of the board to draw
+     * @param paint The paint to draw the tiles with
+     * @return False if some copies are not made yet and the view should be drawn again
+     */
+    boolean draw(Canvas target, Viewport viewport, Paint paint){
+        return draw(target, viewport, paint, getLevel(viewport.getZoom()));
+    }
+
+    /**
+     * Draws the tiles in view from the given level.
+     *
+     * @see #draw(Canvas, Viewport, Paint)
+     */
+    boolean draw(Canvas target, Viewport viewport, Paint paint, int level){
+        complete = true;
+        buildTime = 0;
+        TiledCanvas.getTileRange(viewport.getVisibleArea(area), level, range);
+        for(int ty = range.top; ty < range.bottom; ty++){
+            for(int tx = range.left; tx < range.right; tx++){
+                drawTile(target, viewport, paint, level, tx, ty, true);
+            }
+        }
+        return complete;
+    }
+
+    /**
+     * Releases all copies.  They are made again when drawn.
+     */
+    void clear(){
+        for(LongSparseArray<Tile> tiles : levels){
+            for(int i=0; i<tiles.size(); i++){
+                release(tiles.valueAt(i));
+            }
+            tiles.clear();
+        }
+    }
+
+    /**
+     * Returns the memory used by the copies in bytes.
+     */
+    long getByteCount(){
+        long bytes = 0;
+        for(LongSparseArray<Tile> tiles : levels){
+            for(int i=0; i<tiles.size(); i++){
+                Bitmap bitmap = tiles.valueAt(i).bitmap;
+                bytes += (bitmap != null) ? bitmap.getByteCount() : 0;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns how many copies were made since the pyramid was created.
+     */
+    long getBuiltCount(){
+        return builtCount;
+    }
+
+    private void drawTile(Canvas target, Viewport viewport, Paint paint, int level, int tx, int ty,
+                          boolean fallback){
+        float size = TiledCanvas.TILE_SIZE << level;
+        // round the edges rather than the size, so neighbouring tiles meet without a seam
+        dst.set(Math.round(viewport.toViewX(tx * size)), Math.round(viewport.toViewY(ty * size)),
+                Math.round(viewport.toViewX((tx + 1) * size)), Math.round(viewport.toViewY((ty + 1) * size)));
+        if(target.quickReject(dst.left, dst.top, dst.right, dst.bottom, Canvas.EdgeType.BW)){
+            return;
+        }
+
+        Bitmap bitmap;
+        if(level == 0){
+            TiledCanvas.Tile tile = canvas.tiles.get(TiledCanvas.key(tx, ty));
+            bitmap = (tile != null) ? tile.bitmap : null;
+        } else {
+            Tile tile = validate(level, tx, ty);
+            if(tile.checked != canvas.getModificationCount()){
+                complete = false;
+                if(tile.bitmap == null && fallback){
+                    // never made, draw the level below for now but no further down
+                    for(int cy=0; cy<2; cy++){
+                        for(int cx=0; cx<2; cx++){
+                            drawTile(target, viewport, paint, level - 1, tx * 2 + cx, ty * 2 + cy, false);
+                        }
+                    }
+                    return;
+                }
+            }
+            bitmap = tile.bitmap;
+        }
+        if(bitmap != null){
+            target.drawBitmap(bitmap, null, dst, paint);
+        }
+    }
+
+    /**
+     * Brings a copy up to date with the tiles it is made from, if the frame has time left.
+     *
+     * @return The copy, it is up to date if it was checked at the current modification count
+     */
+    private Tile validate(int level, int tx, int ty){
+        LongSparseArray<Tile> tiles = levels[level - 1];
+        long key = TiledCanvas.key(tx, ty);
+        Tile tile = tiles.get(key);
+        if(tile == null){
+            tile = new Tile();
+            tiles.put(key, tile);
+        }
+        int modifications = canvas.getModificationCount();
+        if(tile.checked == modifications){
+            return tile;
+        }
+
+        int sources = 1;
+        boolean ready = true, blank = true;
+        for(int cy=0; cy<2; cy++){
+            for(int cx=0; cx<2; cx++){
+                int version;
+                if(level == 1){
+                    TiledCanvas.Tile source = canvas.tiles.get(TiledCanvas.key(tx * 2 + cx, ty * 2 + cy));
+                    version = (source != null) ? source.version : 0;
+                } else {
+                    Tile source = validate(level - 1, tx * 2 + cx, ty * 2 + cy);
+                    ready &= source.checked == modifications;
+                    version = source.version;
+                }
+                blank &= version == 0;
+                sources = sources * 31 + version;
+            }
+        }
+        if(!ready){
+            return tile;
+        }
+
+        if(blank){
+            release(tile);
+            tile.version = 0;
+        } else if(tile.bitmap == null || tile.sources != sources){
+            if(buildTime > BUILD_BUDGET){
+                // out of time, the next frame continues
+                return tile;
+            }
+            long start = System.nanoTime();
+            build(level, tx, ty, tile);
+            buildTime += System.nanoTime() - start;
+        }
+        tile.sources = sources;
+        tile.checked = modifications;
+        return tile;
+    }
+
+    private void build(int level, int tx, int ty, Tile tile){
+        int half = TiledCanvas.TILE_SIZE / 2;
+        if(tile.bitmap == null){
+            tile.bitmap = pool.obtain(TiledCanvas.TILE_SIZE, TiledCanvas.TILE_SIZE, Bitmap.Config.ARGB_8888);
+        } else {
+            tile.bitmap.eraseColor(0);
+        }
+
+        tileCanvas.setBitmap(tile.bitmap);
+        for(int cy=0; cy<2; cy++){
+            for(int cx=0; cx<2; cx++){
+                long key = TiledCanvas.key(tx * 2 + cx, ty * 2 + cy);
+                Bitmap source;
+                if(level == 1){
+                    TiledCanvas.Tile sourceTile = canvas.tiles.get(key);
+                    source = (sourceTile != null) ? sourceTile.bitmap : null;
+                } else {
+                    Tile sourceTile = levels[level - 2].get(key);
+                    source = (sourceTile != null) ? sourceTile.bitmap : null;
+                }
+                if(source != null){
+                    part.set(cx * half, cy * half, cx * half + half, cy * half + half);
+                    tileCanvas.drawBitmap(source, null, part, downsamplePaint);
+                }
+            }
+        }
+        tileCanvas.setBitmap(null);
+        tile.version = TiledCanvas.nextVersion();
+        builtCount++;
+    }
+
+    private void release(Tile tile){
+        if(tile.bitmap != null){
+            pool.release(tile.bitmap);
+            tile.bitmap = null;
+        }
+    }
+}
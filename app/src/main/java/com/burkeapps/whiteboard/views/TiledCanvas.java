@@ -0,0 +1,362 @@
+package com.burkeapps.whiteboard.views;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.Region;
+import android.util.LongSparseArray;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A TiledCanvas is the backing store of a whiteboard's committed ink.  The board is split into
+ * fixed-size square tiles whose bitmaps are only allocated once something is drawn on them, so
+ * blank parts of the board cost no memory and the board can reach far past the view in every
+ * direction, up to {@link #LIMIT}.  Tiles can be erased and re-rendered individually,
+ * which keeps the work of an undo proportional to the area it touched.
+ *
+ * Tile bitmaps come from and go back to a {@link BitmapPool}, so erasing and re-rendering tiles
+ * does not allocate in steady state.
+ *
+ * Every write to a tile gives it a new version number.  Versions are unique across all tiles of
+ * all canvases, so two tiles with the same version hold the same pixels.
+ *
+ * A canvas is not thread-safe; a canvas rendered on a worker thread is handed over to the UI
+ * thread with {@link #replace(Rect, TiledCanvas)}.
+ */
+class TiledCanvas {
+
+    /**
+     * Width and height of a tile in pixels.
+     */
+    static final int TILE_SIZE = 256;
+
+    /**
+     * Distance in pixels from the origin that tiles are kept within, in every direction.  Ink
+     * drawn beyond it is clipped.
+     */
+    static final int LIMIT = 1 << 20;
+
+    private static final int TILE_LIMIT = LIMIT / TILE_SIZE;
+
+    private static final AtomicInteger versions = new AtomicInteger();
+
+    /**
+     * A tile of the canvas and the version of its content.
+     */
+    static final class Tile {
+        Bitmap bitmap;
+        int version;
+    }
+
+    final LongSparseArray<Tile> tiles = new LongSparseArray<>();
+    private final BitmapPool pool;
+    private final Canvas tileCanvas = new Canvas();
+    private final Rect range = new Rect(), tileBounds = new Rect();
+    // the outline of the path being drawn, the part of it within the tiles drawn on and within a tile
+    private final Path outline = new Path();
+    private final Region clip = new Region(), ink = new Region(), tileInk = new Region();
+    // incremented by every change to the tiles
+    private int modifications;
+
+    TiledCanvas(BitmapPool pool){
+        this.pool = pool;
+    }
+
+    /**
+     * Computes the range of tiles touched by an area, clamped to the {@link #LIMIT}.  The range is
+     * given in tile coordinates, right and bottom exclusive.
+     *
+     * @param area The area in pixels
+     * @param out Rect that receives the tile range
+     * @return The out rect
+     */
+    Rect getTileRange(RectF area, Rect out){
+        return getTileRange(area, 0, out);
+    }
+
+    /**
+     * Computes the range of tiles touched by an area for tiles that each cover 2^level by
+     * 2^level tiles of the canvas.
+     *
+     * @see #getTileRange(RectF, Rect)
+     */
+    static Rect getTileRange(RectF area, int level, Rect out){
+        float size = TILE_SIZE << level;
+        int limit = TILE_LIMIT >> level;
+        out.set(Math.max(-limit, (int) Math.floor(area.left / size)),
+                Math.max(-limit, (int) Math.floor(area.top / size)),
+                Math.min(limit, (int) Math.floor(area.right / size) + 1),
+                Math.min(limit, (int) Math.floor(area.bottom / size) + 1));
+        if(out.left >= out.right || out.top >= out.bottom){
+            out.setEmpty();
+        }
+        return out;
+    }
+
+    /**
+     * Sets a rect to the range of every tile a canvas can hold.
+     */
+    static Rect getAllTiles(Rect out){
+        out.set(-TILE_LIMIT, -TILE_LIMIT, TILE_LIMIT, TILE_LIMIT);
+        return out;
+    }
+
+    /**
+     * Computes the pixel area covered by the allocated tiles, empty if there are none.
+     */
+    Rect getExtent(Rect out){
+        out.setEmpty();
+        for(int i=0; i<tiles.size(); i++){
+            long key = tiles.keyAt(i);
+            int left = tileX(key) * TILE_SIZE, top = tileY(key) * TILE_SIZE;
+            if(i == 0){
+                out.set(left, top, left + TILE_SIZE, top + TILE_SIZE);
+            } else {
+                out.set(Math.min(out.left, left), Math.min(out.top, top),
+                        Math.max(out.right, left + TILE_SIZE), Math.max(out.bottom, top + TILE_SIZE));
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Computes the pixel area covered by a range of tiles.
+     */
+    static RectF getTileArea(Rect tileRange, RectF out){
+        out.set(tileRange.left * TILE_SIZE, tileRange.top * TILE_SIZE,
+                tileRange.right * TILE_SIZE, tileRange.bottom * TILE_SIZE);
+        return out;
+    }
+
+    /**
+     * Draws a path onto every tile it touches.
+     *
+     * @param path The path to draw
+     * @param paint The paint to draw the path with
+     * @param bounds Bounds of the path including the reach of its stroke
+     */
+    void drawPath(Path path, Paint paint, RectF bounds){
+        drawPath(path, paint, getTileRange(bounds, range));
+    }
+
+    /**
+     * Draws a path onto the tiles it touches within a range of tiles.
+     *
+     * @param path The path to draw
+     * @param paint The paint to draw the path with
+     * @param bounds Bounds of the path including the reach of its stroke
+     * @param tileRange The tiles the drawing is limited to, in tile coordinates
+     */
+    void drawPath(Path path, Paint paint, RectF bounds, Rect tileRange){
+        if(getTileRange(bounds, range).intersect(tileRange)){
+            drawPath(path, paint, range);
+        }
+    }
+
+    /**
+     * Draws a path onto the tiles it puts ink on within a range of tiles.  When the range has
+     * more than one tile, the outline of the path is tested against each of them first, so a
+     * diagonal stroke does not allocate every tile of its bounding box.
+     *
+     * @param path The path to draw
+     * @param paint The paint to draw the path with
+     * @param tileRange The tiles to draw on, in tile coordinates
+     */
+    void drawPath(Path path, Paint paint, Rect tileRange){
+        boolean test = tileRange.width() > 1 || tileRange.height() > 1;
+        if(test){
+            paint.getFillPath(path, outline);
+            // a pixel outside the tiles, anti-aliasing can put ink on tiles next to the outline
+            clip.set(tileRange.left * TILE_SIZE - 1, tileRange.top * TILE_SIZE - 1,
+                    tileRange.right * TILE_SIZE + 1, tileRange.bottom * TILE_SIZE + 1);
+            ink.setPath(outline, clip);
+        }
+        for(int ty = tileRange.top; ty < tileRange.bottom; ty++){
+            for(int tx = tileRange.left; tx < tileRange.right; tx++){
+                if(test){
+                    tileBounds.set(tx * TILE_SIZE - 1, ty * TILE_SIZE - 1,
+                            (tx + 1) * TILE_SIZE + 1, (ty + 1) * TILE_SIZE + 1);
+                    if(!tileInk.op(tileBounds, ink, Region.Op.INTERSECT)){
+                        continue;
+                    }
+                }
+                Tile tile = obtain(key(tx, ty));
+                tileCanvas.setBitmap(tile.bitmap);
+                tileCanvas.save();
+                tileCanvas.translate(-tx * TILE_SIZE, -ty * TILE_SIZE);
+                tileCanvas.drawPath(path, paint);
+                tileCanvas.restore();
+                tile.version = versions.incrementAndGet();
+            }
+        }
+        tileCanvas.setBitmap(null);
+        modifications++;
+    }
+
+    /**
+     * Erases a range of tiles, releasing their memory.
+     *
+     * @param tileRange The tiles to erase, in tile coordinates
+     */
+    void erase(Rect tileRange){
+        if((long) tileRange.width() * tileRange.height() > tiles.size()){
+            // a range larger than the ink on the board, look at the allocated tiles instead
+            for(int i=tiles.size()-1; i>=0; i--){
+                long key = tiles.keyAt(i);
+                if(tileRange.contains(tileX(key), tileY(key))){
+                    release(tiles.valueAt(i));
+                    tiles.removeAt(i);
+                }
+            }
+        } else {
+            for(int ty = tileRange.top; ty < tileRange.bottom; ty++){
+                for(int tx = tileRange.left; tx < tileRange.right; tx++){
+                    long key = key(tx, ty);
+                    Tile tile = tiles.get(key);
+                    if(tile != null){
+                        release(tile);
+                        tiles.remove(key);
+                    }
+                }
+            }
+        }
+        modifications++;
+    }
+
+    /**
+     * Copies the content of a tile into a bitmap from the pool.
+     *
+     * @param tile The tile to copy
+     * @return A bitmap holding a copy of the tile
+     */
+    Bitmap copy(Tile tile){
+        Bitmap copy = pool.obtain(TILE_SIZE, TILE_SIZE, Bitmap.Config.ARGB_8888);
+        tileCanvas.setBitmap(copy);
+        tileCanvas.drawBitmap(tile.bitmap, 0, 0, null);
+        tileCanvas.setBitmap(null);
+        return copy;
+    }
+
+    /**
+     * Replaces the content of a tile with a copy of the given bitmap.
+     *
+     * @param key Key of the tile
+     * @param content Bitmap of the tile's size holding the new content
+     * @param version Version of the content
+     */
+    void put(long key, Bitmap content, int version){
+        Tile tile = obtain(key);
+        tileCanvas.setBitmap(tile.bitmap);
+        tileCanvas.drawBitmap(content, 0, 0, null);
+        tileCanvas.setBitmap(null);
+        tile.version = version;
+        modifications++;
+    }
+
+    /**
+     * Replaces a range of tiles with the tiles of another canvas, which is left empty.  The tile
+     * bitmaps are moved, not copied.
+     *
+     * @param tileRange The tiles to replace, in tile coordinates
+     * @param source The canvas holding the new content of the range
+     */
+    void replace(Rect tileRange, TiledCanvas source){
+        erase(tileRange);
+
+        for(int i=0; i<source.tiles.size(); i++){
+            long key = source.tiles.keyAt(i);
+            Tile tile = source.tiles.valueAt(i);
+            if(tileRange.contains(tileX(key), tileY(key))){
+                tiles.put(key, tile);
+            } else {
+                release(tile);
+            }
+        }
+        source.tiles.clear();
+    }
+
+    /**
+     * Draws all allocated tiles onto a canvas.  Tiles outside the canvas' clip are skipped.  To
+     * draw the part of a large board in a view, see {@link TilePyramid}.
+     */
+    void draw(Canvas canvas, Paint paint){
+        for(int i=0; i<tiles.size(); i++){
+            long key = tiles.keyAt(i);
+            float left = tileX(key) * TILE_SIZE, top = tileY(key) * TILE_SIZE;
+            if(!canvas.quickReject(left, top, left + TILE_SIZE, top + TILE_SIZE, Canvas.EdgeType.BW)){
+                canvas.drawBitmap(tiles.valueAt(i).bitmap, left, top, paint);
+            }
+        }
+    }
+
+    /**
+     * Releases all tiles.
+     */
+    void clear(){
+        for(int i=0; i<tiles.size(); i++){
+            release(tiles.valueAt(i));
+        }
+        tiles.clear();
+        modifications++;
+    }
+
+    /**
+     * Returns a number that changes with every change to the tiles, so a copy of them can tell
+     * whether it may be out of date.
+     */
+    int getModificationCount(){
+        return modifications;
+    }
+
+    /**
+     * Returns a version number no tile has had yet, for content made from tiles.
+     */
+    static int nextVersion(){
+        return versions.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of allocated tiles.
+     */
+    int getTileCount(){
+        return tiles.size();
+    }
+
+    /**
+     * Returns the memory used by allocated tiles in bytes.
+     */
+    long getByteCount(){
+        return (long) tiles.size() * TILE_SIZE * TILE_SIZE * 4;
+    }
+
+    static long key(int tx, int ty){
+        return ((long) tx << 32) | (ty & 0xffffffffL);
+    }
+
+    static int tileX(long key){
+        return (int) (key >> 32);
+    }
+
+    static int tileY(long key){
+        return (int) key;
+    }
+
+    private Tile obtain(long key){
+        Tile tile = tiles.get(key);
+        if(tile == null){
+            tile = new Tile();
+            tile.bitmap = pool.obtain(TILE_SIZE, TILE_SIZE, Bitmap.Config.ARGB_8888);
+            tiles.put(key, tile);
+        }
+        return tile;
+    }
+
+    private void release(Tile tile){
+        pool.release(tile.bitmap);
+        tile.bitmap = null;
+    }
+}
@@ -0,0 +1,71 @@
+package com.burkeapps.whiteboard.views;
+
+import android.view.MotionEvent;
+
+import java.util.Arrays;
+
+/**
+ * A TouchBatch collects every sample of a pointer of a move event in one pass: the historical
+ * samples the system batched since the previous event followed by the current position.  The
+ * buffer is reused between events and pointers so collecting does not allocate once it has grown
+ * to the usual batch size.
+ */
+class TouchBatch {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    // interleaved x,y coordinates of the collected samples
+    float[] points = new float[INITIAL_CAPACITY * 2];
+    // event time of each sample
+    long[] times = new long[INITIAL_CAPACITY];
+    int size;
+
+    /**
+     * Collects the historical and current samples of the given event, oldest first.
+     *
+     * @param event The event to read the samples from
+     * @return The number of collected samples
+     */
+    int collect(MotionEvent event){
+        return collect(event, 0);
+    }
+
+    /**
+     * Collects the historical and current samples of one pointer of the given event, oldest first.
+     *
+     * @param event The event to read the samples from
+     * @param pointerIndex Index of the pointer in the event
+     * @return The number of collected samples
+     */
+    int collect(MotionEvent event, int pointerIndex){
+        int history = event.getHistorySize();
+        ensureCapacity(history + 1);
+
+        for(int h=0; h<history; h++){
+            points[h * 2] = event.getHistoricalX(pointerIndex, h);
+            points[h * 2 + 1] = event.getHistoricalY(pointerIndex, h);
+            times[h] = event.getHistoricalEventTime(h);
+        }
+        points[history * 2] = event.getX(pointerIndex);
+        points[history * 2 + 1] = event.getY(pointerIndex);
+        times[history] = event.getEventTime();
+
+        size = history + 1;
+        return size;
+    }
+
+    float getX(int sample){
+        return points[sample * 2];
+    }
+
+    float getY(int sample){
+        return points[sample * 2 + 1];
+    }
+
+    private void ensureCapacity(int samples){
+        if(samples * 2 > points.length){
+            points = Arrays.copyOf(points, Math.max(samples * 2, points.length * 2));
+            times = Arrays.copyOf(times, points.length / 2);
+        }
+    }
+}
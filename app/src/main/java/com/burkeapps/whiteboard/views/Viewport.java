@@ -0,0 +1,145 @@
+package com.burkeapps.whiteboard.views;
+
+import android.graphics.RectF;
+
+/**
+ * A Viewport maps the board of a whiteboard onto its view.  The board is larger than the view, the
+ * view shows a rectangle of it scaled by the zoom.  Touch points are mapped onto the board before
+ * they are stored, so the history and the tiles are in board coordinates whatever the zoom was
+ * when they were drawn.
+ *
+ * Drawing board content into the view means scaling the view's canvas by the zoom and then
+ * translating it by the negated top left corner of the viewport.
+ *
+ * The viewport is kept within the area a {@link TiledCanvas} can address.
+ */
+class Viewport {
+
+    static final float MIN_ZOOM = 1 / 16f;
+    static final float MAX_ZOOM = 8;
+
+    // board coordinates of the view's top left corner
+    private float left, top;
+    private float zoom = 1;
+    private int width, height;
+
+    /**
+     * Sets the size of the view in pixels.
+     */
+    void setSize(int width, int height){
+        this.width = width;
+        this.height = height;
+        set(zoom, left, top);
+    }
+
+    int getWidth(){
+        return width;
+    }
+
+    int getHeight(){
+        return height;
+    }
+
+    float getZoom(){
+        return zoom;
+    }
+
+    float getLeft(){
+        return left;
+    }
+
+    float getTop(){
+        return top;
+    }
+
+    /**
+     * Shows the part of the board with the given top left corner at the given zoom.  Both are
+     * limited to what the viewport supports.
+     */
+    void set(float zoom, float left, float top){
+        this.zoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom));
+        float limit = TiledCanvas.LIMIT;
+        this.left = Math.max(-limit, Math.min(limit - width / this.zoom, left));
+        this.top = Math.max(-limit, Math.min(limit - height / this.zoom, top));
+    }
+
+    /**
+     * Shows the top left part of the board at its own size again.
+     */
+    void reset(){
+        set(1, 0, 0);
+    }
+
+    /**
+     * Moves the board along with a drag across the view.
+     *
+     * @param dx Horizontal distance of the drag in view pixels
+     * @param dy Vertical distance of the drag in view pixels
+     */
+    void panBy(float dx, float dy){
+        set(zoom, left - dx / zoom, top - dy / zoom);
+    }
+
+    /**
+     * Zooms by a factor, keeping the point of the board under a point of the view in place.
+     *
+     * @param factor Factor to multiply the zoom by
+     * @param focusX Horizontal position of the fixed point in the view
+     * @param focusY Vertical position of the fixed point in the view
+     */
+    void zoomBy(float factor, float focusX, float focusY){
+        float x = toBoardX(focusX), y = toBoardY(focusY);
+        float newZoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom * factor));
+        set(newZoom, x - focusX / newZoom, y - focusY / newZoom);
+    }
+
+    float toBoardX(float viewX){
+        return left + viewX / zoom;
+    }
+
+    float toBoardY(float viewY){
+        return top + viewY / zoom;
+    }
+
+    float toViewX(float boardX){
+        return (boardX - left) * zoom;
+    }
+
+    float toViewY(float boardY){
+        return (boardY - top) * zoom;
+    }
+
+    /**
+     * Maps a run of points from the view onto the board in place.
+     *
+     * @param xy Interleaved x,y coordinates
+     * @param offset Index of the first point
+     * @param count Number of points
+     */
+    void toBoard(float[] xy, int offset, int count){
+        for(int i = offset * 2, end = (offset + count) * 2; i < end; i += 2){
+            xy[i] = left + xy[i] / zoom;
+            xy[i + 1] = top + xy[i + 1] / zoom;
+        }
+    }
+
+    /**
+     * Maps an area of the board into the view.
+     *
+     * @param area The area in board coordinates
+     * @param out RectF that receives the area in view coordinates, may be the area
+     * @return The out rect
+     */
+    RectF toView(RectF area, RectF out){
+        out.set(toViewX(area.left), toViewY(area.top), toViewX(area.right), toViewY(area.bottom));
+        return out;
+    }
+
+    /**
+     * Computes the area of the board shown in the view.
+     */
+    RectF getVisibleArea(RectF out){
+        out.set(left, top, left + width / zoom, top + height / zoom);
+        return out;
+    }
+}
@@ -1,27 +1,73 @@
 package com.burkeapps.whiteboard.views;
 
+import android.content.ComponentCallbacks2;
+import android.content.ContentResolver;
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.util.AttributeSet;
+import android.util.Log;
+import android.util.LongSparseArray;
 import android.view.MotionEvent;
 import android.view.View;
 
 import com.burkeapps.whiteboard.R;
+import com.burkeapps.whiteboard.io.WhiteboardReader;
+import com.burkeapps.whiteboard.sync.Operation;
+import com.burkeapps.whiteboard.sync.SyncClient;
 
-import java.util.LinkedList;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.UUID;
 
 /**
  * A WhiteboardView provides a blank whiteboard which is available for drawing.  Different colors
  * of markers can be used on the whiteboard and previous drawings can be erased using an eraser
- * (marker with a white color) or using the clear() method.
+ * (marker with a white color), a stroke eraser that removes the parts of paths it touches from the
+ * history, or using the clear() method.
+ *
+ * The whiteboard is composited from layers that are redrawn independently: the view's background,
+ * which holds the photo set by {@link #setBackgroundImage(Uri)}, the ink tiles drawn by onDraw,
+ * the shape being placed and the paths being drawn on top.  The tiles are bitmaps that are only
+ * uploaded again when they change, and the live paths are a {@link Layer} in the view's overlay, so
+ * drawing a path only re-rasterizes its newest segments.
+ *
+ * Up to ten fingers can draw at once.  Each pointer draws a path of its own, which is added to the
+ * history when that pointer goes up, and only invalidates what its own samples touched.  The path
+ * is shown a little ahead of its latest sample, where a {@link MotionPredictor} expects the finger
+ * to be by the time the frame is on screen.
+ *
+ * The board reaches past the view in every direction.  In MODE_PAN, dragging moves the board and
+ * pinching zooms it, see also {@link #setViewport(float, float, float)}.  Only the tiles in view are
+ * drawn, and a zoomed out board is drawn from downsampled copies of its tiles, so a frame costs
+ * about the same at any zoom.
+ *
+ * In MODE_SHAPE, dragging draws a rectangle, triangle or ellipse that stays editable: it can be
+ * moved by dragging it and resized by its corners, which only redraws the shape's layer.  The
+ * shape becomes a path of the history once it is committed, e.g. by touching outside of it.
+ *
+ * How long touch events take to show up, how long drawing and rendering take and how much memory
+ * the board holds can be collected as {@link BoardMetrics}, see {@link #setMetricsSampling(int)}.
+ *
+ * Several boards can share one whiteboard through a {@link SyncClient}, see
+ * {@link #setSyncClient(SyncClient)}.
  */
-public class WhiteboardView extends View {
+public class WhiteboardView extends View implements RenderEngine.Listener {
+
+    private static final String TAG = "WhiteboardView";
 
     /**
      * Constant indicating current whiteboard is in erase mode.
@@ -31,17 +77,140 @@ public class WhiteboardView extends View {
      * Constant indicating current whiteboard is in marker mode.
      */
     public static final int MODE_MARKER = 1;
+    /**
+     * Constant indicating current whiteboard is in stroke erase mode.
+     */
+    public static final int MODE_STROKE_ERASER = 2;
+    /**
+     * Constant indicating current whiteboard is in shape mode.
+     */
+    public static final int MODE_SHAPE = 3;
+    /**
+     * Constant indicating current whiteboard is in pan and zoom mode.
+     */
+    public static final int MODE_PAN = 4;
+
+    /**
+     * Constant for a rectangle shape.
+     */
+    public static final int SHAPE_RECTANGLE = 0;
+    /**
+     * Constant for a triangle shape, pointing up.
+     */
+    public static final int SHAPE_TRIANGLE = 1;
+    /**
+     * Constant for an ellipse shape.
+     */
+    public static final int SHAPE_ELLIPSE = 2;
+
+    /**
+     * Number of pointers that can draw at once, further pointers are ignored.
+     */
+    private static final int MAX_POINTERS = 10;
+
+    /**
+     * Radius of the corner handles of a shape being placed, and of the area around them that
+     * grabs them, in dp.
+     */
+    private static final float SHAPE_HANDLE_RADIUS_DP = 6;
+    private static final float SHAPE_TOUCH_RADIUS_DP = 24;
+
+    /**
+     * Time between two reports to the metrics listener, in milliseconds.
+     */
+    private static final long METRICS_REPORT_INTERVAL = 10000;
+
+    /**
+     * Time operations for other boards are collected before they are sent, in milliseconds.
+     */
+    private static final long SYNC_FLUSH_DELAY = 50;
 
-    Path touchPath;
+    // what a touch does to the shape being placed
+    private static final int SHAPE_GESTURE_NONE = 0;
+    private static final int SHAPE_GESTURE_MOVE = 1;
+    private static final int SHAPE_GESTURE_RESIZE = 2;
+
+    // the paths of the pointers drawing, handed out as pointers go down
+    LiveStroke[] liveStrokes;
+    int liveCount;
+    // the area of the paths recorded since the last time no pointer was drawing, and whether any
+    // of them overlap
+    RectF liveArea = new RectF();
+    int liveRecorded;
+    boolean liveOverlap;
+    MotionPredictor.Factory predictorFactory = KinematicPredictor.FACTORY;
+    LiveStrokeLayer liveLayer;
+    ShapeLayer shapeLayer;
+    Shape shape;
+    int shapeType = SHAPE_RECTANGLE;
+    int shapeGesture = SHAPE_GESTURE_NONE;
+    float shapeTouchRadius;
+    // the corner that stays in place while a shape is resized
+    float shapeAnchorX, shapeAnchorY;
+    RectF shapeBounds = new RectF(), shapeDirty = new RectF();
     Paint touchPaint, canvasPaint, backgroundPaint;
-    Bitmap canvasBitmap;
-    Canvas touchCanvas;
-    LinkedList<PaintPath> pathHistory, undoHistory;
+    TiledCanvas tiles;
+    TilePyramid pyramid;
+    // the part of the board in view, and the focus and span of the pointers moving it
+    Viewport viewport = new Viewport();
+    float panX, panY, panSpan;
+    BitmapPool bitmapPool;
+    StrokeStore strokes;
+    StyleCache styles;
+    StrokeIndex strokeIndex;
+    StrokeRenderer renderer = new StrokeRenderer();
+    RenderEngine renderEngine;
+    CheckpointCache checkpoints;
+    StrokeSimplifier simplifier = new StrokeSimplifier();
+    StrokeEraser strokeEraser = new StrokeEraser();
+    HistoryCompactor compactor = new HistoryCompactor();
     PathListener l;
+    BackgroundImageListener backgroundListener;
+    BackgroundLayer backgroundLayer;
+    PhotoLoader photoLoader = new PhotoLoader();
+    PhotoLoader.Source photoSource;
+    Uri photoUri;
+    // the background the view had before a photo was set, and the board size last decoded for
+    Drawable plainBackground;
+    int photoWidth, photoHeight;
+    Playback playback;
+    PlaybackListener playbackListener;
+    float playbackSpeed = 1;
     int canvasHeight, canvasWidth;
     int markerColor, eraserColor;
     int markerThickness;
     int touchMode = MODE_MARKER;
+    boolean smoothing;
+    TouchBatch touchBatch = new TouchBatch();
+    float lastTouchX, lastTouchY;
+    Rect dirtyRect = new Rect();
+    Rect dirtyTiles = new Rect();
+    RectF touchBounds = new RectF(), dirtyArea = new RectF(), indexBounds = new RectF(), viewArea = new RectF();
+    // area changed by the stroke eraser since it was last rendered
+    RectF eraseArea = new RectF();
+    float lastEraseX, lastEraseY;
+    // the file last saved to or loaded from, and the writer of the file holding the instance state
+    // along with the key naming that file, which is passed on with the state
+    SavedHistory savedHistory = new SavedHistory();
+    StateWriter stateWriter = new StateWriter();
+    String stateKey;
+    // instance state waiting for a size to be restored at, the next band of tiles to show and the
+    // area the bands cover
+    File restoreFile;
+    int restoreRow = -1;
+    RectF restoreArea = new RectF();
+    // the file the loaded paths are read from while some of their points are still pending, and
+    // the area whose paths are read before it is rendered
+    WhiteboardReader loadReader;
+    File loadFile;
+    RectF loadArea = new RectF();
+    // timings and sizes collected for the metrics listener, and when they were last reported
+    BoardMetrics metrics = new BoardMetrics();
+    BoardMetrics.Listener metricsListener;
+    long metricsStart;
+    // keeps the board in step with the boards it is shared with
+    SyncClient syncClient;
+    boolean syncFlushPosted;
 
     public WhiteboardView(Context context) {
         super(context);
@@ -74,8 +243,12 @@ public class WhiteboardView extends View {
         initTouchPaint();
         initBackgroundPaint();
         initCanvasPaint();
-        initTouchPath();
+        initCanvas();
+        initCheckpoints();
         initHistory();
+        initTouchPath();
+        initRenderEngine();
+        initShapeLayer();
     }
 
     private int getDefaultEraserColor() {
@@ -106,247 +279,1588 @@ public class WhiteboardView extends View {
             backgroundPaint.setAntiAlias(true);
             backgroundPaint.setColor(Color.WHITE);
             backgroundPaint.setStyle(Paint.Style.FILL);
+            backgroundLayer = new BackgroundLayer(backgroundPaint, viewport);
         }
     }
 
     private void initCanvasPaint() {
         if(canvasPaint == null) {
-            canvasPaint = new Paint();
+            // tiles are scaled while the board is zoomed
+            canvasPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
         }
     }
 
     private void initTouchPath() {
-        if(touchPath == null) {
-            touchPath = new Path();
+        if(liveStrokes == null) {
+            liveStrokes = new LiveStroke[MAX_POINTERS];
+            for(int i=0; i<MAX_POINTERS; i++){
+                liveStrokes[i] = new LiveStroke();
+                liveStrokes[i].predictor = (predictorFactory != null) ? predictorFactory.create() : null;
+            }
+            liveLayer = new LiveStrokeLayer(liveStrokes, styles, viewport, metrics);
+        }
+
+        // ensure no path is in progress
+        dropLiveStrokes();
+    }
+
+    private void dropLiveStrokes() {
+        for(LiveStroke stroke : liveStrokes){
+            stroke.release();
+        }
+        liveCount = 0;
+        liveRecorded = 0;
+        liveOverlap = false;
+        liveLayer.invalidate();
+    }
+
+    private void initShapeLayer() {
+        float density = getContext().getResources().getDisplayMetrics().density;
+        Paint handlePaint = new Paint();
+        handlePaint.setAntiAlias(true);
+        handlePaint.setColor(Color.GRAY);
+        handlePaint.setStyle(Paint.Style.FILL);
+        shapeLayer = new ShapeLayer(styles, handlePaint, SHAPE_HANDLE_RADIUS_DP * density, viewport);
+        shapeTouchRadius = SHAPE_TOUCH_RADIUS_DP * density;
+    }
+
+    private void initCheckpoints() {
+        if(checkpoints == null) {
+            checkpoints = new CheckpointCache(getBitmapPool());
         }
+    }
 
-        // ensure path is in an empty state
-        touchPath.reset();
+    private BitmapPool getBitmapPool() {
+        if(bitmapPool == null) {
+            bitmapPool = new BitmapPool();
+        }
+        return bitmapPool;
     }
 
     private void initHistory() {
-        pathHistory = new LinkedList<>();
-        undoHistory = new LinkedList<>();
+        if(strokes == null) {
+            strokes = new StrokeStore();
+            styles = new StyleCache();
+            strokeIndex = new StrokeIndex();
+        }
+
+        strokes.clear();
+        styles.clear();
+        strokeIndex.clear();
+        checkpoints.clear();
+        checkpoints.clearBase();
+        savedHistory.clear();
+        stateWriter.clear();
+        restoreFile = null;
+        restoreRow = -1;
+        closeLoadReader();
+    }
+
+    private void initRenderEngine() {
+        if(renderEngine == null) {
+            renderEngine = new RenderEngine(tiles, strokes, styles, strokeIndex, checkpoints, getBitmapPool(), this);
+        }
+
+        // whatever was being rendered belongs to the old canvas, and no path is in progress
+        renderEngine.cancel();
+        renderEngine.setPaused(false);
     }
 
     private void initCanvas(){
-        // free up any existing bitmap from memory
-        if(canvasBitmap != null){
-            canvasBitmap.recycle();
+        if(tiles == null){
+            tiles = new TiledCanvas(getBitmapPool());
+            pyramid = new TilePyramid(tiles, getBitmapPool());
         }
 
-        // and create a new bitmap based on current size
-        canvasBitmap = Bitmap.createBitmap(canvasWidth, canvasHeight, Bitmap.Config.ARGB_8888);
-        touchCanvas = new Canvas(canvasBitmap);
+        // free up the memory of all tiles, they are allocated again when drawn on
+        tiles.clear();
+        pyramid.clear();
     }
 
     private void initCanvas(int width, int height){
         this.canvasWidth = width;
         this.canvasHeight = height;
-        initCanvas();
+        viewport.setSize(width, height);
     }
 
     @Override
     protected void onSizeChanged (int w, int h, int oldw, int oldh){
         super.onSizeChanged(w,h,oldw,oldh);
+        endPlayback();
 
-        // the size of the whiteboard changed, re-initialize the canvas
+        // the tiles reach past the view already, only the view and the page of the photo change
         initCanvas(w, h);
+        shapeLayer.setBounds(0, 0, w, h);
+        liveLayer.setBounds(0, 0, w, h);
+        loadBackgroundImage();
+        if(restoreFile != null){
+            // the whole board is shown again from the instance state
+            restoreHistory();
+        }
+    }
+
+    @Override
+    protected Parcelable onSaveInstanceState() {
+        SavedState state = new SavedState(super.onSaveInstanceState());
+        state.touchMode = touchMode;
+        state.shapeType = shapeType;
+        state.markerColor = markerColor;
+        state.markerThickness = markerThickness;
+        state.smoothing = smoothing;
+        state.photo = photoUri;
+        state.zoom = viewport.getZoom();
+        state.viewportLeft = viewport.getLeft();
+        state.viewportTop = viewport.getTop();
+
+        if(restoreFile != null){
+            // not restored yet, the file still holds the history
+            state.historyPath = restoreFile.getPath();
+        } else if(strokes.size() > 0 || checkpoints.hasBase()){
+            // the history is too large for a parcel, only the path of the file holding it is
+            // passed on.  The file is written off the UI thread, most of the time only the paths
+            // drawn since the last state was saved are appended.  Paths that are still pending are
+            // read from the loaded file there too.  The base layer of compacted paths goes along.
+            File file = getStateFile();
+            stateWriter.save(file, strokes.snapshotWithPending(), styles.table(), styles.size(),
+                    loadReader != null ? loadFile : null, checkpoints);
+            state.historyPath = file.getPath();
+        } else if(stateKey != null){
+            // nothing to restore, don't leave the history of an earlier state behind
+            stateWriter.delete(getStateFile());
+        }
+        state.stateKey = stateKey;
+        return state;
+    }
+
+    @Override
+    protected void onRestoreInstanceState(Parcelable state) {
+        if(!(state instanceof SavedState)){
+            super.onRestoreInstanceState(state);
+            return;
+        }
+
+        SavedState saved = (SavedState) state;
+        super.onRestoreInstanceState(saved.getSuperState());
+        if(saved.stateKey != null){
+            // the state goes on being saved to the file of the board it was saved from
+            stateKey = saved.stateKey;
+        }
+        smoothing = saved.smoothing;
+        setMarkerThickness(saved.markerThickness);
+        setMarkerColor(saved.markerColor);
+        if(saved.touchMode == MODE_SHAPE){
+            activateShapes(saved.shapeType);
+        } else if(saved.touchMode == MODE_ERASER){
+            activateEraser();
+        } else if(saved.touchMode == MODE_STROKE_ERASER){
+            activateStrokeEraser();
+        } else if(saved.touchMode == MODE_PAN){
+            activatePan();
+        } else {
+            activateMarker();
+        }
+        if(saved.photo != null){
+            setBackgroundImage(saved.photo);
+        }
+        setViewport(saved.zoom, saved.viewportLeft, saved.viewportTop);
+
+        // the history is read lazily, once the board has a size to render it at.  A shared board
+        // shows the shared history instead
+        if(saved.historyPath != null && syncClient == null){
+            restoreFile = new File(saved.historyPath);
+            if(canvasWidth > 0 && canvasHeight > 0){
+                restoreHistory();
+            }
+        }
+    }
+
+    private File getStateFile() {
+        // a key of its own, view ids are not unique and often not set at all
+        if(stateKey == null){
+            stateKey = UUID.randomUUID().toString();
+        }
+        return new File(getContext().getFilesDir(), "whiteboard-state-" + stateKey + ".wb");
+    }
+
+    private void restoreHistory() {
+        // the whiteboard that saved the state may still be writing the file, e.g. on a rotation,
+        // so it is read once the writes queued so far are done
+        final File file = restoreFile;
+        StateWriter.whenWritten(new Runnable() {
+            @Override
+            public void run() {
+                restoreHistory(file);
+            }
+        });
+    }
+
+    private void restoreHistory(File file) {
+        // the state was restored already or replaced meanwhile, e.g. by clear() or load().  A
+        // detached board keeps the file for its own state
+        if(!file.equals(restoreFile) || getWindowToken() == null){
+            return;
+        }
+
+        restoreFile = null;
+        try {
+            if(loadHistory(file)){
+                stateWriter.loaded(file, strokes.size(), styles.size());
+            }
+        } catch(IOException e){
+            // the file is gone or damaged, start over with a blank board
+            Log.w(TAG, "Could not restore the whiteboard from " + file, e);
+            return;
+        }
+
+        renderLoadedHistory();
+        invalidate();
+    }
+
+    private void renderLoadedHistory() {
+        // the paths in view are read and shown first, then the board from the top, one band of
+        // tiles per render
+        getHistoryArea(restoreArea);
+        restoreRow = 0;
+        if(viewport.getVisibleArea(viewArea).intersect(restoreArea)){
+            renderArea(viewArea);
+        } else {
+            renderRestoreRow();
+        }
+    }
+
+    private void renderRestoreRow() {
+        float top = (float) Math.floor(restoreArea.top / TiledCanvas.TILE_SIZE) * TiledCanvas.TILE_SIZE
+                + restoreRow * TiledCanvas.TILE_SIZE;
+        if(restoreArea.isEmpty() || top >= restoreArea.bottom){
+            restoreRow = -1;
+            // the rest are undone or erased paths, read them so the file can be closed
+            finishLoading();
+            return;
+        }
+
+        restoreRow++;
+        dirtyArea.set(restoreArea.left, top, restoreArea.right, top + TiledCanvas.TILE_SIZE);
+        renderArea(dirtyArea);
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+
+        // hardware acceleration is known once attached, it decides where the live paths are drawn
+        shapeLayer.attach(this);
+        liveLayer.attach(this);
+        if(restoreFile != null && canvasWidth > 0 && canvasHeight > 0){
+            // detached before its state was restored
+            restoreHistory();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        shapeLayer.detach();
+        liveLayer.detach();
+
+        // stop the render thread, it is started again by the next render
+        renderEngine.release();
     }
 
     @Override
     public boolean onTouchEvent (@NonNull MotionEvent event){
+        metrics.touched(event.getEventTime());
         int action = event.getAction();
-        switch(action){
+        if(touchMode == MODE_PAN && shapeGesture == SHAPE_GESTURE_NONE && !strokes.isEraseOpen()
+                && liveCount == 0){
+            return onPanEvent(event);
+        }
+        if(shapeGesture != SHAPE_GESTURE_NONE || (action == MotionEvent.ACTION_DOWN && touchMode == MODE_SHAPE)){
+            return onShapeEvent(event);
+        }
+        if(strokes.isEraseOpen() || (action == MotionEvent.ACTION_DOWN && touchMode == MODE_STROKE_ERASER)){
+            return onEraseEvent(event);
+        }
+        if(action != MotionEvent.ACTION_DOWN && liveCount == 0){
+            // the paths were dropped mid-gesture, e.g. by clear() - wait for the next touch
+            return action == MotionEvent.ACTION_MOVE || action == MotionEvent.ACTION_UP;
+        }
+
+        switch(event.getActionMasked()){
             case MotionEvent.ACTION_DOWN:
-                // user touched the screen - start path at this point
-                touchPath.moveTo(event.getX(), event.getY());
+                // user touched the screen - show the whole board again and start path at this point
+                endPlayback();
+                dropLiveStrokes();
+                startPath(event, 0);
+                break;
+            case MotionEvent.ACTION_POINTER_DOWN:
+                // another finger touched the screen, it draws a path of its own
+                startPath(event, event.getActionIndex());
                 break;
             case MotionEvent.ACTION_MOVE:
-                // user moved their touch, connect the two points with a line
-                touchPath.lineTo(event.getX(), event.getY());
+                // user moved their touches, connect all samples of each pointer since the last event
+                for(int p=0; p<event.getPointerCount(); p++){
+                    LiveStroke stroke = LiveStroke.find(liveStrokes, event.getPointerId(p));
+                    if(stroke == null){
+                        continue;
+                    }
+                    int count = touchBatch.collect(event, p);
+                    viewport.toBoard(touchBatch.points, 0, count);
+                    stroke.add(touchBatch.points, touchBatch.times, count);
+                    for(int i=0; i<count; i++){
+                        extendPath(stroke, touchBatch.getX(i), touchBatch.getY(i));
+                    }
+                    // the real samples replace the tail predicted by the last event
+                    stroke.predictTail();
+                }
                 break;
+            case MotionEvent.ACTION_POINTER_UP:
             case MotionEvent.ACTION_UP:
-                // user released their touch, draw it on the canvas and reset the path
-                touchCanvas.drawPath(touchPath, touchPaint);
-                recordPath();
+                // user released a touch, draw the rest of its path on the canvas and record it
+                LiveStroke stroke = LiveStroke.find(liveStrokes, event.getPointerId(event.getActionIndex()));
+                if(stroke == null){
+                    break;
+                }
+                stroke.dropTail();
+                stroke.finish(smoothing);
+                drawTouchPath(stroke);
+                invalidateDirtyBounds(stroke);
+                recordPath(stroke);
+                shareStroke(strokes.size() - 1);
 
                 // notify listener that a path was drawn
                 if(l != null){
                     l.onPathCompleted();
                 }
                 break;
+            case MotionEvent.ACTION_CANCEL:
+                // the gesture was taken away, e.g. by a scrolling parent - its paths are not recorded
+                cancelPaths();
+                break;
             default:
                 // don't care about this touch event - tell system we didn't process it
                 return false;
         }
 
-        // re-draw and tell system we processed this event by returning true
-        invalidate();
+        // re-draw only what the new points of each pointer touched and tell system we processed
+        // this event
+        for(LiveStroke stroke : liveStrokes){
+            invalidateDirtyBounds(stroke);
+        }
         return true;
     }
 
-    private void recordPath() {
-        // save the current path to history and reset the path
-        // TODO: store paint items in cache to avoid creating duplicate paint objects
-        PaintPath paintPath = new PaintPath(new Paint(touchPaint), new Path(touchPath));
-        pathHistory.push(paintPath);
-        touchPath.reset();
+    private boolean onPanEvent(MotionEvent event) {
+        int action = event.getActionMasked();
+        // the focus is the middle of the pointers, and the span their mean distance from it.  A
+        // pointer going up no longer counts.
+        int skip = (action == MotionEvent.ACTION_POINTER_UP) ? event.getActionIndex() : -1;
+        int pointers = 0;
+        float x = 0, y = 0;
+        for(int i=0; i<event.getPointerCount(); i++){
+            if(i != skip){
+                x += event.getX(i);
+                y += event.getY(i);
+                pointers++;
+            }
+        }
+        x /= pointers;
+        y /= pointers;
+        float span = 0;
+        for(int i=0; i<event.getPointerCount(); i++){
+            if(i != skip){
+                span += (float) Math.hypot(event.getX(i) - x, event.getY(i) - y);
+            }
+        }
+        span /= pointers;
+
+        switch(action){
+            case MotionEvent.ACTION_DOWN:
+            case MotionEvent.ACTION_POINTER_DOWN:
+            case MotionEvent.ACTION_POINTER_UP:
+                // the focus jumps, the gesture goes on from where it is now
+                break;
+            case MotionEvent.ACTION_MOVE:
+                // the board follows the focus, and grows and shrinks with the span around it
+                viewport.panBy(x - panX, y - panY);
+                if(panSpan > 0 && span > 0){
+                    viewport.zoomBy(span / panSpan, x, y);
+                }
+                onViewportChanged();
+                break;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                break;
+            default:
+                return false;
+        }
 
-        // as soon as another path has been entered, user can no longer re-do
-        undoHistory.clear();
+        panX = x;
+        panY = y;
+        panSpan = (pointers > 1) ? span : 0;
+        return true;
     }
 
-    private void redrawCanvasBitmap() {
-        // create a new canvas
-        initCanvas();
+    private void onViewportChanged() {
+        // the tiles, the photo and the layers all move with the board
+        backgroundLayer.invalidateSelf();
+        shapeLayer.invalidate();
+        liveLayer.invalidate();
+        invalidate();
+    }
 
-        // and draw the path history over it
-        for(int i=pathHistory.size()-1; i>=0; i--){
-            PaintPath paintPath = pathHistory.get(i);
-            touchCanvas.drawPath(paintPath.getPath(), paintPath.getPaint());
+    private boolean onShapeEvent(MotionEvent event) {
+        // only the latest position matters, the shape is redrawn once per event
+        float x = viewport.toBoardX(event.getX()), y = viewport.toBoardY(event.getY());
+        switch(event.getAction()){
+            case MotionEvent.ACTION_DOWN:
+                endPlayback();
+                startShapeGesture(x, y);
+                break;
+            case MotionEvent.ACTION_MOVE:
+                shapeLayer.getDirtyBounds(shapeDirty);
+                if(shapeGesture == SHAPE_GESTURE_MOVE){
+                    shape.translate(x - lastTouchX, y - lastTouchY);
+                } else {
+                    shape.setCorners(shapeAnchorX, shapeAnchorY, x, y);
+                }
+                invalidateShape();
+                break;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                shapeGesture = SHAPE_GESTURE_NONE;
+                if(shape.getBounds(shapeBounds).width() < 1 && shapeBounds.height() < 1){
+                    // a tap rather than a drag, there is nothing to place
+                    dropShape();
+                }
+                break;
+            default:
+                return false;
         }
 
-        invalidate();
+        lastTouchX = x;
+        lastTouchY = y;
+        return true;
     }
 
-    @Override
-    protected void onDraw(Canvas canvas) {
-        // draw the existing bitmap of our canvas
-        canvas.drawBitmap(canvasBitmap, 0, 0, canvasPaint);
-        // draw the touch path over the bitmap
-        canvas.drawPath(touchPath, touchPaint);
+    private void startShapeGesture(float x, float y) {
+        if(shape != null){
+            shape.getBounds(shapeBounds);
+            float radius = shapeTouchRadius / viewport.getZoom();
+            boolean nearLeft = Math.abs(x - shapeBounds.left) <= radius;
+            boolean nearRight = Math.abs(x - shapeBounds.right) <= radius;
+            boolean nearTop = Math.abs(y - shapeBounds.top) <= radius;
+            boolean nearBottom = Math.abs(y - shapeBounds.bottom) <= radius;
+            if((nearLeft || nearRight) && (nearTop || nearBottom)){
+                // grabbed a corner, the opposite one stays in place
+                shapeAnchorX = nearLeft ? shapeBounds.right : shapeBounds.left;
+                shapeAnchorY = nearTop ? shapeBounds.bottom : shapeBounds.top;
+                shapeGesture = SHAPE_GESTURE_RESIZE;
+                return;
+            }
+            shapeBounds.inset(-radius, -radius);
+            if(shapeBounds.contains(x, y)){
+                shapeGesture = SHAPE_GESTURE_MOVE;
+                return;
+            }
+
+            // touched outside of the shape, place it and start the next one
+            commitShape();
+        }
+
+        shape = new Shape(shapeType, styles.intern(touchPaint, MODE_MARKER, false));
+        shape.setCorners(x, y, x, y);
+        shapeLayer.setShape(shape);
+        shapeAnchorX = x;
+        shapeAnchorY = y;
+        shapeGesture = SHAPE_GESTURE_RESIZE;
+        shapeDirty.setEmpty();
+        invalidateShape();
     }
 
-    /* ********************************************************************************************
-    *                                       PUBLIC APIs
-    * ********************************************************************************************/
+    private void invalidateShape() {
+        // redraw where the shape was and where it is now
+        shapeDirty.union(shapeLayer.getDirtyBounds(shapeBounds));
+        shapeLayer.invalidate(toViewRect(shapeDirty));
+    }
 
-    /**
-     * Clears all marks on the whiteboard.
-     */
-    public void clear(){
-        // re-initialize our touch objects
-        initTouchPath();
-        initCanvas();
-        initHistory();
+    private void restyleShape() {
+        if(shape != null){
+            shapeLayer.getDirtyBounds(shapeDirty);
+            shape.setStyle(styles.intern(touchPaint, MODE_MARKER, false));
+            invalidateShape();
+        }
+    }
 
-        if(l != null){
-            l.onPathsCleared();
+    private void dropShape() {
+        if(shape == null){
+            return;
         }
 
-        // re-draw the whiteboard
-        invalidate();
+        shapeLayer.getDirtyBounds(shapeDirty);
+        shape = null;
+        shapeLayer.setShape(null);
+        shapeGesture = SHAPE_GESTURE_NONE;
+        shapeLayer.invalidate(toViewRect(shapeDirty));
     }
 
-    /**
-     * Sets the color of the current marker.
-     *
-     * <b>Note: If whiteboard is in MODE_ERASER, this change will not activate
-     * until a drawable mode is entered.</b>
-     *
-     * @param color Color of the marker to set
-     */
-    public void setMarkerColor(int color){
-        markerColor = color;
-        if(touchMode != MODE_ERASER){
-            touchPaint.setColor(markerColor);
+    private boolean onEraseEvent(MotionEvent event) {
+        int action = event.getAction();
+        if(action != MotionEvent.ACTION_DOWN && !strokes.isEraseOpen()){
+            // the erase was dropped mid-gesture, e.g. by clear() - wait for the next touch
+            return action == MotionEvent.ACTION_MOVE || action == MotionEvent.ACTION_UP
+                    || action == MotionEvent.ACTION_CANCEL;
         }
-    }
 
-    /**
-     * Enters whiteboard into MODE_ERASER.
-     */
-    public void activateEraser(){
-        touchMode = MODE_ERASER;
-        touchPaint.setColor(eraserColor);
+        switch(action){
+            case MotionEvent.ACTION_DOWN:
+                endPlayback();
+                startErase(viewport.toBoardX(event.getX()), viewport.toBoardY(event.getY()));
+                break;
+            case MotionEvent.ACTION_MOVE:
+                int count = touchBatch.collect(event);
+                viewport.toBoard(touchBatch.points, 0, count);
+                for(int i=0; i<count; i++){
+                    eraseTo(touchBatch.getX(i), touchBatch.getY(i));
+                }
+                break;
+            case MotionEvent.ACTION_UP:
+                eraseTo(viewport.toBoardX(event.getX()), viewport.toBoardY(event.getY()));
+                endErase();
+                break;
+            case MotionEvent.ACTION_CANCEL:
+                // the gesture was taken away, keep what was erased up to its last move
+                endErase();
+                break;
+            default:
+                return false;
+        }
+
+        // the erased area is rendered again from the history
+        if(!eraseArea.isEmpty()){
+            renderArea(eraseArea);
+            eraseArea.setEmpty();
+        }
+        return true;
     }
 
-    /**
-     * Enters whiteboard into MODE_MARKER.
-     */
-    public void activateMarker(){
-        touchMode = MODE_MARKER;
-        touchPaint.setColor(markerColor);
+    private void startErase(float x, float y) {
+        if(liveCount > 0){
+            // paths left open by an interrupted gesture
+            dropLiveStrokes();
+            renderEngine.setPaused(false);
+        }
+        if(strokes.isEraseOpen()){
+            // an erase whose gesture never ended, it is a step of its own
+            endErase();
+        }
+
+        // undone steps are dropped, so are the checkpoints of their strokes
+        checkpoints.discardAfter(strokes.size());
+        strokes.beginErase();
+        eraseArea.setEmpty();
+        lastEraseX = x;
+        lastEraseY = y;
+        eraseAt(x, y);
     }
 
-    /**
-     * Returns the current mode of this whiteboard.
-     *
-     * @return The mode of this whiteboard
-     */
-    public int getTouchMode(){
-        return touchMode;
+    private void endErase() {
+        if(strokes.endErase() && l != null){
+            l.onPathsErased();
+        }
     }
 
-    /**
-     * Sets the current thickness of the marker/eraser.  The input value should take
-     * screen density into account.
-     *
-     * @param thickness The thickness to set
-     */
-    public void setMarkerThickness(int thickness){
-        markerThickness = thickness;
-        touchPaint.setStrokeWidth(thickness);
+    private void eraseTo(float x, float y) {
+        // step along the eraser's path so fast moves don't skip strokes between samples
+        float radius = getEraserRadius();
+        float distance = (float) Math.hypot(x - lastEraseX, y - lastEraseY);
+        int steps = (int) Math.ceil(distance / Math.max(1, radius / 2));
+        for(int i=1; i<=steps; i++){
+            float t = (float) i / steps;
+            eraseAt(lastEraseX + (x - lastEraseX) * t, lastEraseY + (y - lastEraseY) * t);
+        }
+        lastEraseX = x;
+        lastEraseY = y;
     }
 
-    /**
-     * Undoes the previously drawn path.  If no path has been drawn, does nothing.
-     */
-    public void undo(){
-        if(pathHistory.size() > 0){
-            PaintPath undoPath = pathHistory.pop();
-            undoHistory.push(undoPath);
-            redrawCanvasBitmap();
+    private void eraseAt(float x, float y) {
+        float radius = getEraserRadius();
+        int found = strokeIndex.queryNear(x, y, radius);
+        int[] hits = strokeIndex.getResults();
+        // pieces the open step added are removed when they are erased again, not kept as erased
+        int stepStart = strokes.getStepStrokeStart(strokes.getStepCount() - 1);
+        for(int i=0; i<found; i++){
+            int stroke = hits[i];
+            readLoadedPath(stroke);
+            StrokeStyle style = styles.get(strokes.getStyle(stroke));
+            RectF bounds = getStrokeBounds(stroke);
+            int pieces = strokes.size();
+            if(!strokeEraser.erase(strokes, stroke, x, y, radius + style.getWidth() / 2)){
+                continue;
+            }
 
-            // notify listener
-            if(l != null){
-                l.onPathUndone();
+            eraseArea.union(bounds);
+            if(stroke >= stepStart){
+                // the later pieces moved down into its place, index them again
+                for(int j = i + 1; j < found; j++){
+                    if(hits[j] > stroke){
+                        hits[j]--;
+                    }
+                }
+                pieces = stroke;
+            } else {
+                strokeIndex.setHidden(stroke, true);
             }
+            for(int piece = pieces; piece < strokes.size(); piece++){
+                indexStroke(piece);
+            }
+
+            // checkpoints after the stroke still show it, and a saved file holding it is stale
+            checkpoints.discardAfter(stroke);
+            savedHistory.changed(stroke);
+            stateWriter.changed(stroke);
         }
     }
 
-    /**
-     * Redoes the previously undone path.  If no path has been undone, does nothing.
-     */
-    public void redo(){
-        if(undoHistory.size() > 0){
-            PaintPath lastUndone = undoHistory.pop();
-            pathHistory.push(lastUndone);
-            redrawCanvasBitmap();
+    private float getEraserRadius() {
+        return markerThickness / 2f;
+    }
 
-            // notify listener
-            if(l != null){
-                l.onPathRedone();
-            }
+    private void startPath(MotionEvent event, int pointerIndex) {
+        LiveStroke stroke = LiveStroke.obtain(liveStrokes);
+        if(stroke == null){
+            // every live path is taken, this pointer does not draw
+            return;
         }
+        float x = viewport.toBoardX(event.getX(pointerIndex)), y = viewport.toBoardY(event.getY(pointerIndex));
+
+        // renders only know finished paths, hold them back until every path is finished
+        renderEngine.setPaused(true);
+
+        // as soon as another path has been entered, user can no longer re-do
+        checkpoints.discardAfter(strokes.size());
+        stroke.begin(event.getPointerId(pointerIndex), styles.intern(touchPaint, touchMode, smoothing), x, y,
+                event.getEventTime());
+        liveCount++;
+        stroke.addDirtyPoint(x, y);
     }
 
-    /**
-     * Indicates whether the whiteboard can undo a path.
-     *
-     * @return True if a path can be undone, false otherwise.
-     */
-    public boolean canUndo(){
-        return (pathHistory.size() > 0);
+    private void extendPath(LiveStroke stroke, float x, float y) {
+        stroke.extend(x, y, smoothing);
+        if(stroke.isPathFull()){
+            // move the finished part of the path onto the canvas so onDraw only has to draw the
+            // recent points
+            drawTouchPath(stroke);
+            stroke.keepLastSegment(smoothing);
+        }
     }
 
-    /**
+    private void cancelPaths() {
+        // the live paths moved part of their ink onto the tiles already, it covers their samples
+        boolean inked = false;
+        float reach = 0;
+        for(LiveStroke stroke : liveStrokes){
+            if(!stroke.isFree()){
+                reach = Math.max(reach, styles.get(stroke.style).getReach());
+            }
+            for(int i=0; !stroke.isFree() && i<stroke.size; i++){
+                float x = stroke.points[i * 2], y = stroke.points[i * 2 + 1];
+                if(inked){
+                    dirtyArea.union(x, y);
+                } else {
+                    dirtyArea.set(x, y, x, y);
+                    inked = true;
+                }
+            }
+        }
+        dropLiveStrokes();
+
+        // render the area again from the history, which never held the paths
+        if(inked){
+            dirtyArea.inset(-reach, -reach);
+            renderArea(dirtyArea);
+        }
+        renderEngine.setPaused(false);
+    }
+
+    private void drawTouchPath(LiveStroke stroke) {
+        // the path is drawn in the style it is recorded with, not in the current one
+        StrokeStyle style = styles.get(stroke.style);
+        stroke.path.computeBounds(touchBounds, true);
+        float inset = -style.getReach();
+        touchBounds.inset(inset, inset);
+        tiles.drawPath(stroke.path, style.getPaint(), touchBounds);
+        renderEngine.onCanvasChanged();
+        stroke.inkChanged = true;
+    }
+
+    private void invalidateDirtyBounds(LiveStroke stroke) {
+        if(!stroke.hasDirtyBounds){
+            return;
+        }
+
+        // each pointer invalidates its own area, not the area spanning all pointers
+        float inset = -styles.get(stroke.style).getReach();
+        stroke.dirtyBounds.inset(inset, inset);
+        toViewRect(stroke.dirtyBounds);
+        if(stroke.inkChanged){
+            // the ink tiles under the path changed, record the view again
+            invalidate(dirtyRect);
+        }
+        liveLayer.invalidate(dirtyRect);
+        stroke.hasDirtyBounds = false;
+        stroke.inkChanged = false;
+    }
+
+    private Rect toViewRect(RectF area) {
+        // dirty areas are found on the board, but the view and its layers invalidate view pixels
+        viewport.toView(area, viewArea).roundOut(dirtyRect);
+        return dirtyRect;
+    }
+
+    private void recordPath(LiveStroke stroke) {
+        // commit the path to history in one go, drop redundant points and free the live path
+        HistorySteps.record(strokes, styles, strokeIndex, simplifier, stroke.style, stroke.points, stroke.times,
+                stroke.size, indexBounds);
+        stroke.release();
+        if(liveRecorded > 0 && RectF.intersects(liveArea, indexBounds)){
+            liveOverlap = true;
+        }
+        if(liveRecorded++ == 0){
+            liveArea.set(indexBounds);
+        } else {
+            liveArea.union(indexBounds);
+        }
+        liveCount--;
+        if(liveCount == 0){
+            renderEngine.setPaused(false);
+            if(liveOverlap){
+                // paths drawn at the same time moved their ink onto the tiles in turns, render
+                // their area again so the ink is stacked in the order of the history
+                renderArea(liveArea);
+            }
+            liveRecorded = 0;
+            liveOverlap = false;
+        }
+
+        // the canvas already holds this path, snapshot it if a checkpoint is due
+        saveCheckpointIfDue();
+    }
+
+    /**
+     * Adds the outline of the shape being placed to the history and draws it onto the canvas.
+     */
+    private void commitShape() {
+        Shape committed = shape;
+        if(committed == null){
+            return;
+        }
+        dropShape();
+
+        // the shape is added like a path drawn in one go
+        checkpoints.discardAfter(strokes.size());
+        float[] outline = committed.getOutline();
+        strokes.beginStroke(committed.getStyle());
+        strokes.addPoint(outline[0], outline[1], SystemClock.uptimeMillis());
+        strokes.addPoints(outline, 1, committed.getOutlineCount() - 1);
+        strokes.endStroke();
+        int stroke = strokes.size() - 1;
+        indexStroke(stroke);
+
+        renderer.drawStroke(strokes, styles.table(), stroke, tiles);
+        renderEngine.onCanvasChanged();
+        invalidate(toViewRect(getStrokeBounds(stroke)));
+
+        saveCheckpointIfDue();
+        shareStroke(stroke);
+        if(l != null){
+            l.onPathCompleted();
+        }
+    }
+
+    private RectF getStrokeBounds(int stroke) {
+        return StrokeRenderer.getBounds(strokes, stroke, styles.get(strokes.getStyle(stroke)), dirtyArea);
+    }
+
+    private void indexStroke(int stroke) {
+        // index the area the stroke draws on, including the width of its line
+        HistorySteps.index(strokes, styles, strokeIndex, stroke, indexBounds);
+    }
+
+    private void saveCheckpointIfDue() {
+        // only a canvas that is up to date with the history and holds no live paths can be saved
+        if(playback == null && restoreRow < 0 && renderEngine.isIdle()
+                && HistorySteps.saveCheckpointIfDue(checkpoints, strokes, tiles, liveCount > 0)){
+            compactHistory();
+        }
+    }
+
+    private void compactHistory() {
+        // a new checkpoint may let the oldest paths be baked into the base layer
+        int dropped = compactor.compact(strokes, checkpoints);
+        if(dropped == 0){
+            return;
+        }
+
+        // the remaining paths were renumbered
+        reindexStrokes();
+        renderEngine.onCanvasChanged();
+        savedHistory.compacted(dropped);
+        stateWriter.compacted(dropped);
+    }
+
+    private void reindexStrokes() {
+        strokeIndex.clear();
+        for(int i=0; i<strokes.storedSize(); i++){
+            indexStroke(i);
+            strokeIndex.setHidden(i, strokes.isErased(i));
+        }
+        strokeIndex.setVisibleCount(strokes.size());
+    }
+
+    private void redrawCanvasBitmap() {
+        if(!getHistoryArea(dirtyArea).isEmpty()){
+            renderArea(dirtyArea);
+        }
+    }
+
+    private RectF getHistoryArea(RectF out) {
+        // the tiles outside of the indexed paths and the base layer hold no ink of the history
+        checkpoints.getBaseArea(out);
+        if(strokeIndex.size() > 0){
+            out.union(strokeIndex.getLeft(), strokeIndex.getTop(), strokeIndex.getRight(), strokeIndex.getBottom());
+        }
+        return out;
+    }
+
+    private Rect getBoardArea(Rect out) {
+        // the page the photo is drawn on, grown to every tile holding ink
+        tiles.getExtent(out);
+        out.union(0, 0, canvasWidth, canvasHeight);
+        return out;
+    }
+
+    private void renderArea(RectF area) {
+        // only the tiles touching the area are rendered again, off the UI thread.  The canvas
+        // keeps showing its current tiles until the render is swapped in.
+        tiles.getTileRange(area, dirtyTiles);
+        if(loadReader != null){
+            // every path touching the tiles is drawn on them, read the points of the pending ones
+            TiledCanvas.getTileArea(dirtyTiles, loadArea);
+            int found = strokeIndex.query(loadArea.left, loadArea.top, loadArea.right, loadArea.bottom);
+            int[] hits = strokeIndex.getResults();
+            for(int i=0; i<found; i++){
+                readLoadedPath(hits[i]);
+            }
+        }
+        renderEngine.requestRender(dirtyTiles);
+    }
+
+    @Override
+    public void onRenderApplied() {
+        if(metrics.sample()){
+            metrics.renderTime.record(renderEngine.getLastRenderTime());
+        }
+        if(restoreRow >= 0){
+            // a restored board is shown a band at a time, render the next one
+            renderRestoreRow();
+        }
+
+        // keep a checkpoint close to the top of the history for the next undo
+        saveCheckpointIfDue();
+        invalidate();
+    }
+
+    private final Playback.Listener playbackCallbacks = new Playback.Listener() {
+        @Override
+        public void onPlaybackFrame(RectF dirty) {
+            renderEngine.onCanvasChanged();
+            if(dirty != null){
+                invalidate(toViewRect(dirty));
+            } else {
+                invalidate();
+            }
+        }
+
+        @Override
+        public void onPlaybackFinished() {
+            // the whole history is on the canvas again
+            playback.release();
+            playback = null;
+            saveCheckpointIfDue();
+            if(playbackListener != null){
+                playbackListener.onPlaybackFinished();
+            }
+        }
+    };
+
+    // applies the operations of the boards this one is shared with
+    private final SyncClient.Board syncBoard = new SyncClient.Board() {
+        @Override
+        public void addStroke(Operation stroke) {
+            // the stroke is added like a path drawn in one go, on top of the history
+            endPlayback();
+            checkpoints.discardAfter(strokes.size());
+            int index = stroke.addTo(strokes, styles, SystemClock.uptimeMillis());
+            indexStroke(index);
+
+            renderer.drawStroke(strokes, styles.table(), index, tiles);
+            renderEngine.onCanvasChanged();
+            invalidate(toViewRect(getStrokeBounds(index)));
+
+            saveCheckpointIfDue();
+            if(l != null){
+                l.onPathCompleted();
+            }
+        }
+
+        @Override
+        public boolean undo() {
+            endPlayback();
+            return undoStep();
+        }
+
+        @Override
+        public boolean redo() {
+            endPlayback();
+            return redoStep();
+        }
+
+        @Override
+        public void clear() {
+            WhiteboardView.this.clear();
+        }
+
+        @Override
+        public int getStepCount() {
+            return strokes.getStepCount();
+        }
+
+        @Override
+        public boolean canRedo() {
+            return strokes.canRedo();
+        }
+
+        @Override
+        public boolean isDrawing() {
+            return liveCount > 0 || strokes.isEraseOpen();
+        }
+    };
+
+    private final Runnable syncFlush = new Runnable() {
+        @Override
+        public void run() {
+            syncFlushPosted = false;
+            if(syncClient != null){
+                syncClient.flush();
+            }
+        }
+    };
+
+    private Playback getPlayback() {
+        if(playback == null){
+            // playback only shows the history, place the shape in it first
+            commitShape();
+            finishLoading();
+            // whatever is being rendered is about to be drawn over
+            renderEngine.cancel();
+            playback = new Playback(strokes, styles, tiles, checkpoints, playbackCallbacks);
+            playback.setSpeed(playbackSpeed);
+        }
+        return playback;
+    }
+
+    private void endPlayback() {
+        if(playback != null){
+            // jump to the end so the canvas shows the whole history again
+            playback.pause();
+            playback.seek(playback.getDuration());
+            playback.release();
+            playback = null;
+        }
+    }
+
+    private void dropPlayback() {
+        if(playback != null){
+            playback.release();
+            playback = null;
+        }
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        boolean timed = metrics.sample();
+        long start = timed ? System.nanoTime() : 0;
+
+        // draw the tiles in view that touch the invalidated area, or their downsampled copies
+        if(!pyramid.draw(canvas, viewport, canvasPaint)){
+            // some copies are still being made
+            postInvalidateOnAnimation();
+        }
+        // without an overlay, draw the recent part of the touch paths over the tiles
+        shapeLayer.drawInline(canvas);
+        liveLayer.drawInline(canvas);
+
+        if(timed){
+            metrics.drawTime.record((System.nanoTime() - start) / 1000);
+        }
+        metrics.frameDrawn();
+        reportMetricsIfDue();
+    }
+
+    private boolean undoStep() {
+        if(!strokes.undo()){
+            return false;
+        }
+
+        // only the area under the undone paths and the paths they erased is rendered again
+        int changed = HistorySteps.undone(strokes, styles, strokeIndex, eraseArea, dirtyArea);
+        if(changed < strokes.size()){
+            // checkpoints were saved without the paths that are back now
+            checkpoints.discardAfter(changed);
+        }
+        // a saved file holding the undone path has to be written again from scratch
+        savedHistory.changed(changed);
+        stateWriter.changed(changed);
+        renderArea(eraseArea);
+        eraseArea.setEmpty();
+
+        // notify listener
+        if(l != null){
+            l.onPathUndone();
+        }
+        return true;
+    }
+
+    private boolean redoStep() {
+        if(!strokes.redo()){
+            return false;
+        }
+
+        int step = strokes.getStepCount() - 1;
+        strokeIndex.setVisibleCount(strokes.size());
+        if(strokes.getStepErasedCount(step) == 0){
+            // the redone path is the newest one, it can simply be drawn on top
+            readLoadedPath(strokes.size() - 1);
+            renderer.drawStroke(strokes, styles.table(), strokes.size() - 1, tiles);
+            renderEngine.onCanvasChanged();
+            saveCheckpointIfDue();
+            invalidate();
+        } else {
+            // erase again and render the area of the erased paths and their pieces
+            int changed = strokes.size();
+            eraseArea.setEmpty();
+            for(int i=0; i<strokes.getStepErasedCount(step); i++){
+                int erased = strokes.getStepErased(step, i);
+                strokeIndex.setHidden(erased, true);
+                eraseArea.union(getStrokeBounds(erased));
+                changed = Math.min(changed, erased);
+            }
+            checkpoints.discardAfter(changed);
+            savedHistory.changed(changed);
+            stateWriter.changed(changed);
+            renderArea(eraseArea);
+            eraseArea.setEmpty();
+        }
+
+        // notify listener
+        if(l != null){
+            l.onPathRedone();
+        }
+        return true;
+    }
+
+    private void shareStroke(int stroke) {
+        if(syncClient != null){
+            syncClient.stroke(strokes, stroke, styles.get(strokes.getStyle(stroke)));
+            scheduleSyncFlush();
+        }
+    }
+
+    private void scheduleSyncFlush() {
+        // operations are sent in batches, paths drawn in quick succession share a frame
+        if(!syncFlushPosted && syncClient != null && syncClient.hasUnsent()){
+            syncFlushPosted = true;
+            postDelayed(syncFlush, SYNC_FLUSH_DELAY);
+        }
+    }
+
+    private void reportMetricsIfDue() {
+        long now = SystemClock.uptimeMillis();
+        if(metricsListener == null || !metrics.isEnabled() || now - metricsStart < METRICS_REPORT_INTERVAL){
+            return;
+        }
+
+        metricsListener.onMetricsReport(getMetrics());
+        metrics.reset();
+        metricsStart = now;
+    }
+
+    /* ********************************************************************************************
+    *                                       PUBLIC APIs
+    * ********************************************************************************************/
+
+    /**
+     * Clears all marks on the whiteboard.
+     */
+    public void clear(){
+        // re-initialize our touch objects
+        dropPlayback();
+        dropShape();
+        initTouchPath();
+        initCanvas();
+        initHistory();
+        initRenderEngine();
+
+        if(syncClient != null){
+            syncClient.clear();
+            scheduleSyncFlush();
+        }
+        if(l != null){
+            l.onPathsCleared();
+        }
+
+        // re-draw the whiteboard
+        invalidate();
+    }
+
+    /**
+     * Sets the color of the current marker.
+     *
+     * <b>Note: If whiteboard is in MODE_ERASER, this change will not activate
+     * until a drawable mode is entered.</b>
+     *
+     * @param color Color of the marker to set
+     */
+    public void setMarkerColor(int color){
+        markerColor = color;
+        if(touchMode != MODE_ERASER){
+            touchPaint.setColor(markerColor);
+            restyleShape();
+        }
+    }
+
+    /**
+     * Enters whiteboard into MODE_ERASER.
+     */
+    public void activateEraser(){
+        commitShape();
+        touchMode = MODE_ERASER;
+        touchPaint.setColor(eraserColor);
+    }
+
+    /**
+     * Enters whiteboard into MODE_STROKE_ERASER, where touches remove the parts of paths under
+     * them instead of painting over them.  Erasing can be undone like drawing.
+     *
+     * A whiteboard shared through a {@link SyncClient} enters MODE_ERASER instead.
+     */
+    public void activateStrokeEraser(){
+        if(syncClient != null){
+            activateEraser();
+            return;
+        }
+        commitShape();
+        touchMode = MODE_STROKE_ERASER;
+    }
+
+    /**
+     * Enters whiteboard into MODE_MARKER.
+     */
+    public void activateMarker(){
+        commitShape();
+        touchMode = MODE_MARKER;
+        touchPaint.setColor(markerColor);
+    }
+
+    /**
+     * Enters whiteboard into MODE_PAN, where dragging moves the board and pinching zooms it.
+     */
+    public void activatePan(){
+        commitShape();
+        touchMode = MODE_PAN;
+    }
+
+    /**
+     * Shows a part of the board.  The zoom is kept between 1/16 and 8, and the board within about
+     * a million pixels of the origin in every direction.
+     *
+     * @param zoom Size of the board in the view, 1 shows it at its own size
+     * @param left Left edge of the part to show, in board pixels
+     * @param top Top edge of the part to show, in board pixels
+     */
+    public void setViewport(float zoom, float left, float top){
+        viewport.set(zoom, left, top);
+        onViewportChanged();
+    }
+
+    /**
+     * Shows the part of the board at the origin at its own size, where a new board starts.
+     */
+    public void resetViewport(){
+        setViewport(1, 0, 0);
+    }
+
+    /**
+     * Returns the size of the board in the view, 1 if it is shown at its own size.
+     */
+    public float getZoom(){
+        return viewport.getZoom();
+    }
+
+    /**
+     * Returns the left edge of the part of the board in view, in board pixels.
+     */
+    public float getViewportLeft(){
+        return viewport.getLeft();
+    }
+
+    /**
+     * Returns the top edge of the part of the board in view, in board pixels.
+     */
+    public float getViewportTop(){
+        return viewport.getTop();
+    }
+
+    /**
+     * Enters whiteboard into MODE_SHAPE, where dragging places shapes of the given type in the
+     * color and thickness of the marker.  A shape being placed can be moved and resized until it
+     * is committed by touching outside of it, by {@link #finishShape()} or by leaving the mode.
+     *
+     * @param type SHAPE_RECTANGLE, SHAPE_TRIANGLE or SHAPE_ELLIPSE
+     */
+    public void activateShapes(int type){
+        if(type < SHAPE_RECTANGLE || type > SHAPE_ELLIPSE){
+            throw new IllegalArgumentException("Unknown shape type: " + type);
+        }
+        commitShape();
+        shapeType = type;
+        touchMode = MODE_SHAPE;
+        touchPaint.setColor(markerColor);
+    }
+
+    /**
+     * Returns the type of shape placed in MODE_SHAPE.
+     */
+    public int getShapeType(){
+        return shapeType;
+    }
+
+    /**
+     * Indicates whether a shape is being placed and can still be moved or resized.
+     */
+    public boolean hasPendingShape(){
+        return shape != null;
+    }
+
+    /**
+     * Commits the shape being placed, if any, to the history like a drawn path.
+     */
+    public void finishShape(){
+        commitShape();
+    }
+
+    /**
+     * Returns the current mode of this whiteboard.
+     *
+     * @return The mode of this whiteboard
+     */
+    public int getTouchMode(){
+        return touchMode;
+    }
+
+    /**
+     * Sets the current thickness of the marker/eraser.  The input value should take
+     * screen density into account.
+     *
+     * @param thickness The thickness to set
+     */
+    public void setMarkerThickness(int thickness){
+        markerThickness = thickness;
+        touchPaint.setStrokeWidth(thickness);
+        if(touchMode != MODE_ERASER){
+            restyleShape();
+        }
+    }
+
+    /**
+     * Undoes the previously drawn path.  If no path has been drawn, does nothing.
+     */
+    public void undo(){
+        // a shape being placed is undone like the path it becomes
+        commitShape();
+        endPlayback();
+        if(undoStep() && syncClient != null){
+            syncClient.undo();
+            scheduleSyncFlush();
+        }
+    }
+
+    /**
+     * Redoes the previously undone path.  If no path has been undone, does nothing.
+     */
+    public void redo(){
+        endPlayback();
+        if(redoStep() && syncClient != null){
+            syncClient.redo();
+            scheduleSyncFlush();
+        }
+    }
+
+    /**
+     * Indicates whether the whiteboard can undo a path.
+     *
+     * @return True if a path can be undone, false otherwise.
+     */
+    public boolean canUndo(){
+        return strokes.canUndo();
+    }
+
+    /**
      * Indicates whether the whiteboard can redo a path.
      *
-     * @return True if a path can be redone, false otherwise.
+     * @return True if a path can be redone, false otherwise.
+     */
+    public boolean canRedo(){
+        return strokes.canRedo();
+    }
+
+    /**
+     * Sets a path listener for this whiteboard.
+     *
+     * @param l The listener to set
+     */
+    public void setPathListener(PathListener l){
+        this.l = l;
+    }
+
+    /**
+     * Enables or disables smoothing of new paths.  Smoothed paths are drawn as quadratic curves
+     * through the midpoints of the touch samples instead of straight lines between them.
+     * Existing paths keep the setting they were drawn with.
+     *
+     * @param enabled True to smooth new paths
+     */
+    public void setSmoothingEnabled(boolean enabled){
+        smoothing = enabled;
+    }
+
+    /**
+     * Indicates whether new paths are smoothed.
+     *
+     * @return True if smoothing is enabled
+     */
+    public boolean isSmoothingEnabled(){
+        return smoothing;
+    }
+
+    /**
+     * Sets how the paths being drawn are extended past their latest samples.  The predicted part
+     * is only shown until the next samples arrive, it never becomes part of a path.  By default
+     * a {@link KinematicPredictor} looks {@link KinematicPredictor#DEFAULT_HORIZON} milliseconds
+     * ahead.
+     *
+     * @param factory Creates a predictor for each pointer that can draw at once, null to show
+     *                only the samples
+     */
+    public void setMotionPredictor(MotionPredictor.Factory factory){
+        predictorFactory = factory;
+        for(LiveStroke stroke : liveStrokes){
+            stroke.predictor = (factory != null) ? factory.create() : null;
+        }
+    }
+
+    /**
+     * Sets the distance in pixels within which points of a finished path are dropped before it is
+     * saved to history.  A tolerance of 0 keeps every touch sample.
+     *
+     * @param pixels The simplification tolerance
      */
-    public boolean canRedo(){
-        return (undoHistory.size() > 0);
+    public void setSimplificationTolerance(float pixels){
+        simplifier.setTolerance(pixels);
     }
 
     /**
-     * Sets a path listener for this whiteboard.
+     * Returns how many points were dropped from the last finished path by simplification.
      *
-     * @param l The listener to set
+     * @return The number of removed points
      */
-    public void setPathListener(PathListener l){
-        this.l = l;
+    public int getLastSimplifiedPointCount(){
+        return simplifier.getLastRemovedCount();
+    }
+
+    /**
+     * Returns how many points were dropped by simplification since this whiteboard was created.
+     *
+     * @return The total number of removed points
+     */
+    public long getTotalSimplifiedPointCount(){
+        return simplifier.getTotalRemovedCount();
+    }
+
+    /**
+     * Sets how many paths are drawn between two checkpoints of the whiteboard.  Undo and redo
+     * replay at most this many paths.
+     *
+     * @param paths The number of paths between checkpoints
+     */
+    public void setCheckpointInterval(int paths){
+        checkpoints.setInterval(paths);
+    }
+
+    /**
+     * Sets the amount of memory, in bytes, that checkpoints of the whiteboard may use.  When the
+     * budget is exhausted the oldest checkpoints are dropped.
+     *
+     * @param bytes The memory budget for checkpoints
+     */
+    public void setCheckpointMemoryBudget(long bytes){
+        checkpoints.setMemoryBudget(bytes);
+    }
+
+    /**
+     * Limits the history of the whiteboard.  Once it holds more paths or points than allowed,
+     * the oldest paths are baked into a base image and can no longer be undone, which keeps
+     * memory use and redraw time steady in long sessions.  The base image is saved along with
+     * the paths by {@link #save(File)} and with the instance state.
+     *
+     * @param maxPaths The number of paths to keep, or 0 for no limit
+     * @param maxPoints The number of points to keep, or 0 for no limit
+     */
+    public void setHistoryLimits(int maxPaths, int maxPoints){
+        compactor.setLimits(maxPaths, maxPoints);
+    }
+
+    /**
+     * Returns how many steps can currently be undone.
+     *
+     * @return The undo depth
+     */
+    public int getUndoDepth(){
+        return strokes.getStepCount();
+    }
+
+    /**
+     * Returns how many times the history was compacted since this whiteboard was created.
+     *
+     * @return The number of compactions
+     */
+    public int getCompactionCount(){
+        return compactor.getCompactionCount();
+    }
+
+    /**
+     * Returns how many paths were baked into the base image since this whiteboard was created.
+     *
+     * @return The total number of compacted paths
+     */
+    public long getCompactedPathCount(){
+        return compactor.getCompactedStrokes();
+    }
+
+    /**
+     * Returns how many points were released by compaction since this whiteboard was created.
+     *
+     * @return The total number of compacted points
+     */
+    public long getCompactedPointCount(){
+        return compactor.getCompactedPoints();
+    }
+
+    /**
+     * Returns the memory used by the base image of compacted paths, in bytes.
+     *
+     * @return The size of the base image
+     */
+    public long getBaseLayerBytes(){
+        return checkpoints.getBaseBytes();
+    }
+
+    /**
+     * Returns how many paths reused an existing paint style instead of creating a new one.
+     *
+     * @return The number of style cache hits
+     */
+    public long getStyleCacheHitCount(){
+        return styles.getHitCount();
+    }
+
+    /**
+     * Returns the number of distinct paint styles held for the current paths.
+     *
+     * @return The number of live styles
+     */
+    public int getLiveStyleCount(){
+        return styles.size();
+    }
+
+    /**
+     * Turns the collection of metrics on or off.  Timing every event costs a few clock reads per
+     * event, a sample of them is usually enough.
+     *
+     * @param interval Time one of every {@code interval} events, or 0 to turn metrics off
+     */
+    public void setMetricsSampling(int interval){
+        metrics.setSampling(interval);
+        metrics.reset();
+        metricsStart = SystemClock.uptimeMillis();
+    }
+
+    /**
+     * Sets the listener the metrics are reported to every ten seconds while they are collected,
+     * see {@link #setMetricsSampling(int)}.  Reports are only made while the whiteboard is drawn.
+     */
+    public void setMetricsListener(BoardMetrics.Listener listener){
+        this.metricsListener = listener;
+    }
+
+    /**
+     * Returns the metrics collected since the last report, with the current sizes of the history
+     * and of the bitmaps held.  The returned object keeps being updated by the whiteboard.
+     *
+     * @return The metrics of this whiteboard
+     */
+    public BoardMetrics getMetrics(){
+        metrics.pathCount = strokes.size();
+        metrics.visiblePathCount = strokes.getLiveCount();
+        metrics.pointCount = strokes.getTotalPointCount();
+        metrics.tileBytes = tiles.getByteCount() + pyramid.getByteCount();
+        metrics.checkpointBytes = checkpoints.getBytesUsed();
+        metrics.pooledBytes = getBitmapPool().getByteCount();
+        metrics.photoBytes = getBackgroundImageBytes();
+        metrics.intervalMillis = SystemClock.uptimeMillis() - metricsStart;
+        return metrics;
+    }
+
+    /**
+     * Shares this whiteboard with the other boards connected to the same server.  The board is
+     * cleared and then shows the shared whiteboard.  Paths, undo, redo and clear act on the
+     * shared history, so undo takes back its last step, whoever drew it.
+     *
+     * Erasing parts of paths is not shared, while a client is set the stroke eraser is replaced
+     * by the eraser; a UI offering the stroke eraser should hide it or tell its users while
+     * {@link #getSyncClient()} is set.  History limits apply to each board on its own, boards
+     * with different limits can undo back to different steps.
+     *
+     * @param client The client to share the board through, or null to stop sharing it
+     */
+    public void setSyncClient(SyncClient client){
+        if(syncClient != null){
+            syncClient.detach();
+        }
+        syncClient = client;
+        if(client != null){
+            if(touchMode == MODE_STROKE_ERASER){
+                activateEraser();
+            }
+            client.attach(syncBoard);
+        }
+    }
+
+    /**
+     * Returns the client this whiteboard is shared through, or null if it is not shared.
+     */
+    public SyncClient getSyncClient(){
+        return syncClient;
     }
 
     /**
@@ -357,19 +1871,458 @@ public class WhiteboardView extends View {
     }
 
     /**
-     * Creates a screenshot bitmap of the current status of the whiteboard.
+     * Plays back the drawing of the whiteboard from the start, the way its paths were drawn.
+     * Touching the whiteboard, undo and redo end the playback.
+     */
+    public void startPlayback(){
+        getPlayback().seek(0);
+        playback.play();
+    }
+
+    /**
+     * Pauses the playback at its current position.
+     */
+    public void pausePlayback(){
+        if(playback != null){
+            playback.pause();
+        }
+    }
+
+    /**
+     * Resumes a paused playback, or starts one from the start if there is none.
+     */
+    public void resumePlayback(){
+        if(playback == null){
+            startPlayback();
+        } else {
+            playback.play();
+        }
+    }
+
+    /**
+     * Ends the playback and shows the whole whiteboard again.
+     */
+    public void stopPlayback(){
+        endPlayback();
+        invalidate();
+    }
+
+    /**
+     * Shows the whiteboard as it was at a position of the playback.  If no playback is running, a
+     * paused one is started.
+     *
+     * @param millis Position in the playback in milliseconds
+     */
+    public void seekPlayback(long millis){
+        getPlayback().seek(millis);
+    }
+
+    /**
+     * Sets the speed of playback, 1 plays back in the time the paths were drawn in.
+     *
+     * @param speed The playback speed
+     */
+    public void setPlaybackSpeed(float speed){
+        if(speed <= 0){
+            throw new IllegalArgumentException("Playback speed must be positive: " + speed);
+        }
+        playbackSpeed = speed;
+        if(playback != null){
+            playback.setSpeed(speed);
+        }
+    }
+
+    /**
+     * Indicates whether a playback is running.
+     *
+     * @return True if the whiteboard is playing back its drawing
+     */
+    public boolean isPlayingBack(){
+        return playback != null && playback.isRunning();
+    }
+
+    /**
+     * Returns the length of the playback in milliseconds.  Long pauses between paths are
+     * shortened.
      *
-     * @return A bitmap representation of the whiteboard
+     * @return The playback duration
+     */
+    public long getPlaybackDuration(){
+        return (playback != null) ? playback.getDuration() : Playback.getDuration(strokes);
+    }
+
+    /**
+     * Returns the position of the playback in milliseconds, or the duration if there is none.
+     *
+     * @return The playback position
+     */
+    public long getPlaybackPosition(){
+        return (playback != null) ? playback.getPosition() : getPlaybackDuration();
+    }
+
+    /**
+     * Sets a playback listener for this whiteboard.
+     *
+     * @param l The listener to set
+     */
+    public void setPlaybackListener(PlaybackListener l){
+        this.playbackListener = l;
+    }
+
+    /**
+     * Saves the paths of the whiteboard to a file, so they can be loaded again with their undo
+     * history.  If the file was last saved to or loaded by this whiteboard and the paths it holds
+     * were not undone since, only the paths drawn since then are appended to it.  Paths that were
+     * compacted out of the history are saved as the image they were baked into.
+     *
+     * @param file The file to save to
+     * @throws IOException If the file can not be written
+     */
+    public void save(File file) throws IOException {
+        commitShape();
+        finishLoading();
+        CheckpointCache.BaseTiles base = checkpoints.acquireBase();
+        try {
+            savedHistory.save(file, strokes, styles, base);
+        } finally {
+            checkpoints.release(base);
+        }
+    }
+
+    /**
+     * Replaces the paths of the whiteboard with the paths saved in a file.  The loaded paths can
+     * be undone.  The file is memory-mapped and only its index is read up front: the points of
+     * the paths in view are read and rendered first, the rest of the board follows a band of
+     * tiles at a time.
+     *
+     * @param file The file to load
+     * @throws IOException If the file can not be read or is not a whiteboard file
+     */
+    public void load(File file) throws IOException {
+        if(loadHistory(file)){
+            savedHistory.loaded(file, strokes.size(), styles.size());
+        }
+        renderLoadedHistory();
+        invalidate();
+    }
+
+    /**
+     * Replaces the paths with those of a file.
+     *
+     * @return True if the file can be appended to, its style indices match the loaded styles
+     */
+    private boolean loadHistory(File file) throws IOException {
+        WhiteboardReader reader = new WhiteboardReader(file);
+        try {
+            // the image of the paths compacted out of the history the file was saved from
+            LongSparseArray<Bitmap> base = SavedHistory.readBase(reader, getBitmapPool());
+
+            // the file is valid, drop the current paths
+            dropPlayback();
+            dropShape();
+            initTouchPath();
+            initCanvas();
+            initHistory();
+            initRenderEngine();
+            if(base != null){
+                checkpoints.setBase(base);
+            }
+
+            // only the bounds of the paths are read now, their points once they are rendered
+            int[] styleIndices = reader.readStyles(styles);
+            reader.readPendingStrokes(strokes, styleIndices, 0, reader.getStrokeCount());
+            reindexStrokes();
+            loadReader = reader;
+            loadFile = file;
+
+            // appending later needs the file's style indices to match ours
+            boolean appendable = true;
+            for(int i=0; i<styleIndices.length; i++){
+                appendable &= styleIndices[i] == i;
+            }
+            return appendable;
+        } finally {
+            if(loadReader != reader){
+                reader.close();
+            }
+        }
+    }
+
+    private void readLoadedPath(int stroke) {
+        if(loadReader != null && strokes.isPending(stroke)){
+            loadReader.readPendingStroke(strokes, stroke);
+        }
+    }
+
+    private void finishLoading() {
+        // paths drawn since the load are never pending, and the loaded ones keep their index
+        // since the history is not compacted while loading
+        if(loadReader != null){
+            for(int i=0; i<strokes.storedSize(); i++){
+                readLoadedPath(i);
+            }
+            closeLoadReader();
+        }
+    }
+
+    private void closeLoadReader() {
+        if(loadReader != null){
+            try {
+                loadReader.close();
+            } catch(IOException e){
+                Log.w(TAG, "Could not close the loaded whiteboard", e);
+            }
+            loadReader = null;
+            loadFile = null;
+        }
+    }
+
+    /**
+     * Releases cached memory according to a level passed to
+     * {@link android.content.ComponentCallbacks2#onTrimMemory(int)}.  Pooled bitmaps and the
+     * downsampled tiles of a zoomed out board are dropped first, checkpoints are dropped once
+     * memory is critically low.
+     *
+     * @param level The trim memory level
+     */
+    public void trimMemory(int level){
+        // the downsampled tiles are made again when drawn, their bitmaps go back to the pool
+        pyramid.clear();
+        bitmapPool.trimMemory(level);
+        if(level >= ComponentCallbacks2.TRIM_MEMORY_COMPLETE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL){
+            checkpoints.clear();
+        }
+    }
+
+    /**
+     * Sets a photo to draw on.  The photo is decoded off the UI thread, cropped to the aspect of
+     * the whiteboard and scaled down to its size, so camera photos don't have to fit in memory at
+     * full resolution.  It is decoded again when the size of the whiteboard changes.  The stroke
+     * eraser uncovers the photo again, the eraser marker paints over it.
+     *
+     * @param uri The photo, a content or file URI
+     */
+    public void setBackgroundImage(final Uri uri){
+        final ContentResolver resolver = getContext().getContentResolver();
+        photoUri = uri;
+        photoSource = new PhotoLoader.Source() {
+            @Override
+            public InputStream open() throws IOException {
+                InputStream in = resolver.openInputStream(uri);
+                if(in == null){
+                    throw new FileNotFoundException("Could not open " + uri);
+                }
+                return in;
+            }
+        };
+        photoWidth = photoHeight = 0;
+        loadBackgroundImage();
+    }
+
+    /**
+     * Removes the photo set by {@link #setBackgroundImage(Uri)}, the whiteboard is blank beneath
+     * the ink again.
+     */
+    public void clearBackgroundImage(){
+        photoLoader.cancel();
+        photoSource = null;
+        photoUri = null;
+        photoWidth = photoHeight = 0;
+        backgroundLayer.setPhoto(null);
+        if(getBackground() == backgroundLayer){
+            setBackground(plainBackground);
+            plainBackground = null;
+        }
+    }
+
+    /**
+     * Indicates whether a photo was set as the background of the whiteboard.  It may still be
+     * loading.
+     */
+    public boolean hasBackgroundImage(){
+        return photoSource != null;
+    }
+
+    /**
+     * Returns the number of bytes held by the decoded background photo, 0 if there is none.
+     */
+    public long getBackgroundImageBytes(){
+        Bitmap photo = backgroundLayer.getPhoto();
+        return (photo != null) ? photo.getByteCount() : 0;
+    }
+
+    /**
+     * Sets the listener notified when a background photo was loaded or could not be loaded.
+     */
+    public void setBackgroundImageListener(BackgroundImageListener listener){
+        this.backgroundListener = listener;
+    }
+
+    private void loadBackgroundImage() {
+        if(photoSource == null || canvasWidth <= 0 || canvasHeight <= 0
+                || (photoWidth == canvasWidth && photoHeight == canvasHeight)){
+            return;
+        }
+
+        // the current photo is drawn stretched until the one for the new size is decoded
+        photoWidth = canvasWidth;
+        photoHeight = canvasHeight;
+        photoLoader.load(photoSource, canvasWidth, canvasHeight, photoCallbacks);
+    }
+
+    private final PhotoLoader.Listener photoCallbacks = new PhotoLoader.Listener() {
+        @Override
+        public void onPhotoLoaded(Bitmap photo) {
+            // the previous photo is not recycled, snapshots being exported may still draw it
+            backgroundLayer.setPhoto(photo);
+            if(getBackground() != backgroundLayer){
+                plainBackground = getBackground();
+                setBackground(backgroundLayer);
+            }
+            if(backgroundListener != null){
+                backgroundListener.onBackgroundImageLoaded();
+            }
+        }
+
+        @Override
+        public void onPhotoFailed(IOException e) {
+            // try again with the next size change or photo
+            photoWidth = photoHeight = 0;
+            if(backgroundListener != null){
+                backgroundListener.onBackgroundImageFailed(e);
+            }
+        }
+    };
+
+    /**
+     * Creates a screenshot bitmap of the current status of the whiteboard, whatever part of it is
+     * in view: the page at the origin the size of the view, grown to the tiles holding any ink
+     * drawn around it.  An area larger than a {@link BoardSnapshot} allows is scaled down the same
+     * way.  Once done with the bitmap, pass it to {@link #releaseScreenshot(Bitmap)} so it can be
+     * reused.
+     *
+     * @return A bitmap representation of the whiteboard, or null if there is not enough memory
      */
     public Bitmap screenshot(){
-        Bitmap result = Bitmap.createBitmap(canvasWidth, canvasHeight, Bitmap.Config.ARGB_8888);
+        commitShape();
+        Rect area = getBoardArea(new Rect());
+        float scale = BoardSnapshot.getScale(area.width(), area.height());
+        int width = Math.max(1, Math.min(BoardSnapshot.MAX_SIZE, Math.round(area.width() * scale)));
+        int height = Math.max(1, Math.min(BoardSnapshot.MAX_SIZE, Math.round(area.height() * scale)));
+        Bitmap result;
+        try {
+            result = bitmapPool.obtain(width, height, Bitmap.Config.ARGB_8888);
+        } catch(OutOfMemoryError e){
+            Log.w(TAG, "Not enough memory for a screenshot of " + width + "x" + height, e);
+            return null;
+        }
         Canvas resultCanvas = new Canvas(result);
         resultCanvas.drawPaint(backgroundPaint);
-        resultCanvas.drawBitmap(canvasBitmap, 0, 0, null);
+        resultCanvas.scale(scale, scale);
+        resultCanvas.translate(-area.left, -area.top);
+        Paint bitmapPaint = (scale < 1) ? new Paint(Paint.FILTER_BITMAP_FLAG) : null;
+        Bitmap photo = backgroundLayer.getPhoto();
+        if(photo != null){
+            // the photo is decoded at the size of the board, it is drawn without another copy
+            resultCanvas.drawBitmap(photo, null, new Rect(0, 0, canvasWidth, canvasHeight), bitmapPaint);
+        }
+        tiles.draw(resultCanvas, bitmapPaint);
 
         return result;
     }
 
+    /**
+     * Takes a snapshot of the current status of the whiteboard that can be drawn on another
+     * thread while the whiteboard keeps changing.  It covers the same area as a
+     * {@link #screenshot()}, but only the tiles holding ink are copied.  Once done with the
+     * snapshot, call {@link BoardSnapshot#release()}.
+     *
+     * @return A snapshot of the whiteboard, or null if there is not enough memory to copy it
+     */
+    public BoardSnapshot snapshot(){
+        commitShape();
+        Rect page = new Rect(0, 0, canvasWidth, canvasHeight);
+        try {
+            return new BoardSnapshot(tiles, bitmapPool, getBoardArea(new Rect()), page, backgroundPaint.getColor(),
+                    backgroundLayer.getPhoto());
+        } catch(OutOfMemoryError e){
+            Log.w(TAG, "Not enough memory for a snapshot", e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns a bitmap created by {@link #screenshot()} so its memory can be reused by the next
+     * screenshot.  The bitmap must not be used afterwards.
+     *
+     * @param screenshot The screenshot to release
+     */
+    public void releaseScreenshot(Bitmap screenshot){
+        bitmapPool.release(screenshot);
+    }
+
+    /**
+     * State of a whiteboard kept across process death.  The history itself is kept in a file,
+     * only its path is parceled.
+     */
+    static class SavedState extends BaseSavedState {
+        String historyPath;
+        int touchMode, shapeType;
+        int markerColor, markerThickness;
+        boolean smoothing;
+        Uri photo;
+        float zoom, viewportLeft, viewportTop;
+        String stateKey;
+
+        SavedState(Parcelable superState){
+            super(superState);
+        }
+
+        private SavedState(Parcel in){
+            super(in);
+            historyPath = in.readString();
+            touchMode = in.readInt();
+            shapeType = in.readInt();
+            markerColor = in.readInt();
+            markerThickness = in.readInt();
+            smoothing = in.readInt() != 0;
+            photo = in.readParcelable(Uri.class.getClassLoader());
+            zoom = in.readFloat();
+            viewportLeft = in.readFloat();
+            viewportTop = in.readFloat();
+            stateKey = in.readString();
+        }
+
+        @Override
+        public void writeToParcel(Parcel out, int flags){
+            super.writeToParcel(out, flags);
+            out.writeString(historyPath);
+            out.writeInt(touchMode);
+            out.writeInt(shapeType);
+            out.writeInt(markerColor);
+            out.writeInt(markerThickness);
+            out.writeInt(smoothing ? 1 : 0);
+            out.writeParcelable(photo, flags);
+            out.writeFloat(zoom);
+            out.writeFloat(viewportLeft);
+            out.writeFloat(viewportTop);
+            out.writeString(stateKey);
+        }
+
+        public static final Parcelable.Creator<SavedState> CREATOR = new Parcelable.Creator<SavedState>() {
+            @Override
+            public SavedState createFromParcel(Parcel in){
+                return new SavedState(in);
+            }
+
+            @Override
+            public SavedState[] newArray(int size){
+                return new SavedState[size];
+            }
+        };
+    }
+
     /**
      * Interface to listen for path-based events occurring on this whiteboard.
      */
@@ -378,5 +2331,21 @@ public class WhiteboardView extends View {
         void onPathUndone();
         void onPathRedone();
         void onPathsCleared();
+        void onPathsErased();
+    }
+
+    /**
+     * Interface to listen for background images being loaded by this whiteboard.
+     */
+    public interface BackgroundImageListener{
+        void onBackgroundImageLoaded();
+        void onBackgroundImageFailed(IOException e);
+    }
+
+    /**
+     * Interface to listen for the end of a playback of this whiteboard.
+     */
+    public interface PlaybackListener{
+        void onPlaybackFinished();
     }
 }
@@ -0,0 +1,78 @@
+package com.burkeapps.whiteboard.export;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that streamed PNGs decode to the pixels they were written from.
+ */
+public class PngStreamEncoderTest {
+
+    @Test
+    public void decodesToSamePixels() throws IOException {
+        int width = 300, height = 200;
+        int[] pixels = new int[width * height];
+        Random random = new Random(1);
+        for(int i=0; i<pixels.length; i++){
+            // mostly white with some noise, like ink on a whiteboard
+            pixels[i] = random.nextInt(10) == 0 ? random.nextInt() | 0xff000000 : 0xffffffff;
+        }
+
+        BufferedImage image = encodeAndDecode(pixels, width, height);
+        assertEquals(width, image.getWidth());
+        assertEquals(height, image.getHeight());
+        for(int y=0; y<height; y++){
+            for(int x=0; x<width; x++){
+                assertEquals(pixels[y * width + x], image.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void largeImageSpansManyChunks() throws IOException {
+        int width = 1000, height = 1000;
+        int[] pixels = new int[width * height];
+        Random random = new Random(2);
+        for(int i=0; i<pixels.length; i++){
+            pixels[i] = random.nextInt() | 0xff000000;
+        }
+
+        BufferedImage image = encodeAndDecode(pixels, width, height);
+        assertEquals(pixels[0], image.getRGB(0, 0));
+        assertEquals(pixels[pixels.length - 1], image.getRGB(width - 1, height - 1));
+    }
+
+    @Test
+    public void finishRequiresAllRows() throws IOException {
+        PngStreamEncoder encoder = new PngStreamEncoder(new ByteArrayOutputStream(), 2, 2, 6);
+        encoder.writeRow(new int[2], 0);
+        try {
+            encoder.finish();
+            fail("Expected an IllegalStateException");
+        } catch(IllegalStateException expected){
+            // one row is missing
+        }
+    }
+
+    private static BufferedImage encodeAndDecode(int[] pixels, int width, int height) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PngStreamEncoder encoder = new PngStreamEncoder(out, width, height, 6);
+        for(int y=0; y<height; y++){
+            encoder.writeRow(pixels, y * width);
+        }
+        encoder.finish();
+        assertEquals(height, encoder.getRowsWritten());
+
+        return ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+    }
+}
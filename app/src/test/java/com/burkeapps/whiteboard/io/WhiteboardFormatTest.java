@@ -0,0 +1,364 @@
+package com.burkeapps.whiteboard.io;
+
+import com.burkeapps.whiteboard.views.StrokeStore;
+import com.burkeapps.whiteboard.views.StrokeStyle;
+import com.burkeapps.whiteboard.views.StyleCache;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Round trip tests of the whiteboard file format.
+ */
+public class WhiteboardFormatTest {
+
+    private static final float EPSILON = 0.5f / WhiteboardFormat.POINT_SCALE;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void emptyBoard() throws IOException {
+        File file = folder.newFile();
+        WhiteboardWriter.save(file, new StrokeStore(), new StyleCache());
+
+        WhiteboardReader reader = new WhiteboardReader(file);
+        try {
+            assertEquals(0, reader.getStyleCount());
+            assertEquals(0, reader.getStrokeCount());
+            assertEquals(WhiteboardFormat.HEADER_SIZE, reader.getValidLength());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        StyleCache styles = new StyleCache();
+        StrokeStore strokes = randomStrokes(new Random(1), styles, 200);
+
+        File file = folder.newFile();
+        WhiteboardWriter.save(file, strokes, styles);
+
+        StyleCache loadedStyles = new StyleCache();
+        StrokeStore loaded = load(file, loadedStyles);
+        assertSameStrokes(strokes, styles, loaded, loadedStyles);
+    }
+
+    @Test
+    public void stylesSurvive() throws IOException {
+        StyleCache styles = new StyleCache();
+        StrokeStore strokes = new StrokeStore();
+        int style = styles.intern(0x80ff0000, 12.5f, 1, StrokeStyle.CAP_ROUND, StrokeStyle.JOIN_BEVEL, true);
+        strokes.beginStroke(style);
+        strokes.addPoint(1, 2);
+        strokes.endStroke();
+
+        File file = folder.newFile();
+        WhiteboardWriter.save(file, strokes, styles);
+
+        StyleCache loadedStyles = new StyleCache();
+        load(file, loadedStyles);
+        StrokeStyle loaded = loadedStyles.get(0);
+        assertEquals(0x80ff0000, loaded.getColor());
+        assertEquals(12.5f, loaded.getWidth(), 0);
+        assertEquals(1, loaded.getMode());
+        assertEquals(StrokeStyle.CAP_ROUND, loaded.getCap());
+        assertEquals(StrokeStyle.JOIN_BEVEL, loaded.getJoin());
+        assertTrue(loaded.isSmooth());
+    }
+
+    @Test
+    public void undoneStrokesAreNotSaved() throws IOException {
+        StyleCache styles = new StyleCache();
+        StrokeStore strokes = randomStrokes(new Random(2), styles, 10);
+        strokes.undo();
+        strokes.undo();
+
+        File file = folder.newFile();
+        WhiteboardWriter.save(file, strokes, styles);
+
+        StrokeStore loaded = load(file, new StyleCache());
+        assertEquals(8, loaded.size());
+    }
+
+    @Test
+    public void append() throws IOException {
+        StyleCache styles = new StyleCache();
+        StrokeStore strokes = randomStrokes(new Random(3), styles, 50);
+
+        File file = folder.newFile();
+        WhiteboardWriter.save(file, strokes, styles);
+        int savedStyles = styles.size();
+
+        // draw more with a style the file does not know yet
+        int style = styles.intern(0xff00ff00, 40, 1, StrokeStyle.CAP_SQUARE, StrokeStyle.JOIN_MITER, false);
+        strokes.beginStroke(style);
+        strokes.addPoint(-5.25f, 1000.5f);
+        strokes.addPoint(3, 4);
+        strokes.endStroke();
+
+        WhiteboardWriter writer = WhiteboardWriter.append(file);
+        try {
+            assertEquals(savedStyles, writer.getStyleCount());
+            assertEquals(50, writer.getStrokeCount());
+            writer.writeStyles(styles.table(), writer.getStyleCount(), styles.size());
+            writer.writeStrokes(strokes, writer.getStrokeCount(), strokes.size());
+        } finally {
+            writer.close();
+        }
+
+        StyleCache loadedStyles = new StyleCache();
+        StrokeStore loaded = load(file, loadedStyles);
+        assertSameStrokes(strokes, styles, loaded, loadedStyles);
+    }
+
+    @Test
+    public void truncatedRecordIsDropped() throws IOException {
+        StyleCache styles = new StyleCache();
+        StrokeStore strokes = randomStrokes(new Random(4), styles, 20);
+
+        File file = folder.newFile();
+        WhiteboardWriter.save(file, strokes, styles);
+        long length = file.length();
+
+        // cut the last stroke short, as a crash while appending would
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(length - 3);
+        } finally {
+            raf.close();
+        }
+
+        WhiteboardReader reader = new WhiteboardReader(file);
+        try {
+            assertEquals(19, reader.getStrokeCount());
+        } finally {
+            reader.close();
+        }
+
+        // appending drops the partial record and continues after the last complete one
+        WhiteboardWriter writer = WhiteboardWriter.append(file);
+        try {
+            writer.writeStrokes(strokes, writer.getStrokeCount(), strokes.size());
+        } finally {
+            writer.close();
+        }
+        assertEquals(length, file.length());
+
+        StyleCache loadedStyles = new StyleCache();
+        assertSameStrokes(strokes, styles, load(file, loadedStyles), loadedStyles);
+    }
+
+    @Test
+    public void longStrokeExceedingBuffer() throws IOException {
+        StyleCache styles = new StyleCache();
+        StrokeStore strokes = new StrokeStore();
+        Random random = new Random(5);
+        strokes.beginStroke(styles.intern(0xff000000, 4, 1, 0, 0, false));
+        for(int i=0; i<100000; i++){
+            strokes.addPoint(random.nextFloat() * 1e5f, random.nextFloat() * 1e5f);
+        }
+        strokes.endStroke();
+
+        File file = folder.newFile();
+        WhiteboardWriter.save(file, strokes, styles);
+
+        StyleCache loadedStyles = new StyleCache();
+        assertSameStrokes(strokes, styles, load(file, loadedStyles), loadedStyles);
+    }
+
+    @Test
+    public void boundsAreIndexedWithoutDecoding() throws IOException {
+        StyleCache styles = new StyleCache();
+        StrokeStore strokes = new StrokeStore();
+        strokes.beginStroke(styles.intern(0xff000000, 4, 1, 0, 0, false));
+        strokes.addPoint(10, 20);
+        strokes.addPoint(-30, 40.5f);
+        strokes.addPoint(50, 5);
+        strokes.endStroke();
+
+        File file = folder.newFile();
+        WhiteboardWriter.save(file, strokes, styles);
+
+        WhiteboardReader reader = new WhiteboardReader(file);
+        try {
+            assertEquals(-30, reader.getLeft(0), 0);
+            assertEquals(5, reader.getTop(0), 0);
+            assertEquals(50, reader.getRight(0), 0);
+            assertEquals(40.5f, reader.getBottom(0), 0);
+            assertEquals(3, reader.getPointCount(0));
+
+            float[] xy = new float[6];
+            assertEquals(3, reader.readPoints(0, xy));
+            assertArrayEquals(new float[]{10, 20, -30, 40.5f, 50, 5}, xy, 0);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void pendingStrokesAreReadOnDemand() throws IOException {
+        StyleCache styles = new StyleCache();
+        StrokeStore strokes = randomStrokes(new Random(5), styles, 30);
+        File file = folder.newFile();
+        WhiteboardWriter.save(file, strokes, styles);
+
+        StyleCache loadedStyles = new StyleCache();
+        StrokeStore loaded = new StrokeStore();
+        WhiteboardReader reader = new WhiteboardReader(file);
+        try {
+            int[] styleIndices = reader.readStyles(loadedStyles);
+            reader.readPendingStrokes(loaded, styleIndices, 0, reader.getStrokeCount());
+
+            // every stroke is there with its bounds before any points are decoded
+            assertEquals(strokes.size(), loaded.size());
+            for(int i=0; i<loaded.size(); i++){
+                assertTrue(loaded.isPending(i));
+                assertEquals(reader.getLeft(i), loaded.getLeft(i), 0);
+                assertEquals(reader.getBottom(i), loaded.getBottom(i), 0);
+            }
+
+            // read them back to front, as if the last strokes were the ones in view
+            for(int i=loaded.size()-1; i>=0; i--){
+                reader.readPendingStroke(loaded, i);
+                assertFalse(loaded.isPending(i));
+            }
+        } finally {
+            reader.close();
+        }
+        assertSameStrokes(strokes, styles, loaded, loadedStyles);
+    }
+
+    @Test
+    public void tilesRoundTripAheadOfStrokes() throws IOException {
+        int[] pixels = new int[16 * 8];
+        Random random = new Random(3);
+        for(int i=0; i<pixels.length; i+=3){
+            pixels[i] = random.nextInt();
+        }
+        StyleCache styles = new StyleCache();
+        StrokeStore strokes = new StrokeStore();
+        strokes.beginStroke(styles.intern(0xff000000, 4, 1, StrokeStyle.CAP_ROUND, StrokeStyle.JOIN_ROUND, false));
+        strokes.addPoint(1, 2);
+        strokes.endStroke();
+
+        File file = folder.newFile();
+        WhiteboardWriter writer = WhiteboardWriter.create(file);
+        try {
+            writer.writeTile(-256, 512, 16, 8, pixels);
+            writer.writeTile(0, 0, 16, 8, new int[16 * 8]);
+            writer.writeStyles(styles.table(), 0, styles.size());
+            writer.writeStrokes(strokes, 0, strokes.size());
+        } finally {
+            writer.close();
+        }
+
+        WhiteboardReader reader = new WhiteboardReader(file);
+        try {
+            assertEquals(2, reader.getTileCount());
+            assertEquals(1, reader.getStrokeCount());
+            assertEquals(-256, reader.getTileLeft(0));
+            assertEquals(512, reader.getTileTop(0));
+            assertEquals(16, reader.getTileWidth(0));
+            assertEquals(8, reader.getTileHeight(0));
+
+            int[] read = new int[pixels.length];
+            reader.readTile(0, read);
+            assertArrayEquals(pixels, read);
+            reader.readTile(1, read);
+            assertArrayEquals(new int[16 * 8], read);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void rejectsOtherFiles() throws IOException {
+        File file = folder.newFile();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.writeBytes("\u0089PNG\r\n\u001a\n");
+        } finally {
+            raf.close();
+        }
+
+        try {
+            new WhiteboardReader(file).close();
+            fail("Expected an IOException");
+        } catch(IOException expected){
+            // not a whiteboard file
+        }
+    }
+
+    @Test
+    public void varints() {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        int[] values = {0, 1, -1, 63, -64, 64, 8191, -8192, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        for(int value : values){
+            WhiteboardFormat.putSignedVarint(buffer, value);
+        }
+        buffer.flip();
+        for(int value : values){
+            assertEquals(value, WhiteboardFormat.getSignedVarint(buffer));
+        }
+    }
+
+    private static StrokeStore randomStrokes(Random random, StyleCache styles, int count){
+        StrokeStore strokes = new StrokeStore();
+        int[] colors = {0xff000000, 0xffff0000, 0xff0000ff, 0xffffffff};
+        for(int i=0; i<count; i++){
+            int style = styles.intern(colors[random.nextInt(colors.length)], 1 + random.nextInt(30),
+                    random.nextInt(2), StrokeStyle.CAP_BUTT, StrokeStyle.JOIN_MITER, random.nextBoolean());
+            strokes.beginStroke(style);
+            float x = random.nextFloat() * 2000, y = random.nextFloat() * 2000;
+            int points = 1 + random.nextInt(100);
+            for(int p=0; p<points; p++){
+                strokes.addPoint(x, y);
+                x += random.nextFloat() * 20 - 10;
+                y += random.nextFloat() * 20 - 10;
+            }
+            strokes.endStroke();
+        }
+        return strokes;
+    }
+
+    private static StrokeStore load(File file, StyleCache styles) throws IOException {
+        StrokeStore strokes = new StrokeStore();
+        WhiteboardReader reader = new WhiteboardReader(file);
+        try {
+            reader.read(strokes, styles);
+        } finally {
+            reader.close();
+        }
+        return strokes;
+    }
+
+    private static void assertSameStrokes(StrokeStore expected, StyleCache expectedStyles,
+                                          StrokeStore actual, StyleCache actualStyles){
+        assertEquals(expected.size(), actual.size());
+        for(int i=0; i<expected.size(); i++){
+            assertEquals(expectedStyles.get(expected.getStyle(i)), actualStyles.get(actual.getStyle(i)));
+            assertEquals(expected.getPointCount(i), actual.getPointCount(i));
+
+            int e = expected.getPointOffset(i), a = actual.getPointOffset(i);
+            for(int p=0; p<expected.getPointCount(i); p++){
+                assertEquals(expected.getX(e + p), actual.getX(a + p), EPSILON);
+                assertEquals(expected.getY(e + p), actual.getY(a + p), EPSILON);
+            }
+        }
+    }
+}
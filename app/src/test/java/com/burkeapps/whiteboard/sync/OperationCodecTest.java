@@ -0,0 +1,100 @@
+package com.burkeapps.whiteboard.sync;
+
+import com.burkeapps.whiteboard.views.StrokeStore;
+import com.burkeapps.whiteboard.views.StrokeStyle;
+import com.burkeapps.whiteboard.views.StyleCache;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the wire format of operations.
+ */
+public class OperationCodecTest {
+
+    @Test
+    public void operationsSurviveARoundTrip() {
+        List<Operation> ops = new ArrayList<>();
+        ops.add(stroke(3, 1, 0xff112233, 0.5f));
+        ops.add(new Operation(Operation.UNDO, 3, 2));
+        ops.add(stroke(7, 40, 0xff112233, -20));
+        ops.add(new Operation(Operation.REDO, 7, 41));
+        ops.add(new Operation(Operation.CLEAR, 3, 3));
+        for(int i=0; i<ops.size(); i++){
+            ops.get(i).seq = 1000 + i;
+        }
+
+        List<Operation> decoded = new ArrayList<>();
+        OperationCodec.decodeOps(new OperationCodec().encodeOps(ops, 0, ops.size()), decoded);
+        assertEquals(ops.size(), decoded.size());
+        for(int i=0; i<ops.size(); i++){
+            Operation op = ops.get(i);
+            Operation back = decoded.get(i);
+            assertEquals(op.toString(), back.toString());
+            assertTrue(op.hasStyleOf(back));
+            assertEquals(op.getPointCount(), back.getPointCount());
+            for(int p=0; p<op.getPointCount() * 2; p++){
+                assertEquals(op.getPoints()[p], back.getPoints()[p], 1 / 32f);
+            }
+            for(int p=0; p<op.getPointCount(); p++){
+                assertEquals(op.getTimes()[p], back.getTimes()[p]);
+            }
+        }
+    }
+
+    @Test
+    public void catchUpAndHelloCarryTheirPositions() {
+        OperationCodec codec = new OperationCodec();
+        byte[] hello = codec.encodeHello(42, 1L << 40);
+        assertEquals(OperationCodec.FRAME_HELLO, OperationCodec.getKind(hello));
+        assertEquals(42, OperationCodec.getHelloClient(hello));
+        assertEquals(1L << 40, OperationCodec.getHelloSeq(hello));
+
+        List<Operation> ops = new ArrayList<>();
+        ops.add(new Operation(Operation.UNDO, 1, 1));
+        ops.get(0).seq = 5;
+        byte[] catchUp = codec.encodeCatchUp(9, ops, 0, 1);
+        assertEquals(OperationCodec.FRAME_CATCH_UP, OperationCodec.getKind(catchUp));
+        assertEquals(9, OperationCodec.getCatchUpHead(catchUp));
+        List<Operation> decoded = new ArrayList<>();
+        OperationCodec.decodeOps(catchUp, decoded);
+        assertEquals(5, decoded.get(0).getSeq());
+    }
+
+    @Test
+    public void strokesAreDeltaEncoded() {
+        // consecutive strokes in one style with short steps between their points
+        List<Operation> ops = new ArrayList<>();
+        for(int i=0; i<10; i++){
+            Operation op = stroke(1, i + 1, 0xff000000, i * 100);
+            op.seq = i + 1;
+            ops.add(op);
+        }
+        byte[] frame = new OperationCodec().encodeOps(ops, 0, ops.size());
+
+        // 8 bytes of x,y and 4 of time per point as floats and ints
+        int points = 0;
+        for(int i=0; i<ops.size(); i++){
+            points += ops.get(i).getPointCount();
+        }
+        assertTrue("frame of " + frame.length + " bytes", frame.length * 3 < points * 12);
+    }
+
+    private static Operation stroke(int author, int authorSeq, int color, float x){
+        StyleCache styles = new StyleCache();
+        StrokeStore strokes = new StrokeStore();
+        int style = styles.intern(color, 4, 1, StrokeStyle.CAP_ROUND, StrokeStyle.JOIN_ROUND, true);
+        strokes.beginStroke(style);
+        for(int i=0; i<64; i++){
+            strokes.addPoint(x + i * 1.5f, 200 - i * 0.75f, 1000 + i * 8);
+        }
+        int stroke = strokes.endStroke();
+        return Operation.stroke(author, authorSeq, strokes, stroke, styles.get(style));
+    }
+}
@@ -0,0 +1,233 @@
+package com.burkeapps.whiteboard.sync;
+
+import com.burkeapps.whiteboard.views.StrokeStore;
+import com.burkeapps.whiteboard.views.StrokeStyle;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of boards sharing a whiteboard through a loopback server.
+ */
+public class SyncClientTest {
+
+    @Test
+    public void remoteStrokesAppear() {
+        LoopbackServer server = new LoopbackServer();
+        StoreBoard a = board(server, 1);
+        StoreBoard b = board(server, 2);
+        server.deliver();
+
+        draw(a, 10);
+        draw(b, 20);
+        flushAll(server, a, b);
+        assertEquals(xOfStrokes(a), xOfStrokes(b));
+        assertEquals(2, xOfStrokes(a).size());
+    }
+
+    @Test
+    public void concurrentOperationsConverge() {
+        LoopbackServer server = new LoopbackServer();
+        StoreBoard a = board(server, 1);
+        StoreBoard b = board(server, 2);
+        server.deliver();
+        draw(a, 0);
+        flushAll(server, a, b);
+
+        // both boards act before seeing each other's operations
+        draw(a, 10);
+        a.undoLocal();
+        draw(a, 20);
+        draw(b, 30);
+        b.undoLocal();
+        b.undoLocal();
+        b.redoLocal();
+        flushAll(server, a, b);
+        assertEquals(xOfStrokes(a), xOfStrokes(b));
+        assertEquals(a.getStepCount(), b.getStepCount());
+        assertEquals(0, client(a).getPendingCount());
+    }
+
+    @Test
+    public void undoActsOnTheSharedHistory() {
+        LoopbackServer server = new LoopbackServer();
+        StoreBoard a = board(server, 1);
+        StoreBoard b = board(server, 2);
+        server.deliver();
+        draw(a, 10);
+        draw(b, 20);
+        flushAll(server, a, b);
+
+        // the last step is b's stroke, whoever undoes it
+        a.undoLocal();
+        flushAll(server, a, b);
+        assertEquals(listOf(10f), xOfStrokes(b));
+
+        b.redoLocal();
+        flushAll(server, a, b);
+        assertEquals(listOf(10f, 20f), xOfStrokes(a));
+    }
+
+    @Test
+    public void redoOfDroppedStepsCatchesUp() {
+        LoopbackServer server = new LoopbackServer();
+        StoreBoard a = board(server, 1);
+        StoreBoard b = board(server, 2);
+        server.deliver();
+        draw(a, 10);
+        a.undoLocal();
+        flushAll(server, a, b);
+
+        // b redoes while a draws over the undone stroke, which a can not bring back itself
+        b.redoLocal();
+        draw(a, 20);
+        flushAll(server, b, a);
+        assertEquals(listOf(10f, 20f), xOfStrokes(a));
+        assertEquals(xOfStrokes(a), xOfStrokes(b));
+        assertTrue(client(a).getResyncCount() > 0);
+    }
+
+    @Test
+    public void lateBoardCatchesUp() {
+        LoopbackServer server = new LoopbackServer();
+        StoreBoard a = board(server, 1);
+        server.deliver();
+        for(int i=0; i<600; i++){
+            draw(a, i);
+        }
+        a.undoLocal();
+        client(a).flush();
+        server.deliver();
+
+        StoreBoard late = board(server, 2);
+        server.deliver();
+        assertEquals(599, xOfStrokes(late).size());
+        assertEquals(xOfStrokes(a), xOfStrokes(late));
+        assertTrue(late.canRedo());
+    }
+
+    @Test
+    public void clearWipesOperationsBeforeIt() {
+        LoopbackServer server = new LoopbackServer();
+        StoreBoard a = board(server, 1);
+        StoreBoard b = board(server, 2);
+        server.deliver();
+        draw(a, 10);
+        flushAll(server, a, b);
+
+        // b's stroke reaches the server first, the clear drops it
+        draw(b, 20);
+        a.clearLocal();
+        draw(a, 30);
+        flushAll(server, b, a);
+        assertEquals(listOf(30f), xOfStrokes(a));
+        assertEquals(xOfStrokes(a), xOfStrokes(b));
+
+        // a board joining later only gets what came after the clear
+        assertEquals(2, server.getServer().getLogSize());
+    }
+
+    @Test
+    public void framesWaitForTheStrokeBeingDrawn() {
+        LoopbackServer server = new LoopbackServer();
+        StoreBoard a = board(server, 1);
+        StoreBoard b = board(server, 2);
+        server.deliver();
+
+        b.getStrokes().beginStroke(0);
+        b.getStrokes().addPoint(50, 50, 0);
+        draw(a, 10);
+        flushAll(server, a);
+        assertEquals(0, b.getStrokes().size());
+
+        // the stroke is finished and reported, then the held back stroke of a goes below it
+        b.getStrokes().cancelStroke();
+        draw(b, 40);
+        assertEquals(listOf(10f, 40f), xOfStrokes(b));
+        flushAll(server, a, b);
+        assertEquals(xOfStrokes(a), xOfStrokes(b));
+    }
+
+    @Test
+    public void randomOperationsConverge() {
+        for(int seed=0; seed<200; seed++){
+            Random random = new Random(seed);
+            LoopbackServer server = new LoopbackServer();
+            StoreBoard[] boards = {board(server, 1), board(server, 2), board(server, 3)};
+            server.deliver();
+
+            // boards act in turns, sending and receiving at random times
+            for(int i=0; i<80; i++){
+                StoreBoard board = boards[random.nextInt(boards.length)];
+                int action = random.nextInt(20);
+                if(action < 9){
+                    draw(board, i);
+                } else if(action < 13){
+                    board.undoLocal();
+                } else if(action < 17){
+                    board.redoLocal();
+                } else if(action < 18){
+                    board.clearLocal();
+                } else if(action < 19){
+                    client(board).flush();
+                } else {
+                    server.deliver();
+                }
+            }
+            flushAll(server, boards);
+
+            for(StoreBoard board : boards){
+                assertEquals("seed " + seed, xOfStrokes(boards[0]), xOfStrokes(board));
+                assertEquals("seed " + seed, boards[0].getStepCount(), board.getStepCount());
+                assertEquals("seed " + seed, boards[0].canRedo(), board.canRedo());
+            }
+        }
+    }
+
+    private static StoreBoard board(LoopbackServer server, int id){
+        StoreBoard board = new StoreBoard();
+        board.attach(server.connect(id));
+        return board;
+    }
+
+    private static SyncClient client(StoreBoard board){
+        return board.getClient();
+    }
+
+    private static void draw(StoreBoard board, float x){
+        int style = board.getStyles().intern(0xff000000, 4, 1, StrokeStyle.CAP_ROUND, StrokeStyle.JOIN_ROUND, false);
+        board.draw(style, new float[]{x, 0, x, 5, x + 1, 9}, 3);
+    }
+
+    private static void flushAll(LoopbackServer server, StoreBoard... boards){
+        for(StoreBoard board : boards){
+            client(board).flush();
+        }
+        server.deliver();
+    }
+
+    private static List<Float> listOf(Float... x){
+        List<Float> list = new ArrayList<>();
+        for(Float f : x){
+            list.add(f);
+        }
+        return list;
+    }
+
+    private static List<Float> xOfStrokes(StoreBoard board){
+        StrokeStore strokes = board.getStrokes();
+        List<Float> x = new ArrayList<>();
+        for(int i=0; i<strokes.size(); i++){
+            if(!strokes.isErased(i)){
+                x.add(strokes.getX(strokes.getPointOffset(i)));
+            }
+        }
+        return x;
+    }
+}
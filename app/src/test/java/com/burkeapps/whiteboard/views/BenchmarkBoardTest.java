@@ -0,0 +1,110 @@
+package com.burkeapps.whiteboard.views;
+
+import android.graphics.Bitmap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the board the benchmarks draw on, so a change to the steps it shares with the view
+ * breaks the unit tests instead of only the benchmark build.
+ */
+public class BenchmarkBoardTest {
+
+    private BenchmarkBoard board;
+
+    @Before
+    public void setUp() {
+        board = new BenchmarkBoard();
+    }
+
+    @After
+    public void tearDown() {
+        board.release();
+    }
+
+    @Test
+    public void renderedBoardMatchesTheDrawnStrokes() {
+        // past two checkpoints, so the render starts from one
+        board.fill(2 * CheckpointCache.DEFAULT_INTERVAL + 10);
+        assertEquals(2, board.checkpoints.size());
+        Map<Long, int[]> drawn = inkOf(board.tiles);
+
+        board.renderAll();
+        assertInk(drawn, inkOf(board.tiles));
+    }
+
+    @Test
+    public void undoAndRedoRestoreTheBoard() {
+        board.fill(20);
+        Map<Long, int[]> drawn = inkOf(board.tiles);
+
+        assertTrue(board.undo());
+        assertEquals(19, board.strokes.size());
+        assertEquals(19, board.index.getVisibleCount());
+        assertTrue(board.redo());
+        assertFalse(board.redo());
+        assertEquals(20, board.index.getVisibleCount());
+
+        board.renderAll();
+        assertInk(drawn, inkOf(board.tiles));
+    }
+
+    @Test
+    public void liveStrokesAreRecordedWhenTheirPointersGoUp() {
+        int pointers = 10, points = 3 * LiveStroke.MAX_PATH_POINTS;
+        LiveStroke[] live = new LiveStroke[pointers];
+        float[][] paths = new float[pointers][];
+        for(int p=0; p<pointers; p++){
+            live[p] = new LiveStroke();
+            paths[p] = board.nextPath(null, points);
+            live[p].begin(p, board.nextStyle(), paths[p][0], paths[p][1], 0);
+        }
+        for(int i=1; i<points; i++){
+            for(int p=0; p<pointers; p++){
+                board.extendLiveStroke(live[p], paths[p][i * 2], paths[p][i * 2 + 1], i);
+            }
+        }
+        for(int p=0; p<pointers; p++){
+            board.recordLiveStroke(live[p]);
+            assertTrue(live[p].isFree());
+        }
+
+        assertEquals(pointers, board.strokes.size());
+        assertEquals(pointers, board.index.size());
+        assertFalse(inkOf(board.tiles).isEmpty());
+    }
+
+    private static Map<Long, int[]> inkOf(TiledCanvas canvas) {
+        // tiles holding ink by key, blank tiles are left out
+        Map<Long, int[]> ink = new TreeMap<>();
+        for(int i=0; i<canvas.tiles.size(); i++){
+            Bitmap bitmap = canvas.tiles.valueAt(i).bitmap;
+            int[] pixels = new int[bitmap.getWidth() * bitmap.getHeight()];
+            bitmap.getPixels(pixels, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
+            for(int pixel : pixels){
+                if(pixel != 0){
+                    ink.put(canvas.tiles.keyAt(i), pixels);
+                    break;
+                }
+            }
+        }
+        return ink;
+    }
+
+    private static void assertInk(Map<Long, int[]> expected, Map<Long, int[]> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        for(Map.Entry<Long, int[]> tile : expected.entrySet()){
+            assertArrayEquals(tile.getValue(), actual.get(tile.getKey()));
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.burkeapps.whiteboard.views;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the reuse, size limit and memory trimming of a bitmap pool.
+ */
+public class BitmapPoolTest {
+
+    private static final int SIZE = 16;
+    // bytes of one ARGB_8888 test bitmap
+    private static final long BYTES = SIZE * SIZE * 4;
+
+    @Test
+    public void releasedBitmapIsReusedCleared() {
+        BitmapPool pool = new BitmapPool(4 * BYTES);
+        Bitmap bitmap = pool.obtain(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(0xff00ff00);
+        pool.release(bitmap);
+
+        assertSame(bitmap, pool.obtain(SIZE, SIZE, Bitmap.Config.ARGB_8888));
+        assertEquals(0, bitmap.getPixel(0, 0));
+        assertEquals(1, pool.getHitCount());
+        assertEquals(1, pool.getMissCount());
+        assertEquals(0, pool.getByteCount());
+    }
+
+    @Test
+    public void bitmapOfOtherSizeIsNotReused() {
+        BitmapPool pool = new BitmapPool(4 * BYTES);
+        Bitmap bitmap = pool.obtain(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        pool.release(bitmap);
+
+        Bitmap other = pool.obtain(SIZE * 2, SIZE, Bitmap.Config.ARGB_8888);
+        assertTrue(other != bitmap);
+        assertEquals(BYTES, pool.getByteCount());
+    }
+
+    @Test
+    public void releaseOverLimitRecycles() {
+        BitmapPool pool = new BitmapPool(2 * BYTES);
+        Bitmap[] bitmaps = fill(pool, 3);
+
+        assertEquals(2 * BYTES, pool.getByteCount());
+        assertFalse(bitmaps[1].isRecycled());
+        assertTrue(bitmaps[2].isRecycled());
+    }
+
+    @Test
+    public void mildTrimLevelsKeepThePool() {
+        int[] levels = {
+                ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE,
+                ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN,
+        };
+        for(int level : levels){
+            BitmapPool pool = new BitmapPool(8 * BYTES);
+            fill(pool, 4);
+            pool.trimMemory(level);
+            assertEquals("level " + level, 4 * BYTES, pool.getByteCount());
+        }
+    }
+
+    @Test
+    public void moderateTrimLevelsHalveThePool() {
+        int[] levels = {
+                ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW,
+                ComponentCallbacks2.TRIM_MEMORY_BACKGROUND,
+        };
+        for(int level : levels){
+            BitmapPool pool = new BitmapPool(8 * BYTES);
+            Bitmap[] bitmaps = fill(pool, 4);
+            pool.trimMemory(level);
+            assertEquals("level " + level, 2 * BYTES, pool.getByteCount());
+            // the oldest bitmaps go first
+            assertTrue(bitmaps[0].isRecycled());
+            assertTrue(bitmaps[1].isRecycled());
+            assertFalse(bitmaps[3].isRecycled());
+        }
+    }
+
+    @Test
+    public void severeTrimLevelsEmptyThePool() {
+        int[] levels = {
+                ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL,
+                ComponentCallbacks2.TRIM_MEMORY_MODERATE,
+                ComponentCallbacks2.TRIM_MEMORY_COMPLETE,
+        };
+        for(int level : levels){
+            BitmapPool pool = new BitmapPool(8 * BYTES);
+            Bitmap[] bitmaps = fill(pool, 4);
+            pool.trimMemory(level);
+            assertEquals("level " + level, 0, pool.getByteCount());
+            for(Bitmap bitmap : bitmaps){
+                assertTrue(bitmap.isRecycled());
+            }
+        }
+    }
+
+    @Test
+    public void trimmedPoolAllocatesAgain() {
+        BitmapPool pool = new BitmapPool(8 * BYTES);
+        fill(pool, 2);
+        pool.clear();
+
+        Bitmap bitmap = pool.obtain(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        assertFalse(bitmap.isRecycled());
+        assertEquals(0, pool.getHitCount());
+    }
+
+    /**
+     * Releases a number of new bitmaps into a pool, oldest first.
+     */
+    private static Bitmap[] fill(BitmapPool pool, int count) {
+        Bitmap[] bitmaps = new Bitmap[count];
+        for(int i=0; i<count; i++){
+            bitmaps[i] = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        }
+        for(Bitmap bitmap : bitmaps){
+            pool.release(bitmap);
+        }
+        return bitmaps;
+    }
+}
@@ -0,0 +1,92 @@
+package com.burkeapps.whiteboard.views;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the area and scale of board snapshots.
+ */
+public class BoardSnapshotTest {
+
+    private static final int INK = 0xff000000;
+    private static final int BACKGROUND = 0xffffffff;
+
+    private BitmapPool pool;
+    private TiledCanvas canvas;
+
+    @Before
+    public void setUp() {
+        pool = new BitmapPool();
+        canvas = new TiledCanvas(pool);
+    }
+
+    @Test
+    public void pageIsCopiedAtFullSize() {
+        fillTile(0, 0);
+        Rect page = new Rect(0, 0, 300, 200);
+        BoardSnapshot snapshot = new BoardSnapshot(canvas, pool, page, page, BACKGROUND, null);
+        assertEquals(300, snapshot.getWidth());
+        assertEquals(200, snapshot.getHeight());
+
+        Bitmap image = draw(snapshot);
+        assertEquals(INK, image.getPixel(TiledCanvas.TILE_SIZE - 1, 10));
+        assertEquals(BACKGROUND, image.getPixel(TiledCanvas.TILE_SIZE, 10));
+        snapshot.release();
+    }
+
+    @Test
+    public void inkAtTheLimitsIsScaledDown() {
+        int edge = TiledCanvas.LIMIT / TiledCanvas.TILE_SIZE;
+        fillTile(-edge, -edge);
+        fillTile(edge - 1, edge - 1);
+        Rect area = canvas.getExtent(new Rect());
+        assertEquals(2 * TiledCanvas.LIMIT, area.width());
+
+        BoardSnapshot snapshot = new BoardSnapshot(canvas, pool, area, new Rect(0, 0, 300, 200), BACKGROUND, null);
+        assertTrue(snapshot.getWidth() <= BoardSnapshot.MAX_SIZE);
+        assertTrue((long) snapshot.getWidth() * snapshot.getHeight() <= BoardSnapshot.MAX_PIXELS);
+
+        // the tiles far out are smaller than a pixel of the image, but still show
+        Bitmap image = draw(snapshot);
+        assertEquals(INK, image.getPixel(0, 0));
+        assertEquals(INK, image.getPixel(snapshot.getWidth() - 1, snapshot.getHeight() - 1));
+        assertEquals(BACKGROUND, image.getPixel(snapshot.getWidth() / 3, snapshot.getHeight() / 3));
+        snapshot.release();
+    }
+
+    @Test
+    public void scaleKeepsWideAreasWithinBounds() {
+        assertEquals(1, BoardSnapshot.getScale(4000, 3000), 0);
+        float scale = BoardSnapshot.getScale(2 * TiledCanvas.LIMIT, 10);
+        assertTrue(2 * TiledCanvas.LIMIT * scale <= BoardSnapshot.MAX_SIZE);
+        scale = BoardSnapshot.getScale(8000, 8000);
+        assertTrue(8000 * scale * 8000 * scale <= BoardSnapshot.MAX_PIXELS);
+    }
+
+    private void fillTile(int tx, int ty) {
+        float left = tx * TiledCanvas.TILE_SIZE, top = ty * TiledCanvas.TILE_SIZE;
+        Path path = new Path();
+        path.moveTo(left + 10, top + 10);
+        path.lineTo(left + 20, top + 20);
+        Paint paint = new Paint();
+        paint.setColor(INK);
+        canvas.drawPath(path, paint, new RectF(left + 9, top + 9, left + 21, top + 21));
+        canvas.tiles.get(TiledCanvas.key(tx, ty)).bitmap.eraseColor(INK);
+    }
+
+    private static Bitmap draw(BoardSnapshot snapshot) {
+        Bitmap image = Bitmap.createBitmap(snapshot.getWidth(), snapshot.getHeight(), Bitmap.Config.ARGB_8888);
+        snapshot.draw(new Canvas(image), null);
+        return image;
+    }
+}
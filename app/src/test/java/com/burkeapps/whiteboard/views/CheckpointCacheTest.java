@@ -0,0 +1,153 @@
+package com.burkeapps.whiteboard.views;
+
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the memory budget and tile sharing of the checkpoint cache.
+ */
+public class CheckpointCacheTest {
+
+    // bytes of one ARGB_8888 tile
+    private static final long TILE_BYTES = TiledCanvas.TILE_SIZE * TiledCanvas.TILE_SIZE * 4;
+
+    private BitmapPool pool;
+    private TiledCanvas canvas;
+    private CheckpointCache cache;
+    private final Paint paint = new Paint();
+
+    @Before
+    public void setUp() {
+        pool = new BitmapPool(64 * TILE_BYTES);
+        canvas = new TiledCanvas(pool);
+        cache = new CheckpointCache(pool);
+        cache.setMemoryBudget(64 * TILE_BYTES);
+        paint.setColor(0xff000000);
+    }
+
+    @Test
+    public void unchangedTilesAreShared() {
+        drawOnTile(0, 0);
+        drawOnTile(1, 0);
+        cache.save(1, canvas);
+        assertEquals(2 * TILE_BYTES, cache.getBytesUsed());
+
+        // only the changed tile is copied for the next checkpoint
+        drawOnTile(0, 0);
+        cache.save(2, canvas);
+        assertEquals(3 * TILE_BYTES, cache.getBytesUsed());
+    }
+
+    @Test
+    public void sharedTileIsFreedWithItsLastCheckpoint() {
+        drawOnTile(0, 0);
+        drawOnTile(1, 0);
+        cache.save(1, canvas);
+        drawOnTile(0, 0);
+        cache.save(2, canvas);
+        long pooled = pool.getByteCount();
+
+        // evicting the first checkpoint frees its own tile but not the one the second still uses
+        cache.setMemoryBudget(2 * TILE_BYTES);
+        assertEquals(1, cache.size());
+        assertEquals(2 * TILE_BYTES, cache.getBytesUsed());
+        assertEquals(pooled + TILE_BYTES, pool.getByteCount());
+
+        cache.clear();
+        assertEquals(0, cache.getBytesUsed());
+        assertEquals(pooled + 3 * TILE_BYTES, pool.getByteCount());
+    }
+
+    @Test
+    public void oldestCheckpointsAreEvictedFirst() {
+        cache.setMemoryBudget(3 * TILE_BYTES);
+        for(int count = 1; count <= 5; count++){
+            drawOnTile(0, 0);
+            cache.save(count, canvas);
+        }
+        assertEquals(3, cache.size());
+        assertEquals(3 * TILE_BYTES, cache.getBytesUsed());
+
+        // nothing is left to restore below the oldest checkpoint kept
+        Rect all = TiledCanvas.getAllTiles(new Rect());
+        assertEquals(0, cache.restore(2, new TiledCanvas(pool), all));
+        assertEquals(3, cache.restore(3, new TiledCanvas(pool), all));
+    }
+
+    @Test
+    public void snapshotLargerThanBudgetIsSkipped() {
+        drawOnTile(0, 0);
+        cache.save(1, canvas);
+        cache.setMemoryBudget(TILE_BYTES);
+        drawOnTile(0, 0);
+        drawOnTile(1, 0);
+        cache.save(2, canvas);
+
+        // the two changed tiles would not fit, the older checkpoint is not evicted for them
+        assertEquals(1, cache.size());
+        assertEquals(TILE_BYTES, cache.getBytesUsed());
+    }
+
+    @Test
+    public void restoredTilesKeepTheirVersion() {
+        drawOnTile(0, 0);
+        cache.save(1, canvas);
+        int version = canvas.tiles.get(TiledCanvas.key(0, 0)).version;
+
+        TiledCanvas restored = new TiledCanvas(pool);
+        assertEquals(1, cache.restore(1, restored, TiledCanvas.getAllTiles(new Rect())));
+        assertEquals(version, restored.tiles.get(TiledCanvas.key(0, 0)).version);
+        assertEquals(0xff000000, restored.tiles.get(TiledCanvas.key(0, 0)).bitmap.getPixel(10, 10));
+    }
+
+    @Test
+    public void checkpointDueWhileAnotherPathIsDrawnWaitsForIt() {
+        cache.setInterval(2);
+        assertFalse(cache.isDue(1, false));
+        drawOnTile(0, 0);
+
+        // two pointers down: the first path completes the interval while the second is still
+        // drawn, a checkpoint now would hold the ink of a path that is not in the history
+        drawOnTile(0, 0);
+        drawOnTile(1, 0);
+        assertFalse(cache.isDue(2, true));
+
+        // once the second path is added the checkpoint is taken for the three paths
+        assertTrue(cache.isDue(3, false));
+        cache.save(3, canvas);
+        assertFalse(cache.isDue(3, false));
+
+        // undoing the second path finds no checkpoint holding its ink
+        Rect all = TiledCanvas.getAllTiles(new Rect());
+        assertEquals(0, cache.restore(2, new TiledCanvas(pool), all));
+        assertEquals(3, cache.restore(3, new TiledCanvas(pool), all));
+    }
+
+    @Test
+    public void deferredCheckpointIsDroppedByUndo() {
+        cache.setInterval(2);
+        assertFalse(cache.isDue(2, true));
+
+        // the path completing the interval was undone before the drawing ended, the path drawn
+        // next is not the one the checkpoint was deferred for
+        assertFalse(cache.isDue(1, false));
+        assertFalse(cache.isDue(3, false));
+    }
+
+    private void drawOnTile(int tx, int ty) {
+        float left = tx * TiledCanvas.TILE_SIZE, top = ty * TiledCanvas.TILE_SIZE;
+        Path path = new Path();
+        path.moveTo(left + 10, top + 10);
+        path.lineTo(left + 20, top + 20);
+        canvas.drawPath(path, paint, new RectF(left + 9, top + 9, left + 21, top + 21));
+    }
+}
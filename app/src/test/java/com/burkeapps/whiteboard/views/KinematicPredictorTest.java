@@ -0,0 +1,219 @@
+package com.burkeapps.whiteboard.views;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Accuracy of the kinematic predictor, measured by replaying traces of timed samples: after each
+ * sample the predictor guesses where the pointer is a horizon later, and the guess is compared
+ * with where the trace really was at that time.  The baseline is drawing without prediction,
+ * which shows the latest sample.
+ *
+ * The traces are sampled like a touch screen reports a finger: every 8 milliseconds give or take
+ * a millisecond, with a fraction of a pixel of noise.
+ */
+public class KinematicPredictorTest {
+
+    private static final long HORIZON = KinematicPredictor.DEFAULT_HORIZON;
+    private static final int POINTS = 4;
+    private static final long DURATION = 1200;
+    private static final int SAMPLES = 20000;
+
+    /**
+     * A pointer position as a function of time.
+     */
+    private interface Motion {
+        void at(float t, float[] out);
+    }
+
+    @Test
+    public void straightStrokeWithEaseInAndOut() {
+        // a minimum jerk stroke, the profile of a practised hand movement
+        assertBeatsBaseline(trace(new Motion() {
+            @Override
+            public void at(float t, float[] out) {
+                float s = t / DURATION;
+                float progress = s * s * s * (10 - 15 * s + 6 * s * s);
+                out[0] = 100 + 900 * progress;
+                out[1] = 200 + 300 * progress;
+            }
+        }), 0.5f);
+    }
+
+    @Test
+    public void circle() {
+        assertBeatsBaseline(trace(new Motion() {
+            @Override
+            public void at(float t, float[] out) {
+                double angle = t / 150.0;
+                out[0] = 500 + 200 * (float) Math.cos(angle);
+                out[1] = 500 + 200 * (float) Math.sin(angle);
+            }
+        }), 0.5f);
+    }
+
+    @Test
+    public void cursiveLoops() {
+        // loops moving to the right, like joined up handwriting
+        assertBeatsBaseline(trace(new Motion() {
+            @Override
+            public void at(float t, float[] out) {
+                double phase = t / 60.0;
+                out[0] = 100 + t * 0.4f + 30 * (float) Math.sin(phase);
+                out[1] = 400 + 40 * (float) Math.cos(phase);
+            }
+        }), 0.7f);
+    }
+
+    @Test
+    public void stopsWithoutOvershooting() {
+        // a fast stroke that brakes hard and then holds still
+        final float speed = 2;
+        float[][] trace = trace(new Motion() {
+            @Override
+            public void at(float t, float[] out) {
+                // slows down evenly over 80 milliseconds
+                float braking = 80, tb = Math.min(braking, Math.max(0, t - DURATION / 2));
+                float x = speed * Math.min(t, DURATION / 2) + speed * tb - speed * tb * tb / (2 * braking);
+                out[0] = x;
+                out[1] = 300;
+            }
+        });
+        KinematicPredictor predictor = new KinematicPredictor();
+        float[] predicted = new float[POINTS * 2];
+        float stop = speed * DURATION / 2 + speed * 40;
+        float farthest = 0;
+        int resting = 0;
+        for(int i=0; i<trace[0].length; i++){
+            predictor.addSample(trace[1][i * 2], trace[1][i * 2 + 1], (long) trace[0][i]);
+            int count = predictor.predict(predicted, POINTS);
+            for(int p=0; p<count; p++){
+                farthest = Math.max(farthest, predicted[p * 2]);
+            }
+            if(trace[0][i] > DURATION / 2 + 200 && count == 0){
+                resting++;
+            }
+        }
+        // it may run a little past the stop while braking, but not a stroke's width further
+        assertTrue("overshoot " + (farthest - stop), farthest - stop < 8);
+        assertTrue("resting " + resting, resting > 0);
+    }
+
+    @Test
+    public void needsVelocityAndAccelerationFirst() {
+        KinematicPredictor predictor = new KinematicPredictor();
+        float[] predicted = new float[POINTS * 2];
+        predictor.addSample(0, 0, 0);
+        predictor.addSample(10, 0, 8);
+        assertEquals(0, predictor.predict(predicted, POINTS));
+        predictor.addSample(20, 0, 16);
+        assertEquals(POINTS, predictor.predict(predicted, POINTS));
+        // straight ahead at a steady 1.25 pixels per millisecond
+        assertEquals(20 + 1.25f * HORIZON, predicted[POINTS * 2 - 2], 0.01f);
+        assertEquals(0, predicted[POINTS * 2 - 1], 0.01f);
+
+        predictor.reset();
+        predictor.addSample(500, 500, 100);
+        assertEquals(0, predictor.predict(predicted, POINTS));
+    }
+
+    @Test
+    public void predictingDoesNotAllocate() {
+        // the allocation counter is only offered by HotSpot
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        long thread = Thread.currentThread().getId();
+        KinematicPredictor predictor = new KinematicPredictor();
+        float[] predicted = new float[POINTS * 2];
+        // warm up, so class loading and compilation are done
+        replay(predictor, predicted, SAMPLES);
+
+        // the counter also sees the JVM's own bookkeeping on this thread, keep the quietest run
+        long allocated = Long.MAX_VALUE;
+        for(int run=0; run<5; run++){
+            long before = threads.getThreadAllocatedBytes(thread);
+            replay(predictor, predicted, SAMPLES);
+            allocated = Math.min(allocated, threads.getThreadAllocatedBytes(thread) - before);
+        }
+        // even the smallest array per sample would be 16 bytes
+        assertTrue("allocated " + allocated + " bytes", allocated < SAMPLES);
+    }
+
+    private static void replay(MotionPredictor predictor, float[] predicted, int samples) {
+        predictor.reset();
+        for(int i=0; i<samples; i++){
+            predictor.addSample(i * 2, (i % 50) * 3, i * 8L);
+            predictor.predict(predicted, POINTS);
+        }
+    }
+
+    /**
+     * Samples a motion like a touch screen does.
+     *
+     * @return The sample times, and the interleaved x,y coordinates of the samples
+     */
+    private static float[][] trace(Motion motion) {
+        Random random = new Random(11);
+        int count = (int) (DURATION / 8);
+        float[] times = new float[count];
+        float[] xy = new float[count * 2];
+        float[] position = new float[2];
+        for(int i=0; i<count; i++){
+            times[i] = Math.max(i > 0 ? times[i - 1] + 1 : 0, i * 8 + random.nextInt(3) - 1);
+            motion.at(times[i], position);
+            xy[i * 2] = position[0] + (random.nextFloat() - 0.5f) * 0.5f;
+            xy[i * 2 + 1] = position[1] + (random.nextFloat() - 0.5f) * 0.5f;
+        }
+        return new float[][]{times, xy};
+    }
+
+    /**
+     * Replays a trace and checks that the mean error of the predictions is at most the given
+     * fraction of the baseline's.
+     */
+    private static void assertBeatsBaseline(float[][] trace, float fraction) {
+        float[] times = trace[0], xy = trace[1];
+        KinematicPredictor predictor = new KinematicPredictor(HORIZON);
+        float[] predicted = new float[POINTS * 2];
+        float[] actual = new float[2];
+        double error = 0, baseline = 0;
+        int measured = 0;
+        for(int i=0; i<times.length; i++){
+            predictor.addSample(xy[i * 2], xy[i * 2 + 1], (long) times[i]);
+            if(!interpolate(trace, times[i] + HORIZON, actual)){
+                break;
+            }
+            int count = predictor.predict(predicted, POINTS);
+            float x = (count > 0) ? predicted[count * 2 - 2] : xy[i * 2];
+            float y = (count > 0) ? predicted[count * 2 - 1] : xy[i * 2 + 1];
+            error += Math.hypot(x - actual[0], y - actual[1]);
+            baseline += Math.hypot(xy[i * 2] - actual[0], xy[i * 2 + 1] - actual[1]);
+            measured++;
+        }
+        error /= measured;
+        baseline /= measured;
+        assertTrue("error " + error + " baseline " + baseline, error <= baseline * fraction);
+    }
+
+    private static boolean interpolate(float[][] trace, float time, float[] out) {
+        float[] times = trace[0], xy = trace[1];
+        for(int i=1; i<times.length; i++){
+            if(times[i] >= time){
+                float f = (time - times[i - 1]) / (times[i] - times[i - 1]);
+                out[0] = xy[i * 2 - 2] + (xy[i * 2] - xy[i * 2 - 2]) * f;
+                out[1] = xy[i * 2 - 1] + (xy[i * 2 + 1] - xy[i * 2 - 1]) * f;
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,59 @@
+package com.burkeapps.whiteboard.views;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the bucketing and percentiles of a latency histogram.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsHoldTheirUpperBound() {
+        for(long micros = 0; micros < 1 << 20; micros = micros * 9 / 8 + 1){
+            int bucket = LatencyHistogram.bucket(micros);
+            assertTrue(micros + " past its bucket", micros <= LatencyHistogram.upperBound(bucket));
+            if(bucket > 0){
+                assertTrue(micros + " in a later bucket", micros > LatencyHistogram.upperBound(bucket - 1));
+            }
+        }
+    }
+
+    @Test
+    public void percentilesAreWithinAnEighth() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for(int i=1; i<=1000; i++){
+            histogram.record(i * 100);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(100, histogram.getMin());
+        assertEquals(100000, histogram.getMax());
+        assertEquals(50050, histogram.getMean());
+        assertWithin(50000, histogram.getPercentile(0.5));
+        assertWithin(99000, histogram.getPercentile(0.99));
+        assertEquals(100000, histogram.getPercentile(1));
+    }
+
+    @Test
+    public void resetAndAdd() {
+        LatencyHistogram a = new LatencyHistogram(), b = new LatencyHistogram();
+        a.record(10);
+        b.record(Long.MAX_VALUE / 2);
+        a.add(b);
+        assertEquals(2, a.getCount());
+        assertEquals(Long.MAX_VALUE / 2, a.getPercentile(1));
+
+        a.reset();
+        assertEquals(0, a.getCount());
+        assertEquals(0, a.getMin());
+        assertEquals(0, a.getPercentile(0.5));
+    }
+
+    private static void assertWithin(long expected, long actual){
+        assertTrue(actual + " is not close to " + expected,
+                actual >= expected && actual <= expected + expected / 8);
+    }
+}
@@ -0,0 +1,111 @@
+package com.burkeapps.whiteboard.views;
+
+import android.graphics.RectF;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of handing out live strokes to pointers and of the areas their samples change.
+ */
+public class LiveStrokeTest {
+
+    private static final int SLOTS = 10;
+
+    private LiveStroke[] strokes;
+
+    @Before
+    public void setUp() {
+        strokes = new LiveStroke[SLOTS];
+        for(int i=0; i<SLOTS; i++){
+            strokes[i] = new LiveStroke();
+        }
+    }
+
+    @Test
+    public void pointersPastTheLastSlotDoNotDraw() {
+        for(int pointer=0; pointer<SLOTS; pointer++){
+            LiveStroke stroke = LiveStroke.obtain(strokes);
+            stroke.begin(pointer, 0, pointer, pointer, pointer);
+        }
+        assertNull(LiveStroke.obtain(strokes));
+
+        // every pointer finds its own stroke
+        for(int pointer=0; pointer<SLOTS; pointer++){
+            assertEquals(pointer, LiveStroke.find(strokes, pointer).pointerId);
+        }
+        assertNull(LiveStroke.find(strokes, SLOTS));
+    }
+
+    @Test
+    public void releasedSlotIsReused() {
+        for(int pointer=0; pointer<SLOTS; pointer++){
+            LiveStroke.obtain(strokes).begin(pointer, 0, 0, 0, 0);
+        }
+        LiveStroke released = LiveStroke.find(strokes, 3);
+        released.extend(10, 10, false);
+        released.release();
+        assertTrue(released.isFree());
+        assertNull(LiveStroke.find(strokes, 3));
+
+        // the next pointer gets the freed stroke, without the samples of the last one
+        LiveStroke reused = LiveStroke.obtain(strokes);
+        assertSame(released, reused);
+        reused.begin(42, 1, 100, 200, 5);
+        assertSame(reused, LiveStroke.find(strokes, 42));
+        assertEquals(1, reused.size);
+        assertEquals(1, reused.style);
+        assertFalse(reused.hasDirtyBounds);
+        assertNull(LiveStroke.obtain(strokes));
+    }
+
+    @Test
+    public void eachPointerHasItsOwnDirtyBounds() {
+        LiveStroke left = LiveStroke.obtain(strokes);
+        left.begin(0, 0, 0, 0, 0);
+        LiveStroke right = LiveStroke.obtain(strokes);
+        right.begin(1, 0, 1000, 0, 0);
+
+        left.extend(10, 5, false);
+        right.extend(1010, 20, false);
+        assertBounds(0, 0, 10, 5, left);
+        assertBounds(1000, 0, 1010, 20, right);
+
+        // once drawn, a stroke's next event only dirties its new segment
+        left.hasDirtyBounds = false;
+        left.extend(20, 5, false);
+        assertBounds(10, 5, 20, 5, left);
+        assertBounds(1000, 0, 1010, 20, right);
+    }
+
+    @Test
+    public void fullPathKeepsItsLastSegment() {
+        LiveStroke stroke = LiveStroke.obtain(strokes);
+        stroke.begin(0, 0, 0, 0, 0);
+        for(int i=1; !stroke.isPathFull(); i++){
+            stroke.extend(i, i, true);
+        }
+        assertEquals(LiveStroke.MAX_PATH_POINTS, stroke.pathPoints);
+
+        stroke.keepLastSegment(true);
+        assertEquals(2, stroke.pathPoints);
+        RectF bounds = new RectF();
+        stroke.path.computeBounds(bounds, true);
+        assertEquals(stroke.segmentStartX, bounds.left, 0);
+        assertEquals(stroke.segmentEndX, bounds.right, 0);
+    }
+
+    private static void assertBounds(float left, float top, float right, float bottom, LiveStroke stroke) {
+        assertTrue(stroke.hasDirtyBounds);
+        assertEquals(left, stroke.dirtyBounds.left, 0);
+        assertEquals(top, stroke.dirtyBounds.top, 0);
+        assertEquals(right, stroke.dirtyBounds.right, 0);
+        assertEquals(bottom, stroke.dirtyBounds.bottom, 0);
+    }
+}
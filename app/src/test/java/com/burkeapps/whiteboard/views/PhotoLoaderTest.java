@@ -0,0 +1,32 @@
+package com.burkeapps.whiteboard.views;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of the subsampling chosen for photos decoded to the size of a board.
+ */
+public class PhotoLoaderTest {
+
+    @Test
+    public void sampleSizeKeepsRegionAtLeastBoardSize() {
+        // a 12 megapixel photo on a 1080x1440 board
+        assertEquals(2, PhotoLoader.getSampleSize(3000, 4000, 1080, 1440));
+        assertEquals(4, PhotoLoader.getSampleSize(4320, 5760, 1080, 1440));
+        assertEquals(4, PhotoLoader.getSampleSize(4319, 5760, 1000, 1440));
+    }
+
+    @Test
+    public void sampleSizeIsOneForSmallPhotos() {
+        assertEquals(1, PhotoLoader.getSampleSize(800, 600, 1080, 1440));
+        assertEquals(1, PhotoLoader.getSampleSize(1080, 1440, 1080, 1440));
+        assertEquals(1, PhotoLoader.getSampleSize(2159, 2879, 1080, 1440));
+    }
+
+    @Test
+    public void sampleSizeFollowsTheTighterSide() {
+        // wide enough for 8x, but only tall enough for 2x
+        assertEquals(2, PhotoLoader.getSampleSize(8000, 2000, 1000, 1000));
+    }
+}
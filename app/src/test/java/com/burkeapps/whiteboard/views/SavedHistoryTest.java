@@ -0,0 +1,218 @@
+package com.burkeapps.whiteboard.views;
+
+import android.graphics.Bitmap;
+import android.util.LongSparseArray;
+
+import com.burkeapps.whiteboard.io.WhiteboardReader;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of saving a history to the same file again, as done for the instance state, and of saving
+ * the base layer along with it.
+ */
+public class SavedHistoryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void laterSavesAppendNewStrokes() throws IOException {
+        StyleCache styles = new StyleCache();
+        StrokeStore strokes = new StrokeStore();
+        addStroke(strokes, styles, 0);
+        addStroke(strokes, styles, 10);
+
+        File file = folder.newFile();
+        SavedHistory saved = new SavedHistory();
+        saved.save(file, strokes, styles);
+        long length = file.length();
+
+        addStroke(strokes, styles, 20);
+        saved.save(file, strokes, styles);
+        assertTrue(file.length() > length);
+        assertArrayEquals(new float[]{0, 10, 20}, xOfStrokes(file), 0);
+    }
+
+    @Test
+    public void changedStrokesRewriteTheFile() throws IOException {
+        StyleCache styles = new StyleCache();
+        StrokeStore strokes = new StrokeStore();
+        addStroke(strokes, styles, 0);
+        addStroke(strokes, styles, 10);
+
+        File file = folder.newFile();
+        SavedHistory saved = new SavedHistory();
+        saved.save(file, strokes, styles);
+
+        // the second stroke is undone and replaced
+        strokes.undo();
+        saved.changed(strokes.size());
+        addStroke(strokes, styles, 30);
+        saved.save(file, strokes, styles);
+        assertArrayEquals(new float[]{0, 30}, xOfStrokes(file), 0);
+    }
+
+    @Test
+    public void loadedFileIsAppendedTo() throws IOException {
+        StyleCache styles = new StyleCache();
+        StrokeStore strokes = new StrokeStore();
+        addStroke(strokes, styles, 0);
+        File file = folder.newFile();
+        new SavedHistory().save(file, strokes, styles);
+
+        SavedHistory saved = new SavedHistory();
+        saved.loaded(file, strokes.size(), styles.size());
+        addStroke(strokes, styles, 40);
+        saved.save(file, strokes, styles);
+        assertArrayEquals(new float[]{0, 40}, xOfStrokes(file), 0);
+    }
+
+    @Test
+    public void snapshotIsSavedWhileHistoryChanges() throws IOException {
+        StyleCache styles = new StyleCache();
+        StrokeStore strokes = new StrokeStore();
+        addStroke(strokes, styles, 0);
+        addStroke(strokes, styles, 10);
+
+        // the state is written from a snapshot while the board goes on, as on the state worker
+        StrokeStore snapshot = strokes.snapshot();
+        StrokeStyle[] table = styles.table();
+        int styleCount = styles.size();
+        strokes.undo();
+        addStroke(strokes, styles, 30);
+
+        File file = folder.newFile();
+        SavedHistory saved = new SavedHistory();
+        saved.save(file, snapshot, table, styleCount);
+        assertArrayEquals(new float[]{0, 10}, xOfStrokes(file), 0);
+
+        // the undo reaches into the file, it is written again from scratch
+        saved.changed(1);
+        saved.save(file, strokes.snapshot(), styles.table(), styles.size());
+        assertArrayEquals(new float[]{0, 30}, xOfStrokes(file), 0);
+    }
+
+    @Test
+    public void pendingStrokesAreDecodedFromTheLoadedFile() throws IOException {
+        StyleCache styles = new StyleCache();
+        StrokeStore strokes = new StrokeStore();
+        addStroke(strokes, styles, 0);
+        addStroke(strokes, styles, 10);
+        File file = folder.newFile();
+        new SavedHistory().save(file, strokes, styles);
+
+        // loaded lazily, the first stroke is read and the second is still pending
+        StrokeStore loaded = new StrokeStore();
+        StyleCache loadedStyles = new StyleCache();
+        WhiteboardReader reader = new WhiteboardReader(file);
+        try {
+            int[] styleIndices = reader.readStyles(loadedStyles);
+            reader.readPendingStrokes(loaded, styleIndices, 0, reader.getStrokeCount());
+            reader.readPendingStroke(loaded, 0);
+            StrokeStore snapshot = loaded.snapshotWithPending();
+
+            // the snapshot decodes the stroke itself, even once it is read after being taken
+            reader.readPendingStroke(loaded, 1);
+            assertTrue(snapshot.isPending(1));
+
+            // written from scratch over the file it is loaded from, which the reader still maps
+            SavedHistory saved = new SavedHistory();
+            saved.save(file, snapshot, loadedStyles.table(), loadedStyles.size(), reader, null);
+            assertArrayEquals(new float[]{0, 10}, xOfStrokes(file), 0);
+            assertEquals(2, reader.readPoints(1, new float[4]));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void baseLayerIsWrittenFromScratchAndKeptByAppends() throws IOException {
+        BitmapPool pool = new BitmapPool();
+        CheckpointCache checkpoints = new CheckpointCache(pool);
+        Bitmap tile = pool.obtain(TiledCanvas.TILE_SIZE, TiledCanvas.TILE_SIZE, Bitmap.Config.ARGB_8888);
+        tile.setPixel(3, 4, 0xff123456);
+        LongSparseArray<Bitmap> tiles = new LongSparseArray<>();
+        tiles.put(TiledCanvas.key(-1, 2), tile);
+        checkpoints.setBase(tiles);
+
+        StyleCache styles = new StyleCache();
+        StrokeStore strokes = new StrokeStore();
+        addStroke(strokes, styles, 0);
+        File file = folder.newFile();
+        SavedHistory saved = new SavedHistory();
+        CheckpointCache.BaseTiles base = checkpoints.acquireBase();
+        saved.save(file, strokes, styles, base);
+
+        // the next save appends, the tiles are still at the start of the file
+        addStroke(strokes, styles, 10);
+        saved.save(file, strokes, styles, base);
+        checkpoints.release(base);
+        assertArrayEquals(new float[]{0, 10}, xOfStrokes(file), 0);
+
+        WhiteboardReader reader = new WhiteboardReader(file);
+        try {
+            LongSparseArray<Bitmap> loaded = SavedHistory.readBase(reader, pool);
+            assertEquals(1, loaded.size());
+            assertEquals(TiledCanvas.key(-1, 2), loaded.keyAt(0));
+            assertEquals(0xff123456, loaded.valueAt(0).getPixel(3, 4));
+            assertEquals(0, loaded.valueAt(0).getPixel(4, 3));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void acquiredBaseOutlivesTheBaseLayer() {
+        BitmapPool pool = new BitmapPool();
+        CheckpointCache checkpoints = new CheckpointCache(pool);
+        assertNull(checkpoints.acquireBase());
+
+        Bitmap tile = pool.obtain(TiledCanvas.TILE_SIZE, TiledCanvas.TILE_SIZE, Bitmap.Config.ARGB_8888);
+        LongSparseArray<Bitmap> tiles = new LongSparseArray<>();
+        tiles.put(TiledCanvas.key(0, 0), tile);
+        checkpoints.setBase(tiles);
+        CheckpointCache.BaseTiles base = checkpoints.acquireBase();
+
+        // a save still writing the tiles keeps them from going back to the pool
+        checkpoints.clearBase();
+        assertEquals(0, pool.getByteCount());
+        assertSame(tile, base.bitmapAt(0));
+        checkpoints.release(base);
+        assertEquals(tile.getByteCount(), pool.getByteCount());
+    }
+
+    private static void addStroke(StrokeStore strokes, StyleCache styles, float x){
+        strokes.beginStroke(styles.intern(0xff000000, 4, 1, StrokeStyle.CAP_ROUND, StrokeStyle.JOIN_ROUND, false));
+        strokes.addPoint(x, 0);
+        strokes.addPoint(x, 5);
+        strokes.endStroke();
+    }
+
+    private static float[] xOfStrokes(File file) throws IOException {
+        StrokeStore loaded = new StrokeStore();
+        WhiteboardReader reader = new WhiteboardReader(file);
+        try {
+            reader.read(loaded, new StyleCache());
+        } finally {
+            reader.close();
+        }
+
+        float[] x = new float[loaded.size()];
+        for(int i=0; i<x.length; i++){
+            x[i] = loaded.getX(loaded.getPointOffset(i));
+        }
+        return x;
+    }
+}
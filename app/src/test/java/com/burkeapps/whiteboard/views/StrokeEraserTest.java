@@ -0,0 +1,124 @@
+package com.burkeapps.whiteboard.views;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of cutting strokes with a round eraser.
+ */
+public class StrokeEraserTest {
+
+    @Test
+    public void missDoesNotChangeStroke() {
+        StrokeStore store = line(0, 0, 100, 0);
+        store.beginErase();
+        assertFalse(new StrokeEraser().erase(store, 0, 50, 20, 5));
+        assertFalse(store.endErase());
+        assertEquals(1, store.getLiveCount());
+    }
+
+    @Test
+    public void cutInsideSegmentSplitsIntoTwoPieces() {
+        StrokeStore store = line(0, 0, 100, 0);
+        store.beginErase();
+        assertTrue(new StrokeEraser().erase(store, 0, 50, 0, 10));
+        store.endErase();
+
+        assertTrue(store.isErased(0));
+        assertEquals(3, store.size());
+        assertEquals(0, store.getX(store.getPointOffset(1)), 0.001f);
+        assertEquals(40, store.getX(store.getPointOffset(1) + 1), 0.001f);
+        assertEquals(60, store.getX(store.getPointOffset(2)), 0.001f);
+        assertEquals(100, store.getX(store.getPointOffset(2) + 1), 0.001f);
+        assertEquals(0, store.getOrder(2));
+    }
+
+    @Test
+    public void cutInterpolatesTimes() {
+        StrokeStore store = new StrokeStore();
+        store.beginStroke(0);
+        store.addPoint(0, 0, 1000);
+        store.addPoint(100, 0, 1100);
+        store.endStroke();
+
+        store.beginErase();
+        new StrokeEraser().erase(store, 0, 50, 0, 10);
+        store.endErase();
+        assertEquals(40, store.getTime(store.getPointOffset(1) + 1));
+        assertEquals(60, store.getTime(store.getPointOffset(2)));
+    }
+
+    @Test
+    public void coveredStrokeLeavesNoPieces() {
+        StrokeStore store = line(0, 0, 4, 0);
+        store.beginErase();
+        assertTrue(new StrokeEraser().erase(store, 0, 2, 0, 10));
+        store.endErase();
+        assertEquals(1, store.size());
+        assertEquals(0, store.getLiveCount());
+    }
+
+    @Test
+    public void erasingEndKeepsOnePiece() {
+        StrokeStore store = new StrokeStore();
+        store.beginStroke(0);
+        store.addPoint(0, 0);
+        store.addPoint(50, 0);
+        store.addPoint(100, 0);
+        store.endStroke();
+
+        store.beginErase();
+        new StrokeEraser().erase(store, 0, 100, 0, 20);
+        store.endErase();
+        assertEquals(2, store.size());
+        assertEquals(3, store.getPointCount(1));
+        assertEquals(80, store.getX(store.getPointOffset(1) + 2), 0.001f);
+    }
+
+    @Test
+    public void scrubbingBackAndForthDoesNotPileUpPieces() {
+        StrokeStore store = new StrokeStore();
+        store.beginStroke(0);
+        for(int x=0; x<=200; x++){
+            store.addPoint(x, 0);
+        }
+        store.endStroke();
+
+        // one gesture moving the eraser back and forth over the same part of the path
+        StrokeEraser eraser = new StrokeEraser();
+        store.beginErase();
+        for(int pass=0; pass<20; pass++){
+            for(int step=0; step<=20; step++){
+                float x = 90 + (pass % 2 == 0 ? step : 20 - step);
+                // newest first, so removing a piece does not move the strokes still to look at
+                for(int stroke = store.size() - 1; stroke >= 0; stroke--){
+                    if(!store.isErased(stroke)){
+                        eraser.erase(store, stroke, x, 0, 5);
+                    }
+                }
+                // the erased path and the piece on either side of the eraser
+                assertTrue("strokes " + store.size(), store.size() <= 3);
+                assertTrue("points " + store.getTotalPointCount(), store.getTotalPointCount() <= 2 * 201);
+            }
+        }
+        assertTrue(store.endErase());
+        assertEquals(2, store.getLiveCount());
+
+        // the step undoes as one
+        assertTrue(store.undo());
+        assertEquals(1, store.getLiveCount());
+        assertEquals(201, store.getPointCount(0));
+    }
+
+    private static StrokeStore line(float x1, float y1, float x2, float y2) {
+        StrokeStore store = new StrokeStore();
+        store.beginStroke(0);
+        store.addPoint(x1, y1);
+        store.addPoint(x2, y2);
+        store.endStroke();
+        return store;
+    }
+}
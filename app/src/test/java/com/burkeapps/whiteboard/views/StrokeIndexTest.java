@@ -0,0 +1,111 @@
+package com.burkeapps.whiteboard.views;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of the stroke index, checked against a linear scan of the stroke bounds.
+ */
+public class StrokeIndexTest {
+
+    @Test
+    public void queryFindsStrokesInDrawingOrder() {
+        StrokeIndex index = new StrokeIndex(100);
+        index.add(0, 0, 0, 350, 20);
+        index.add(1, 210, 210, 230, 230);
+        index.add(2, -50, -50, -10, -10);
+
+        assertArrayEquals(new int[]{0, 1}, results(index, index.query(200, 0, 300, 300)));
+        assertArrayEquals(new int[]{0, 2}, results(index, index.query(-100, -100, 5, 5)));
+        assertArrayEquals(new int[0], results(index, index.query(400, 400, 500, 500)));
+    }
+
+    @Test
+    public void queryNearUsesDistanceToBounds() {
+        StrokeIndex index = new StrokeIndex(100);
+        index.add(0, 100, 100, 120, 120);
+
+        assertEquals(1, index.queryNear(125, 125, 8));
+        assertEquals(0, index.queryNear(128, 128, 8));
+        assertEquals(1, index.queryNear(110, 130, 10));
+    }
+
+    @Test
+    public void undoneStrokesAreHiddenAndReplaced() {
+        StrokeIndex index = new StrokeIndex(100);
+        index.add(0, 0, 0, 10, 10);
+        index.add(1, 5, 5, 15, 15);
+        index.add(2, 300, 300, 310, 310);
+
+        index.setVisibleCount(1);
+        assertArrayEquals(new int[]{0}, results(index, index.query(0, 0, 400, 400)));
+        index.setVisibleCount(2);
+        assertArrayEquals(new int[]{0, 1}, results(index, index.query(0, 0, 400, 400)));
+
+        // a new stroke replaces the undone one
+        index.add(2, 500, 500, 510, 510);
+        assertEquals(3, index.size());
+        assertArrayEquals(new int[0], results(index, index.query(300, 300, 310, 310)));
+        assertArrayEquals(new int[]{2}, results(index, index.query(500, 500, 510, 510)));
+
+        index.clear();
+        assertEquals(0, index.query(0, 0, 1000, 1000));
+    }
+
+    @Test
+    public void boundsCoverEveryIndexedStroke() {
+        StrokeIndex index = new StrokeIndex(100);
+        index.add(0, 10, 20, 30, 40);
+        index.add(1, -500, 35, 0, 60);
+        index.setHidden(1, true);
+        assertEquals(-500, index.getLeft(), 0);
+        assertEquals(20, index.getTop(), 0);
+        assertEquals(30, index.getRight(), 0);
+        assertEquals(60, index.getBottom(), 0);
+
+        // an emptied index starts over with the next stroke
+        index.truncate(0);
+        index.add(0, 1000, 1000, 1010, 1020);
+        assertEquals(1000, index.getLeft(), 0);
+        assertEquals(1020, index.getBottom(), 0);
+    }
+
+    @Test
+    public void matchesLinearScan() {
+        Random random = new Random(7);
+        StrokeIndex index = new StrokeIndex(64);
+        float[][] bounds = new float[2000][];
+        for(int i=0; i<bounds.length; i++){
+            float x = random.nextFloat() * 2000 - 200, y = random.nextFloat() * 2000 - 200;
+            float w = random.nextFloat() * (i % 50 == 0 ? 800 : 60);
+            float h = random.nextFloat() * (i % 50 == 0 ? 800 : 60);
+            bounds[i] = new float[]{x, y, x + w, y + h};
+            index.add(i, x, y, x + w, y + h);
+        }
+        index.setVisibleCount(1500);
+
+        for(int q=0; q<200; q++){
+            float x = random.nextFloat() * 2000 - 200, y = random.nextFloat() * 2000 - 200;
+            float size = random.nextFloat() * 300;
+
+            int[] expected = new int[1500];
+            int count = 0;
+            for(int i=0; i<1500; i++){
+                float[] b = bounds[i];
+                if(b[0] <= x + size && b[2] >= x && b[1] <= y + size && b[3] >= y){
+                    expected[count++] = i;
+                }
+            }
+            assertArrayEquals(Arrays.copyOf(expected, count), results(index, index.query(x, y, x + size, y + size)));
+        }
+    }
+
+    private static int[] results(StrokeIndex index, int count) {
+        return Arrays.copyOf(index.getResults(), count);
+    }
+}
@@ -0,0 +1,100 @@
+package com.burkeapps.whiteboard.views;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of which points a stroke simplifier keeps, and of the per-point values compacted along
+ * with them.
+ */
+public class StrokeSimplifierTest {
+
+    @Test
+    public void zeroToleranceKeepsEveryPoint() {
+        float[] xy = {0, 0, 1, 0, 2, 0, 3, 0, 4, 0};
+        float[] original = xy.clone();
+        StrokeSimplifier simplifier = new StrokeSimplifier(0);
+
+        assertEquals(5, simplifier.simplify(xy, 0, 5));
+        assertArrayEquals(original, xy, 0);
+        assertEquals(0, simplifier.getLastRemovedCount());
+    }
+
+    @Test
+    public void collinearRunCollapsesToItsEnds() {
+        float[] xy = {0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5};
+        StrokeSimplifier simplifier = new StrokeSimplifier();
+
+        assertEquals(2, simplifier.simplify(xy, 0, 6));
+        assertArrayEquals(new float[]{0, 0, 5, 5}, Arrays.copyOf(xy, 4), 0);
+        assertEquals(4, simplifier.getLastRemovedCount());
+    }
+
+    @Test
+    public void cornerOfCollinearRunsIsKept() {
+        // two straight runs meeting at a right angle
+        float[] xy = {0, 0, 1, 0, 2, 0, 3, 0, 3, 1, 3, 2, 3, 3};
+        StrokeSimplifier simplifier = new StrokeSimplifier();
+
+        assertEquals(3, simplifier.simplify(xy, 0, 7));
+        assertArrayEquals(new float[]{0, 0, 3, 0, 3, 3}, Arrays.copyOf(xy, 6), 0);
+    }
+
+    @Test
+    public void shortStrokesAreUnchanged() {
+        StrokeSimplifier simplifier = new StrokeSimplifier();
+        float[] dot = {5, 5};
+        assertEquals(1, simplifier.simplify(dot, 0, 1));
+        assertArrayEquals(new float[]{5, 5}, dot, 0);
+
+        // two points, even on top of each other
+        float[] line = {5, 5, 5, 5};
+        assertEquals(2, simplifier.simplify(line, 0, 2));
+        assertArrayEquals(new float[]{5, 5, 5, 5}, line, 0);
+    }
+
+    @Test
+    public void runAtOffsetLeavesOtherPointsAlone() {
+        float[] xy = {9, 9, 0, 0, 1, 0, 2, 0, 7, 7};
+        StrokeSimplifier simplifier = new StrokeSimplifier();
+
+        assertEquals(2, simplifier.simplify(xy, 1, 3));
+        assertArrayEquals(new float[]{9, 9, 0, 0, 2, 0}, Arrays.copyOf(xy, 6), 0);
+        assertArrayEquals(new float[]{7, 7}, Arrays.copyOfRange(xy, 8, 10), 0);
+    }
+
+    @Test
+    public void valuesStayAlignedWithKeptPoints() {
+        float[] xy = {0, 0, 1, 0, 2, 0, 3, 0, 3, 1, 3, 2, 3, 3};
+        int[] times = {0, 8, 16, 24, 32, 40, 48};
+        StrokeSimplifier simplifier = new StrokeSimplifier();
+
+        int kept = simplifier.simplify(xy, times, 0, 7);
+        assertEquals(3, kept);
+        assertArrayEquals(new int[]{0, 24, 48}, Arrays.copyOf(times, kept));
+    }
+
+    @Test
+    public void storeTimesStayAlignedAfterSimplifying() {
+        StrokeStore store = new StrokeStore();
+        store.beginStroke(0);
+        store.addPoints(new float[]{0, 0, 10, 0, 20, 0, 30, 0, 30, 10, 30, 20},
+                new long[]{1000, 1010, 1020, 1030, 1040, 1050}, 0, 6);
+        assertEquals(3, store.simplifyStroke(new StrokeSimplifier()));
+        int stroke = store.endStroke();
+
+        int first = store.getPointOffset(stroke);
+        assertEquals(3, store.getPointCount(stroke));
+        float[] expected = {0, 0, 30, 0, 30, 20};
+        int[] expectedTimes = {0, 30, 50};
+        for(int i=0; i<3; i++){
+            assertEquals(expected[i * 2], store.getX(first + i), 0);
+            assertEquals(expected[i * 2 + 1], store.getY(first + i), 0);
+            assertEquals(expectedTimes[i], store.getTime(first + i));
+        }
+    }
+}
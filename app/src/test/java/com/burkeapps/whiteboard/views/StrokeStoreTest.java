@@ -0,0 +1,477 @@
+package com.burkeapps.whiteboard.views;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of the point packing, the point times, the erase steps, compaction and the undo/redo
+ * cursor of a stroke store.
+ */
+public class StrokeStoreTest {
+
+    @Test
+    public void strokesArePackedBackToBack() {
+        StrokeStore store = new StrokeStore();
+        addStroke(store, 3, 0, 0);
+        addStroke(store, 5, 2, 100);
+
+        assertEquals(2, store.size());
+        assertEquals(8, store.getTotalPointCount());
+        assertEquals(0, store.getPointOffset(0));
+        assertEquals(3, store.getPointCount(0));
+        assertEquals(3, store.getPointOffset(1));
+        assertEquals(5, store.getPointCount(1));
+        assertEquals(2, store.getStyle(1));
+        assertEquals(102, store.getX(5), 0);
+        assertEquals(-102, store.getY(5), 0);
+    }
+
+    @Test
+    public void storeGrowsPastItsInitialCapacity() {
+        StrokeStore store = new StrokeStore();
+        for(int i=0; i<200; i++){
+            addStroke(store, 20, i, i * 1000);
+        }
+
+        assertEquals(200, store.size());
+        assertEquals(4000, store.getTotalPointCount());
+        assertEquals(199 * 20, store.getPointOffset(199));
+        assertEquals(199, store.getStyle(199));
+        assertEquals(199 * 1000 + 19, store.getX(3999), 0);
+    }
+
+    @Test
+    public void undoAndRedoMoveTheCursor() {
+        StrokeStore store = new StrokeStore();
+        addStroke(store, 2, 0, 0);
+        addStroke(store, 2, 0, 10);
+        assertFalse(store.canRedo());
+
+        assertTrue(store.undo());
+        assertTrue(store.undo());
+        assertFalse(store.undo());
+        assertEquals(0, store.size());
+        assertEquals(2, store.storedSize());
+        assertTrue(store.canRedo());
+
+        assertTrue(store.redo());
+        assertEquals(1, store.size());
+        assertTrue(store.canUndo());
+    }
+
+    @Test
+    public void newStrokeReusesSpaceOfUndoneStrokes() {
+        StrokeStore store = new StrokeStore();
+        addStroke(store, 2, 0, 0);
+        addStroke(store, 4, 0, 10);
+        store.undo();
+
+        addStroke(store, 3, 1, 50);
+        assertEquals(2, store.storedSize());
+        assertFalse(store.canRedo());
+        assertEquals(5, store.getTotalPointCount());
+        assertEquals(2, store.getPointOffset(1));
+        assertEquals(50, store.getX(2), 0);
+    }
+
+    @Test
+    public void snapshotKeepsItsStrokesWhileStoreChanges() {
+        StrokeStore store = new StrokeStore();
+        addStroke(store, 2, 0, 0);
+        addStroke(store, 3, 1, 10);
+        StrokeStore snapshot = store.snapshot();
+
+        // overwrite the second stroke and grow well past the initial capacity
+        store.undo();
+        for(int i=0; i<100; i++){
+            addStroke(store, 20, 2, 500);
+        }
+
+        assertEquals(2, snapshot.size());
+        assertEquals(3, snapshot.getPointCount(1));
+        assertEquals(1, snapshot.getStyle(1));
+        assertEquals(10, snapshot.getX(2), 0);
+        assertEquals(500, store.getX(2), 0);
+    }
+
+    @Test
+    public void storeCopiesItsArraysOnlyWhileSnapshotIsUnreleased() {
+        StrokeStore store = new StrokeStore();
+        addStroke(store, 2, 0, 0);
+        addStroke(store, 3, 1, 10);
+        StrokeStore snapshot = store.snapshot();
+        float[] points = store.points;
+
+        // drawing after an undo copies the arrays the snapshot still reads
+        store.undo();
+        addStroke(store, 2, 2, 500);
+        assertNotSame(points, store.points);
+        assertEquals(10, snapshot.getX(2), 0);
+
+        // the snapshot does not read the copies, they are written in place
+        points = store.points;
+        store.undo();
+        addStroke(store, 2, 2, 600);
+        assertSame(points, store.points);
+
+        snapshot.release();
+
+        // arrays read by snapshots are written in place again once every snapshot is released
+        StrokeStore first = store.snapshot(), second = store.snapshot();
+        first.release();
+        first.release();
+        store.undo();
+        addStroke(store, 2, 2, 700);
+        assertNotSame(points, store.points);
+        second.release();
+        points = store.points;
+        store.undo();
+        addStroke(store, 2, 2, 800);
+        assertSame(points, store.points);
+    }
+
+    @Test
+    public void batchedPointsAreAppendedInOrder() {
+        StrokeStore store = new StrokeStore();
+        float[] batch = {9, 9, 1, 2, 3, 4, 5, 6};
+        store.beginStroke(0);
+        store.addPoint(0, 0);
+        store.addPoints(batch, 1, 3);
+        store.endStroke();
+
+        assertEquals(4, store.getPointCount(0));
+        assertEquals(1, store.getX(1), 0);
+        assertEquals(6, store.getY(3), 0);
+    }
+
+    @Test
+    public void cancelledStrokeLeavesNoPoints() {
+        StrokeStore store = new StrokeStore();
+        addStroke(store, 2, 0, 0);
+        store.beginStroke(0);
+        store.addPoint(7, 7);
+        assertTrue(store.isStrokeOpen());
+        assertFalse(store.undo());
+
+        store.cancelStroke();
+        assertFalse(store.isStrokeOpen());
+        assertEquals(1, store.storedSize());
+        assertEquals(2, store.getTotalPointCount());
+    }
+
+    @Test
+    public void timesAreRelativeToFirstPoint() {
+        StrokeStore store = new StrokeStore();
+        store.beginStroke(0);
+        store.addPoint(0, 0, 1000);
+        store.addPoints(new float[]{1, 1, 2, 2}, new long[]{1016, 1032}, 0, 2);
+        store.endStroke();
+
+        assertEquals(0, store.getTime(0));
+        assertEquals(16, store.getTime(1));
+        assertEquals(32, store.getTime(2));
+    }
+
+    @Test
+    public void pointsWithoutTimeKeepPreviousTime() {
+        StrokeStore store = new StrokeStore();
+        store.beginStroke(0);
+        store.addPoint(0, 0, 500);
+        store.addPoint(1, 0, 540);
+        store.addPoint(2, 0);
+        store.addPoints(new float[]{3, 0}, 0, 1);
+        store.endStroke();
+
+        assertEquals(40, store.getTime(2));
+        assertEquals(40, store.getTime(3));
+    }
+
+    @Test
+    public void simplificationKeepsTimesOfKeptPoints() {
+        StrokeStore store = new StrokeStore();
+        store.beginStroke(0);
+        for(int i=0; i<10; i++){
+            // a straight line, only the ends survive
+            store.addPoint(i, 0, i * 10);
+        }
+        store.simplifyStroke(new StrokeSimplifier(1));
+        store.endStroke();
+
+        assertEquals(2, store.getPointCount(0));
+        assertEquals(0, store.getTime(0));
+        assertEquals(90, store.getTime(1));
+    }
+
+    @Test
+    public void clearResetsTimeOrigin() {
+        StrokeStore store = new StrokeStore();
+        store.beginStroke(0);
+        store.addPoint(0, 0, 100);
+        store.endStroke();
+        store.clear();
+
+        store.beginStroke(0);
+        store.addPoint(0, 0, 5000);
+        store.addPoint(1, 0, 5020);
+        store.endStroke();
+        assertEquals(0, store.getTime(0));
+        assertEquals(20, store.getTime(1));
+    }
+
+    @Test
+    public void eraseStepIsUndoneAndRedoneAsOne() {
+        StrokeStore store = storeWithStrokes(3);
+        store.beginErase();
+        store.eraseStroke(0);
+        store.eraseStroke(2);
+        store.addStroke(0, 0, new float[]{0, 0, 1, 1}, new int[]{0, 0}, 0, 2);
+        assertTrue(store.endErase());
+
+        assertEquals(4, store.size());
+        assertEquals(2, store.getLiveCount());
+        assertTrue(store.isErased(0));
+        assertEquals(0, store.getOrder(3));
+
+        assertTrue(store.undo());
+        assertEquals(3, store.size());
+        assertEquals(3, store.getLiveCount());
+        assertFalse(store.isErased(0));
+
+        assertTrue(store.redo());
+        assertEquals(2, store.getLiveCount());
+        assertTrue(store.isErased(2));
+    }
+
+    @Test
+    public void emptyEraseStepIsDropped() {
+        StrokeStore store = storeWithStrokes(1);
+        store.beginErase();
+        assertFalse(store.endErase());
+        assertEquals(1, store.getStepCount());
+        assertFalse(store.canRedo());
+    }
+
+    @Test
+    public void interruptedEraseIsClosedBeforeTheNext() {
+        // an erase gesture that was cancelled left its step open
+        StrokeStore store = storeWithStrokes(3);
+        store.beginErase();
+        store.eraseStroke(0);
+        try {
+            store.beginErase();
+            fail("Expected an IllegalStateException");
+        } catch(IllegalStateException expected){
+            // the open step has to be ended first
+        }
+
+        // the next erase ends it first, so both are undone one at a time
+        assertTrue(store.isEraseOpen());
+        assertTrue(store.endErase());
+        store.beginErase();
+        store.eraseStroke(1);
+        assertTrue(store.endErase());
+        assertEquals(1, store.getLiveCount());
+
+        assertTrue(store.undo());
+        assertFalse(store.isErased(1));
+        assertTrue(store.isErased(0));
+        assertTrue(store.undo());
+        assertEquals(3, store.getLiveCount());
+    }
+
+    @Test
+    public void newStepRestoresStrokesOfDroppedEraseStep() {
+        StrokeStore store = storeWithStrokes(2);
+        store.beginErase();
+        store.eraseStroke(1);
+        store.endErase();
+        store.undo();
+
+        store.beginStroke(0);
+        store.addPoint(5, 5);
+        store.endStroke();
+        assertFalse(store.canRedo());
+        assertFalse(store.isErased(1));
+        assertEquals(3, store.getLiveCount());
+    }
+
+    @Test
+    public void liveStrokesAreInDrawingOrder() {
+        StrokeStore store = storeWithStrokes(3);
+        store.beginErase();
+        store.eraseStroke(0);
+        store.addStroke(0, 0, new float[]{0, 0, 1, 1}, new int[]{0, 0}, 0, 2);
+        store.endErase();
+
+        int[] live = new int[store.size()];
+        int count = store.getLiveStrokes(0, store.size(), live);
+        assertArrayEquals(new int[]{3, 1, 2}, Arrays.copyOf(live, count));
+    }
+
+    @Test
+    public void snapshotKeepsStrokesErasedLater() {
+        StrokeStore store = storeWithStrokes(2);
+        StrokeStore snapshot = store.snapshot();
+        store.beginErase();
+        store.eraseStroke(0);
+        store.endErase();
+
+        assertFalse(snapshot.isErased(0));
+        assertEquals(2, snapshot.getLiveCount());
+    }
+
+    @Test
+    public void pieceOfOpenStepIsRemovedWhenErased() {
+        StrokeStore store = storeWithStrokes(2);
+        store.beginErase();
+        store.eraseStroke(0);
+        store.addStroke(0, 0, new float[]{0, 0, 0, 4}, new int[]{0, 0}, 0, 2);
+        store.addStroke(0, 0, new float[]{0, 6, 0, 10}, new int[]{0, 0}, 0, 2);
+        StrokeStore snapshot = store.snapshot();
+
+        assertTrue(store.eraseStroke(2));
+        assertEquals(3, store.size());
+        assertEquals(6, store.getTotalPointCount());
+        assertEquals(6, store.getY(store.getPointOffset(2)), 0);
+        assertEquals(0, store.getOrder(2));
+        store.endErase();
+        assertEquals(1, store.getStepErasedCount(2));
+
+        // a snapshot taken before still sees the removed piece
+        assertEquals(4, snapshot.size());
+        assertEquals(4, snapshot.getY(snapshot.getPointOffset(2) + 1), 0);
+    }
+
+    @Test
+    public void compactionDropsLeadingStepsAndRenumbers() {
+        StrokeStore store = storeWithStrokes(4);
+        store.beginErase();
+        store.eraseStroke(3);
+        store.addStroke(3, 0, new float[]{7, 7, 8, 8}, new int[]{0, 0}, 0, 2);
+        store.endErase();
+
+        assertEquals(2, store.findCompactionStep(2));
+        assertEquals(2, store.compact(2));
+        assertEquals(3, store.size());
+        assertEquals(3, store.getStepCount());
+        assertEquals(2, store.getX(store.getPointOffset(0)), 0);
+        assertEquals(6, store.getTotalPointCount());
+        assertTrue(store.isErased(1));
+        assertEquals(1, store.getOrder(2));
+        assertEquals(1, store.getStepErased(2, 0));
+
+        // the renumbered history still undoes and redoes
+        assertTrue(store.undo());
+        assertFalse(store.isErased(1));
+        assertTrue(store.redo());
+        assertTrue(store.isErased(1));
+    }
+
+    @Test
+    public void strokesErasedLaterCanNotBeCompacted() {
+        StrokeStore store = storeWithStrokes(3);
+        store.beginErase();
+        store.eraseStroke(0);
+        store.endErase();
+
+        assertEquals(-1, store.findCompactionStep(2));
+        assertEquals(-1, store.findCompactionStep(5));
+        assertEquals(4, store.findCompactionStep(3));
+    }
+
+    @Test
+    public void undoneStepsAreNotCompacted() {
+        StrokeStore store = storeWithStrokes(3);
+        store.undo();
+        assertEquals(-1, store.findCompactionStep(3));
+        assertEquals(2, store.findCompactionStep(2));
+
+        store.compact(2);
+        assertTrue(store.redo());
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void pendingStrokeGetsItsPointsLater() {
+        StrokeStore store = storeWithStrokes(1);
+        int stroke = store.addPendingStroke(0, 3, 1, 2, 5, 6);
+        assertEquals(2, store.size());
+        assertTrue(store.isPending(stroke));
+        assertFalse(store.isPending(0));
+        assertEquals(3, store.getPointCount(stroke));
+        assertEquals(1, store.getLeft(stroke), 0);
+        assertEquals(6, store.getBottom(stroke), 0);
+
+        // a snapshot sees the points once they are set
+        StrokeStore snapshot = store.snapshot();
+        store.setPoints(stroke, new float[]{1, 2, 3, 4, 5, 6});
+        assertFalse(store.isPending(stroke));
+        int first = snapshot.getPointOffset(stroke);
+        assertEquals(3, snapshot.getX(first + 1), 0);
+        assertEquals(6, snapshot.getY(first + 2), 0);
+    }
+
+    @Test
+    public void pointsOfStrokeThatIsNotPendingCanNotBeSet() {
+        StrokeStore store = storeWithStrokes(1);
+        try {
+            store.setPoints(0, new float[]{0, 0, 0, 0});
+            fail("Expected an IllegalStateException");
+        } catch(IllegalStateException expected){
+            // the stroke has its points already
+        }
+    }
+
+    @Test
+    public void strokeReplacingUndonePendingStrokeIsNotPending() {
+        StrokeStore store = new StrokeStore();
+        store.addPendingStroke(0, 2, 0, 0, 10, 10);
+        store.addPendingStroke(0, 2, 0, 0, 10, 10);
+        store.undo();
+
+        store.beginStroke(0);
+        store.addPoint(7, 7);
+        int stroke = store.endStroke();
+        assertEquals(1, stroke);
+        assertFalse(store.isPending(stroke));
+        assertTrue(store.isPending(0));
+    }
+
+    @Test
+    public void compactionKeepsPendingStrokes() {
+        StrokeStore store = storeWithStrokes(2);
+        store.addPendingStroke(0, 2, 0, 0, 10, 10);
+        store.compact(store.findCompactionStep(2));
+
+        assertEquals(1, store.size());
+        assertTrue(store.isPending(0));
+    }
+
+    private static void addStroke(StrokeStore store, int points, int style, float x) {
+        store.beginStroke(style);
+        for(int i=0; i<points; i++){
+            store.addPoint(x + i, -x - i);
+        }
+        store.endStroke();
+    }
+
+    private static StrokeStore storeWithStrokes(int count) {
+        StrokeStore store = new StrokeStore();
+        for(int i=0; i<count; i++){
+            store.beginStroke(0);
+            store.addPoint(i, 0);
+            store.addPoint(i, 10);
+            store.endStroke();
+        }
+        return store;
+    }
+}
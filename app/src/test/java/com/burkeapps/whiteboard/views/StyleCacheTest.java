@@ -0,0 +1,68 @@
+package com.burkeapps.whiteboard.views;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Tests of style interning and the open addressing table of a style cache.
+ */
+public class StyleCacheTest {
+
+    @Test
+    public void equalStylesShareAnIndex() {
+        StyleCache cache = new StyleCache();
+        int first = cache.intern(0xff000000, 5, 0, StrokeStyle.CAP_ROUND, StrokeStyle.JOIN_ROUND, false);
+        int second = cache.intern(0xff000000, 5, 0, StrokeStyle.CAP_ROUND, StrokeStyle.JOIN_ROUND, false);
+
+        assertEquals(first, second);
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void everyAttributeTellsStylesApart() {
+        StyleCache cache = new StyleCache();
+        int style = cache.intern(0xff000000, 5, 0, StrokeStyle.CAP_ROUND, StrokeStyle.JOIN_ROUND, false);
+
+        assertNotEquals(style, cache.intern(0xff000001, 5, 0, StrokeStyle.CAP_ROUND, StrokeStyle.JOIN_ROUND, false));
+        assertNotEquals(style, cache.intern(0xff000000, 6, 0, StrokeStyle.CAP_ROUND, StrokeStyle.JOIN_ROUND, false));
+        assertNotEquals(style, cache.intern(0xff000000, 5, 1, StrokeStyle.CAP_ROUND, StrokeStyle.JOIN_ROUND, false));
+        assertNotEquals(style, cache.intern(0xff000000, 5, 0, StrokeStyle.CAP_BUTT, StrokeStyle.JOIN_ROUND, false));
+        assertNotEquals(style, cache.intern(0xff000000, 5, 0, StrokeStyle.CAP_ROUND, StrokeStyle.JOIN_MITER, false));
+        assertEquals(6, cache.size());
+        assertEquals(0, cache.getHitCount());
+    }
+
+    @Test
+    public void stylesAreFoundAgainAfterCollisionsAndRehashing() {
+        StyleCache cache = new StyleCache();
+        // colors that only differ in their high bits, and enough of them to grow the table a few times
+        int[] indices = new int[200];
+        for(int i=0; i<indices.length; i++){
+            indices[i] = cache.intern((i << 24) | 0x123456, 4, 0, StrokeStyle.CAP_ROUND, StrokeStyle.JOIN_ROUND, false);
+        }
+        assertEquals(200, cache.size());
+
+        for(int i=0; i<indices.length; i++){
+            assertEquals(indices[i], cache.intern((i << 24) | 0x123456, 4, 0, StrokeStyle.CAP_ROUND, StrokeStyle.JOIN_ROUND, false));
+            assertEquals((i << 24) | 0x123456, cache.get(indices[i]).getColor());
+        }
+        assertEquals(200, cache.getHitCount());
+        assertEquals(200, cache.getMissCount());
+    }
+
+    @Test
+    public void clearedCacheStartsOver() {
+        StyleCache cache = new StyleCache();
+        cache.intern(0xff000000, 5, 0, StrokeStyle.CAP_ROUND, StrokeStyle.JOIN_ROUND, false);
+        cache.intern(0xffff0000, 5, 0, StrokeStyle.CAP_ROUND, StrokeStyle.JOIN_ROUND, false);
+        cache.clear();
+
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.intern(0xffff0000, 5, 0, StrokeStyle.CAP_ROUND, StrokeStyle.JOIN_ROUND, false));
+        assertEquals(1, cache.size());
+    }
+}
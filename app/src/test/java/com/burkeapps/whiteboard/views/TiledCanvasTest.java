@@ -0,0 +1,79 @@
+package com.burkeapps.whiteboard.views;
+
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.RectF;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests of which tiles drawing a path allocates.
+ */
+public class TiledCanvasTest {
+
+    private static final int INK = 0xff000000;
+    private static final float REACH = 2;
+
+    private TiledCanvas canvas;
+    private final Paint paint = new Paint();
+
+    @Before
+    public void setUp() {
+        canvas = new TiledCanvas(new BitmapPool());
+        paint.setColor(INK);
+    }
+
+    @Test
+    public void diagonalOnlyAllocatesTheTilesItCrosses() {
+        int size = 8 * TiledCanvas.TILE_SIZE;
+        draw(10, 20, size - 20, size - 10);
+
+        // the tiles on the diagonal and the ones it steps through between them, not all 64
+        assertEquals(15, canvas.tiles.size());
+        for(int t=0; t<8; t++){
+            assertNotNull(canvas.tiles.get(TiledCanvas.key(t, t)));
+        }
+        assertNull(canvas.tiles.get(TiledCanvas.key(0, 7)));
+        assertNull(canvas.tiles.get(TiledCanvas.key(7, 0)));
+        assertEquals(INK, canvas.tiles.get(TiledCanvas.key(7, 7)).bitmap.getPixel(TiledCanvas.TILE_SIZE - 20,
+                TiledCanvas.TILE_SIZE - 10));
+    }
+
+    @Test
+    public void lineOnATileEdgeAllocatesTheTilesNextToIt() {
+        // anti-aliasing can put ink a pixel past the outline
+        float edge = TiledCanvas.TILE_SIZE;
+        draw(edge, 10, edge, 3 * edge - 10);
+        assertEquals(6, canvas.tiles.size());
+        assertNotNull(canvas.tiles.get(TiledCanvas.key(0, 1)));
+        assertNotNull(canvas.tiles.get(TiledCanvas.key(1, 1)));
+    }
+
+    @Test
+    public void unchangedTilesKeepTheirVersion() {
+        draw(10, 10, 20, 20);
+        int version = canvas.tiles.get(TiledCanvas.key(0, 0)).version;
+
+        // the bounds of the second line include the first tile, its ink does not
+        Path path = new Path();
+        path.moveTo(300, 10);
+        path.lineTo(600, 10);
+        canvas.drawPath(path, paint, new RectF(0, 0, 600, 20));
+        assertEquals(3, canvas.tiles.size());
+        assertEquals(version, canvas.tiles.get(TiledCanvas.key(0, 0)).version);
+    }
+
+    private void draw(float x0, float y0, float x1, float y1) {
+        Path path = new Path();
+        path.moveTo(x0, y0);
+        path.lineTo(x1, y1);
+        RectF bounds = new RectF(Math.min(x0, x1), Math.min(y0, y1), Math.max(x0, x1), Math.max(y0, y1));
+        bounds.inset(-REACH, -REACH);
+        canvas.drawPath(path, paint, bounds);
+    }
+}
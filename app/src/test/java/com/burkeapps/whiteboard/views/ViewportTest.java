@@ -0,0 +1,71 @@
+package com.burkeapps.whiteboard.views;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of the mapping between the board and the view, and of the level of detail a zoom is drawn
+ * at.
+ */
+public class ViewportTest {
+
+    @Test
+    public void pointsMapBothWays() {
+        Viewport viewport = new Viewport();
+        viewport.setSize(1000, 800);
+        viewport.set(2, 100, -50);
+
+        assertEquals(150, viewport.toBoardX(100), 0);
+        assertEquals(0, viewport.toBoardY(100), 0);
+        assertEquals(100, viewport.toViewX(150), 0);
+        assertEquals(100, viewport.toViewY(0), 0);
+
+        float[] xy = {0, 0, 100, 100, 200, 300};
+        viewport.toBoard(xy, 1, 2);
+        assertArrayEquals(new float[]{0, 0, 150, 0, 200, 100}, xy, 0);
+    }
+
+    @Test
+    public void zoomKeepsTheFocusInPlace() {
+        Viewport viewport = new Viewport();
+        viewport.setSize(1000, 800);
+        viewport.set(1, 300, 200);
+
+        float x = viewport.toBoardX(400), y = viewport.toBoardY(250);
+        viewport.zoomBy(0.25f, 400, 250);
+        assertEquals(0.25f, viewport.getZoom(), 0);
+        assertEquals(x, viewport.toBoardX(400), 0.001f);
+        assertEquals(y, viewport.toBoardY(250), 0.001f);
+
+        // a drag moves the board with the finger
+        viewport.panBy(10, -20);
+        assertEquals(x, viewport.toBoardX(410), 0.001f);
+        assertEquals(y, viewport.toBoardY(230), 0.001f);
+    }
+
+    @Test
+    public void zoomAndPositionAreLimited() {
+        Viewport viewport = new Viewport();
+        viewport.setSize(1000, 800);
+        viewport.zoomBy(1000, 0, 0);
+        assertEquals(Viewport.MAX_ZOOM, viewport.getZoom(), 0);
+        viewport.zoomBy(0.00001f, 0, 0);
+        assertEquals(Viewport.MIN_ZOOM, viewport.getZoom(), 0);
+
+        viewport.set(1, TiledCanvas.LIMIT, -2f * TiledCanvas.LIMIT);
+        assertEquals(TiledCanvas.LIMIT - 1000, viewport.getLeft(), 0);
+        assertEquals(-TiledCanvas.LIMIT, viewport.getTop(), 0);
+    }
+
+    @Test
+    public void levelsAreNotMagnified() {
+        assertEquals(0, TilePyramid.getLevel(Viewport.MAX_ZOOM));
+        assertEquals(0, TilePyramid.getLevel(1));
+        assertEquals(0, TilePyramid.getLevel(0.51f));
+        assertEquals(1, TilePyramid.getLevel(0.5f));
+        assertEquals(2, TilePyramid.getLevel(0.2f));
+        assertEquals(TilePyramid.LEVELS, TilePyramid.getLevel(Viewport.MIN_ZOOM));
+    }
+}
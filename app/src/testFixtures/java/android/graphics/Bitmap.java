@@ -0,0 +1,87 @@
+package android.graphics;
+
+import java.util.Arrays;
+
+/**
+ * Headless stand-in for the platform class, backed by an int array of ARGB pixels.
+ */
+public final class Bitmap {
+
+    public enum Config { ALPHA_8, RGB_565, ARGB_4444, ARGB_8888 }
+
+    final int width, height;
+    final Config config;
+    int[] pixels;
+
+    private Bitmap(int width, int height, Config config){
+        this.width = width;
+        this.height = height;
+        this.config = config;
+        this.pixels = new int[width * height];
+    }
+
+    public static Bitmap createBitmap(int width, int height, Config config){
+        if(width <= 0 || height <= 0){
+            throw new IllegalArgumentException("width and height must be > 0");
+        }
+        return new Bitmap(width, height, config);
+    }
+
+    public Bitmap copy(Config config, boolean isMutable){
+        Bitmap copy = new Bitmap(width, height, config);
+        System.arraycopy(pixels, 0, copy.pixels, 0, pixels.length);
+        return copy;
+    }
+
+    public int getWidth(){
+        return width;
+    }
+
+    public int getHeight(){
+        return height;
+    }
+
+    public Config getConfig(){
+        return config;
+    }
+
+    public int getByteCount(){
+        return width * height * (config == Config.ARGB_8888 ? 4 : config == Config.ALPHA_8 ? 1 : 2);
+    }
+
+    public boolean isMutable(){
+        return true;
+    }
+
+    public void recycle(){
+        pixels = null;
+    }
+
+    public boolean isRecycled(){
+        return pixels == null;
+    }
+
+    public void eraseColor(int color){
+        Arrays.fill(pixels, color);
+    }
+
+    public int getPixel(int x, int y){
+        return pixels[y * width + x];
+    }
+
+    public void setPixel(int x, int y, int color){
+        pixels[y * width + x] = color;
+    }
+
+    public void getPixels(int[] out, int offset, int stride, int x, int y, int width, int height){
+        for(int row=0; row<height; row++){
+            System.arraycopy(pixels, (y + row) * this.width + x, out, offset + row * stride, width);
+        }
+    }
+
+    public void setPixels(int[] in, int offset, int stride, int x, int y, int width, int height){
+        for(int row=0; row<height; row++){
+            System.arraycopy(in, offset + row * stride, pixels, (y + row) * this.width + x, width);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package android.graphics;
+
+/**
+ * Headless stand-in for the platform class.  It supports translation and a rectangular clip, and
+ * rasterizes paths as one pixel wide lines and bitmaps as straight copies that skip transparent
+ * pixels.  That is far cheaper than the real renderer, so benchmarks using it measure the
+ * whiteboard's own work plus a cost that grows with the ink drawn, not the platform's.
+ */
+public class Canvas {
+
+    public enum EdgeType { BW, AA }
+
+    private static final int MAX_SAVES = 16;
+
+    private Bitmap bitmap;
+    private float dx, dy;
+    private int clipLeft, clipTop, clipRight, clipBottom;
+    private final float[] saved = new float[MAX_SAVES * 6];
+    private int saveCount;
+
+    public Canvas(){
+    }
+
+    public Canvas(Bitmap bitmap){
+        setBitmap(bitmap);
+    }
+
+    public void setBitmap(Bitmap bitmap){
+        this.bitmap = bitmap;
+        dx = dy = 0;
+        saveCount = 0;
+        clipLeft = clipTop = 0;
+        clipRight = (bitmap != null) ? bitmap.width : 0;
+        clipBottom = (bitmap != null) ? bitmap.height : 0;
+    }
+
+    public int getWidth(){
+        return bitmap.width;
+    }
+
+    public int getHeight(){
+        return bitmap.height;
+    }
+
+    public int save(){
+        int s = saveCount * 6;
+        saved[s] = dx;
+        saved[s + 1] = dy;
+        saved[s + 2] = clipLeft;
+        saved[s + 3] = clipTop;
+        saved[s + 4] = clipRight;
+        saved[s + 5] = clipBottom;
+        return ++saveCount;
+    }
+
+    public void restore(){
+        int s = --saveCount * 6;
+        dx = saved[s];
+        dy = saved[s + 1];
+        clipLeft = (int) saved[s + 2];
+        clipTop = (int) saved[s + 3];
+        clipRight = (int) saved[s + 4];
+        clipBottom = (int) saved[s + 5];
+    }
+
+    public void translate(float x, float y){
+        dx += x;
+        dy += y;
+    }
+
+    public boolean clipRect(float left, float top, float right, float bottom){
+        clipLeft = Math.max(clipLeft, (int) Math.floor(left + dx));
+        clipTop = Math.max(clipTop, (int) Math.floor(top + dy));
+        clipRight = Math.min(clipRight, (int) Math.ceil(right + dx));
+        clipBottom = Math.min(clipBottom, (int) Math.ceil(bottom + dy));
+        return clipLeft < clipRight && clipTop < clipBottom;
+    }
+
+    public boolean quickReject(float left, float top, float right, float bottom, EdgeType type){
+        return left + dx >= clipRight || right + dx <= clipLeft || top + dy >= clipBottom || bottom + dy <= clipTop;
+    }
+
+    public void drawColor(int color){
+        for(int y = clipTop; y < clipBottom; y++){
+            java.util.Arrays.fill(bitmap.pixels, y * bitmap.width + clipLeft, y * bitmap.width + clipRight, color);
+        }
+    }
+
+    public void drawPaint(Paint paint){
+        drawColor(paint.getColor());
+    }
+
+    public void drawBitmap(Bitmap source, float left, float top, Paint paint){
+        int x0 = (int) (left + dx), y0 = (int) (top + dy);
+        int fromX = Math.max(clipLeft, x0), toX = Math.min(clipRight, x0 + source.width);
+        int fromY = Math.max(clipTop, y0), toY = Math.min(clipBottom, y0 + source.height);
+        int[] src = source.pixels, dst = bitmap.pixels;
+        for(int y = fromY; y < toY; y++){
+            int s = (y - y0) * source.width - x0, d = y * bitmap.width;
+            for(int x = fromX; x < toX; x++){
+                int color = src[s + x];
+                if(color != 0){
+                    dst[d + x] = color;
+                }
+            }
+        }
+    }
+
+    public void drawBitmap(Bitmap source, Rect src, Rect dst, Paint paint){
+        // nearest neighbour scaling of the source rect, or the whole bitmap, onto the destination
+        int sl = (src != null) ? src.left : 0, st = (src != null) ? src.top : 0;
+        int sw = (src != null) ? src.width() : source.width, sh = (src != null) ? src.height() : source.height;
+        int x0 = (int) (dst.left + dx), y0 = (int) (dst.top + dy);
+        int fromX = Math.max(clipLeft, x0), toX = Math.min(clipRight, x0 + dst.width());
+        int fromY = Math.max(clipTop, y0), toY = Math.min(clipBottom, y0 + dst.height());
+        for(int y = fromY; y < toY; y++){
+            int s = (st + (y - y0) * sh / dst.height()) * source.width + sl, d = y * bitmap.width;
+            for(int x = fromX; x < toX; x++){
+                bitmap.pixels[d + x] = source.pixels[s + (x - x0) * sw / dst.width()];
+            }
+        }
+    }
+
+    public void drawPath(Path path, Paint paint){
+        int color = paint.getColor();
+        for(int i=1; i<path.count; i++){
+            if(!path.moves[i]){
+                drawLine(path.points[i * 2 - 2], path.points[i * 2 - 1], path.points[i * 2], path.points[i * 2 + 1], color);
+            }
+        }
+    }
+
+    public void drawLine(float startX, float startY, float stopX, float stopY, Paint paint){
+        drawLine(startX, startY, stopX, stopY, paint.getColor());
+    }
+
+    private void drawLine(float startX, float startY, float stopX, float stopY, int color){
+        float x0 = startX + dx, y0 = startY + dy, x1 = stopX + dx, y1 = stopY + dy;
+        if(Math.max(x0, x1) < clipLeft || Math.min(x0, x1) >= clipRight
+                || Math.max(y0, y1) < clipTop || Math.min(y0, y1) >= clipBottom){
+            return;
+        }
+
+        int steps = (int) Math.max(Math.abs(x1 - x0), Math.abs(y1 - y0)) + 1;
+        float sx = (x1 - x0) / steps, sy = (y1 - y0) / steps;
+        int[] dst = bitmap.pixels;
+        for(int i=0; i<=steps; i++){
+            int x = (int) (x0 + sx * i), y = (int) (y0 + sy * i);
+            if(x >= clipLeft && x < clipRight && y >= clipTop && y < clipBottom){
+                dst[y * bitmap.width + x] = color;
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package android.graphics;
+
+/**
+ * Headless stand-in for the platform class.  It only keeps the attributes it is given; the
+ * stand-in {@link Canvas} draws every path one pixel wide in the paint's color, so the fill path
+ * of a stroke is the stroke's own path.
+ */
+public class Paint {
+
+    public static final int ANTI_ALIAS_FLAG = 1;
+    public static final int FILTER_BITMAP_FLAG = 2;
+
+    public enum Style { FILL, STROKE, FILL_AND_STROKE }
+    public enum Cap { BUTT, ROUND, SQUARE }
+    public enum Join { MITER, ROUND, BEVEL }
+
+    private int color = 0xff000000;
+    private float strokeWidth;
+    private float strokeMiter = 4;
+    private Style style = Style.FILL;
+    private Cap cap = Cap.BUTT;
+    private Join join = Join.MITER;
+    private boolean antiAlias;
+
+    public Paint(){
+    }
+
+    public Paint(int flags){
+        antiAlias = (flags & ANTI_ALIAS_FLAG) != 0;
+    }
+
+    public Paint(Paint paint){
+        set(paint);
+    }
+
+    public void set(Paint paint){
+        color = paint.color;
+        strokeWidth = paint.strokeWidth;
+        strokeMiter = paint.strokeMiter;
+        style = paint.style;
+        cap = paint.cap;
+        join = paint.join;
+        antiAlias = paint.antiAlias;
+    }
+
+    public int getColor(){
+        return color;
+    }
+
+    public void setColor(int color){
+        this.color = color;
+    }
+
+    public int getAlpha(){
+        return color >>> 24;
+    }
+
+    public void setAlpha(int alpha){
+        color = (color & 0xffffff) | (alpha << 24);
+    }
+
+    public float getStrokeWidth(){
+        return strokeWidth;
+    }
+
+    public void setStrokeWidth(float width){
+        strokeWidth = width;
+    }
+
+    public float getStrokeMiter(){
+        return strokeMiter;
+    }
+
+    public void setStrokeMiter(float miter){
+        strokeMiter = miter;
+    }
+
+    public Style getStyle(){
+        return style;
+    }
+
+    public void setStyle(Style style){
+        this.style = style;
+    }
+
+    public Cap getStrokeCap(){
+        return cap;
+    }
+
+    public void setStrokeCap(Cap cap){
+        this.cap = cap;
+    }
+
+    public Join getStrokeJoin(){
+        return join;
+    }
+
+    public void setStrokeJoin(Join join){
+        this.join = join;
+    }
+
+    public boolean isAntiAlias(){
+        return antiAlias;
+    }
+
+    public void setAntiAlias(boolean antiAlias){
+        this.antiAlias = antiAlias;
+    }
+
+    public boolean getFillPath(Path src, Path dst){
+        dst.set(src);
+        return true;
+    }
+
+    public void setFilterBitmap(boolean filter){
+    }
+
+    public void setDither(boolean dither){
+    }
+}
@@ -0,0 +1,82 @@
+package android.graphics;
+
+import java.util.Arrays;
+
+/**
+ * Headless stand-in for the platform class.  Curves are flattened into a few line segments as
+ * they are added.
+ */
+public class Path {
+
+    private static final int QUAD_SEGMENTS = 4;
+
+    // interleaved x,y of the points, and whether each point starts a contour
+    float[] points = new float[64];
+    boolean[] moves = new boolean[32];
+    int count;
+
+    public Path(){
+    }
+
+    public Path(Path src){
+        set(src);
+    }
+
+    public void set(Path src){
+        points = Arrays.copyOf(src.points, src.points.length);
+        moves = Arrays.copyOf(src.moves, src.moves.length);
+        count = src.count;
+    }
+
+    public void reset(){
+        count = 0;
+    }
+
+    public void rewind(){
+        count = 0;
+    }
+
+    public boolean isEmpty(){
+        return count == 0;
+    }
+
+    public void moveTo(float x, float y){
+        add(x, y, true);
+    }
+
+    public void lineTo(float x, float y){
+        add(x, y, count == 0);
+    }
+
+    public void quadTo(float x1, float y1, float x2, float y2){
+        if(count == 0){
+            add(0, 0, true);
+        }
+        float x0 = points[(count - 1) * 2], y0 = points[(count - 1) * 2 + 1];
+        for(int i=1; i<=QUAD_SEGMENTS; i++){
+            float t = (float) i / QUAD_SEGMENTS, u = 1 - t;
+            add(u * u * x0 + 2 * u * t * x1 + t * t * x2, u * u * y0 + 2 * u * t * y1 + t * t * y2, false);
+        }
+    }
+
+    public void computeBounds(RectF bounds, boolean exact){
+        if(count == 0){
+            bounds.setEmpty();
+            return;
+        }
+        bounds.set(points[0], points[1], points[0], points[1]);
+        for(int i=1; i<count; i++){
+            bounds.union(points[i * 2], points[i * 2 + 1]);
+        }
+    }
+
+    private void add(float x, float y, boolean move){
+        if(count == moves.length){
+            moves = Arrays.copyOf(moves, count * 2);
+            points = Arrays.copyOf(points, count * 4);
+        }
+        points[count * 2] = x;
+        points[count * 2 + 1] = y;
+        moves[count++] = move;
+    }
+}
@@ -0,0 +1,102 @@
+package android.graphics;
+
+/**
+ * Headless stand-in for the platform class.
+ */
+public class Rect {
+
+    public int left, top, right, bottom;
+
+    public Rect(){
+    }
+
+    public Rect(int left, int top, int right, int bottom){
+        set(left, top, right, bottom);
+    }
+
+    public Rect(Rect r){
+        set(r);
+    }
+
+    public void set(int left, int top, int right, int bottom){
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+    public void set(Rect r){
+        set(r.left, r.top, r.right, r.bottom);
+    }
+
+    public void setEmpty(){
+        set(0, 0, 0, 0);
+    }
+
+    public boolean isEmpty(){
+        return left >= right || top >= bottom;
+    }
+
+    public int width(){
+        return right - left;
+    }
+
+    public int height(){
+        return bottom - top;
+    }
+
+    public boolean contains(int x, int y){
+        return left < right && top < bottom && x >= left && x < right && y >= top && y < bottom;
+    }
+
+    public boolean intersects(int left, int top, int right, int bottom){
+        return this.left < right && left < this.right && this.top < bottom && top < this.bottom;
+    }
+
+    public static boolean intersects(Rect a, Rect b){
+        return a.intersects(b.left, b.top, b.right, b.bottom);
+    }
+
+    public boolean intersect(int left, int top, int right, int bottom){
+        if(!intersects(left, top, right, bottom)){
+            return false;
+        }
+        set(Math.max(this.left, left), Math.max(this.top, top),
+                Math.min(this.right, right), Math.min(this.bottom, bottom));
+        return true;
+    }
+
+    public boolean intersect(Rect r){
+        return intersect(r.left, r.top, r.right, r.bottom);
+    }
+
+    public void union(int left, int top, int right, int bottom){
+        if(left >= right || top >= bottom){
+            return;
+        }
+        if(isEmpty()){
+            set(left, top, right, bottom);
+        } else {
+            set(Math.min(this.left, left), Math.min(this.top, top),
+                    Math.max(this.right, right), Math.max(this.bottom, bottom));
+        }
+    }
+
+    public void union(Rect r){
+        union(r.left, r.top, r.right, r.bottom);
+    }
+
+    public void offset(int dx, int dy){
+        left += dx;
+        right += dx;
+        top += dy;
+        bottom += dy;
+    }
+
+    public void inset(int dx, int dy){
+        left += dx;
+        right -= dx;
+        top += dy;
+        bottom -= dy;
+    }
+}
@@ -0,0 +1,108 @@
+package android.graphics;
+
+/**
+ * Headless stand-in for the platform class.
+ */
+public class RectF {
+
+    public float left, top, right, bottom;
+
+    public RectF(){
+    }
+
+    public RectF(float left, float top, float right, float bottom){
+        set(left, top, right, bottom);
+    }
+
+    public RectF(RectF r){
+        set(r);
+    }
+
+    public void set(float left, float top, float right, float bottom){
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+    public void set(RectF r){
+        set(r.left, r.top, r.right, r.bottom);
+    }
+
+    public void setEmpty(){
+        set(0, 0, 0, 0);
+    }
+
+    public boolean isEmpty(){
+        return left >= right || top >= bottom;
+    }
+
+    public float width(){
+        return right - left;
+    }
+
+    public float height(){
+        return bottom - top;
+    }
+
+    public boolean contains(float x, float y){
+        return left < right && top < bottom && x >= left && x < right && y >= top && y < bottom;
+    }
+
+    public boolean intersects(float left, float top, float right, float bottom){
+        return this.left < right && left < this.right && this.top < bottom && top < this.bottom;
+    }
+
+    public static boolean intersects(RectF a, RectF b){
+        return a.intersects(b.left, b.top, b.right, b.bottom);
+    }
+
+    public boolean intersect(RectF r){
+        if(!intersects(r.left, r.top, r.right, r.bottom)){
+            return false;
+        }
+        set(Math.max(left, r.left), Math.max(top, r.top), Math.min(right, r.right), Math.min(bottom, r.bottom));
+        return true;
+    }
+
+    public void union(float x, float y){
+        left = Math.min(left, x);
+        top = Math.min(top, y);
+        right = Math.max(right, x);
+        bottom = Math.max(bottom, y);
+    }
+
+    public void union(float left, float top, float right, float bottom){
+        if(left >= right || top >= bottom){
+            return;
+        }
+        if(isEmpty()){
+            set(left, top, right, bottom);
+        } else {
+            set(Math.min(this.left, left), Math.min(this.top, top),
+                    Math.max(this.right, right), Math.max(this.bottom, bottom));
+        }
+    }
+
+    public void union(RectF r){
+        union(r.left, r.top, r.right, r.bottom);
+    }
+
+    public void offset(float dx, float dy){
+        left += dx;
+        right += dx;
+        top += dy;
+        bottom += dy;
+    }
+
+    public void inset(float dx, float dy){
+        left += dx;
+        right -= dx;
+        top += dy;
+        bottom -= dy;
+    }
+
+    public void roundOut(Rect dst){
+        dst.set((int) Math.floor(left), (int) Math.floor(top), (int) Math.ceil(right), (int) Math.ceil(bottom));
+    }
+}
@@ -0,0 +1,76 @@
+package android.graphics;
+
+/**
+ * Headless stand-in for the platform class.  A region is a rect, or the part of a path within a
+ * rect; a path covers the pixels the stand-in {@link Canvas} would draw it on.  Only intersecting
+ * a region with a rect is supported.
+ */
+public class Region {
+
+    public enum Op { DIFFERENCE, INTERSECT, UNION, XOR, REVERSE_DIFFERENCE, REPLACE }
+
+    private final Rect bounds = new Rect();
+    private final Path path = new Path();
+    private boolean hasPath;
+
+    public Region(){
+    }
+
+    public boolean set(int left, int top, int right, int bottom){
+        bounds.set(left, top, right, bottom);
+        hasPath = false;
+        return !isEmpty();
+    }
+
+    public boolean setPath(Path path, Region clip){
+        bounds.set(clip.bounds);
+        this.path.set(path);
+        hasPath = true;
+        return !isEmpty();
+    }
+
+    public boolean op(Rect rect, Region region, Op op){
+        if(op != Op.INTERSECT){
+            throw new UnsupportedOperationException("Region op " + op);
+        }
+        bounds.set(region.bounds);
+        if(!bounds.intersect(rect)){
+            bounds.setEmpty();
+        }
+        path.set(region.path);
+        hasPath = region.hasPath;
+        return !isEmpty();
+    }
+
+    public boolean isEmpty(){
+        if(bounds.isEmpty()){
+            return true;
+        }
+        if(!hasPath){
+            return false;
+        }
+        for(int i=1; i<path.count; i++){
+            if(!path.moves[i] && crosses(path.points[i * 2 - 2], path.points[i * 2 - 1],
+                    path.points[i * 2], path.points[i * 2 + 1])){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // whether a line puts a pixel within the bounds, stepping along it like the stand-in canvas
+    private boolean crosses(float x0, float y0, float x1, float y1){
+        if(Math.max(x0, x1) < bounds.left || Math.min(x0, x1) >= bounds.right
+                || Math.max(y0, y1) < bounds.top || Math.min(y0, y1) >= bounds.bottom){
+            return false;
+        }
+        int steps = (int) Math.max(Math.abs(x1 - x0), Math.abs(y1 - y0)) + 1;
+        float sx = (x1 - x0) / steps, sy = (y1 - y0) / steps;
+        for(int i=0; i<=steps; i++){
+            if(bounds.contains((int) Math.floor(x0 + sx * i), (int) Math.floor(y0 + sy * i))){
+                return true;
+            }
+        }
+        return false;
+    }
+}
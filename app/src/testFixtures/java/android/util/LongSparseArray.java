@@ -0,0 +1,111 @@
+package android.util;
+
+import java.util.Arrays;
+
+/**
+ * Headless stand-in for the platform class: values kept in arrays sorted by key.
+ */
+public class LongSparseArray<E> implements Cloneable {
+
+    private long[] keys;
+    private Object[] values;
+    private int size;
+
+    public LongSparseArray(){
+        this(10);
+    }
+
+    public LongSparseArray(int initialCapacity){
+        keys = new long[Math.max(1, initialCapacity)];
+        values = new Object[keys.length];
+    }
+
+    public E get(long key){
+        return get(key, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    public E get(long key, E valueIfKeyNotFound){
+        int i = Arrays.binarySearch(keys, 0, size, key);
+        return (i < 0) ? valueIfKeyNotFound : (E) values[i];
+    }
+
+    public void put(long key, E value){
+        int i = Arrays.binarySearch(keys, 0, size, key);
+        if(i >= 0){
+            values[i] = value;
+            return;
+        }
+
+        i = -i - 1;
+        if(size == keys.length){
+            keys = Arrays.copyOf(keys, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        System.arraycopy(keys, i, keys, i + 1, size - i);
+        System.arraycopy(values, i, values, i + 1, size - i);
+        keys[i] = key;
+        values[i] = value;
+        size++;
+    }
+
+    public void append(long key, E value){
+        put(key, value);
+    }
+
+    public void delete(long key){
+        int i = Arrays.binarySearch(keys, 0, size, key);
+        if(i >= 0){
+            removeAt(i);
+        }
+    }
+
+    public void remove(long key){
+        delete(key);
+    }
+
+    public void removeAt(int index){
+        System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+        System.arraycopy(values, index + 1, values, index, size - index - 1);
+        values[--size] = null;
+    }
+
+    public int size(){
+        return size;
+    }
+
+    public long keyAt(int index){
+        return keys[index];
+    }
+
+    @SuppressWarnings("unchecked")
+    public E valueAt(int index){
+        return (E) values[index];
+    }
+
+    public void setValueAt(int index, E value){
+        values[index] = value;
+    }
+
+    public int indexOfKey(long key){
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    public void clear(){
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public LongSparseArray<E> clone(){
+        try {
+            LongSparseArray<E> clone = (LongSparseArray<E>) super.clone();
+            clone.keys = keys.clone();
+            clone.values = values.clone();
+            return clone;
+        } catch(CloneNotSupportedException e){
+            throw new AssertionError(e);
+        }
+    }
+}
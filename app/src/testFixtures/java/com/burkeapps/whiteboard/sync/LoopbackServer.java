@@ -0,0 +1,119 @@
+package com.burkeapps.whiteboard.sync;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A LoopbackServer connects clients to a {@link SyncServer} in the same process.  Frames are
+ * queued instead of delivered right away, like on a network, until {@link #deliver()} is called.
+ * The tests and benchmarks use it to share a whiteboard between boards without a network.
+ */
+public class LoopbackServer {
+
+    private final SyncServer server = new SyncServer();
+    private final ArrayDeque<Delivery> queue = new ArrayDeque<>();
+    private final List<Link> links = new ArrayList<>();
+    private long deliveredBytes;
+
+    private static class Delivery {
+        final Link link;
+        final byte[] frame;
+        final boolean toServer;
+
+        Delivery(Link link, byte[] frame, boolean toServer){
+            this.link = link;
+            this.frame = frame;
+            this.toServer = toServer;
+        }
+    }
+
+    /**
+     * One client's connection, the client sends through it and the server through its
+     * {@link #toClient} end.
+     */
+    private class Link implements SyncClient.Transport {
+        SyncClient client;
+
+        final SyncServer.Connection toClient = new SyncServer.Connection() {
+            @Override
+            public void send(byte[] frame){
+                queue.add(new Delivery(Link.this, frame, false));
+            }
+        };
+
+        @Override
+        public void send(byte[] frame){
+            queue.add(new Delivery(this, frame, true));
+        }
+    }
+
+    /**
+     * Creates a client connected to the server.  Its board still has to be attached.
+     *
+     * @param id Id of the client's board
+     */
+    public SyncClient connect(int id){
+        Link link = new Link();
+        link.client = new SyncClient(id, link);
+        links.add(link);
+        return link.client;
+    }
+
+    /**
+     * Disconnects a client from the server.  Frames still queued for it are dropped.
+     */
+    public void disconnect(SyncClient client){
+        for(int i=0; i<links.size(); i++){
+            Link link = links.get(i);
+            if(link.client == client){
+                server.disconnect(link.toClient);
+                links.remove(i);
+                client.detach();
+                return;
+            }
+        }
+    }
+
+    public SyncServer getServer(){
+        return server;
+    }
+
+    /**
+     * Delivers queued frames in order, including those sent in response, until none are left.
+     *
+     * @return The number of frames delivered
+     */
+    public int deliver(){
+        int count = 0;
+        while(!queue.isEmpty()){
+            Delivery delivery = queue.poll();
+            if(!links.contains(delivery.link)){
+                // the client was disconnected
+                continue;
+            }
+            deliveredBytes += delivery.frame.length;
+            count++;
+            if(delivery.toServer){
+                server.receive(delivery.link.toClient, delivery.frame);
+            } else {
+                delivery.link.client.receive(delivery.frame);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Indicates whether frames are waiting to be delivered.
+     */
+    public boolean isIdle(){
+        return queue.isEmpty();
+    }
+
+    /**
+     * Returns the number of bytes of all frames delivered.
+     */
+    public long getDeliveredBytes(){
+        return deliveredBytes;
+    }
+}
@@ -0,0 +1,120 @@
+package com.burkeapps.whiteboard.sync;
+
+import com.burkeapps.whiteboard.views.StrokeStore;
+import com.burkeapps.whiteboard.views.StyleCache;
+
+/**
+ * A StoreBoard is a board without a view, just the history of its strokes.  It stands in for a
+ * WhiteboardView where no screen is needed, e.g. to check that boards sharing a whiteboard end up
+ * with the same strokes.
+ */
+public class StoreBoard implements SyncClient.Board {
+
+    private final StrokeStore strokes = new StrokeStore();
+    private final StyleCache styles = new StyleCache();
+    private SyncClient client;
+    private long clock;
+
+    public StrokeStore getStrokes(){
+        return strokes;
+    }
+
+    public StyleCache getStyles(){
+        return styles;
+    }
+
+    public SyncClient getClient(){
+        return client;
+    }
+
+    /**
+     * Connects the board to a client, which then keeps it in step with the shared whiteboard.
+     */
+    public void attach(SyncClient client){
+        this.client = client;
+        client.attach(this);
+    }
+
+    /**
+     * Draws a stroke on the board and reports it to the client.
+     *
+     * @param style Index of the stroke's style in {@link #getStyles()}
+     * @param xy Interleaved x,y coordinates of the points
+     * @param count Number of points
+     */
+    public void draw(int style, float[] xy, int count){
+        strokes.beginStroke(style);
+        for(int i=0; i<count; i++){
+            strokes.addPoint(xy[i * 2], xy[i * 2 + 1], clock++);
+        }
+        int stroke = strokes.endStroke();
+        if(client != null){
+            client.stroke(strokes, stroke, styles.get(style));
+        }
+    }
+
+    /**
+     * Undoes the last step of the board and reports it to the client.
+     */
+    public void undoLocal(){
+        if(strokes.undo() && client != null){
+            client.undo();
+        }
+    }
+
+    /**
+     * Redoes the last undone step of the board and reports it to the client.
+     */
+    public void redoLocal(){
+        if(strokes.redo() && client != null){
+            client.redo();
+        }
+    }
+
+    /**
+     * Clears the board and reports it to the client.
+     */
+    public void clearLocal(){
+        clear();
+        if(client != null){
+            client.clear();
+        }
+    }
+
+    @Override
+    public void addStroke(Operation stroke){
+        stroke.addTo(strokes, styles, clock);
+        clock += stroke.getPointCount();
+    }
+
+    @Override
+    public boolean undo(){
+        return strokes.undo();
+    }
+
+    @Override
+    public boolean redo(){
+        return strokes.redo();
+    }
+
+    @Override
+    public void clear(){
+        strokes.clear();
+        styles.clear();
+    }
+
+    @Override
+    public int getStepCount(){
+        return strokes.getStepCount();
+    }
+
+    @Override
+    public boolean canRedo(){
+        return strokes.canRedo();
+    }
+
+    @Override
+    public boolean isDrawing(){
+        return strokes.isStrokeOpen();
+    }
+}
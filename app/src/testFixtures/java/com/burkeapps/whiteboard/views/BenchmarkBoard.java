@@ -0,0 +1,233 @@
+package com.burkeapps.whiteboard.views;
+
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import java.util.Random;
+
+/**
+ * A BenchmarkBoard holds what a {@link WhiteboardView} keeps of a board apart from the view: the
+ * history, its index, the tiles and their checkpoints.  Its methods take the same
+ * {@link HistorySteps} the view and its {@link RenderEngine} take for the same events, minus
+ * invalidation and the worker thread, so a benchmark times the same code without a device.  It
+ * lives with the test fixtures so the unit tests compile and run it too.
+ *
+ * Strokes are generated from a fixed seed, so every run and every build draws the same board.
+ */
+class BenchmarkBoard {
+
+    static final int WIDTH = 1080;
+    static final int HEIGHT = 1920;
+    static final int POINTS_PER_STROKE = 64;
+
+    private static final long SEED = 0x5eedL;
+    // distance between touch events, in pixels
+    private static final float STEP = 6;
+
+    final BitmapPool pool = new BitmapPool();
+    final StyleCache styles = new StyleCache();
+    final StrokeStore strokes = new StrokeStore();
+    final StrokeIndex index = new StrokeIndex();
+    final TiledCanvas tiles = new TiledCanvas(pool);
+    final CheckpointCache checkpoints = new CheckpointCache(pool);
+
+    private final StrokeSimplifier simplifier = new StrokeSimplifier();
+    private final StrokeRenderer renderer = new StrokeRenderer();
+    private final Random random = new Random(SEED);
+    private final int[] styleIds;
+    private final RectF bounds = new RectF();
+    private final RectF strokeBounds = new RectF();
+    private final Rect tileRange = new Rect();
+    private final RectF tileArea = new RectF();
+    private final int width, height;
+    private long time;
+    private int nextStyle;
+    private final float[] sample = new float[2];
+    private final long[] sampleTime = new long[1];
+    private final long[] times = new long[POINTS_PER_STROKE];
+
+    BenchmarkBoard(){
+        this(WIDTH, HEIGHT);
+    }
+
+    /**
+     * Creates a board whose strokes are spread over an area of the given size, e.g. one larger
+     * than the screen.
+     */
+    BenchmarkBoard(int width, int height){
+        this.width = width;
+        this.height = height;
+        styleIds = new int[]{
+                styles.intern(0xff000000, 8, 1, StrokeStyle.CAP_ROUND, StrokeStyle.JOIN_ROUND, true),
+                styles.intern(0xffcc0000, 4, 1, StrokeStyle.CAP_ROUND, StrokeStyle.JOIN_ROUND, true),
+                styles.intern(0xff0033cc, 16, 1, StrokeStyle.CAP_ROUND, StrokeStyle.JOIN_ROUND, true),
+        };
+    }
+
+    /**
+     * Fills an array with the interleaved x,y coordinates of the touch events of a stroke: a
+     * wandering line starting at a random point of the board.
+     *
+     * @return The array, or a new one if it was null or too small
+     */
+    float[] nextStroke(float[] xy){
+        return nextPath(xy, POINTS_PER_STROKE);
+    }
+
+    /**
+     * Fills an array with the touch events of a stroke of the given number of points.
+     *
+     * @return The array, or a new one if it was null or too small
+     */
+    float[] nextPath(float[] xy, int points){
+        if(xy == null || xy.length < points * 2){
+            xy = new float[points * 2];
+        }
+        float x = random.nextFloat() * width, y = random.nextFloat() * height;
+        double heading = random.nextDouble() * 2 * Math.PI;
+        for(int i=0; i<points; i++){
+            xy[i * 2] = x;
+            xy[i * 2 + 1] = y;
+            heading += (random.nextDouble() - 0.5) * 0.6;
+            x = Math.max(0, Math.min(width - 1, x + (float) Math.cos(heading) * STEP));
+            y = Math.max(0, Math.min(height - 1, y + (float) Math.sin(heading) * STEP));
+        }
+        return xy;
+    }
+
+    /**
+     * Returns the style of the next stroke, the styles take turns.
+     */
+    int nextStyle(){
+        return styleIds[nextStyle++ % styleIds.length];
+    }
+
+    /**
+     * Extends a live stroke by a touch event, moving its finished part onto the tiles once it is
+     * full, as WhiteboardView does for each pointer of a touch event.
+     */
+    void extendLiveStroke(LiveStroke stroke, float x, float y, long time){
+        sample[0] = x;
+        sample[1] = y;
+        sampleTime[0] = time;
+        stroke.add(sample, sampleTime, 1);
+        stroke.extend(x, y, true);
+        if(stroke.isPathFull()){
+            drawLiveStroke(stroke);
+            stroke.keepLastSegment(true);
+        }
+        // the view invalidates the area of each pointer once per event
+        stroke.hasDirtyBounds = false;
+    }
+
+    /**
+     * Draws the rest of a live stroke onto the tiles and records it, as WhiteboardView does when
+     * its pointer goes up.  The stroke is free afterwards.
+     */
+    void recordLiveStroke(LiveStroke stroke){
+        stroke.finish(true);
+        drawLiveStroke(stroke);
+        HistorySteps.record(strokes, styles, index, simplifier, stroke.style, stroke.points, stroke.times,
+                stroke.size, bounds);
+        stroke.release();
+        HistorySteps.saveCheckpointIfDue(checkpoints, strokes, tiles, false);
+    }
+
+    private void drawLiveStroke(LiveStroke stroke){
+        StrokeStyle style = styles.get(stroke.style);
+        stroke.path.computeBounds(bounds, true);
+        bounds.inset(-style.getReach(), -style.getReach());
+        tiles.drawPath(stroke.path, style.getPaint(), bounds);
+    }
+
+    /**
+     * Adds a stroke the way a finished touch path is recorded: its points are stored, simplified,
+     * indexed and drawn onto the tiles, and a checkpoint is saved if one is due.
+     */
+    void addStroke(float[] xy){
+        for(int i=0; i<POINTS_PER_STROKE; i++){
+            times[i] = time += 8;
+        }
+        int stroke = HistorySteps.record(strokes, styles, index, simplifier,
+                styleIds[strokes.size() % styleIds.length], xy, times, POINTS_PER_STROKE, bounds);
+        // on a device the live path is drawn onto the tiles while it is touched, a segment at a time
+        renderer.drawStroke(strokes, styles.table(), stroke, tiles);
+        HistorySteps.saveCheckpointIfDue(checkpoints, strokes, tiles, false);
+    }
+
+    /**
+     * Adds a number of generated strokes.
+     */
+    void fill(int count){
+        float[] xy = null;
+        for(int i=0; i<count; i++){
+            xy = nextStroke(xy);
+            addStroke(xy);
+        }
+    }
+
+    /**
+     * Undoes the newest step and renders the area it covered again, as WhiteboardView.undo()
+     * and the render it requests do.
+     *
+     * @return False if there was nothing to undo
+     */
+    boolean undo(){
+        if(!strokes.undo()){
+            return false;
+        }
+
+        HistorySteps.undone(strokes, styles, index, bounds, strokeBounds);
+        render(tiles.getTileRange(bounds, tileRange));
+        return true;
+    }
+
+    /**
+     * Redoes the newest undone stroke by drawing it on top, as WhiteboardView.redo() does.
+     *
+     * @return False if there was nothing to redo
+     */
+    boolean redo(){
+        if(!strokes.redo()){
+            return false;
+        }
+
+        index.setVisibleCount(strokes.size());
+        renderer.drawStroke(strokes, styles.table(), strokes.size() - 1, tiles);
+        HistorySteps.saveCheckpointIfDue(checkpoints, strokes, tiles, false);
+        return true;
+    }
+
+    /**
+     * Renders every tile of the board again from the history.
+     */
+    void renderAll(){
+        tileRange.set(0, 0, (width + TiledCanvas.TILE_SIZE - 1) / TiledCanvas.TILE_SIZE,
+                (height + TiledCanvas.TILE_SIZE - 1) / TiledCanvas.TILE_SIZE);
+        render(tileRange);
+    }
+
+    /**
+     * Renders a range of tiles from the closest checkpoint and swaps them in, as a job of the
+     * render engine does.
+     */
+    void render(Rect range){
+        if(range.isEmpty()){
+            return;
+        }
+
+        int[] visible = HistorySteps.findVisible(strokes, index, range, tileArea);
+        TiledCanvas back = new TiledCanvas(pool);
+        HistorySteps.render(renderer, strokes, styles.table(), visible, checkpoints, back, range, null);
+        tiles.replace(range, back);
+    }
+
+    /**
+     * Releases the tiles and checkpoints.
+     */
+    void release(){
+        checkpoints.clear();
+        tiles.clear();
+        pool.clear();
+    }
+}
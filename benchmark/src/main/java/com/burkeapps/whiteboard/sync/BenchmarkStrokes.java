@@ -0,0 +1,40 @@
+package com.burkeapps.whiteboard.sync;
+
+import com.burkeapps.whiteboard.views.StrokeStyle;
+
+import java.util.Random;
+
+/**
+ * BenchmarkStrokes draws the strokes of the sync benchmarks on boards: wandering lines of touch
+ * events, generated from a fixed seed so every run sends the same operations.
+ */
+class BenchmarkStrokes {
+
+    static final int WIDTH = 1080;
+    static final int HEIGHT = 1920;
+    static final int POINTS_PER_STROKE = 64;
+
+    private static final long SEED = 0x5eedL;
+    // distance between touch events, in pixels
+    private static final float STEP = 6;
+
+    private final Random random = new Random(SEED);
+    private final float[] xy = new float[POINTS_PER_STROKE * 2];
+
+    /**
+     * Draws the next stroke on a board, which reports it to its client.
+     */
+    void draw(StoreBoard board){
+        float x = random.nextFloat() * WIDTH, y = random.nextFloat() * HEIGHT;
+        double heading = random.nextDouble() * 2 * Math.PI;
+        for(int i=0; i<POINTS_PER_STROKE; i++){
+            xy[i * 2] = x;
+            xy[i * 2 + 1] = y;
+            heading += (random.nextDouble() - 0.5) * 0.6;
+            x = Math.max(0, Math.min(WIDTH - 1, x + (float) Math.cos(heading) * STEP));
+            y = Math.max(0, Math.min(HEIGHT - 1, y + (float) Math.sin(heading) * STEP));
+        }
+        int style = board.getStyles().intern(0xff000000, 8, 1, StrokeStyle.CAP_ROUND, StrokeStyle.JOIN_ROUND, true);
+        board.draw(style, xy, POINTS_PER_STROKE);
+    }
+}
@@ -0,0 +1,56 @@
+package com.burkeapps.whiteboard.sync;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time for a board joining a shared whiteboard to catch up: the server encodes its log in
+ * catch-up frames and the board applies every operation of it.  A tenth of the strokes are
+ * undone, so the catch-up applies undos as well.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CatchUpBenchmark {
+
+    @Param({"1000", "10000"})
+    public int strokes;
+
+    private LoopbackServer server;
+    private int nextId = 2;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        server = new LoopbackServer();
+        StoreBoard author = new StoreBoard();
+        author.attach(server.connect(1));
+        BenchmarkStrokes generator = new BenchmarkStrokes();
+        for(int i=0; i<strokes; i++){
+            generator.draw(author);
+            if(i % 10 == 9){
+                author.undoLocal();
+            }
+        }
+        author.getClient().flush();
+        server.deliver();
+    }
+
+    @Benchmark
+    public int catchUp(){
+        StoreBoard late = new StoreBoard();
+        SyncClient client = server.connect(nextId++);
+        late.attach(client);
+        server.deliver();
+        server.disconnect(client);
+        return late.getStrokes().size();
+    }
+}
@@ -0,0 +1,69 @@
+package com.burkeapps.whiteboard.sync;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time for a batch of strokes drawn on one board to reach the others: the strokes are encoded,
+ * placed in the server's log, broadcast and applied to every board, including the echo to the
+ * board that drew them.
+ *
+ * Every 1024 strokes the board is cleared, which keeps the log and the histories from growing
+ * over a run.  The clear is part of the measured time, spread over those strokes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SyncBenchmark {
+
+    private static final int CLEAR_INTERVAL = 1024;
+
+    @Param({"2", "8"})
+    public int boards;
+
+    // strokes sent in one frame
+    @Param({"1", "32"})
+    public int batch;
+
+    private LoopbackServer server;
+    private StoreBoard[] board;
+    private BenchmarkStrokes strokes;
+    private int drawn;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        server = new LoopbackServer();
+        board = new StoreBoard[boards];
+        for(int i=0; i<boards; i++){
+            board[i] = new StoreBoard();
+            board[i].attach(server.connect(i + 1));
+        }
+        server.deliver();
+        strokes = new BenchmarkStrokes();
+    }
+
+    @Benchmark
+    public long broadcast(){
+        StoreBoard author = board[0];
+        for(int i=0; i<batch; i++){
+            strokes.draw(author);
+        }
+        drawn += batch;
+        if(drawn >= CLEAR_INTERVAL){
+            author.clearLocal();
+            drawn = 0;
+        }
+        author.getClient().flush();
+        server.deliver();
+        return server.getDeliveredBytes();
+    }
+}
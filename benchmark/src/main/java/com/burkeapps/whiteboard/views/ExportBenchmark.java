@@ -0,0 +1,117 @@
+package com.burkeapps.whiteboard.views;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+
+import com.burkeapps.whiteboard.export.PngStreamEncoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to take a screenshot of a board and to stream it out as a PNG.  The PNG export follows
+ * ExportExecutor: a snapshot of the board is drawn a band of rows at a time and each row is
+ * encoded as soon as it is drawn.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ExportBenchmark {
+
+    private static final int BAND_HEIGHT = 64;
+    private static final int PNG_COMPRESSION_LEVEL = 6;
+    private static final int BACKGROUND_COLOR = 0xffffffff;
+
+    @Param({"100", "1000"})
+    public int strokes;
+
+    private BenchmarkBoard board;
+    private final CountingStream out = new CountingStream();
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        board = new BenchmarkBoard();
+        board.fill(strokes);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        board.release();
+    }
+
+    @Benchmark
+    public int screenshot(){
+        Bitmap result = board.pool.obtain(BenchmarkBoard.WIDTH, BenchmarkBoard.HEIGHT, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(result);
+        canvas.drawColor(BACKGROUND_COLOR);
+        board.tiles.draw(canvas, null);
+        int pixel = result.getPixel(0, 0);
+        board.pool.release(result);
+        return pixel;
+    }
+
+    @Benchmark
+    public long streamPng() throws IOException {
+        Rect area = new Rect(0, 0, BenchmarkBoard.WIDTH, BenchmarkBoard.HEIGHT);
+        BoardSnapshot snapshot = new BoardSnapshot(board.tiles, board.pool, area, area, BACKGROUND_COLOR, null);
+        int width = snapshot.getWidth(), height = snapshot.getHeight();
+        out.count = 0;
+        PngStreamEncoder encoder = new PngStreamEncoder(out, width, height, PNG_COMPRESSION_LEVEL);
+
+        Bitmap band = board.pool.obtain(width, BAND_HEIGHT, Bitmap.Config.ARGB_8888);
+        int[] pixels = new int[width * BAND_HEIGHT];
+        Canvas canvas = new Canvas(band);
+        try {
+            for(int top = 0; top < height; top += BAND_HEIGHT){
+                int rows = Math.min(BAND_HEIGHT, height - top);
+                canvas.save();
+                canvas.clipRect(0, 0, width, rows);
+                canvas.translate(0, -top);
+                snapshot.draw(canvas, null);
+                canvas.restore();
+
+                band.getPixels(pixels, 0, width, 0, 0, width, rows);
+                for(int r=0; r<rows; r++){
+                    encoder.writeRow(pixels, r * width);
+                }
+            }
+            encoder.finish();
+        } finally {
+            canvas.setBitmap(null);
+            board.pool.release(band);
+            snapshot.release();
+        }
+        return out.count;
+    }
+
+    /**
+     * Discards what is written, counting the bytes.
+     */
+    private static class CountingStream extends OutputStream {
+
+        long count;
+
+        @Override
+        public void write(int b){
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len){
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.burkeapps.whiteboard.views;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to record a finished stroke of {@link BenchmarkBoard#POINTS_PER_STROKE} touch events:
+ * storing, simplifying, indexing and drawing it, plus the checkpoints that come due.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class IngestionBenchmark {
+
+    private BenchmarkBoard board;
+    private float[] xy;
+
+    @Setup(Level.Iteration)
+    public void setUp(){
+        board = new BenchmarkBoard();
+        xy = board.nextStroke(null);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown(){
+        board.release();
+    }
+
+    @Benchmark
+    public int recordStroke(){
+        board.addStroke(xy);
+        return board.strokes.size();
+    }
+}
@@ -0,0 +1,75 @@
+package com.burkeapps.whiteboard.views;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time per touch sample of drawing live strokes: extending their paths, moving the finished
+ * parts onto the tiles and recording the strokes once their pointers go up.  A gesture always
+ * has {@link #SAMPLES} samples, split among the pointers, so ten pointers drawing at once can be
+ * compared with one pointer drawing a stroke ten times as long.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LiveStrokeBenchmark {
+
+    static final int SAMPLES = 640;
+
+    @Param({"1", "10"})
+    public int pointers;
+
+    private BenchmarkBoard board;
+    private LiveStroke[] live;
+    private float[][] paths;
+
+    @Setup(Level.Iteration)
+    public void setUp(){
+        board = new BenchmarkBoard();
+        live = new LiveStroke[pointers];
+        paths = new float[pointers][];
+        for(int p=0; p<pointers; p++){
+            live[p] = new LiveStroke();
+            paths[p] = board.nextPath(null, SAMPLES / pointers);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown(){
+        board.release();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public int drawGesture(){
+        int perPointer = SAMPLES / pointers;
+        for(int p=0; p<pointers; p++){
+            LiveStroke stroke = LiveStroke.obtain(live);
+            stroke.begin(p, board.nextStyle(), paths[p][0], paths[p][1], 0);
+        }
+
+        // every touch event moves each pointer by a sample
+        for(int i=1; i<perPointer; i++){
+            for(int p=0; p<pointers; p++){
+                LiveStroke stroke = LiveStroke.find(live, p);
+                board.extendLiveStroke(stroke, paths[p][i * 2], paths[p][i * 2 + 1], i);
+            }
+        }
+
+        for(int p=0; p<pointers; p++){
+            board.recordLiveStroke(LiveStroke.find(live, p));
+        }
+        return board.strokes.size();
+    }
+}
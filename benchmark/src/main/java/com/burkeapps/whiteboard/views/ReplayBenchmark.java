@@ -0,0 +1,53 @@
+package com.burkeapps.whiteboard.views;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to render the whole board again from its history, as after loading a file or when the
+ * view is resized.  The replay starts either from blank tiles or from the newest checkpoint.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ReplayBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int strokes;
+
+    // whether the replay can start from the newest checkpoint instead of blank tiles
+    @Param({"true", "false"})
+    public boolean checkpointed;
+
+    private BenchmarkBoard board;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        board = new BenchmarkBoard();
+        board.fill(strokes);
+        if(!checkpointed){
+            board.checkpoints.clear();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        board.release();
+    }
+
+    @Benchmark
+    public int replay(){
+        board.renderAll();
+        return board.tiles.getTileCount();
+    }
+}
@@ -0,0 +1,54 @@
+package com.burkeapps.whiteboard.views;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to undo the newest stroke and redo it again.  Undo renders the area of the stroke from
+ * the closest checkpoint, redo draws the stroke on top.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UndoRedoBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int strokes;
+
+    private BenchmarkBoard board;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        board = new BenchmarkBoard();
+        // one stroke past a checkpoint, so undo never restores the checkpoint it is at
+        board.fill(strokes + 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        board.release();
+    }
+
+    @Benchmark
+    public boolean undo(){
+        boolean undone = board.undo();
+        board.strokes.redo();
+        board.index.setVisibleCount(board.strokes.size());
+        return undone;
+    }
+
+    @Benchmark
+    public boolean undoRedo(){
+        return board.undo() && board.redo();
+    }
+}
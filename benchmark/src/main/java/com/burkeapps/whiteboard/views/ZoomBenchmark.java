@@ -0,0 +1,76 @@
+package com.burkeapps.whiteboard.views;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to draw a frame of a board four screens wide and four screens high, zoomed out so all of
+ * it is in view.  The frame is drawn from the canvas tiles, as before the board could be zoomed,
+ * and from the downsampled tiles of the level the zoom picks.  The copies are made once before
+ * the trial, as they are on a device after the first frames.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ZoomBenchmark {
+
+    private static final int SCREENS = 4;
+
+    @Param({"1000", "10000"})
+    public int strokes;
+
+    private BenchmarkBoard board;
+    private TilePyramid pyramid;
+    private final Viewport viewport = new Viewport();
+    private final Paint paint = new Paint();
+    private Bitmap frame;
+    private Canvas canvas;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        board = new BenchmarkBoard(BenchmarkBoard.WIDTH * SCREENS, BenchmarkBoard.HEIGHT * SCREENS);
+        board.fill(strokes);
+        pyramid = new TilePyramid(board.tiles, board.pool);
+        viewport.setSize(BenchmarkBoard.WIDTH, BenchmarkBoard.HEIGHT);
+        viewport.set(1f / SCREENS, 0, 0);
+        frame = Bitmap.createBitmap(BenchmarkBoard.WIDTH, BenchmarkBoard.HEIGHT, Bitmap.Config.ARGB_8888);
+        canvas = new Canvas(frame);
+        while(!pyramid.draw(canvas, viewport, paint)){
+            // each frame makes copies for a few milliseconds, draw until all are made
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        pyramid.clear();
+        board.release();
+    }
+
+    @Benchmark
+    public int drawCanvasTiles(){
+        canvas.drawColor(0xffffffff);
+        pyramid.draw(canvas, viewport, paint, 0);
+        return frame.getPixel(0, 0);
+    }
+
+    @Benchmark
+    public int drawLevelOfDetail(){
+        canvas.drawColor(0xffffffff);
+        pyramid.draw(canvas, viewport, paint);
+        return frame.getPixel(0, 0);
+    }
+}